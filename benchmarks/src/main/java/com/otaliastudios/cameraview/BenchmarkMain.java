@@ -0,0 +1,41 @@
+package com.otaliastudios.cameraview;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Runs the benchmarks of this module and writes the results as JSON.
+ *
+ * The first argument is the JSON file. The others are passed to JMH, so they can be used to
+ * select benchmarks (e.g. "ExifWriter") or to change the run (e.g. "-f 1 -wi 1").
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        if (args.length < 1) {
+            throw new IllegalArgumentException("Usage: BenchmarkMain <results.json> [JMH options]");
+        }
+        File results = new File(args[0]);
+        File parent = results.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IllegalStateException("Could not create " + parent);
+        }
+        CommandLineOptions commandLine = new CommandLineOptions(Arrays.copyOfRange(args, 1, args.length));
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine);
+        if (commandLine.getIncludes().isEmpty()) builder.include(".*Benchmark.*");
+        Options options = builder
+                .resultFormat(ResultFormatType.JSON)
+                .result(results.getAbsolutePath())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,61 @@
+package com.otaliastudios.cameraview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CameraLogger} calls of each level, with each log level set. When the message is
+ * filtered out, this is the cost of the varargs call. Otherwise, it includes building
+ * the message: logcat itself is not measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CameraLoggerBenchmark {
+
+    private final static CameraLogger LOG = CameraLogger.create("CameraLoggerBenchmark");
+
+    @Param({"0", "1", "2", "3"}) // VERBOSE, INFO, WARNING, ERROR
+    public int level;
+
+    private int value;
+
+    @Setup
+    public void setUp() {
+        CameraLogger.setLogLevel(level);
+    }
+
+    @Benchmark
+    public void verbose() {
+        LOG.v("verbose:", "value", value++);
+    }
+
+    @Benchmark
+    public void info() {
+        LOG.i("info:", "value", value++);
+    }
+
+    @Benchmark
+    public void warning() {
+        LOG.w("warning:", "value", value++);
+    }
+
+    @Benchmark
+    public void error() {
+        LOG.e("error:", "value", value++);
+    }
+}
@@ -0,0 +1,52 @@
+package com.otaliastudios.cameraview;
+
+import android.graphics.Rect;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CropHelper#computeCrop(int, int, AspectRatio)}, cropping common sizes to common ratios.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CropBenchmark {
+
+    @Param({"1920x1080", "4032x3024"})
+    public String size;
+
+    @Param({"1:1", "4:3", "16:9"})
+    public String ratio;
+
+    private int width;
+    private int height;
+    private AspectRatio aspectRatio;
+
+    @Setup
+    public void setUp() {
+        String[] split = size.split("x");
+        width = Integer.parseInt(split[0]);
+        height = Integer.parseInt(split[1]);
+        aspectRatio = AspectRatio.parse(ratio);
+    }
+
+    @Benchmark
+    public Rect computeCrop() {
+        return CropHelper.computeCrop(width, height, aspectRatio);
+    }
+}
@@ -0,0 +1,57 @@
+package com.otaliastudios.cameraview;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing the EXIF orientation in an encoded snapshot, which replaced rotating its pixels:
+ * {@link ExifWriter#createSegment(int, long, android.location.Location)} and
+ * {@link ExifWriter#insert(byte[], int, byte[])} on JPEGs of typical snapshot sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExifWriterBenchmark {
+
+    // Compressed sizes, in kilobytes.
+    @Param({"50", "200", "500"})
+    public int kilobytes;
+
+    private byte[] jpeg;
+
+    @Setup
+    public void setUp() {
+        // SOI, APP0, SOF0 and SOS, followed by random scan data.
+        byte[] header = new byte[]{
+                (byte) 0xFF, (byte) 0xD8,
+                (byte) 0xFF, (byte) 0xE0, 0, 7, 'J', 'F', 'I', 'F', 0,
+                (byte) 0xFF, (byte) 0xC0, 0, 11, 8, 0x04, 0x38, 0x07, (byte) 0x80, 1, 1, 0x11, 0,
+                (byte) 0xFF, (byte) 0xDA};
+        jpeg = new byte[kilobytes * 1024];
+        new Random(0).nextBytes(jpeg);
+        System.arraycopy(header, 0, jpeg, 0, header.length);
+    }
+
+    @Benchmark
+    public byte[] insert() {
+        byte[] segment = ExifWriter.createSegment(ExifInterface.ORIENTATION_ROTATE_90, 0, null);
+        return ExifWriter.insert(jpeg, jpeg.length, segment);
+    }
+}
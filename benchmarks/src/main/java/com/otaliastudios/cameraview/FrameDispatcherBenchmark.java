@@ -0,0 +1,85 @@
+package com.otaliastudios.cameraview;
+
+import android.graphics.ImageFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame latency of {@link FrameDispatcher} with a few CPU bound processors,
+ * serial against parallel. Parallel should approach the time of a single processor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameDispatcherBenchmark {
+
+    @Param({"2", "4"})
+    public int processors;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private ExecutorService executor;
+    private FrameDispatcher dispatcher;
+    private FrameManager manager;
+    private FrameInfo info;
+    private byte[] data;
+    private List<FrameProcessor> list;
+
+    @Setup
+    public void setUp() {
+        Size size = new Size(640, 480);
+        info = new FrameInfo(size, ImageFormat.NV21, 0, Facing.BACK, null);
+        data = new byte[size.getWidth() * size.getHeight() * 3 / 2];
+        manager = new FrameManager(1, null);
+        executor = Executors.newFixedThreadPool(processors);
+        dispatcher = new FrameDispatcher(executor);
+        dispatcher.setParallel(parallel);
+        list = new ArrayList<>();
+        for (int i = 0; i < processors; i++) {
+            list.add(new FrameProcessor() {
+                @Override
+                public void process(Frame frame) {
+                    // Walks the luma plane, like most processors.
+                    byte[] bytes = frame.getData();
+                    int sum = 0;
+                    for (int j = 0; j < 640 * 480; j++) sum += bytes[j];
+                    Blackhole.consumeCPU(20000 + (sum & 1));
+                }
+            });
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public long dispatch() {
+        dispatcher.dispatch(manager.getFrame(data, System.nanoTime(), info), list);
+        return dispatcher.getLastLatency();
+    }
+}
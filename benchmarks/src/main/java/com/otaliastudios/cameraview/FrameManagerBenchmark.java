@@ -0,0 +1,146 @@
+package com.otaliastudios.cameraview;
+
+import android.graphics.ImageFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FrameManager#getFrame(byte[], long, FrameInfo)} and {@link FrameManager#onFrameReleased(Frame)}
+ * throughput.
+ *
+ * - roundTrip: one thread gets and releases frames, like Camera1 with a synchronous processor.
+ * - pcN: N producers get frames from the buffers given back by the manager, and hand them
+ *   to N consumers that release them, from 2 to 8 threads in total.
+ *   Like the camera, producers have nothing to do when all buffers are held by frames:
+ *   these empty polls are counted as operations too, so compare the producer scores.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameManagerBenchmark {
+
+    private final static int POOL_SIZE = 2;
+    private final static Size SIZE = new Size(1280, 720);
+    private final static FrameInfo INFO = new FrameInfo(SIZE, ImageFormat.NV21, 90, Facing.BACK, null);
+
+    @State(Scope.Group)
+    public static class Pipeline implements FrameManager.BufferCallback {
+
+        final ConcurrentLinkedQueue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+        final ConcurrentLinkedQueue<Frame> frames = new ConcurrentLinkedQueue<>();
+        FrameManager manager;
+
+        @Setup
+        public void setUp() {
+            manager = new FrameManager(POOL_SIZE, this);
+            // More buffers than frames, so frames are recycled and created as in the camera.
+            manager.allocate(ImageFormat.getBitsPerPixel(ImageFormat.NV21), SIZE);
+        }
+
+        @TearDown
+        public void tearDown() {
+            manager.release();
+            buffers.clear();
+            frames.clear();
+        }
+
+        @Override
+        public void onBufferAvailable(byte[] buffer) {
+            buffers.offer(buffer);
+        }
+
+        Frame produce() {
+            byte[] buffer = buffers.poll();
+            if (buffer == null) return null;
+            Frame frame = manager.getFrame(buffer, System.nanoTime(), INFO);
+            frames.offer(frame);
+            return frame;
+        }
+
+        Frame consume() {
+            Frame frame = frames.poll();
+            if (frame != null) frame.release();
+            return frame;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Single {
+
+        final byte[] buffer = new byte[SIZE.getWidth() * SIZE.getHeight() * 3 / 2];
+        FrameManager manager;
+
+        @Setup
+        public void setUp() {
+            manager = new FrameManager(POOL_SIZE, null);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Frame roundTrip(Single state) {
+        Frame frame = state.manager.getFrame(state.buffer, System.nanoTime(), INFO);
+        frame.release();
+        return frame;
+    }
+
+    @Benchmark
+    @Group("pc1")
+    @GroupThreads(1)
+    public Frame produce1(Pipeline pipeline) {
+        return pipeline.produce();
+    }
+
+    @Benchmark
+    @Group("pc1")
+    @GroupThreads(1)
+    public Frame consume1(Pipeline pipeline) {
+        return pipeline.consume();
+    }
+
+    @Benchmark
+    @Group("pc2")
+    @GroupThreads(2)
+    public Frame produce2(Pipeline pipeline) {
+        return pipeline.produce();
+    }
+
+    @Benchmark
+    @Group("pc2")
+    @GroupThreads(2)
+    public Frame consume2(Pipeline pipeline) {
+        return pipeline.consume();
+    }
+
+    @Benchmark
+    @Group("pc4")
+    @GroupThreads(4)
+    public Frame produce4(Pipeline pipeline) {
+        return pipeline.produce();
+    }
+
+    @Benchmark
+    @Group("pc4")
+    @GroupThreads(4)
+    public Frame consume4(Pipeline pipeline) {
+        return pipeline.consume();
+    }
+}
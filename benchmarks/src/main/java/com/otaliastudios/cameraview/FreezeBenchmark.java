@@ -0,0 +1,50 @@
+package com.otaliastudios.cameraview;
+
+import android.graphics.ImageFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Frame#freeze()}, which copies the frame data.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FreezeBenchmark {
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String size;
+
+    private Frame frame;
+
+    @Setup
+    public void setUp() {
+        String[] split = size.split("x");
+        Size frameSize = new Size(Integer.parseInt(split[0]), Integer.parseInt(split[1]));
+        FrameManager manager = new FrameManager(1, null);
+        byte[] data = new byte[frameSize.getWidth() * frameSize.getHeight() * 3 / 2];
+        frame = manager.getFrame(data, System.nanoTime(),
+                new FrameInfo(frameSize, ImageFormat.NV21, 0, Facing.BACK, null));
+    }
+
+    @Benchmark
+    public Frame freeze() {
+        // Frozen frames are not released, so they are just garbage collected.
+        return frame.freeze();
+    }
+}
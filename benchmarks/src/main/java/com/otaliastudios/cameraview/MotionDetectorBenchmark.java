@@ -0,0 +1,66 @@
+package com.otaliastudios.cameraview;
+
+import android.graphics.ImageFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MotionDetector#process(Frame)} on a still scene, where only the coarsest level is
+ * compared, and on frames that change everywhere.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MotionDetectorBenchmark {
+
+    @Param({"640x480", "1920x1080"})
+    public String size;
+
+    @Param({"false", "true"})
+    public boolean moving;
+
+    private MotionDetector detector;
+    private Frame[] frames;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        String[] split = size.split("x");
+        Size frameSize = new Size(Integer.parseInt(split[0]), Integer.parseInt(split[1]));
+        FrameInfo info = new FrameInfo(frameSize, ImageFormat.NV21, 0, Facing.BACK, null);
+        FrameManager manager = new FrameManager(2, null);
+        Random random = new Random(0);
+        frames = new Frame[2];
+        for (int i = 0; i < 2; i++) {
+            byte[] data = new byte[frameSize.getWidth() * frameSize.getHeight() * 3 / 2];
+            if (moving || i == 0) random.nextBytes(data);
+            else System.arraycopy(frames[0].getData(), 0, data, 0, data.length);
+            frames[i] = manager.getFrame(data, System.nanoTime(), info);
+        }
+        detector = new MotionDetector();
+        detector.setSensitivity(0); // No listener anyway.
+    }
+
+    @Benchmark
+    public MotionDetector process() {
+        detector.process(frames[index]);
+        index = 1 - index;
+        return detector;
+    }
+}
@@ -0,0 +1,114 @@
+package com.otaliastudios.cameraview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frames per second of {@link FramePreprocessor}, turning preview frames into a 224x224
+ * float tensor, against the multi-pass way: convert, rotate, resize, normalize, each pass
+ * with its own allocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreprocessBenchmark {
+
+    private final static int OUTPUT = 224;
+
+    @Param({"640x480", "1280x720", "1920x1080"})
+    public String size;
+
+    @Param({"0", "90"})
+    public int rotation;
+
+    @Param({"UINT8", "FLOAT32"})
+    public FramePreprocessor.Type type;
+
+    private byte[] yuv;
+    private int width;
+    private int height;
+    private FramePreprocessor preprocessor;
+    private YuvConverter converter;
+    private ByteBuffer tensor;
+
+    @Setup
+    public void setUp() {
+        String[] split = size.split("x");
+        width = Integer.parseInt(split[0]);
+        height = Integer.parseInt(split[1]);
+        yuv = new byte[width * height * 3 / 2];
+        new Random(0).nextBytes(yuv);
+        preprocessor = new FramePreprocessor(OUTPUT, OUTPUT, type);
+        converter = new YuvConverter();
+        converter.setParallelism(1);
+        tensor = ByteBuffer.allocateDirect(preprocessor.getTensorSize()).order(ByteOrder.nativeOrder());
+    }
+
+    @Benchmark
+    public ByteBuffer fused() {
+        preprocessor.preprocess(yuv, width, height, rotation, tensor);
+        return tensor;
+    }
+
+    @Benchmark
+    public ByteBuffer multiPass() {
+        // Convert.
+        int[] argb = new int[width * height];
+        converter.convert(yuv, width, height, 0, argb);
+
+        // Rotate.
+        boolean flip = rotation % 180 != 0;
+        int rw = flip ? height : width;
+        int rh = flip ? width : height;
+        int[] rotated = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rx = flip ? height - 1 - y : x;
+                int ry = flip ? x : y;
+                rotated[ry * rw + rx] = argb[y * width + x];
+            }
+        }
+
+        // Center crop and resize.
+        int crop = Math.min(rw, rh);
+        int cx = (rw - crop) / 2, cy = (rh - crop) / 2;
+        int[] resized = new int[OUTPUT * OUTPUT];
+        for (int y = 0; y < OUTPUT; y++) {
+            for (int x = 0; x < OUTPUT; x++) {
+                resized[y * OUTPUT + x] = rotated[(cy + y * crop / OUTPUT) * rw + cx + x * crop / OUTPUT];
+            }
+        }
+
+        // Normalize.
+        ByteBuffer output = ByteBuffer.allocateDirect(preprocessor.getTensorSize()).order(ByteOrder.nativeOrder());
+        for (int pixel : resized) {
+            if (type == FramePreprocessor.Type.FLOAT32) {
+                output.putFloat(((pixel >> 16) & 0xFF) / 255f);
+                output.putFloat(((pixel >> 8) & 0xFF) / 255f);
+                output.putFloat((pixel & 0xFF) / 255f);
+            } else {
+                output.put((byte) (pixel >> 16));
+                output.put((byte) (pixel >> 8));
+                output.put((byte) pixel);
+            }
+        }
+        return output;
+    }
+}
@@ -0,0 +1,70 @@
+package com.otaliastudios.cameraview;
+
+import android.graphics.ImageFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SharpnessScorer#process(Frame)}, with and without best frame selection.
+ * With selection, all frames have the same score and a newer frame replaces older ones with
+ * the same score, so every frame is copied: the worst case.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SharpnessScorerBenchmark {
+
+    @Param({"640x480", "1920x1080"})
+    public String size;
+
+    @Param({"2", "4"})
+    public int step;
+
+    @Param({"0", "500"})
+    public long window;
+
+    private SharpnessScorer scorer;
+    private FrameManager manager;
+    private FrameInfo info;
+    private byte[] data;
+    private long timestamp;
+
+    @Setup
+    public void setUp() {
+        String[] split = size.split("x");
+        Size frameSize = new Size(Integer.parseInt(split[0]), Integer.parseInt(split[1]));
+        info = new FrameInfo(frameSize, ImageFormat.NV21, 0, Facing.BACK, null);
+        manager = new FrameManager(1, null);
+        data = new byte[frameSize.getWidth() * frameSize.getHeight() * 3 / 2];
+        new Random(0).nextBytes(data);
+        scorer = new SharpnessScorer();
+        scorer.setStep(step);
+        scorer.setWindow(window);
+    }
+
+    @Benchmark
+    public float process() {
+        // Fake timestamps, so that candidates are always in the window.
+        Frame frame = manager.getFrame(data, timestamp++, info);
+        scorer.process(frame);
+        float score = frame.getSharpness();
+        frame.release();
+        return score;
+    }
+}
@@ -0,0 +1,76 @@
+package com.otaliastudios.cameraview;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SizeSelectors} over the picture sizes of a recent device, with the kind of selectors
+ * that apps and the controller use.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SizeSelectorsBenchmark {
+
+    private final static int[][] SIZES = new int[][]{
+            {4032, 3024}, {4000, 3000}, {4032, 2268}, {3840, 2160}, {3264, 2448}, {3264, 1836},
+            {3024, 3024}, {2976, 2976}, {2880, 2160}, {2592, 1944}, {2560, 1920}, {2560, 1440},
+            {2448, 2448}, {2304, 1728}, {2160, 2160}, {2048, 1536}, {2048, 1152}, {1920, 1440},
+            {1920, 1080}, {1836, 1836}, {1600, 1200}, {1600, 900}, {1440, 1080}, {1280, 960},
+            {1280, 720}, {1072, 1072}, {1024, 768}, {960, 720}, {800, 600}, {800, 480},
+            {720, 720}, {720, 480}, {640, 480}, {640, 360}, {480, 360}, {352, 288},
+            {320, 240}, {176, 144}
+    };
+
+    private List<Size> sizes;
+    private SizeSelector ratioAndBiggest;
+    private SizeSelector boundedArea;
+    private SizeSelector fallback;
+
+    @Setup
+    public void setUp() {
+        sizes = new ArrayList<>(SIZES.length);
+        for (int[] size : SIZES) sizes.add(new Size(size[0], size[1]));
+        ratioAndBiggest = SizeSelectors.and(
+                SizeSelectors.aspectRatio(AspectRatio.of(16, 9), 0),
+                SizeSelectors.biggest());
+        boundedArea = SizeSelectors.and(
+                SizeSelectors.maxArea(2000 * 2000),
+                SizeSelectors.minWidth(1000),
+                SizeSelectors.smallest());
+        fallback = SizeSelectors.or(
+                SizeSelectors.and(SizeSelectors.aspectRatio(AspectRatio.of(21, 9), 0), SizeSelectors.biggest()),
+                SizeSelectors.and(SizeSelectors.aspectRatio(AspectRatio.of(4, 3), 0.02F), SizeSelectors.biggest()),
+                SizeSelectors.biggest());
+    }
+
+    @Benchmark
+    public List<Size> ratioAndBiggest() {
+        return ratioAndBiggest.select(sizes);
+    }
+
+    @Benchmark
+    public List<Size> boundedArea() {
+        return boundedArea.select(sizes);
+    }
+
+    @Benchmark
+    public List<Size> fallback() {
+        return fallback.select(sizes);
+    }
+}
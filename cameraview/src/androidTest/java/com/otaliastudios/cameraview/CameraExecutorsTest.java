@@ -0,0 +1,215 @@
+package com.otaliastudios.cameraview;
+
+
+import androidx.test.filters.SmallTest;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class CameraExecutorsTest extends BaseTest {
+
+    @Test
+    public void testIsolation() {
+        CameraExecutors e1 = new CameraExecutors();
+        CameraExecutors e2 = new CameraExecutors();
+        assertNotSame(e1.getControl().getThread(), e2.getControl().getThread());
+        assertNotSame(e1.getFrames().getThread(), e2.getFrames().getThread());
+        assertSame(e1.getFrames(), e1.getFrames());
+        e1.release();
+        e2.release();
+    }
+
+    @Test
+    public void testPicturesLane() {
+        // Picture results go through a serial lane, so they can't overtake each other.
+        final Task<String> task = new Task<>(true);
+        final StringBuilder order = new StringBuilder();
+        CameraExecutors executors = new CameraExecutors();
+        for (int i = 0; i < 5; i++) {
+            final int index = i;
+            executors.getPictures().execute(new Runnable() {
+                @Override
+                public void run() {
+                    order.append(index);
+                    if (index == 4) task.end(order.toString());
+                }
+            });
+        }
+        assertEquals("01234", task.await(500));
+        executors.release();
+    }
+
+    @Test
+    public void testCpuLane() {
+        final Task<Boolean> task = new Task<>(true);
+        CameraExecutors executors = new CameraExecutors();
+        executors.getCpu().execute(new Runnable() {
+            @Override
+            public void run() {
+                task.end(true);
+            }
+        });
+        Boolean result = task.await(500);
+        assertNotNull(result);
+        assertTrue(result);
+        executors.release();
+    }
+
+    @Test
+    public void testRelease() throws Exception {
+        CameraExecutors executors = new CameraExecutors();
+        Thread control = executors.getControl().getThread();
+        executors.release();
+        control.join(500);
+        assertFalse(control.isAlive());
+    }
+
+    // Holds tasks until run() is called.
+    private static class ManualExecutor implements Executor {
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        // Runs the tasks posted so far. Tasks they post wait for the next call.
+        void run() {
+            List<Runnable> posted = new ArrayList<>(tasks);
+            tasks.clear();
+            for (Runnable task : posted) task.run();
+        }
+    }
+
+    @Test
+    public void testLaneMetrics() {
+        ManualExecutor executor = new ManualExecutor();
+        CameraExecutors.Lane lane = new CameraExecutors.Lane("test", executor);
+        final int[] runs = new int[1];
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                runs[0]++;
+            }
+        };
+        lane.execute(task);
+        lane.execute(task);
+        lane.execute(task);
+        assertEquals(3, lane.getQueueDepth());
+        assertEquals(3, lane.getMaxQueueDepth());
+        assertEquals(0, lane.getCompletedCount());
+
+        executor.run();
+        assertEquals(3, runs[0]);
+        assertEquals(0, lane.getQueueDepth());
+        assertEquals(3, lane.getMaxQueueDepth());
+        assertEquals(3, lane.getCompletedCount());
+    }
+
+    @Test
+    public void testLaneMetrics_failingTask() {
+        ManualExecutor executor = new ManualExecutor();
+        CameraExecutors.Lane lane = new CameraExecutors.Lane("test", executor);
+        lane.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new RuntimeException();
+            }
+        });
+        try {
+            executor.run();
+            fail();
+        } catch (RuntimeException ignore) {}
+        assertEquals(0, lane.getQueueDepth());
+        assertEquals(1, lane.getCompletedCount());
+    }
+
+    @Test
+    public void testSerial_order() {
+        ManualExecutor executor = new ManualExecutor();
+        CameraExecutors.Serial serial = new CameraExecutors.Serial(executor);
+        final List<String> log = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final String name = "task" + i;
+            serial.execute(new Runnable() {
+                @Override
+                public void run() {
+                    log.add(name);
+                }
+            });
+        }
+        // One at a time: the next task is posted when the previous one ends.
+        assertEquals(1, executor.tasks.size());
+        executor.run();
+        assertEquals("[task0]", log.toString());
+        executor.run();
+        executor.run();
+        assertEquals("[task0, task1, task2]", log.toString());
+        assertEquals(0, executor.tasks.size());
+    }
+
+    @Test
+    public void testSerial_pool() throws Exception {
+        // On a multi-thread pool, slow earlier tasks still end first.
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        CameraExecutors.Serial serial = new CameraExecutors.Serial(pool);
+        final List<Integer> log = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            final int index = i;
+            serial.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(10 - index);
+                    } catch (InterruptedException ignore) {}
+                    log.add(index);
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        pool.shutdown();
+        assertEquals("[0, 1, 2, 3, 4, 5, 6, 7, 8, 9]", log.toString());
+    }
+
+    @Test
+    public void testSerial_failingTask() {
+        ManualExecutor executor = new ManualExecutor();
+        CameraExecutors.Serial serial = new CameraExecutors.Serial(executor);
+        final int[] runs = new int[1];
+        serial.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new RuntimeException();
+            }
+        });
+        serial.execute(new Runnable() {
+            @Override
+            public void run() {
+                runs[0]++;
+            }
+        });
+        try {
+            executor.run();
+            fail();
+        } catch (RuntimeException ignore) {}
+        // The next one was posted anyway.
+        executor.run();
+        assertEquals(1, runs[0]);
+    }
+}
@@ -6,6 +6,7 @@ import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.Color;
 
+import androidx.exifinterface.media.ExifInterface;
 import androidx.test.filters.SmallTest;
 import androidx.test.internal.runner.InstrumentationConnection;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
@@ -113,4 +114,125 @@ public class CameraUtilsTest extends BaseTest {
         assertTrue(other.getWidth() == width);
         assertTrue(other.getHeight() == height);
     }
+
+    @Test
+    public void testReleaseBitmap() {
+        Bitmap source = Bitmap.createBitmap(200, 100, Bitmap.Config.ARGB_8888);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        source.compress(Bitmap.CompressFormat.JPEG, 90, os);
+        byte[] data = os.toByteArray();
+
+        BitmapDecoder.clearPool();
+        Bitmap first = CameraUtils.decodeBitmap(data, 0, 0);
+        CameraUtils.releaseBitmap(first);
+        assertTrue(BitmapDecoder.getPoolBytes() > 0);
+        int hits = BitmapDecoder.getPoolHitCount();
+        Bitmap second = CameraUtils.decodeBitmap(data, 0, 0);
+        assertEquals(hits + 1, BitmapDecoder.getPoolHitCount());
+        assertSame(first, second);
+        assertEquals(200, second.getWidth());
+        assertEquals(100, second.getHeight());
+    }
+
+    @Test
+    public void testThumbnailPooling() {
+        Bitmap source = Bitmap.createBitmap(1920, 1080, Bitmap.Config.ARGB_8888);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        source.compress(Bitmap.CompressFormat.JPEG, 90, os);
+        byte[] data = os.toByteArray();
+        int runs = 50;
+
+        // Giving bitmaps back, all decodes but the first reuse the same bitmap.
+        BitmapDecoder.clearPool();
+        int hits = BitmapDecoder.getPoolHitCount();
+        for (int i = 0; i < runs; i++) {
+            CameraUtils.releaseBitmap(CameraUtils.decodeBitmap(data, 160, 160));
+        }
+        assertEquals(runs - 1, BitmapDecoder.getPoolHitCount() - hits);
+    }
+
+    @Test
+    public void testThumbnailThroughput() {
+        Bitmap source = Bitmap.createBitmap(1920, 1080, Bitmap.Config.ARGB_8888);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        source.compress(Bitmap.CompressFormat.JPEG, 90, os);
+        byte[] data = os.toByteArray();
+        int runs = 50;
+
+        // Without the pool: every decode allocates.
+        BitmapDecoder.clearPool();
+        int count = BitmapDecoder.getDecodeCount();
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            CameraUtils.decodeBitmap(data, 160, 160).recycle();
+        }
+        long unpooled = (System.nanoTime() - start) / runs / 1000L;
+
+        // With the pool.
+        start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            CameraUtils.releaseBitmap(CameraUtils.decodeBitmap(data, 160, 160));
+        }
+        long pooled = (System.nanoTime() - start) / runs / 1000L;
+        assertEquals(2 * runs, BitmapDecoder.getDecodeCount() - count);
+        LOG.w("testThumbnailThroughput:", "1920x1080 to 160x160, us per decode:",
+                "unpooled", unpooled, "pooled", pooled,
+                "average since start", BitmapDecoder.getAverageDecodeMicros());
+    }
+
+    // A 200x100 JPEG, black with a red 50x50 square in the top left corner.
+    private byte[] cornerJpeg(int exifOrientation) {
+        Bitmap source = Bitmap.createBitmap(200, 100, Bitmap.Config.ARGB_8888);
+        source.eraseColor(Color.BLACK);
+        for (int x = 0; x < 50; x++) {
+            for (int y = 0; y < 50; y++) {
+                source.setPixel(x, y, Color.RED);
+            }
+        }
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        source.compress(Bitmap.CompressFormat.JPEG, 100, os);
+        byte[] segment = ExifWriter.createSegment(exifOrientation, 0, null);
+        return ExifWriter.insert(os.toByteArray(), os.size(), segment);
+    }
+
+    private static boolean isRed(int color) {
+        return Color.red(color) > 200 && Color.green(color) < 60 && Color.blue(color) < 60;
+    }
+
+    // Checks that only the given corner of the decoded bitmap is red.
+    private void assertRedCorner(int exifOrientation, int width, int height, boolean right, boolean bottom) {
+        BitmapDecoder.clearPool();
+        Bitmap bitmap = CameraUtils.decodeBitmap(cornerJpeg(exifOrientation), 0, 0);
+        assertNotNull(bitmap);
+        assertEquals(width, bitmap.getWidth());
+        assertEquals(height, bitmap.getHeight());
+        int left = 25, top = 25;
+        int farX = width - 26, farY = height - 26;
+        assertEquals(!right && !bottom, isRed(bitmap.getPixel(left, top)));
+        assertEquals(right && !bottom, isRed(bitmap.getPixel(farX, top)));
+        assertEquals(!right && bottom, isRed(bitmap.getPixel(left, farY)));
+        assertEquals(right && bottom, isRed(bitmap.getPixel(farX, farY)));
+    }
+
+    @Test
+    public void testDecodeBitmap_flipHorizontal() {
+        assertRedCorner(ExifInterface.ORIENTATION_FLIP_HORIZONTAL, 200, 100, true, false);
+    }
+
+    @Test
+    public void testDecodeBitmap_flipVertical() {
+        assertRedCorner(ExifInterface.ORIENTATION_FLIP_VERTICAL, 200, 100, false, true);
+    }
+
+    @Test
+    public void testDecodeBitmap_transpose() {
+        // Mirrored along the top left to bottom right diagonal.
+        assertRedCorner(ExifInterface.ORIENTATION_TRANSPOSE, 100, 200, false, false);
+    }
+
+    @Test
+    public void testDecodeBitmap_transverse() {
+        // Mirrored along the top right to bottom left diagonal.
+        assertRedCorner(ExifInterface.ORIENTATION_TRANSVERSE, 100, 200, true, true);
+    }
 }
@@ -134,6 +134,15 @@ public class CameraViewCallbacksTest extends BaseTest {
         verify(listener, times(1)).onCameraClosed();
     }
 
+    @Test
+    public void testDispatchOnCameraRecovered() {
+        completeTask().when(listener).onCameraRecovered(2, 600);
+        camera.mCameraCallbacks.dispatchOnCameraRecovered(2, 600);
+
+        assertNotNull(task.await(200));
+        verify(listener, times(1)).onCameraRecovered(2, 600);
+    }
+
     @Test
     public void testDispatchOnVideoTaken() {
         completeTask().when(listener).onVideoTaken(null);
@@ -143,6 +152,24 @@ public class CameraViewCallbacksTest extends BaseTest {
         verify(listener, times(1)).onVideoTaken(null);
     }
 
+    @Test
+    public void testDispatchOnVideoFinalizing() {
+        completeTask().when(listener).onVideoFinalizing(null);
+        camera.mCameraCallbacks.dispatchOnVideoFinalizing(null);
+
+        assertNotNull(task.await(200));
+        verify(listener, times(1)).onVideoFinalizing(null);
+    }
+
+    @Test
+    public void testDispatchOnVideoSegmentTaken() {
+        completeTask().when(listener).onVideoSegmentTaken(null, 2);
+        camera.mCameraCallbacks.dispatchOnVideoSegmentTaken(null, 2);
+
+        assertNotNull(task.await(200));
+        verify(listener, times(1)).onVideoSegmentTaken(null, 2);
+    }
+
     @Test
     public void testDispatchOnZoomChanged() {
         completeTask().when(listener).onZoomChanged(anyFloat(), any(float[].class), any(PointF[].class));
@@ -273,7 +300,7 @@ public class CameraViewCallbacksTest extends BaseTest {
         if (jpeg) {
             camera.mCameraCallbacks.processImage(mockJpeg(imageDim[0], imageDim[1]), true, false);
         } else {
-            camera.mCameraCallbacks.processSnapshot(mockYuv(imageDim[0], imageDim[1]), true, false);
+            camera.mCameraCallbacks.processSnapshot(mockYuv(imageDim[0], imageDim[1]), true, false, 0);
         }
 
         // Wait for result and get out dimensions.
@@ -166,6 +166,7 @@ public class CameraViewTest extends BaseTest {
             public void run() {
                 cameraView.mTapGestureLayout = new TapGestureLayout(cameraView.getContext()) {
                     public boolean onTouchEvent(MotionEvent event) { return true; }
+                    public boolean shouldUpdate(MotionEvent event) { return true; }
 
                 };
                 cameraView.mTapGestureLayout.setGestureType(Gesture.TAP);
@@ -185,6 +186,7 @@ public class CameraViewTest extends BaseTest {
             public void run() {
                 cameraView.mTapGestureLayout = new TapGestureLayout(cameraView.getContext()) {
                     public boolean onTouchEvent(MotionEvent event) { return true; }
+                    public boolean shouldUpdate(MotionEvent event) { return true; }
                 };
                 cameraView.mTapGestureLayout.setGestureType(Gesture.TAP);
             }
@@ -210,6 +212,7 @@ public class CameraViewTest extends BaseTest {
             public void run() {
                 cameraView.mPinchGestureLayout = new PinchGestureLayout(cameraView.getContext()) {
                     public boolean onTouchEvent(MotionEvent event) { return true; }
+                    public boolean shouldUpdate(MotionEvent event) { return true; }
                 };
                 cameraView.mPinchGestureLayout.setGestureType(Gesture.PINCH);
             }
@@ -235,6 +238,7 @@ public class CameraViewTest extends BaseTest {
             public void run() {
                 cameraView.mScrollGestureLayout = new ScrollGestureLayout(cameraView.getContext()) {
                     public boolean onTouchEvent(MotionEvent event) { return true; }
+                    public boolean shouldUpdate(MotionEvent event) { return true; }
                 };
                 cameraView.mScrollGestureLayout.setGestureType(Gesture.SCROLL_HORIZONTAL);
             }
@@ -551,6 +555,18 @@ public class CameraViewTest extends BaseTest {
         assertEquals(cameraView.getVideoQuality(), VideoQuality.LOWEST);
     }
 
+    @Test
+    public void testVideoMaxSegment() {
+        cameraView.setVideoMaxSegmentDuration(60000);
+        assertEquals(cameraView.getVideoMaxSegmentDuration(), 60000);
+        cameraView.setVideoMaxSegmentDuration(-1);
+        assertEquals(cameraView.getVideoMaxSegmentDuration(), 0);
+        cameraView.setVideoMaxSegmentSize(1000000);
+        assertEquals(cameraView.getVideoMaxSegmentSize(), 1000000);
+        cameraView.setVideoMaxSegmentSize(0);
+        assertEquals(cameraView.getVideoMaxSegmentSize(), 0);
+    }
+
     @Test
     public void testPictureSizeSelector() {
         SizeSelector source = SizeSelectors.minHeight(50);
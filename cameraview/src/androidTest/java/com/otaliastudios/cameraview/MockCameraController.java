@@ -71,6 +71,11 @@ public class MockCameraController extends CameraController {
         mVideoQuality = videoQuality;
     }
 
+    @Override
+    void setVideoPreRoll(long millis) {
+        mVideoPreRoll = millis;
+    }
+
     @Override
     void setSessionType(SessionType sessionType) {
         mSessionType = sessionType;
@@ -100,6 +105,10 @@ public class MockCameraController extends CameraController {
     void captureSnapshot() {
     }
 
+    @Override
+    void captureSnapshot(@NonNull byte[] data, @NonNull FrameInfo info) {
+    }
+
     @Override
     void startVideo(@NonNull File file) {
     }
@@ -113,6 +122,10 @@ public class MockCameraController extends CameraController {
         mFocusStarted = true;
     }
 
+    @Override
+    void setMeteringPoints(@Nullable float[] points, int count) {
+    }
+
     @Override
     public void onSurfaceChanged() {
     }
@@ -3,6 +3,7 @@ package com.otaliastudios.cameraview;
 
 import androidx.test.filters.SmallTest;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import android.hardware.SensorManager;
 import android.view.OrientationEventListener;
 
 import org.junit.After;
@@ -91,4 +92,95 @@ public class OrientationHelperTest extends BaseTest {
         assertEquals(helper.getDeviceOrientation(), 270);
         verify(callback, times(1)).onDeviceOrientationChanged(270);
     }
+
+    @Test
+    public void testFilter() {
+        int unknown = OrientationEventListener.ORIENTATION_UNKNOWN;
+        assertEquals(0, OrientationHelper.filter(-1, unknown, 15));
+        assertEquals(90, OrientationHelper.filter(90, unknown, 15));
+        assertEquals(0, OrientationHelper.filter(-1, 44, 15));
+        assertEquals(90, OrientationHelper.filter(-1, 46, 15));
+        assertEquals(0, OrientationHelper.filter(-1, 359, 15));
+
+        // Hysteresis: must go 15 degrees past the boundary.
+        assertEquals(0, OrientationHelper.filter(0, 46, 15));
+        assertEquals(0, OrientationHelper.filter(0, 59, 15));
+        assertEquals(90, OrientationHelper.filter(0, 60, 15));
+        assertEquals(0, OrientationHelper.filter(0, 301, 15));
+        assertEquals(270, OrientationHelper.filter(0, 300, 15));
+        assertEquals(270, OrientationHelper.filter(270, 220, 15));
+        assertEquals(180, OrientationHelper.filter(270, 210, 15));
+    }
+
+    @Test
+    public void testHysteresis() {
+        helper.setDebounce(0);
+        helper.enable(context());
+        helper.mListener.onOrientationChanged(0);
+        assertEquals(helper.getDeviceOrientation(), 0);
+
+        // Flapping around the boundary does nothing.
+        helper.mListener.onOrientationChanged(50);
+        helper.mListener.onOrientationChanged(40);
+        helper.mListener.onOrientationChanged(55);
+        assertEquals(helper.getDeviceOrientation(), 0);
+        verify(callback, never()).onDeviceOrientationChanged(90);
+
+        helper.mListener.onOrientationChanged(70);
+        assertEquals(helper.getDeviceOrientation(), 90);
+        helper.mListener.onOrientationChanged(40);
+        assertEquals(helper.getDeviceOrientation(), 90);
+        verify(callback, times(1)).onDeviceOrientationChanged(90);
+    }
+
+    @Test
+    public void testDebounce() throws Exception {
+        helper.setDebounce(100);
+        helper.enable(context());
+        helper.mListener.onOrientationChanged(0);
+        assertEquals(helper.getDeviceOrientation(), 0);
+
+        // Not stable for long enough.
+        helper.mListener.onOrientationChanged(90);
+        helper.mListener.onOrientationChanged(90);
+        assertEquals(helper.getDeviceOrientation(), 0);
+        helper.mListener.onOrientationChanged(0);
+        Thread.sleep(150);
+        helper.mListener.onOrientationChanged(90);
+        assertEquals(helper.getDeviceOrientation(), 0);
+
+        // Stable.
+        Thread.sleep(150);
+        helper.mListener.onOrientationChanged(90);
+        assertEquals(helper.getDeviceOrientation(), 90);
+        verify(callback, times(1)).onDeviceOrientationChanged(90);
+    }
+
+    @Test
+    public void testDebounce_firstValue() {
+        assertEquals(OrientationHelper.DEFAULT_DEBOUNCE, helper.getDebounce());
+        helper.setDebounce(100);
+        helper.enable(context());
+        helper.mListener.onOrientationChanged(90);
+        assertEquals(helper.getDeviceOrientation(), 90);
+        verify(callback, times(1)).onDeviceOrientationChanged(90);
+
+        // After disabling, the next value is taken immediately again.
+        helper.disable();
+        helper.enable(context());
+        helper.mListener.onOrientationChanged(180);
+        assertEquals(helper.getDeviceOrientation(), 180);
+        verify(callback, times(1)).onDeviceOrientationChanged(180);
+    }
+
+    @Test
+    public void testSensorRate() {
+        OrientationEventListener listener = helper.mListener;
+        assertEquals(SensorManager.SENSOR_DELAY_NORMAL, helper.getSensorRate());
+        helper.setSensorRate(context(), SensorManager.SENSOR_DELAY_NORMAL);
+        assertSame(listener, helper.mListener);
+        helper.setSensorRate(context(), SensorManager.SENSOR_DELAY_UI);
+        assertEquals(SensorManager.SENSOR_DELAY_UI, helper.getSensorRate());
+        assertNotSame(listener, helper.mListener);
+    }
 }
@@ -2,33 +2,36 @@ package com.otaliastudios.cameraview;
 
 import androidx.annotation.NonNull;
 
-import java.util.HashMap;
-
 
 /**
  * A simple class representing an aspect ratio.
  */
 public class AspectRatio implements Comparable<AspectRatio> {
 
-    final static HashMap<String, AspectRatio> sCache = new HashMap<>(16);
+    final static PairCache<AspectRatio> sCache = new PairCache<AspectRatio>(256) {
+        @Override
+        boolean matches(@NonNull AspectRatio item, int x, int y) {
+            return item.mX == x && item.mY == y;
+        }
+
+        @NonNull
+        @Override
+        AspectRatio create(int x, int y) {
+            return new AspectRatio(x, y);
+        }
+    };
 
     /**
      * Creates an aspect ratio with the given values.
+     * This can be called from any thread.
+     *
      * @param x the width
      * @param y the height
      * @return a (possibly cached) aspect ratio
      */
     public static AspectRatio of(int x, int y) {
         int gcd = gcd(x, y);
-        x /= gcd;
-        y /= gcd;
-        String key = x + ":" + y;
-        AspectRatio cached = sCache.get(key);
-        if (cached == null) {
-            cached = new AspectRatio(x, y);
-            sCache.put(key, cached);
-        }
-        return cached;
+        return sCache.get(x / gcd, y / gcd);
     }
 
     /**
@@ -0,0 +1,43 @@
+package com.otaliastudios.cameraview;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Computes exposure corrections that bring the mean luma of {@link ExposureStats}
+ * to a target. This is a proportional controller working in EV stops: the error is
+ * log2(target / mean), and a fraction of it is applied at each update.
+ *
+ * - Errors within {@link #DEADBAND} are ignored, so the exposure does not hunt.
+ * - Each update moves by at most {@link #MAX_STEP}, since stats arrive with some latency.
+ * - The exposure is not raised if too many highlights are already clipped.
+ */
+class AutoExposure {
+
+    final static float DEADBAND = 1F / 6F;
+    final static float MAX_STEP = 1F / 3F;
+    final static float GAIN = 0.5F;
+    final static float HIGHLIGHT_LIMIT = 0.05F;
+
+    private final static double LOG_2 = Math.log(2);
+
+    /**
+     * Returns the next exposure correction.
+     *
+     * @param current the current correction
+     * @param stats the stats measured with the current correction
+     * @param target the target mean luma, 1 ... 254
+     * @param min the minimum correction
+     * @param max the maximum correction
+     * @return the new correction, or current if nothing should change
+     */
+    static float next(float current, @NonNull ExposureStats stats, int target, float min, float max) {
+        if (stats.getCount() == 0) return current;
+        target = Math.max(1, Math.min(254, target));
+        float mean = Math.max(1F, stats.getMean());
+        float error = (float) (Math.log(target / mean) / LOG_2);
+        if (error > 0 && stats.getHighlightFraction() > HIGHLIGHT_LIMIT) return current;
+        if (Math.abs(error) < DEADBAND) return current;
+        float delta = Math.max(-MAX_STEP, Math.min(MAX_STEP, error * GAIN));
+        return Math.max(min, Math.min(max, current + delta));
+    }
+}
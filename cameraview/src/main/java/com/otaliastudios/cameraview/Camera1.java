@@ -1,5 +1,6 @@
 package com.otaliastudios.cameraview;
 
+import android.annotation.TargetApi;
 import android.graphics.ImageFormat;
 import android.graphics.PointF;
 import android.graphics.Rect;
@@ -9,6 +10,7 @@ import android.hardware.Camera;
 import android.location.Location;
 import android.media.CamcorderProfile;
 import android.media.MediaRecorder;
+import android.os.Build;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
@@ -18,6 +20,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import static android.hardware.Camera.CAMERA_ERROR_SERVER_DIED;
 import static android.hardware.Camera.CAMERA_ERROR_UNKNOWN;
@@ -42,10 +45,40 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
     private static final String TAG = Camera1.class.getSimpleName();
     private static final CameraLogger LOG = CameraLogger.create(TAG);
 
+    private static final String KEY_LOCATION = "location";
+    private static final String KEY_WHITE_BALANCE = "whiteBalance";
+    private static final String KEY_HDR = "hdr";
+    private static final String KEY_FLASH = "flash";
+    private static final String KEY_FOCUS = "focus";
+    private static final String KEY_METERING = "metering";
+    private static final long FOCUS_TIMEOUT = 1000;
+    // How long a picture can wait for the lens to stop moving.
+    private static final long CAPTURE_FOCUS_TIMEOUT = 1000;
+
     private Camera mCamera;
     private boolean mIsBound = false;
+    // Whether the camera reported CAMERA_ERROR_SERVER_DIED since it was opened.
+    private volatile boolean mServerDied;
+    private File mVideoFirstSegmentFile;
+    private File mVideoNextSegmentFile;
+    // Open while the last recorder is being stopped in the I/O lane. It still owns the camera.
+    private volatile CountDownLatch mVideoFinalized;
 
     private final int mPostFocusResetDelay = 3000;
+    // Whether a picture is waiting for the lens to stop moving.
+    private boolean mCaptureWaitingForFocus;
+
+    // Focus and metering regions. Only accessed from operations, so from a single thread at a time.
+    private final MeteringRegions mMeteringRegions = new MeteringRegions();
+    private final List<Camera.Area> mFocusAreas = new ArrayList<>(MeteringRegions.MAX_POINTS * 2);
+    private final List<Camera.Area> mMeteringAreas = new ArrayList<>(MeteringRegions.MAX_POINTS * 2);
+    private Camera.Area[] mAreaPool;
+
+    // Continuous metering points, waiting for the operation to pick them up.
+    private final float[] mPendingMeteringPoints = new float[MeteringRegions.MAX_POINTS * 2];
+    private int mPendingMeteringCount;
+    private int mPendingMeteringWidth;
+    private int mPendingMeteringHeight;
     private Runnable mPostFocusResetRunnable = new Runnable() {
         @Override
         public void run() {
@@ -74,18 +107,25 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
         mMapper = new Mapper.Mapper1();
     }
 
+    // Schedules with lifecycle priority: use this for anything that binds or restarts the preview.
     private void schedule(@Nullable final Task<Void> task, final boolean ensureAvailable, final Runnable action) {
-        mHandler.post(new Runnable() {
+        schedule(task, ensureAvailable, OperationQueue.PRIORITY_LIFECYCLE, null, 0, action);
+    }
+
+    // Operations run in order, see OperationQueue.
+    // Operations with the same key replace each other while pending: the last one wins,
+    // unless a lifecycle or capture operation is pending between them.
+    // If timeoutMillis is positive, the operation is dropped if it can't start in time.
+    private void schedule(@Nullable final Task<Void> task, final boolean ensureAvailable, int priority,
+                          @Nullable String key, long timeoutMillis, final Runnable action) {
+        mOperations.schedule(priority, key, timeoutMillis, new Runnable() {
             @Override
             public void run() {
-                if (ensureAvailable && !isCameraAvailable()) {
-                    if (task != null) task.end(null);
-                } else {
+                if (!ensureAvailable || isCameraAvailable()) {
                     action.run();
-                    if (task != null) task.end(null);
                 }
             }
-        });
+        }, task);
     }
 
     // Preview surface is now available. If camera is open, set up.
@@ -121,7 +161,10 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
 
                 // Compute a new camera preview size.
                 Size newSize = computePreviewSize(sizesFromList(mCamera.getParameters().getSupportedPreviewSizes()));
-                if (newSize.equals(mPreviewSize)) return;
+                if (newSize.equals(mPreviewSize)) {
+                    updateFrameInfo(); // The crop might have changed.
+                    return;
+                }
 
                 // Apply.
                 LOG.i("onSurfaceChanged:", "Computed a new preview size. Going on.");
@@ -149,7 +192,7 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
                 mCamera.setPreviewTexture((SurfaceTexture) output);
             }
         } catch (IOException e) {
-            throw new CameraUnavailableException("Can not bind to surface.", e);
+            throw new CameraUnavailableException("Can not bind to surface.", getUnavailableReason(), e);
         }
 
         mPictureSize = computePictureSize();
@@ -175,6 +218,7 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
         params.setPictureSize(mPictureSize.getWidth(), mPictureSize.getHeight()); // <- allowed
         mCamera.setParameters(params);
 
+        updateFrameInfo();
         mCamera.setPreviewCallbackWithBuffer(null); // Release anything left
         mCamera.setPreviewCallbackWithBuffer(this); // Add ourselves
         mFrameManager.allocate(ImageFormat.getBitsPerPixel(mPreviewFormat), mPreviewSize);
@@ -182,6 +226,7 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
         LOG.i(log, "Starting preview with startPreview().");
         mCamera.startPreview();
         LOG.i(log, "Started preview.");
+        restartPreRoll();
     }
 
     @WorkerThread
@@ -193,19 +238,33 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
         }
         if (collectCameraId()) {
             mCamera = Camera.open(mCameraId);
+            mServerDied = false;
             mCamera.setErrorCallback(this);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                setFocusMoveCallback();
+            }
 
             // Set parameters that might have been set before the camera was opened.
             LOG.i("onStart:", "Applying default parameters.");
             Camera.Parameters params = mCamera.getParameters();
             mExtraProperties = new ExtraProperties(params);
             mCameraOptions = new CameraOptions(params, shouldFlipSizes());
+            // When recovering, fall back to the values that worked before the failure.
+            // A failed merge sets the field to the fallback, so merging again applies it.
+            CameraRecovery.Snapshot snapshot = mRecovery.getSnapshot();
             applyDefaultFocus(params);
-            mergeFlash(params, Flash.DEFAULT);
-            mergeLocation(params, null);
-            mergeWhiteBalance(params, WhiteBalance.DEFAULT);
-            mergeHdr(params, Hdr.DEFAULT);
+            if (!mergeFlash(params, snapshot == null ? Flash.DEFAULT : snapshot.flash)) {
+                mergeFlash(params, Flash.DEFAULT);
+            }
+            mergeLocation(params, snapshot == null ? null : snapshot.location);
+            if (!mergeWhiteBalance(params, snapshot == null ? WhiteBalance.DEFAULT : snapshot.whiteBalance)) {
+                mergeWhiteBalance(params, WhiteBalance.DEFAULT);
+            }
+            if (!mergeHdr(params, snapshot == null ? Hdr.DEFAULT : snapshot.hdr)) {
+                mergeHdr(params, Hdr.DEFAULT);
+            }
             params.setRecordingHint(mSessionType == SessionType.VIDEO);
+            if (snapshot != null) mergeSnapshot(params, snapshot);
             mCamera.setParameters(params);
 
             // Try starting preview.
@@ -215,17 +274,69 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
         }
     }
 
+    // In continuous modes, the camera tells us when the lens starts and stops moving.
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void setFocusMoveCallback() {
+        mCamera.setAutoFocusMoveCallback(new Camera.AutoFocusMoveCallback() {
+            @Override
+            public void onAutoFocusMoving(boolean start, Camera camera) {
+                if (!mFocusTracker.isContinuous()) return;
+                if (start) {
+                    mFocusTracker.onScanStart(now());
+                } else {
+                    mFocusTracker.onScanEnd(now(), true);
+                    onFocusSettled();
+                }
+            }
+        });
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    @Override
+    int getUnavailableReason() {
+        return mServerDied ? CameraUnavailableException.REASON_SERVER_DIED : CameraUnavailableException.REASON_UNKNOWN;
+    }
+
+    // Applies parameters that were lost with the previous camera instance.
+    // Others are merged from the controller fields, with the snapshot as a fallback.
+    private void mergeSnapshot(Camera.Parameters params, CameraRecovery.Snapshot snapshot) {
+        LOG.i("onStart:", "Applying recovery snapshot.", snapshot);
+        if (mCameraOptions.isZoomSupported()) {
+            mZoomValue = snapshot.zoom;
+            params.setZoom((int) (snapshot.zoom * params.getMaxZoom()));
+        }
+        if (mCameraOptions.isExposureCorrectionSupported() && params.getExposureCompensationStep() != 0) {
+            mExposureCorrectionValue = snapshot.exposureCorrection;
+            params.setExposureCompensation((int) (snapshot.exposureCorrection / params.getExposureCompensationStep()));
+        }
+    }
+
     @WorkerThread
     @Override
     void onStop() {
         Exception error = null;
         LOG.i("onStop:", "About to clean up.");
         mHandler.get().removeCallbacks(mPostFocusResetRunnable);
-        mFrameManager.release();
+        mHandler.get().removeCallbacks(mCaptureFocusTimeoutRunnable);
+        if (mCaptureWaitingForFocus) {
+            mCaptureWaitingForFocus = false;
+            mIsCapturingImage = false;
+        }
+        mFocusTracker.reset();
+        if (mRecovery.isRecovering()) {
+            mFrameManager.suspend(); // Keep buffers for the next onStart().
+        } else {
+            mFrameManager.release();
+        }
 
         if (mCamera != null) {
             LOG.i("onStop:", "Clean up.", "Ending video.");
             endVideoImmediately();
+            releasePreRoll();
+            awaitVideoFinalized(); // Don't release the camera under the recorder.
 
             try {
                 LOG.i("onStop:", "Clean up.", "Stopping preview.");
@@ -254,7 +365,7 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
         mIsBound = false;
         LOG.w("onStop:", "Clean up.", "Returning.");
         if (error != null) {
-            throw new CameraUnavailableException("Error while stopping the camera.", error);
+            throw new CameraUnavailableException("Error while stopping the camera.", getUnavailableReason(), error);
         }
     }
 
@@ -271,6 +382,7 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
             if (cameraInfo.facing == internalFacing) {
                 mSensorOffset = cameraInfo.orientation;
                 mCameraId = i;
+                updateOffsets();
                 return true;
             }
         }
@@ -299,20 +411,17 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
         CameraException cameraException;
         if (errorCode == CAMERA_ERROR_SERVER_DIED) {
             if (mIsCapturingVideo) {
-                cameraException = new CapturingVideoFailedException("Media server died while " +
-                        "recording a video. In this case, the application must release the" +
-                                " Camera object and instantiate a new one.", mVideoFile);
-
                 // if we were taking a video, it failed, too.
+                mCameraCallbacks.dispatchError(new CapturingVideoFailedException("Media server died while " +
+                        "recording a video.", mVideoFile));
                 onCapturingVideoFailed();
             }
-            else {
-                // Looks like this is recoverable.
-                LOG.w("Recoverable error inside the onError callback.", "CAMERA_ERROR_SERVER_DIED");
-                stopImmediately();
-                start();
-                return;
-            }
+            // The camera must be released and opened again.
+            // Failures of pending operations will be reported as recoverable, too.
+            mServerDied = true;
+            LOG.w("Recoverable error inside the onError callback.", "CAMERA_ERROR_SERVER_DIED");
+            recover("CAMERA_ERROR_SERVER_DIED");
+            return;
         }
         else if (errorCode == CAMERA_ERROR_UNKNOWN) {
             cameraException = new CameraConfigurationFailedException(
@@ -345,7 +454,8 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
     void setLocation(Location location) {
         final Location oldLocation = mLocation;
         mLocation = location;
-        schedule(mLocationTask, true, new Runnable() {
+        schedule(mLocationTask, true,
+                OperationQueue.PRIORITY_PARAMETER, KEY_LOCATION, 0, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -395,6 +505,7 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
                         // collectCameraId may raise an exception that prevents us from changing anything here
                         // -> undo failed configuration change
                         mFacing = oldFacing;
+                        updateOffsets();
                         CameraException cameraException =
                                 new CameraConfigurationFailedException("Failed to set the camera facing.",
                                         CONFIGURATION_FACING, e);
@@ -409,7 +520,8 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
     void setWhiteBalance(WhiteBalance whiteBalance) {
         final WhiteBalance old = mWhiteBalance;
         mWhiteBalance = whiteBalance;
-        schedule(mWhiteBalanceTask, true, new Runnable() {
+        schedule(mWhiteBalanceTask, true,
+                OperationQueue.PRIORITY_PARAMETER, KEY_WHITE_BALANCE, 0, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -440,7 +552,8 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
     void setHdr(Hdr hdr) {
         final Hdr old = mHdr;
         mHdr = hdr;
-        schedule(mHdrTask, true, new Runnable() {
+        schedule(mHdrTask, true,
+                OperationQueue.PRIORITY_PARAMETER, KEY_HDR, 0, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -483,7 +596,8 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
     void setFlash(Flash flash) {
         final Flash old = mFlash;
         mFlash = flash;
-        schedule(mFlashTask, true, new Runnable() {
+        schedule(mFlashTask, true,
+                OperationQueue.PRIORITY_PARAMETER, KEY_FLASH, 0, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -515,30 +629,47 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
     // Choose the best default focus, based on session type.
     private void applyDefaultFocus(Camera.Parameters params) {
         List<String> modes = params.getSupportedFocusModes();
-
+        String mode = null;
         if (mSessionType == SessionType.VIDEO &&
                 modes.contains(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO)) {
-            params.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO);
-            return;
-        }
-
-        if (modes.contains(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE)) {
-            params.setFocusMode(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE);
-            return;
+            mode = Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO;
+        } else if (modes.contains(Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE)) {
+            mode = Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE;
+        } else if (modes.contains(Camera.Parameters.FOCUS_MODE_INFINITY)) {
+            mode = Camera.Parameters.FOCUS_MODE_INFINITY;
+        } else if (modes.contains(Camera.Parameters.FOCUS_MODE_FIXED)) {
+            mode = Camera.Parameters.FOCUS_MODE_FIXED;
         }
+        if (mode != null) params.setFocusMode(mode);
+
+        // Keep the focus state in sync. Other modes (auto, macro) only move on autoFocus().
+        mode = params.getFocusMode();
+        boolean continuous = Camera.Parameters.FOCUS_MODE_CONTINUOUS_VIDEO.equals(mode) ||
+                Camera.Parameters.FOCUS_MODE_CONTINUOUS_PICTURE.equals(mode);
+        boolean fixed = Camera.Parameters.FOCUS_MODE_INFINITY.equals(mode) ||
+                Camera.Parameters.FOCUS_MODE_FIXED.equals(mode) ||
+                Camera.Parameters.FOCUS_MODE_EDOF.equals(mode);
+        mFocusTracker.onModeChanged(!fixed, continuous);
+    }
 
-        if (modes.contains(Camera.Parameters.FOCUS_MODE_INFINITY)) {
-            params.setFocusMode(Camera.Parameters.FOCUS_MODE_INFINITY);
-            return;
-        }
 
-        if (modes.contains(Camera.Parameters.FOCUS_MODE_FIXED)) {
-            params.setFocusMode(Camera.Parameters.FOCUS_MODE_FIXED);
-            return;
-        }
+    @Override
+    void setVideoPreRoll(long millis) {
+        mVideoPreRoll = millis;
+        schedule(null, true, new Runnable() {
+            @Override
+            public void run() {
+                if (!mIsBound) return;
+                if (mIsCapturingVideo) {
+                    LOG.w("Video pre-roll was changed while recording. " +
+                            "Changes will take place when the preview restarts.");
+                    return;
+                }
+                restartPreRoll();
+            }
+        });
     }
 
-
     @Override
     void setVideoQuality(VideoQuality videoQuality) {
         final VideoQuality old = mVideoQuality;
@@ -583,7 +714,7 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
     @Override
     void capturePicture() {
         LOG.v("capturePicture: scheduling");
-        schedule(null, true, new Runnable() {
+        schedule(null, true, OperationQueue.PRIORITY_CAPTURE, null, 0, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -592,31 +723,16 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
                     if (mIsCapturingVideo && !mCameraOptions.isVideoSnapshotSupported()) return;
 
                     mIsCapturingImage = true;
-                    final int sensorToOutput = computeSensorToOutputOffset();
-                    final int sensorToView = computeSensorToViewOffset();
-                    final boolean outputMatchesView = (sensorToOutput + sensorToView + 180) % 180 == 0;
-                    final boolean outputFlip = mFacing == Facing.FRONT;
-                    Camera.Parameters params = mCamera.getParameters();
-                    params.setRotation(sensorToOutput);
-                    mCamera.setParameters(params);
-                    mCamera.takePicture(
-                            new Camera.ShutterCallback() {
-                                @Override
-                                public void onShutter() {
-                                    mCameraCallbacks.onShutter(false);
-                                }
-                            },
-                            null,
-                            null,
-                            new Camera.PictureCallback() {
-                                @Override
-                                public void onPictureTaken(byte[] data, final Camera camera) {
-                                    mIsCapturingImage = false;
-                                    mCameraCallbacks.processImage(data, outputMatchesView, outputFlip);
-                                    camera.startPreview(); // This is needed, read somewhere in the docs.
-                                }
-                            }
-                    );
+                    if (mFocusTracker.shouldWaitBeforeCapture()) {
+                        // The lens is moving. Shoot as soon as it stops, see onFocusSettled().
+                        // We never trigger a new focus pass here: if focus is locked or failed,
+                        // another pass would only delay the shutter.
+                        LOG.i("capturePicture:", "Waiting for focus.", mFocusTracker);
+                        mCaptureWaitingForFocus = true;
+                        mHandler.get().postDelayed(mCaptureFocusTimeoutRunnable, CAPTURE_FOCUS_TIMEOUT);
+                        return;
+                    }
+                    takePicture();
                 }
                 catch (Exception e) {
                     CameraException cameraException = new CapturingPictureFailedException("Capturing a picture failed.", e);
@@ -626,11 +742,63 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
         });
     }
 
+    // Called when a focus scan ends. If a picture was waiting for it, take it now.
+    private void onFocusSettled() {
+        if (!mCaptureWaitingForFocus) return;
+        mCaptureWaitingForFocus = false;
+        mHandler.get().removeCallbacks(mCaptureFocusTimeoutRunnable);
+        LOG.i("onFocusSettled:", "Taking the picture that was waiting for focus.");
+        try {
+            takePicture();
+        } catch (Exception e) {
+            CameraException cameraException = new CapturingPictureFailedException("Capturing a picture failed.", e);
+            mCameraCallbacks.dispatchError(cameraException);
+        }
+    }
+
+    private final Runnable mCaptureFocusTimeoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!mCaptureWaitingForFocus || !isCameraAvailable()) return;
+            LOG.w("capturePicture:", "Focus did not settle in time. Taking the picture anyway.");
+            onFocusSettled();
+        }
+    };
+
+    // Expects mIsCapturingImage to be true.
+    private void takePicture() {
+        final int sensorToOutput = computeSensorToOutputOffset();
+        final int sensorToView = computeSensorToViewOffset();
+        final boolean outputMatchesView = (sensorToOutput + sensorToView + 180) % 180 == 0;
+        final boolean outputFlip = mFacing == Facing.FRONT;
+        Camera.Parameters params = mCamera.getParameters();
+        params.setRotation(sensorToOutput);
+        mCamera.setParameters(params);
+        mCamera.takePicture(
+                new Camera.ShutterCallback() {
+                    @Override
+                    public void onShutter() {
+                        mCameraCallbacks.onShutter(false);
+                    }
+                },
+                null,
+                null,
+                new Camera.PictureCallback() {
+                    @Override
+                    public void onPictureTaken(byte[] data, final Camera camera) {
+                        mIsCapturingImage = false;
+                        mCameraCallbacks.processImage(data, outputMatchesView, outputFlip);
+                        camera.startPreview(); // This is needed, read somewhere in the docs.
+                    }
+                }
+        );
+    }
+
 
     @Override
     void captureSnapshot() {
         LOG.v("captureSnapshot: scheduling");
-        schedule(null, true, new Runnable() {
+        schedule(null, true, OperationQueue.PRIORITY_CAPTURE, null, 0, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -647,32 +815,8 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
                         @Override
                         public void onPreviewFrame(final byte[] data, Camera camera) {
                             mCameraCallbacks.onShutter(true);
-
-                            // Got to rotate the preview frame, since byte[] data here does not include
-                            // EXIF tags automatically set by camera. So either we add EXIF, or we rotate.
-                            // Adding EXIF to a byte array, unfortunately, is hard.
-                            final int sensorToOutput = computeSensorToOutputOffset();
-                            final int sensorToView = computeSensorToViewOffset();
-                            final boolean outputMatchesView = (sensorToOutput + sensorToView + 180) % 180 == 0;
-                            final boolean outputFlip = mFacing == Facing.FRONT;
-                            final boolean flip = sensorToOutput % 180 != 0;
-                            final int preWidth = mPreviewSize.getWidth();
-                            final int preHeight = mPreviewSize.getHeight();
-                            final int postWidth = flip ? preHeight : preWidth;
-                            final int postHeight = flip ? preWidth : preHeight;
-                            final int format = mPreviewFormat;
-                            WorkerHandler.run(new Runnable() {
-                                @Override
-                                public void run() {
-
-                                    LOG.v("captureSnapshot: rotating.");
-                                    byte[] rotatedData = RotationHelper.rotate(data, preWidth, preHeight, sensorToOutput);
-                                    LOG.v("captureSnapshot: rotated.");
-                                    YuvImage yuv = new YuvImage(rotatedData, format, postWidth, postHeight, null);
-                                    mCameraCallbacks.processSnapshot(yuv, outputMatchesView, outputFlip);
-                                    mIsCapturingImage = false;
-                                }
-                            });
+                            processSnapshot(data, mPreviewSize, mPreviewFormat,
+                                    computeSensorToOutputOffset(), mFacing);
 
                             // It seems that the buffers are already cleared here, so we need to allocate again.
                             mCamera.setPreviewCallbackWithBuffer(null); // Release anything left
@@ -689,13 +833,44 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
         });
     }
 
+    @Override
+    void captureSnapshot(@NonNull final byte[] data, @NonNull final FrameInfo info) {
+        LOG.v("captureSnapshot: scheduling with frame data");
+        schedule(null, true, OperationQueue.PRIORITY_CAPTURE, null, 0, new Runnable() {
+            @Override
+            public void run() {
+                LOG.v("captureSnapshot: performing with frame data.", mIsCapturingImage);
+                if (mIsCapturingImage) return;
+                mIsCapturingImage = true;
+                mCameraCallbacks.onShutter(true);
+                // The device or the camera might have turned since the frame was taken.
+                processSnapshot(data, info.getSize(), info.getFormat(), info.getRotation(), info.getFacing());
+            }
+        });
+    }
+
+    // Passes the preview data to the callbacks. Pixels are not rotated: the rotation goes
+    // to the EXIF orientation tag, so the snapshot costs a single encode.
+    // The rotation and facing are those of the moment the frame was taken.
+    private void processSnapshot(@NonNull byte[] data, @NonNull Size size, int format,
+                                 int sensorToOutput, @NonNull Facing facing) {
+        int sensorToView = computeSensorToViewOffset();
+        boolean outputMatchesView = (sensorToOutput + sensorToView + 180) % 180 == 0;
+        boolean outputFlip = facing == Facing.FRONT;
+        YuvImage yuv = new YuvImage(data, format, size.getWidth(), size.getHeight(), null);
+        mCameraCallbacks.processSnapshot(yuv, outputMatchesView, outputFlip, sensorToOutput);
+        mIsCapturingImage = false;
+    }
+
     @Override
     public void onPreviewFrame(byte[] data, Camera camera) {
-        Frame frame = mFrameManager.getFrame(data,
-                System.currentTimeMillis(),
-                computeSensorToOutputOffset(),
-                mPreviewSize,
-                mPreviewFormat);
+        long timestamp = System.nanoTime();
+        if (mPreRollRecorder != null) {
+            // This copies the data and encodes in the I/O lane, so it's safe to dispatch the frame later.
+            mPreRollRecorder.offer(data, timestamp / 1000L);
+        }
+        // Size, format and rotation were computed when they changed.
+        Frame frame = mFrameManager.getFrame(data, timestamp, getFrameInfo());
         mCameraCallbacks.dispatchFrame(frame);
     }
 
@@ -721,17 +896,24 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
 
     @Override
     void startVideo(@NonNull final File videoFile) {
-        schedule(mStartVideoTask, true, new Runnable() {
+        schedule(mStartVideoTask, true, OperationQueue.PRIORITY_CAPTURE, null, 0, new Runnable() {
             @Override
             public void run() {
                 if (mIsCapturingVideo) return;
                 if (mSessionType == SessionType.VIDEO) {
                     mVideoFile = videoFile;
+                    mVideoFirstSegmentFile = videoFile;
+                    mVideoSegmentIndex = 0;
                     mIsCapturingVideo = true;
                     try {
-                        initMediaRecorder(); // this must be included in the try-catch-block, because at least mCamera.unlock(); may fail, too
-                        mMediaRecorder.prepare();
-                        mMediaRecorder.start();
+                        if (mPreRollRecorder != null) {
+                            // Flushes the last seconds to the file, then goes on with live frames.
+                            mPreRollRecorder.startRecording(videoFile, computeSensorToOutputOffset());
+                        } else {
+                            initMediaRecorder(); // this must be included in the try-catch-block, because at least mCamera.unlock(); may fail, too
+                            mMediaRecorder.prepare();
+                            mMediaRecorder.start();
+                        }
                     } catch (Exception e) {
                         CameraException cameraException =
                                 new CapturingVideoFailedException("Error while starting MediaRecorder. " +
@@ -750,7 +932,7 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
 
     @Override
     void endVideo() {
-        schedule(null, false, new Runnable() {
+        schedule(null, false, OperationQueue.PRIORITY_CAPTURE, null, 0, new Runnable() {
             @Override
             public void run() {
                 endVideoImmediately();
@@ -760,21 +942,210 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
 
     @WorkerThread
     private void endVideoImmediately() {
+        endVideoImmediately(null);
+    }
+
+    /**
+     * Ends the video. If a file to discard is passed, it is deleted once the recorder
+     * is done writing it.
+     */
+    @WorkerThread
+    private void endVideoImmediately(@Nullable final File discard) {
         LOG.i("endVideoImmediately:", "is capturing:", mIsCapturingVideo);
         mIsCapturingVideo = false;
-        if (mMediaRecorder != null) {
+        boolean preRolled = mPreRollRecorder != null && mPreRollRecorder.isRecording();
+        File file = mVideoFile;
+        if (preRolled && mPreRollRecorder.stopRecording() == null) {
+            LOG.e("endVideoImmediately:", "Pre-roll recorder did not write anything.");
+            if (file != null) {
+                mCameraCallbacks.dispatchError(new CapturingVideoFailedException(
+                        "Pre-roll recorder did not write anything.", file));
+                file = null;
+            }
+        }
+        final File nextSegmentFile = mVideoNextSegmentFile;
+        final File videoFile = file;
+        final int segmentIndex = mVideoSegmentIndex;
+        final boolean dispatchSegment = isSegmentingVideo() && !preRolled;
+        final MediaRecorder recorder = mMediaRecorder;
+        mMediaRecorder = null;
+        mVideoNextSegmentFile = null;
+        mVideoFile = null;
+        mVideoFirstSegmentFile = null;
+        if (videoFile != null) mCameraCallbacks.dispatchOnVideoFinalizing(videoFile);
+        if (recorder == null) {
+            // Nothing to finalize. The pre-roll recorder, if any, already wrote its file.
+            if (discard != null && discard.exists()) discard.delete();
+            if (videoFile != null) mCameraCallbacks.dispatchOnVideoTaken(videoFile);
+            return;
+        }
+        final CountDownLatch finalized = new CountDownLatch(1);
+        mVideoFinalized = finalized;
+
+        // Stopping the recorder writes the file trailer, which can take seconds for big files.
+        // Do it in the I/O lane, so the camera thread is free to go on. Whatever needs the
+        // camera back (a new recorder, or releasing it in onStop) still waits for it
+        // in awaitVideoFinalized(): the camera can't be locked or released under the recorder.
+        mExecutors.getIo().execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                try {
+                    stopMediaRecorder(recorder);
+                } finally {
+                    finalized.countDown();
+                }
+                LOG.i("endVideoImmediately:", "finalized video in", System.currentTimeMillis() - start, "ms.");
+                if (discard != null && discard.exists()) {
+                    // The recorder is done with it, so this can't race with its last writes.
+                    discard.delete();
+                }
+                if (nextSegmentFile != null) {
+                    // The recorder was stopped before switching to the next segment. Remove the empty file.
+                    if (nextSegmentFile.exists() && nextSegmentFile.length() == 0) {
+                        nextSegmentFile.delete();
+                    }
+                }
+                if (videoFile != null) {
+                    if (dispatchSegment) {
+                        mCameraCallbacks.dispatchOnVideoSegmentTaken(videoFile, segmentIndex);
+                    }
+                    mCameraCallbacks.dispatchOnVideoTaken(videoFile);
+                }
+            }
+        });
+    }
+
+    /**
+     * Blocks until the recorder stopped by the last {@link #endVideoImmediately()} has
+     * released the camera.
+     */
+    @WorkerThread
+    private void awaitVideoFinalized() {
+        CountDownLatch finalized = mVideoFinalized;
+        if (finalized == null) return;
+        try {
+            finalized.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.w("awaitVideoFinalized:", "Interrupted while waiting for the recorder.");
+        }
+        if (mVideoFinalized == finalized) mVideoFinalized = null;
+    }
+
+    private static void stopMediaRecorder(@Nullable MediaRecorder recorder) {
+        if (recorder != null) {
             try {
-                mMediaRecorder.stop();
+                recorder.stop();
             } catch (Exception e) {
                 // This can happen if endVideo() is called right after startVideo(). We don't care.
-                LOG.w("endVideoImmediately:", "Error while closing media recorder. Swallowing", e);
+                LOG.w("stopMediaRecorder:", "Error while closing media recorder. Swallowing", e);
             }
-            mMediaRecorder.release();
-            mMediaRecorder = null;
+            recorder.release();
         }
-        if (mVideoFile != null) {
-            mCameraCallbacks.dispatchOnVideoTaken(mVideoFile);
+    }
+
+    /**
+     * (Re)creates the pre-roll encoder for the current preview size, if needed.
+     * The bit rate of the current profile is scaled to the preview size.
+     */
+    @WorkerThread
+    private void restartPreRoll() {
+        releasePreRoll();
+        if (mVideoPreRoll <= 0 || mSessionType != SessionType.VIDEO) return;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            LOG.w("restartPreRoll:", "Video pre-roll needs API 18. Ignoring.");
+            return;
+        }
+        if (mPreviewFormat != ImageFormat.NV21) {
+            LOG.w("restartPreRoll:", "Video pre-roll needs NV21 frames. Ignoring.", mPreviewFormat);
+            return;
+        }
+        try {
+            CamcorderProfile profile = getCamcorderProfile();
+            long profileArea = (long) profile.videoFrameWidth * profile.videoFrameHeight;
+            long previewArea = (long) mPreviewSize.getWidth() * mPreviewSize.getHeight();
+            int bitRate = (int) (profile.videoBitRate * previewArea / profileArea);
+            mPreRollRecorder = new PreRollRecorder(mPreviewSize, profile.videoFrameRate, bitRate,
+                    mVideoPreRoll, mExecutors.getIo());
+            mMemoryAccount.setCaptureBytes(mPreRollRecorder.getMemoryCapacity());
+        } catch (Exception e) {
+            CameraException cameraException = new CameraConfigurationFailedException(
+                    "Failed to start the video pre-roll.", CONFIGURATION_OTHER, e);
+            mCameraCallbacks.dispatchError(cameraException);
+        }
+    }
+
+    @WorkerThread
+    private void releasePreRoll() {
+        if (mPreRollRecorder != null) {
+            if (mPreRollRecorder.isRecording()) endVideoImmediately();
+            mPreRollRecorder.release();
+            mPreRollRecorder = null;
+            mMemoryAccount.setCaptureBytes(0);
+        }
+    }
+
+    /**
+     * Called when the recorder is about to hit the segment size. We pass the next file now,
+     * while the current one is still being written: the encoder keeps running and the recorder
+     * switches file without dropping frames.
+     */
+    @TargetApi(Build.VERSION_CODES.O)
+    @WorkerThread
+    private void prepareNextSegment() {
+        if (mVideoNextSegmentFile != null || mVideoFirstSegmentFile == null) return;
+        File next = computeSegmentFile(mVideoFirstSegmentFile, mVideoSegmentIndex + 1);
+        LOG.i("prepareNextSegment:", "next file:", next);
+        try {
+            mMediaRecorder.setNextOutputFile(next);
+            mVideoNextSegmentFile = next;
+        } catch (Exception e) {
+            CameraException cameraException = new CapturingVideoFailedException(
+                    "Failed to prepare the next video segment.", next, e);
+            mCameraCallbacks.dispatchError(cameraException);
+        }
+    }
+
+    // The recorder is now writing to mVideoNextSegmentFile, so the previous one is complete.
+    @WorkerThread
+    private void onNextSegmentStarted() {
+        if (mVideoNextSegmentFile == null) return;
+        File finished = mVideoFile;
+        int index = mVideoSegmentIndex;
+        mVideoFile = mVideoNextSegmentFile;
+        mVideoNextSegmentFile = null;
+        mVideoSegmentIndex++;
+        LOG.i("onNextSegmentStarted:", "finished segment:", index, finished);
+        mCameraCallbacks.dispatchOnVideoSegmentTaken(finished, index);
+    }
+
+    /**
+     * Fallback for devices that can't switch file on the fly (API < 26).
+     * We close the current segment and start a new recorder, so a few frames are lost.
+     */
+    @WorkerThread
+    private void rotateSegmentImmediately() {
+        File finished = mVideoFile;
+        int index = mVideoSegmentIndex;
+        // This must be synchronous: the new recorder needs the camera back.
+        stopMediaRecorder(mMediaRecorder);
+        mMediaRecorder = null;
+        LOG.i("rotateSegmentImmediately:", "finished segment:", index, finished);
+        mCameraCallbacks.dispatchOnVideoSegmentTaken(finished, index);
+        mVideoSegmentIndex++;
+        mVideoFile = computeSegmentFile(mVideoFirstSegmentFile, mVideoSegmentIndex);
+        try {
+            initMediaRecorder();
+            mMediaRecorder.prepare();
+            mMediaRecorder.start();
+        } catch (Exception e) {
+            CameraException cameraException = new CapturingVideoFailedException(
+                    "Error while starting MediaRecorder for the next segment.", mVideoFile, e);
+            mCameraCallbacks.dispatchError(cameraException);
             mVideoFile = null;
+            mCamera.lock();
+            endVideoImmediately();
         }
     }
 
@@ -784,22 +1155,17 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
     private void onCapturingVideoFailed() {
         // if we were taking a video, it failed, too.
         if (mIsCapturingVideo) {
-            if (mVideoFile != null) {
-                // delete potentially-broken video file
-                if (mVideoFile.exists()) {
-                    mVideoFile.delete();
-                }
-
-                // ensure that endVideoImmediately() will not trigger the onVideoTaken listener
-                mVideoFile = null;
-            }
-            // tidy up a bit
-            endVideoImmediately();
+            // ensure that endVideoImmediately() will not trigger the onVideoTaken listener,
+            // and delete the potentially-broken video file once the recorder is stopped.
+            File broken = mVideoFile;
+            mVideoFile = null;
+            endVideoImmediately(broken);
         }
     }
 
     @WorkerThread
     private void initMediaRecorder() {
+        awaitVideoFinalized(); // The previous recorder must give the camera back first.
         mMediaRecorder = new MediaRecorder();
 
         mMediaRecorder.setOnErrorListener(new MediaRecorder.OnErrorListener() {
@@ -825,10 +1191,10 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
                                         "instantiate a new one." + extraInfo, mVideoFile);
                     }
                     else {
-                        cameraException = new CameraUnavailableException(
-                                "Media server died, although video capturing was not active. " +
-                                        "This should not happen. So the camera needs to restart." +
-                                        extraInfo);
+                        // The camera needs to restart.
+                        LOG.w("Media server died, although video capturing was not active.", extraInfo);
+                        recover("MEDIA_ERROR_SERVER_DIED");
+                        return;
                     }
                 }
                 else if (what == MEDIA_RECORDER_ERROR_UNKNOWN) {
@@ -851,7 +1217,25 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
         mMediaRecorder.setOnInfoListener(new MediaRecorder.OnInfoListener() {
             @Override
             public void onInfo(MediaRecorder mediaRecorder, int what, int extra) {
-                if (what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_DURATION_REACHED) {
+                // Ignore recorders that have been handed to the finalizer thread.
+                if (mediaRecorder != mMediaRecorder) return;
+                boolean limitReached = what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_DURATION_REACHED ||
+                        what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_FILESIZE_REACHED;
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O &&
+                        what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_FILESIZE_APPROACHING) {
+                    LOG.i("MediaRecorder: max file size approaching. Extra code: " + extra + ".");
+                    if (isSegmentingVideo()) prepareNextSegment();
+                }
+                else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O &&
+                        what == MediaRecorder.MEDIA_RECORDER_INFO_NEXT_OUTPUT_FILE_STARTED) {
+                    LOG.i("MediaRecorder: next output file started. Extra code: " + extra + ".");
+                    onNextSegmentStarted();
+                }
+                else if (limitReached && mIsCapturingVideo && isSegmentingVideo()) {
+                    LOG.i("MediaRecorder: segment limit reached. Extra code: " + extra + ".");
+                    rotateSegmentImmediately();
+                }
+                else if (what == MediaRecorder.MEDIA_RECORDER_INFO_MAX_DURATION_REACHED) {
                     LOG.i("MediaRecorder: max duration reached. Extra code: " + extra + ".");
                     endVideoImmediately();
                 }
@@ -890,9 +1274,20 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
         mMediaRecorder.setOutputFile(mVideoFile.getAbsolutePath());
         mMediaRecorder.setOrientationHint(computeSensorToOutputOffset());
 
-        // TODO setMaxDuration
         // Android documentation: Call this after setOutFormat() but before prepare()
-        mMediaRecorder.setMaxDuration(5000);
+        if (isSegmentingVideo()) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                // Rotation is driven by MEDIA_RECORDER_INFO_MAX_FILESIZE_APPROACHING
+                // and setNextOutputFile(), so the duration limit is turned into a size estimate.
+                mMediaRecorder.setMaxFileSize(computeSegmentMaxSize(profile));
+            } else {
+                if (mVideoMaxSegmentDuration > 0) mMediaRecorder.setMaxDuration((int) mVideoMaxSegmentDuration);
+                if (mVideoMaxSegmentSize > 0) mMediaRecorder.setMaxFileSize(mVideoMaxSegmentSize);
+            }
+        } else {
+            // TODO setMaxDuration
+            mMediaRecorder.setMaxDuration(5000);
+        }
 
         // Not needed. mMediaRecorder.setPreviewDisplay(mPreview.getSurface());
     }
@@ -903,7 +1298,8 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
 
     @Override
     void setZoom(final float zoom, final PointF[] points, final boolean notify) {
-        schedule(mZoomTask, true, new Runnable() {
+        schedule(mZoomTask, true,
+                OperationQueue.PRIORITY_PARAMETER, KEY_ZOOM, 0, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -932,7 +1328,8 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
     @Override
     void setExposureCorrection(final float EVvalue, final float[] bounds,
                                final PointF[] points, final boolean notify) {
-        schedule(mExposureCorrectionTask, true, new Runnable() {
+        schedule(mExposureCorrectionTask, true,
+                OperationQueue.PRIORITY_PARAMETER, KEY_EXPOSURE_CORRECTION, 0, new Runnable() {
             @Override
             public void run() {
                 try {
@@ -976,33 +1373,32 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
         }
         final int viewWidthF = viewWidth;
         final int viewHeightF = viewHeight;
-        // Schedule.
-        schedule(null, true, new Runnable() {
+        // Schedule. A newer tap replaces this one, and a tap that waited too long is useless.
+        schedule(null, true, OperationQueue.PRIORITY_FOCUS, KEY_FOCUS, FOCUS_TIMEOUT, new Runnable() {
             @Override
             public void run() {
                 try {
                     if (!mCameraOptions.isAutoFocusSupported()) return;
                     final PointF p = new PointF(point.x, point.y); // copy.
-                    List<Camera.Area> meteringAreas2 = computeMeteringAreas(p.x, p.y,
-                            viewWidthF, viewHeightF, computeSensorToViewOffset());
-                    List<Camera.Area> meteringAreas1 = meteringAreas2.subList(0, 1);
+                    mMeteringRegions.configure(viewWidthF, viewHeightF, computeSensorToViewOffset());
+                    mMeteringRegions.clear();
+                    mMeteringRegions.add(p.x, p.y);
 
                     // At this point we are sure that camera supports auto focus... right? Look at CameraView.onTouchEvent().
                     Camera.Parameters params = mCamera.getParameters();
-                    int maxAF = params.getMaxNumFocusAreas();
-                    int maxAE = params.getMaxNumMeteringAreas();
-                    if (maxAF > 0)
-                        params.setFocusAreas(maxAF > 1 ? meteringAreas2 : meteringAreas1);
-                    if (maxAE > 0)
-                        params.setMeteringAreas(maxAE > 1 ? meteringAreas2 : meteringAreas1);
+                    applyMeteringRegions(params);
                     params.setFocusMode(Camera.Parameters.FOCUS_MODE_AUTO);
                     mCamera.setParameters(params);
+                    mFocusTracker.onModeChanged(true, false);
                     mCameraCallbacks.dispatchOnFocusStart(gesture, p);
+                    mFocusTracker.onScanStart(now());
                     // TODO this is not guaranteed to be called... Fix.
                     mCamera.autoFocus(new Camera.AutoFocusCallback() {
                         @Override
                         public void onAutoFocus(boolean success, Camera camera) {
                             // TODO lock auto exposure and white balance for a while
+                            mFocusTracker.onScanEnd(now(), success);
+                            onFocusSettled();
                             mCameraCallbacks.dispatchOnFocusEnd(gesture, success, p);
                             mHandler.get().removeCallbacks(mPostFocusResetRunnable);
                             mHandler.get().postDelayed(mPostFocusResetRunnable, mPostFocusResetDelay);
@@ -1020,45 +1416,78 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
         });
     }
 
-    @WorkerThread
-    private static List<Camera.Area> computeMeteringAreas(double viewClickX, double viewClickY,
-                                                          int viewWidth, int viewHeight,
-                                                          int sensorToDisplay) {
-        // Event came in view coordinates. We must rotate to sensor coordinates.
-        // First, rescale to the -1000 ... 1000 range.
-        int displayToSensor = -sensorToDisplay;
-        viewClickX = -1000d + (viewClickX / (double) viewWidth) * 2000d;
-        viewClickY = -1000d + (viewClickY / (double) viewHeight) * 2000d;
-
-        // Apply rotation to this point.
-        // https://academo.org/demos/rotation-about-point/
-        double theta = ((double) displayToSensor) * Math.PI / 180;
-        double sensorClickX = viewClickX * Math.cos(theta) - viewClickY * Math.sin(theta);
-        double sensorClickY = viewClickX * Math.sin(theta) + viewClickY * Math.cos(theta);
-        LOG.i("focus:", "viewClickX:", viewClickX, "viewClickY:", viewClickY);
-        LOG.i("focus:", "sensorClickX:", sensorClickX, "sensorClickY:", sensorClickY);
-
-        // Compute the rect bounds.
-        Rect rect1 = computeMeteringArea(sensorClickX, sensorClickY, 150d);
-        int weight1 = 1000; // 150 * 150 * 1000 = more than 10.000.000
-        Rect rect2 = computeMeteringArea(sensorClickX, sensorClickY, 300d);
-        int weight2 = 100; // 300 * 300 * 100 = 9.000.000
-
-        List<Camera.Area> list = new ArrayList<>(2);
-        list.add(new Camera.Area(rect1, weight1));
-        list.add(new Camera.Area(rect2, weight2));
-        return list;
+    @Override
+    void setMeteringPoints(@Nullable float[] points, int count) {
+        int viewWidth = 0, viewHeight = 0;
+        if (mPreview != null && mPreview.isReady()) {
+            viewWidth = mPreview.getView().getWidth();
+            viewHeight = mPreview.getView().getHeight();
+        }
+        synchronized (mPendingMeteringPoints) {
+            // Copy now: the caller (e.g. a frame processor) is free to reuse its array.
+            count = points == null ? 0 : Math.min(Math.min(count, points.length / 2), MeteringRegions.MAX_POINTS);
+            if (count > 0) System.arraycopy(points, 0, mPendingMeteringPoints, 0, count * 2);
+            mPendingMeteringCount = count;
+            mPendingMeteringWidth = viewWidth;
+            mPendingMeteringHeight = viewHeight;
+        }
+        // Only the last update is applied, so a processor can call this for each frame.
+        schedule(null, true, OperationQueue.PRIORITY_PARAMETER, KEY_METERING, 0, mMeteringRunnable);
     }
 
+    private final Runnable mMeteringRunnable = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                synchronized (mPendingMeteringPoints) {
+                    mMeteringRegions.configure(mPendingMeteringWidth, mPendingMeteringHeight,
+                            computeSensorToViewOffset());
+                    mMeteringRegions.set(mPendingMeteringPoints, mPendingMeteringCount);
+                }
+                Camera.Parameters params = mCamera.getParameters();
+                if (mMeteringRegions.getCount() > 0) {
+                    applyMeteringRegions(params);
+                } else {
+                    params.setFocusAreas(null);
+                    params.setMeteringAreas(null);
+                }
+                mCamera.setParameters(params);
+            } catch (Exception e) {
+                CameraException cameraException = new CameraConfigurationFailedException("Failed to " +
+                        "set metering areas.", CONFIGURATION_FOCUS, e);
+                mCameraCallbacks.dispatchError(cameraException);
+            }
+        }
+    };
 
-    private static Rect computeMeteringArea(double centerX, double centerY, double size) {
-        double delta = size / 2d;
-        int top = (int) Math.max(centerY - delta, -1000);
-        int bottom = (int) Math.min(centerY + delta, 1000);
-        int left = (int) Math.max(centerX - delta, -1000);
-        int right = (int) Math.min(centerX + delta, 1000);
-        LOG.i("focus:", "computeMeteringArea:", "top:", top, "left:", left, "bottom:", bottom, "right:", right);
-        return new Rect(left, top, right, bottom);
+    // Sets the current metering regions as focus and metering areas, as many as supported.
+    // Areas are parcelled into the parameters, so the same instances are reused for each update.
+    private void applyMeteringRegions(Camera.Parameters params) {
+        int maxAF = params.getMaxNumFocusAreas();
+        int maxAE = params.getMaxNumMeteringAreas();
+        if (maxAF > 0) params.setFocusAreas(fillMeteringAreas(mFocusAreas, maxAF));
+        if (maxAE > 0) params.setMeteringAreas(fillMeteringAreas(mMeteringAreas, maxAE));
+    }
+
+    private List<Camera.Area> fillMeteringAreas(List<Camera.Area> areas, int max) {
+        int count = Math.min(max, mMeteringRegions.getCount());
+        if (mAreaPool == null) {
+            mAreaPool = new Camera.Area[MeteringRegions.MAX_POINTS * 2];
+            for (int i = 0; i < mAreaPool.length; i++) {
+                mAreaPool[i] = new Camera.Area(new Rect(), 0);
+            }
+        }
+        areas.clear();
+        for (int i = 0; i < count; i++) {
+            // Focus and metering areas can share instances: they are read once, by setFocusAreas
+            // and setMeteringAreas, and are the same values anyway.
+            Camera.Area area = mAreaPool[i];
+            area.rect.set(mMeteringRegions.getLeft(i), mMeteringRegions.getTop(i),
+                    mMeteringRegions.getRight(i), mMeteringRegions.getBottom(i));
+            area.weight = mMeteringRegions.getWeight(i);
+            areas.add(area);
+        }
+        return areas;
     }
 
 
@@ -1071,7 +1500,7 @@ class Camera1 extends CameraController implements Camera.PreviewCallback, Camera
         if (sizes == null) return null;
         List<Size> result = new ArrayList<>(sizes.size());
         for (Camera.Size size : sizes) {
-            Size add = new Size(size.width, size.height);
+            Size add = Size.of(size.width, size.height);
             if (!result.contains(add)) result.add(add);
         }
         LOG.i("size:", "sizesFromList:", result);
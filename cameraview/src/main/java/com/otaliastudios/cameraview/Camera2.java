@@ -81,6 +81,11 @@ class Camera2 extends CameraController {
 
     }
 
+    @Override
+    void setVideoPreRoll(long millis) {
+
+    }
+
     @Override
     void setVideoQuality(VideoQuality videoQuality) {
 
@@ -96,6 +101,11 @@ class Camera2 extends CameraController {
 
     }
 
+    @Override
+    void captureSnapshot(@NonNull byte[] data, @NonNull FrameInfo info) {
+
+    }
+
     @Override
     void startVideo(@NonNull File file) {
 
@@ -111,6 +121,11 @@ class Camera2 extends CameraController {
 
     }
 
+    @Override
+    void setMeteringPoints(@Nullable float[] points, int count) {
+
+    }
+
     @Override
     public void onBufferAvailable(byte[] buffer) {
 
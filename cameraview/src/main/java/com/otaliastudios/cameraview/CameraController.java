@@ -1,6 +1,7 @@
 package com.otaliastudios.cameraview;
 
 import android.graphics.PointF;
+import android.graphics.Rect;
 import android.location.Location;
 
 
@@ -16,6 +17,8 @@ import androidx.annotation.WorkerThread;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
 
 abstract class CameraController implements
         CameraPreview.SurfaceCallback,
@@ -30,9 +33,20 @@ abstract class CameraController implements
     static final int STATE_STARTING = 1; // Camera is about to start.
     static final int STATE_STARTED = 2; // Camera is available and we can set parameters.
 
+    // Operation keys of parameters that are not stored in a field, so onStart() can't apply them again.
+    static final String KEY_ZOOM = "zoom";
+    static final String KEY_EXPOSURE_CORRECTION = "exposureCorrection";
+
     protected final CameraView.CameraCallbacks mCameraCallbacks;
     protected CameraPreview mPreview;
     protected WorkerHandler mHandler;
+    protected final CameraExecutors mExecutors = new CameraExecutors();
+    protected final OperationQueue mOperations = new OperationQueue(new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            mHandler.post(command);
+        }
+    });
     /* for tests */ Handler mCrashHandler;
 
     protected Facing mFacing;
@@ -51,19 +65,35 @@ abstract class CameraController implements
     protected CameraOptions mCameraOptions;
     protected Mapper mMapper;
     protected FrameManager mFrameManager;
+    protected MemoryBudget.Account mMemoryAccount;
+    protected final CameraRecovery mRecovery = new CameraRecovery();
     protected SizeSelector mPictureSizeSelector;
     protected MediaRecorder mMediaRecorder;
     protected File mVideoFile;
+    protected long mVideoMaxSegmentDuration;
+    protected long mVideoMaxSegmentSize;
+    protected int mVideoSegmentIndex;
+    protected long mVideoPreRoll;
+    protected PreRollRecorder mPreRollRecorder;
     protected Size mPictureSize;
     protected Size mPreviewSize;
     protected int mPreviewFormat;
 
-    protected int mSensorOffset;
-    private int mDisplayOffset;
-    private int mDeviceOrientation;
+    // Written from the sensor callbacks and the camera thread.
+    protected volatile int mSensorOffset;
+    private volatile int mDisplayOffset;
+    private volatile int mDeviceOrientation;
+    // Derived from the above and mFacing. Read on each frame, written by updateOffsets().
+    private volatile int mSensorToViewOffset;
+    private volatile int mSensorToOutputOffset;
+    // Shared by preview frames. Rebuilt by updateFrameInfo(), at most one per rotation.
+    private volatile FrameInfo mFrameInfo;
+    private final FrameInfo[] mFrameInfos = new FrameInfo[4];
 
     protected boolean mIsCapturingImage = false;
     protected boolean mIsCapturingVideo = false;
+    // Focus state, fed by the implementation and consulted before taking pictures.
+    protected final FocusTracker mFocusTracker = new FocusTracker();
 
     protected int mState = STATE_STOPPED;
 
@@ -80,9 +110,10 @@ abstract class CameraController implements
     CameraController(CameraView.CameraCallbacks callback) {
         mCameraCallbacks = callback;
         mCrashHandler = new Handler(Looper.getMainLooper());
-        mHandler = WorkerHandler.get("CameraViewController");
+        mHandler = mExecutors.getControl();
         mHandler.getThread().setUncaughtExceptionHandler(this);
-        mFrameManager = new FrameManager(2, this);
+        mMemoryAccount = MemoryBudget.register(getClass().getSimpleName() + "@" + Integer.toHexString(hashCode()));
+        mFrameManager = new FrameManager(2, this, mMemoryAccount);
     }
 
     void setPreview(CameraPreview cameraPreview) {
@@ -126,8 +157,14 @@ abstract class CameraController implements
             final CameraUnavailableException error = (CameraUnavailableException) throwable;
             LOG.e("uncaughtException:", "Interrupting thread with state:", ss(), "due to CameraException:", error);
             thread.interrupt();
-            mHandler = WorkerHandler.get("CameraViewController");
+            mHandler = mExecutors.restartControl();
             mHandler.getThread().setUncaughtExceptionHandler(this);
+            mOperations.resume();
+            if (CameraRecovery.isRecoverable(error)) {
+                // The camera service died. Open the camera again instead of giving up.
+                recover("uncaughtException");
+                return;
+            }
             LOG.i("uncaughtException:", "Calling stopImmediately and notifying.");
             mHandler.post(new Runnable() {
                 @Override
@@ -150,7 +187,14 @@ abstract class CameraController implements
         // inside the standard stop() method might crash the main thread.
         mHandler.getThread().setUncaughtExceptionHandler(new NoOpExceptionHandler());
         // Stop if needed.
+        mRecovery.cancel();
         stopImmediately();
+        mFrameManager.release();
+        LOG.i("destroy:", "operations:", mOperations);
+        LOG.i("destroy:", "recovery:", mRecovery);
+        // This instance won't be used anymore, so let its threads and memory go.
+        mExecutors.release();
+        mMemoryAccount.unregister();
     }
 
     //endregion
@@ -170,7 +214,7 @@ abstract class CameraController implements
     // Starts the preview asynchronously.
     final void start() {
         LOG.i("Start:", "posting runnable. State:", ss());
-        mHandler.post(new Runnable() {
+        mOperations.schedule(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -185,7 +229,8 @@ abstract class CameraController implements
                 }
                 catch (Exception e) {
                     CameraException cameraException =
-                            new CameraUnavailableException("Error while starting the camera engine.", e);
+                            new CameraUnavailableException("Error while starting the camera engine.",
+                                    getUnavailableReason(), e);
                     throw cameraException;
                 }
             }
@@ -195,11 +240,23 @@ abstract class CameraController implements
     // Stops the preview asynchronously.
     final void stop() {
         LOG.i("Stop:", "posting runnable. State:", ss());
-        mHandler.post(new Runnable() {
+        // Don't wait for pending parameter changes. Flash, location, white balance and HDR are
+        // stored when set and applied again by onStart(), focus and metering only make sense for
+        // the current session. Zoom and exposure correction are only stored when their operation
+        // runs, so those run before stopping, or they would be lost.
+        mOperations.cancelKeyed(KEY_ZOOM, KEY_EXPOSURE_CORRECTION);
+        mOperations.schedule(new Runnable() {
             @Override
             public void run() {
                 try {
                     LOG.i("Stop:", "executing. State:", ss());
+                    if (mRecovery.isRecovering()) {
+                        // The camera is already closed, and buffers were kept for the recovery.
+                        LOG.i("Stop:", "cancelling recovery.");
+                        mRecovery.cancel();
+                        mFrameManager.release();
+                        mCameraCallbacks.dispatchOnCameraClosed();
+                    }
                     if (mState <= STATE_STOPPED) return;
                     mState = STATE_STOPPING;
                     LOG.i("Stop:", "about to call onStop()");
@@ -209,7 +266,8 @@ abstract class CameraController implements
                     mCameraCallbacks.dispatchOnCameraClosed();
                 } catch (Exception e) {
                     CameraException cameraException =
-                            new CameraUnavailableException("Error while stopping the camera engine.", e);
+                            new CameraUnavailableException("Error while stopping the camera engine.",
+                                    getUnavailableReason(), e);
                     throw cameraException;
                 }
             }
@@ -236,7 +294,7 @@ abstract class CameraController implements
     // Forces a restart.
     protected final void restart() {
         LOG.i("Restart:", "posting runnable");
-        mHandler.post(new Runnable() {
+        mOperations.schedule(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -258,7 +316,8 @@ abstract class CameraController implements
                     mCameraCallbacks.dispatchOnCameraOpened(mCameraOptions);
                 } catch (Exception e) {
                     CameraException cameraException =
-                            new CameraUnavailableException("Error while restarting the camera engine.", e);
+                            new CameraUnavailableException("Error while restarting the camera engine.",
+                                    getUnavailableReason(), e);
                     throw cameraException;
                 }
             }
@@ -281,22 +340,125 @@ abstract class CameraController implements
 
     //endregion
 
+    //region Recovery
+
+    /**
+     * Brings back the camera after a recoverable failure, e.g. the media server died.
+     * The camera is closed keeping the frame buffers, then opened again with backoff,
+     * and the parameters in the {@link CameraRecovery.Snapshot} are applied by onStart().
+     * Listeners receive onCameraOpened() again and then onCameraRecovered().
+     *
+     * This can be called from any thread.
+     */
+    final void recover(@NonNull final String reason) {
+        LOG.w("recover:", "posting runnable. Reason:", reason, "State:", ss());
+        mOperations.schedule(new Runnable() {
+            @Override
+            public void run() {
+                LOG.w("recover:", "executing. Reason:", reason, "State:", ss());
+                if (mRecovery.isRecovering()) return; // Already going on.
+                mRecovery.begin(new CameraRecovery.Snapshot(CameraController.this));
+                stopImmediately(); // onStop() keeps frame buffers while recovering.
+                scheduleRecoveryAttempt();
+            }
+        });
+    }
+
+    private void scheduleRecoveryAttempt() {
+        long delay = mRecovery.nextAttempt();
+        if (delay < 0) {
+            if (!mRecovery.isRecovering()) return; // Cancelled.
+            int attempts = mRecovery.getAttempts();
+            mRecovery.fail();
+            mFrameManager.release();
+            mCameraCallbacks.dispatchOnCameraClosed();
+            mCameraCallbacks.dispatchError(new CameraUnavailableException(
+                    "Could not recover the camera after " + attempts + " attempts."));
+            return;
+        }
+        LOG.w("recover:", "attempt", mRecovery.getAttempts(), "in", delay, "ms.");
+        mHandler.get().postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                mOperations.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        runRecoveryAttempt();
+                    }
+                });
+            }
+        }, delay);
+    }
+
+    @WorkerThread
+    private void runRecoveryAttempt() {
+        if (!mRecovery.isRecovering()) return; // Cancelled by stop().
+        try {
+            if (mState < STATE_STARTING) {
+                mState = STATE_STARTING;
+                onStart();
+                mState = STATE_STARTED;
+                mCameraCallbacks.dispatchOnCameraOpened(mCameraOptions);
+            }
+            // else: start() was called meanwhile, and onStart() did the job.
+            int attempts = mRecovery.getAttempts();
+            long time = mRecovery.succeed();
+            mCameraCallbacks.dispatchOnCameraRecovered(attempts, time);
+        } catch (Exception e) {
+            LOG.w("recover:", "attempt", mRecovery.getAttempts(), "failed.", e);
+            stopImmediately();
+            scheduleRecoveryAttempt();
+        }
+    }
+
+    //endregion
+
+    // The reason to report when the engine fails, from the camera error codes it received.
+    int getUnavailableReason() {
+        return CameraUnavailableException.REASON_UNKNOWN;
+    }
+
     //region Simple setters
 
     // This is called before start() and never again.
     final void setDisplayOffset(int displayOffset) {
         mDisplayOffset = displayOffset;
+        updateOffsets();
     }
 
     // This can be called multiple times.
     final void setDeviceOrientation(int deviceOrientation) {
         mDeviceOrientation = deviceOrientation;
+        updateOffsets();
     }
 
     final void setPictureSizeSelector(SizeSelector selector) {
         mPictureSizeSelector = selector;
     }
 
+    // Takes place from the next video. 0 means no rotation.
+    final void setVideoMaxSegmentDuration(long durationMillis) {
+        mVideoMaxSegmentDuration = durationMillis;
+    }
+
+    // Takes place from the next video. 0 means no rotation.
+    final void setVideoMaxSegmentSize(long sizeInBytes) {
+        mVideoMaxSegmentSize = sizeInBytes;
+    }
+
+    // Automatic exposure correction. Called with new stats, from the frame processing thread.
+    final void onExposureStats(@NonNull ExposureStats stats, int targetLuma) {
+        CameraOptions options = mCameraOptions;
+        if (mState != STATE_STARTED || options == null || !options.isExposureCorrectionSupported()) return;
+        float current = mExposureCorrectionValue;
+        float value = AutoExposure.next(current, stats, targetLuma,
+                options.getExposureCorrectionMinValue(), options.getExposureCorrectionMaxValue());
+        if (value != current) {
+            LOG.v("onExposureStats:", "mean:", stats.getMean(), "target:", targetLuma, "correction:", value);
+            setExposureCorrection(value, null, null, false);
+        }
+    }
+
     //endregion
 
     //region Abstract setters and APIs
@@ -328,6 +490,9 @@ abstract class CameraController implements
     // Just set.
     abstract void setAudio(Audio audio);
 
+    // If closed, keep. If opened and not recording, restart the pre-roll encoder.
+    abstract void setVideoPreRoll(long millis);
+
     // Throw if capturing. If in video session, recompute capture size, and, if needed, preview size.
     abstract void setVideoQuality(VideoQuality videoQuality);
 
@@ -335,12 +500,19 @@ abstract class CameraController implements
 
     abstract void captureSnapshot();
 
+    // Like captureSnapshot(), but with a preview frame that was already taken.
+    // The info is the one of the frame, so its rotation and facing are used, not the current ones.
+    abstract void captureSnapshot(@NonNull byte[] data, @NonNull FrameInfo info);
+
     abstract void startVideo(@NonNull File file);
 
     abstract void endVideo();
 
     abstract void startAutoFocus(@Nullable Gesture gesture, PointF point);
 
+    // Points are in view coordinates: x0, y0, x1, y1, ... Can be called from any thread.
+    abstract void setMeteringPoints(@Nullable float[] points, int count);
+
     //endregion
 
     //region final getters
@@ -395,6 +567,38 @@ abstract class CameraController implements
         return mPictureSize;
     }
 
+    final long getVideoMaxSegmentDuration() {
+        return mVideoMaxSegmentDuration;
+    }
+
+    final long getVideoMaxSegmentSize() {
+        return mVideoMaxSegmentSize;
+    }
+
+    final long getVideoPreRoll() {
+        return mVideoPreRoll;
+    }
+
+    final int getVideoPreRollMemoryUsage() {
+        PreRollRecorder recorder = mPreRollRecorder;
+        return recorder == null ? 0 : recorder.getMemoryUsage();
+    }
+
+    final int getVideoPreRollSegmentCount() {
+        PreRollRecorder recorder = mPreRollRecorder;
+        return recorder == null ? 0 : recorder.getSegmentCount();
+    }
+
+    // Bytes used by this instance for preview buffers and capture.
+    final long getMemoryUsage() {
+        return mMemoryAccount.getUsage();
+    }
+
+    // Bytes of the process memory budget that this instance can use.
+    final long getMemoryShare() {
+        return mMemoryAccount.getShare();
+    }
+
     final float getZoomValue() {
         return mZoomValue;
     }
@@ -403,6 +607,26 @@ abstract class CameraController implements
         return mExposureCorrectionValue;
     }
 
+    final long getFocusLockTime(int percentile) {
+        return mFocusTracker.getLockTime(percentile);
+    }
+
+    final long getAverageOperationLatency() {
+        return mOperations.getAverageLatency();
+    }
+
+    final long getMaxOperationLatency() {
+        return mOperations.getMaxLatency();
+    }
+
+    final int getCollapsedOperationCount() {
+        return mOperations.getCollapsedCount();
+    }
+
+    final int getExpiredOperationCount() {
+        return mOperations.getExpiredCount();
+    }
+
     final Size getPreviewSize() {
         return mPreviewSize;
     }
@@ -422,6 +646,72 @@ abstract class CameraController implements
         return offset % 180 != 0;
     }
 
+    /**
+     * Recomputes the offsets returned by {@link #computeSensorToViewOffset()} and
+     * {@link #computeSensorToOutputOffset()}. Must be called when the display offset,
+     * the device orientation, the sensor offset or the facing change.
+     * Callers can be on different threads, so the whole update happens under the frame info lock.
+     */
+    protected final void updateOffsets() {
+        synchronized (mFrameInfos) {
+            if (mFacing == Facing.FRONT) {
+                // or: (360 - ((mSensorOffset + mDisplayOffset) % 360)) % 360;
+                mSensorToViewOffset = ((mSensorOffset - mDisplayOffset) + 360 + 180) % 360;
+                mSensorToOutputOffset = (mSensorOffset - mDeviceOrientation + 360) % 360;
+            } else {
+                mSensorToViewOffset = (mSensorOffset - mDisplayOffset + 360) % 360;
+                mSensorToOutputOffset = (mSensorOffset + mDeviceOrientation) % 360;
+            }
+            updateFrameInfo();
+        }
+    }
+
+    /**
+     * Recomputes the {@link FrameInfo} returned by {@link #getFrameInfo()}.
+     * This is called by {@link #updateOffsets()}, and must be called when the preview size,
+     * the preview format or the view size change.
+     * Previous instances are reused if nothing changed but the rotation.
+     */
+    protected final void updateFrameInfo() {
+        // The offsets are read under the lock too, or an older value could overwrite
+        // the info just published by updateOffsets() on another thread.
+        synchronized (mFrameInfos) {
+            Size size = mPreviewSize;
+            if (size == null) return;
+            int rotation = mSensorToOutputOffset;
+            Rect crop = computeFrameCrop(size);
+            int index = (rotation / 90 + 4) % 4;
+            FrameInfo info = mFrameInfos[index];
+            if (info == null || !info.matches(size, mPreviewFormat, rotation, mFacing, crop)) {
+                info = new FrameInfo(size, mPreviewFormat, rotation, mFacing, crop);
+                mFrameInfos[index] = info;
+                LOG.i("updateFrameInfo:", info);
+            }
+            mFrameInfo = info;
+        }
+    }
+
+    // The part of the frame that is visible in the view.
+    @Nullable
+    private Rect computeFrameCrop(@NonNull Size previewSize) {
+        if (mPreview == null) return null;
+        Size view = mPreview.getSurfaceSize();
+        if (view.getWidth() <= 0 || view.getHeight() <= 0) return null;
+        // The view aspect ratio, in the sensor reference.
+        AspectRatio ratio = mSensorToViewOffset % 180 != 0 ?
+                AspectRatio.of(view.getHeight(), view.getWidth()) :
+                AspectRatio.of(view.getWidth(), view.getHeight());
+        return CropHelper.computeCrop(previewSize.getWidth(), previewSize.getHeight(), ratio);
+    }
+
+    /**
+     * Returns the configuration of preview frames.
+     * This is called for each preview frame, so it just reads the value cached by {@link #updateFrameInfo()}.
+     */
+    protected final FrameInfo getFrameInfo() {
+        return mFrameInfo;
+    }
+
     /**
      * Returns how much should the sensor image be rotated before being shown.
      * It is meant to be fed to Camera.setDisplayOrientation().
@@ -429,23 +719,55 @@ abstract class CameraController implements
      * and the display offset does not change.
      */
     protected final int computeSensorToViewOffset() {
-        if (mFacing == Facing.FRONT) {
-            // or: (360 - ((mSensorOffset + mDisplayOffset) % 360)) % 360;
-            return ((mSensorOffset - mDisplayOffset) + 360 + 180) % 360;
-        } else {
-            return (mSensorOffset - mDisplayOffset + 360) % 360;
-        }
+        return mSensorToViewOffset;
     }
 
     /**
      * Returns the orientation to be set as a exif tag.
+     * This is called for each preview frame, so it just reads the value cached by {@link #updateOffsets()}.
      */
     protected final int computeSensorToOutputOffset() {
-        if (mFacing == Facing.FRONT) {
-            return (mSensorOffset - mDeviceOrientation + 360) % 360;
-        } else {
-            return (mSensorOffset + mDeviceOrientation) % 360;
+        return mSensorToOutputOffset;
+    }
+
+    //endregion
+
+    //region Video segments utils
+
+    protected final boolean isSegmentingVideo() {
+        return mVideoMaxSegmentDuration > 0 || mVideoMaxSegmentSize > 0;
+    }
+
+    /**
+     * Returns the file for the given segment. The first segment is the file that was
+     * passed to startVideo(), the following ones get an index suffix, e.g.
+     * video.mp4, video_001.mp4, video_002.mp4...
+     */
+    @NonNull
+    protected static File computeSegmentFile(@NonNull File first, int index) {
+        if (index == 0) return first;
+        String name = first.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        String suffix = String.format(Locale.US, "_%03d", index);
+        return new File(first.getParentFile(), base + suffix + extension);
+    }
+
+    /**
+     * Returns the max size in bytes of a single segment, combining the size constraint
+     * with the duration constraint, which is estimated from the profile bit rates.
+     * Returns 0 if there are no constraints.
+     */
+    protected final long computeSegmentMaxSize(@NonNull CamcorderProfile profile) {
+        long result = mVideoMaxSegmentSize;
+        if (mVideoMaxSegmentDuration > 0) {
+            long bitRate = profile.videoBitRate;
+            if (mAudio == Audio.ON) bitRate += profile.audioBitRate;
+            long estimate = (bitRate / 8) * mVideoMaxSegmentDuration / 1000;
+            result = result > 0 ? Math.min(result, estimate) : estimate;
         }
+        return result;
     }
 
     //endregion
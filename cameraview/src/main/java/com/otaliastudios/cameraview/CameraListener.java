@@ -30,6 +30,21 @@ public abstract class CameraListener {
     }
 
 
+    /**
+     * Notifies that the camera was opened again after a failure, like the media server dying.
+     * This comes after {@link #onCameraOpened(CameraOptions)}. Parameters, including zoom
+     * and exposure correction, are restored.
+     * If the camera can't be recovered, {@link #onCameraError(CameraException)} is called instead.
+     *
+     * @param attempts the number of times the camera was opened before succeeding
+     * @param millis the time it took, since the failure, in milliseconds
+     */
+    @UiThread
+    public void onCameraRecovered(int attempts, long millis) {
+
+    }
+
+
     /**
      * Notifies that an error occurred in any of the previously called methods.
      *
@@ -61,7 +76,20 @@ public abstract class CameraListener {
 
 
     /**
-     * Notifies that a video capture has just ended. The file parameter is the one that
+     * Notifies that a video capture has just ended, and the file is being finalized
+     * in a background thread. The file can't be read yet: wait for {@link #onVideoTaken(File)}.
+     * While this happens, the camera can be used normally.
+     *
+     * @param video file that will host the mp4 video
+     */
+    @UiThread
+    public void onVideoFinalizing(File video) {
+
+    }
+
+
+    /**
+     * Notifies that a video file is complete and can be safely read. The file parameter is the one that
      * was passed to {@link CameraView#startCapturingVideo(File)}, if any.
      * If not, the camera fallsback to:
      * <code>
@@ -76,6 +104,25 @@ public abstract class CameraListener {
     }
 
 
+    /**
+     * Notifies that a video segment was completed and can be safely read, moved or uploaded.
+     * This is only called if segments were enabled with
+     * {@link CameraView#setVideoMaxSegmentDuration(long)} or {@link CameraView#setVideoMaxSegmentSize(long)}.
+     *
+     * The first segment is the file passed to {@link CameraView#startCapturingVideo(File)},
+     * next segments are created in the same folder with an index suffix,
+     * e.g. video.mp4, video_001.mp4, video_002.mp4...
+     * The last segment is also passed to {@link #onVideoTaken(File)}.
+     *
+     * @param segment file hosting the mp4 segment
+     * @param index the segment index, starting at 0
+     */
+    @UiThread
+    public void onVideoSegmentTaken(File segment, int index) {
+
+    }
+
+
     /**
      * Notifies that the device was tilted or the window offset changed.
      * The orientation passed is exactly the counter-clockwise rotation that a View should have,
@@ -88,7 +88,7 @@ public class CameraOptions {
         for (Camera.Size size : sizes) {
             int width = flipSizes ? size.height : size.width;
             int height = flipSizes ? size.width : size.height;
-            supportedPictureSizes.add(new Size(width, height));
+            supportedPictureSizes.add(Size.of(width, height));
             supportedPictureAspectRatio.add(AspectRatio.of(width, height));
         }
     }
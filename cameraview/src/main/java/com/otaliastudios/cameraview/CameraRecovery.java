@@ -0,0 +1,179 @@
+package com.otaliastudios.cameraview;
+
+import android.location.Location;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Policy and metrics for bringing the camera back after a recoverable failure,
+ * like the media server dying. The controller does the actual work:
+ *
+ * - when the failure is detected, a {@link Snapshot} of the controller state is taken.
+ * - the camera is closed, keeping frame buffers (see {@link FrameManager#suspend()}).
+ * - the camera is opened again after {@link #getDelay(int)}, which grows exponentially
+ *   from {@link #BASE_DELAY} to {@link #MAX_DELAY}, for at most {@link #MAX_ATTEMPTS} attempts.
+ * - once open, the snapshot is applied, and the time to recover and the attempts are reported.
+ */
+class CameraRecovery {
+
+    private final static String TAG = CameraRecovery.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    final static long BASE_DELAY = 200;
+    final static long MAX_DELAY = 3200;
+    final static int MAX_ATTEMPTS = 6;
+
+    /**
+     * The parameters of the controller when the failure happened.
+     *
+     * Zoom and exposure correction are only stored once applied to the camera, so they are
+     * lost with it and applied again from here. The others are stored by the setters, so they
+     * can change while recovering: changes win, and the snapshot is the fallback if the new
+     * value is not supported.
+     */
+    static class Snapshot {
+
+        final float zoom;
+        final float exposureCorrection;
+        final Flash flash;
+        final WhiteBalance whiteBalance;
+        final Hdr hdr;
+        final Location location;
+
+        Snapshot(@NonNull CameraController controller) {
+            zoom = controller.mZoomValue;
+            exposureCorrection = controller.mExposureCorrectionValue;
+            flash = controller.mFlash;
+            whiteBalance = controller.mWhiteBalance;
+            hdr = controller.mHdr;
+            location = controller.mLocation;
+        }
+
+        @Override
+        public String toString() {
+            return "zoom: " + zoom + ", exposureCorrection: " + exposureCorrection +
+                    ", flash: " + flash + ", whiteBalance: " + whiteBalance +
+                    ", hdr: " + hdr + ", location: " + location;
+        }
+    }
+
+    private Snapshot mSnapshot;
+    private long mStartTime;
+    private int mAttempts;
+
+    private int mRecoveredCount;
+    private int mFailedCount;
+    private int mLastAttempts;
+    private long mLastRecoveryTime;
+
+    /**
+     * Whether the given error means that the camera has died and can probably be opened again,
+     * that is, if it or one of its causes is a {@link CameraUnavailableException} with
+     * {@link CameraUnavailableException#REASON_SERVER_DIED}.
+     */
+    static boolean isRecoverable(@Nullable Throwable error) {
+        while (error != null) {
+            if (error instanceof CameraUnavailableException &&
+                    ((CameraUnavailableException) error).getReason() == CameraUnavailableException.REASON_SERVER_DIED) {
+                return true;
+            }
+            error = error.getCause();
+        }
+        return false;
+    }
+
+    // The delay before the given attempt, starting from 0.
+    static long getDelay(int attempt) {
+        return Math.min(MAX_DELAY, BASE_DELAY << Math.min(attempt, 16));
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    synchronized boolean isRecovering() {
+        return mSnapshot != null;
+    }
+
+    /**
+     * Starts a recovery. If one is already going on, the first snapshot and start time are kept,
+     * and the attempts go on.
+     */
+    synchronized void begin(@NonNull Snapshot snapshot) {
+        if (mSnapshot != null) return;
+        LOG.w("begin:", snapshot);
+        mSnapshot = snapshot;
+        mStartTime = now();
+        mAttempts = 0;
+    }
+
+    @Nullable
+    synchronized Snapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Counts a new attempt.
+     * @return the delay before it, or -1 if there are no attempts left
+     */
+    synchronized long nextAttempt() {
+        if (mSnapshot == null || mAttempts >= MAX_ATTEMPTS) return -1;
+        return getDelay(mAttempts++);
+    }
+
+    synchronized int getAttempts() {
+        return mAttempts;
+    }
+
+    /**
+     * Ends the recovery successfully.
+     * @return the time it took, in milliseconds
+     */
+    synchronized long succeed() {
+        long time = now() - mStartTime;
+        mRecoveredCount++;
+        mLastAttempts = mAttempts;
+        mLastRecoveryTime = time;
+        LOG.w("succeed:", "attempts:", mAttempts, "time:", time);
+        mSnapshot = null;
+        return time;
+    }
+
+    // Ends the recovery because there are no attempts left.
+    synchronized void fail() {
+        mFailedCount++;
+        LOG.w("fail:", "attempts:", mAttempts, "time:", now() - mStartTime);
+        mSnapshot = null;
+    }
+
+    // Ends the recovery because the camera was stopped.
+    synchronized void cancel() {
+        LOG.i("cancel:", "attempts:", mAttempts);
+        mSnapshot = null;
+    }
+
+    synchronized int getRecoveredCount() {
+        return mRecoveredCount;
+    }
+
+    synchronized int getFailedCount() {
+        return mFailedCount;
+    }
+
+    // Attempts needed by the last successful recovery.
+    synchronized int getLastAttempts() {
+        return mLastAttempts;
+    }
+
+    // Time taken by the last successful recovery, in milliseconds.
+    synchronized long getLastRecoveryTime() {
+        return mLastRecoveryTime;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "recovered: " + mRecoveredCount + ", failed: " + mFailedCount +
+                ", last: " + mLastRecoveryTime + "ms (" + mLastAttempts + " attempts)";
+    }
+}
@@ -7,11 +7,31 @@ package com.otaliastudios.cameraview;
  */
 public class CameraUnavailableException extends CameraException {
 
+    // possible values for this.reason
+    public final static int REASON_UNKNOWN = 0;
+    public final static int REASON_SERVER_DIED = 1;
+
+    private int reason;
+
     CameraUnavailableException(String message) {
-        super(message);
+        this(message, REASON_UNKNOWN, null);
     }
 
     CameraUnavailableException(String message, Throwable cause) {
+        this(message, REASON_UNKNOWN, cause);
+    }
+
+    CameraUnavailableException(String message, int reason, Throwable cause) {
         super(message, cause);
+        this.reason = reason;
+    }
+
+    /**
+     * Get the reason of the failure, if known. With REASON_SERVER_DIED,
+     * the camera can usually be opened again.
+     * @return one of the REASON_ constants
+     */
+    public int getReason() {
+        return reason;
     }
 }
\ No newline at end of file
@@ -10,8 +10,8 @@ import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.res.TypedArray;
 import android.graphics.PointF;
-import android.graphics.Rect;
 import android.graphics.YuvImage;
+import android.hardware.SensorManager;
 import android.location.Location;
 import android.media.MediaActionSound;
 import android.os.Build;
@@ -24,12 +24,12 @@ import android.view.MotionEvent;
 import android.view.ViewGroup;
 import android.widget.FrameLayout;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 import static android.view.View.MeasureSpec.AT_MOST;
 import static android.view.View.MeasureSpec.EXACTLY;
@@ -49,6 +49,8 @@ public class CameraView extends FrameLayout {
     final static int DEFAULT_JPEG_QUALITY = 100;
     final static boolean DEFAULT_CROP_OUTPUT = false;
     final static boolean DEFAULT_PLAY_SOUNDS = true;
+    // Orientation changes must be stable this long, so that holding the device near 45 degrees does not flip it.
+    final static long ORIENTATION_DEBOUNCE = 150;
 
     // Self managed parameters
     private int mJpegQuality;
@@ -74,8 +76,18 @@ public class CameraView extends FrameLayout {
 
     // Threading
     private Handler mUiHandler;
-    private WorkerHandler mWorkerHandler;
+    private Executor mWorkerExecutor;
     private WorkerHandler mFrameProcessorsHandler;
+    private FrameDispatcher mFrameDispatcher;
+    private volatile FramePreprocessor mFramePreprocessor;
+    private ExposureMeter mAutoExposureMeter;
+    private volatile int mAutoExposureTarget;
+    private final ExposureMeter.Listener mAutoExposureListener = new ExposureMeter.Listener() {
+        @Override
+        public void onStats(@NonNull ExposureStats stats) {
+            mCameraController.onExposureStats(stats, mAutoExposureTarget);
+        }
+    };
 
     /**
      *
@@ -168,8 +180,10 @@ public class CameraView extends FrameLayout {
             mCameraCallbacks = new Callbacks();
             mCameraController = instantiateCameraController(mCameraCallbacks);
             mUiHandler = new Handler(Looper.getMainLooper());
-            mWorkerHandler = WorkerHandler.get("CameraViewWorker");
-            mFrameProcessorsHandler = WorkerHandler.get("FrameProcessorsWorker");
+            // Serial, so that pictures are dispatched in the order they were taken.
+            mWorkerExecutor = mCameraController.mExecutors.getPictures();
+            mFrameProcessorsHandler = mCameraController.mExecutors.getFrames();
+            mFrameDispatcher = new FrameDispatcher(mCameraController.mExecutors.getProcessors());
 
             // Views
             mGridLinesLayout = new GridLinesLayout(context);
@@ -207,6 +221,7 @@ public class CameraView extends FrameLayout {
 
             if (!isInEditMode()) {
                 mOrientationHelper = new OrientationHelper(context, mCameraCallbacks);
+                mOrientationHelper.setDebounce(ORIENTATION_DEBOUNCE);
             }
         }
         catch (CameraException e) {
@@ -475,6 +490,43 @@ public class CameraView extends FrameLayout {
     }
 
 
+    /**
+     * Sets the smoothing applied to the speed of continuous gestures ({@link Gesture#PINCH},
+     * {@link Gesture#SCROLL_HORIZONTAL}, {@link Gesture#SCROLL_VERTICAL}), from 0
+     * (no smoothing) to 1 (excluded). Updates are applied at most once per display frame.
+     *
+     * @param smoothing the smoothing factor
+     */
+    public void setGestureSmoothing(float smoothing) {
+        mPinchGestureLayout.setSmoothing(smoothing);
+        mScrollGestureLayout.setSmoothing(smoothing);
+    }
+
+
+    /**
+     * Returns the smoothing applied to the speed of continuous gestures.
+     *
+     * @return the smoothing factor
+     * @see #setGestureSmoothing(float)
+     */
+    public float getGestureSmoothing() {
+        return mPinchGestureLayout.mBatcher.getSmoothing();
+    }
+
+
+    /**
+     * Sets whether continuous gestures should go further when they are fast.
+     * When false (the default), the camera value follows the finger linearly.
+     *
+     * @param accelerate whether to accelerate fast gestures
+     */
+    public void setGestureAcceleration(boolean accelerate) {
+        GestureBatcher.Curve curve = accelerate ? GestureBatcher.ACCELERATE : GestureBatcher.LINEAR;
+        mPinchGestureLayout.setCurve(curve);
+        mScrollGestureLayout.setCurve(curve);
+    }
+
+
     @Override
     public boolean onInterceptTouchEvent(MotionEvent ev) {
         return true; // Steal our own events.
@@ -487,12 +539,13 @@ public class CameraView extends FrameLayout {
 
         // Pass to our own GestureLayouts
         CameraOptions options = mCameraController.getCameraOptions(); // Non null
+        // Continuous gestures consume the event, but update at most once per frame.
         if (mPinchGestureLayout.onTouchEvent(event)) {
             LOG.i("onTouchEvent", "pinch!");
-            onGesture(mPinchGestureLayout, options);
+            if (mPinchGestureLayout.shouldUpdate(event)) onGesture(mPinchGestureLayout, options);
         } else if (mScrollGestureLayout.onTouchEvent(event)) {
             LOG.i("onTouchEvent", "scroll!");
-            onGesture(mScrollGestureLayout, options);
+            if (mScrollGestureLayout.shouldUpdate(event)) onGesture(mScrollGestureLayout, options);
         } else if (mTapGestureLayout.onTouchEvent(event)) {
             LOG.i("onTouchEvent", "tap!");
             onGesture(mTapGestureLayout, options);
@@ -696,6 +749,26 @@ public class CameraView extends FrameLayout {
     }
 
 
+    /**
+     * Lets the given {@link ExposureMeter} drive the exposure correction, so that the mean
+     * luma of preview frames gets close to the target. The correction moves by small steps,
+     * at most once per {@link ExposureMeter#setInterval(long)}, and is not raised if highlights
+     * are clipped. Pass null to stop. The meter must also be added with
+     * {@link #addFrameProcessor(FrameProcessor)}.
+     *
+     * If {@link CameraOptions#isExposureCorrectionSupported()} is false, this will have no effect.
+     *
+     * @param meter a meter, or null
+     * @param targetLuma the target mean luma, e.g. 118 for middle gray
+     */
+    public void setAutoExposure(@Nullable ExposureMeter meter, int targetLuma) {
+        if (mAutoExposureMeter != null) mAutoExposureMeter.removeListener(mAutoExposureListener);
+        mAutoExposureMeter = meter;
+        mAutoExposureTarget = targetLuma;
+        if (meter != null) meter.addListener(mAutoExposureListener);
+    }
+
+
     /**
      * Returns the current exposure correction value, typically 0
      * at start-up.
@@ -958,6 +1031,81 @@ public class CameraView extends FrameLayout {
     }
 
 
+    /**
+     * Returns how long it took the camera to lock focus, over the last autofocus
+     * passes, both requested (see {@link #startAutoFocus(float, float)}) and started by the
+     * camera itself in continuous focus modes. For example, pass 50 for the median
+     * or 90 for the 90th percentile.
+     *
+     * Pictures taken with {@link #capturePicture()} while the lens is moving wait for it to stop,
+     * so this is also a measure of the possible shutter delay.
+     *
+     * @param percentile the percentile, 0 ... 100
+     * @return time in milliseconds, or -1 if focus was never locked
+     */
+    public long getFocusLockTime(int percentile) {
+        return mCameraController.getFocusLockTime(percentile);
+    }
+
+
+    /**
+     * Returns the average time that camera operations (start, stop, parameter changes,
+     * captures...) spent waiting in queue before running, since this view was created.
+     *
+     * @return time in milliseconds
+     */
+    public long getAverageOperationLatency() {
+        return mCameraController.getAverageOperationLatency();
+    }
+
+
+    /**
+     * Returns the longest time that a camera operation spent waiting in queue before running,
+     * since this view was created.
+     *
+     * @return time in milliseconds
+     */
+    public long getMaxOperationLatency() {
+        return mCameraController.getMaxOperationLatency();
+    }
+
+
+    /**
+     * Returns how many parameter changes were skipped because a newer change of the same
+     * parameter (e.g. {@link #setZoom(float)}) was requested before they could run.
+     *
+     * @return the number of skipped changes
+     */
+    public int getCollapsedOperationCount() {
+        return mCameraController.getCollapsedOperationCount();
+    }
+
+
+    /**
+     * Returns how many camera operations were dropped because they could not start in time.
+     *
+     * @return the number of dropped operations
+     */
+    public int getExpiredOperationCount() {
+        return mCameraController.getExpiredOperationCount();
+    }
+
+
+    /**
+     * Sets focus and metering areas around the given points, without starting an autofocus
+     * process: the camera will use them for its continuous focus and exposure.
+     * This is meant to be called often, for instance by a {@link FrameProcessor} that tracks faces.
+     * Only the last call is applied, and the points array is copied, so it can be reused.
+     * At most 5 points are used. Pass null to go back to the default areas.
+     *
+     * @param points x0, y0, x1, y1, ... in view coordinates, or null
+     * @param count the number of points
+     */
+    public void setMeteringPoints(@Nullable float[] points, int count) {
+        mCameraController.setMeteringPoints(points, count);
+    }
+
+
     /**
      * Set the current session type to either picture or video.
      * When sessionType is video,
@@ -1171,6 +1319,56 @@ public class CameraView extends FrameLayout {
     }
 
 
+    /**
+     * Whether frame processors should run in parallel. By default, processors run one after
+     * the other, so each frame takes the sum of their times. In parallel mode, each frame
+     * is passed to all processors at once, and released when the slowest one returns.
+     *
+     * Processors still receive frames one at a time and in order, but they should not
+     * depend on each other: for example, {@link Frame#getSharpness()} is only available
+     * to processors added after the {@link SharpnessScorer} in serial mode.
+     *
+     * @param parallel whether to run processors in parallel
+     */
+    public void setFrameProcessingParallel(boolean parallel) {
+        mFrameDispatcher.setParallel(parallel);
+    }
+
+
+    /**
+     * Returns whether frame processors run in parallel.
+     * @see #setFrameProcessingParallel(boolean)
+     *
+     * @return whether processors run in parallel
+     */
+    public boolean getFrameProcessingParallel() {
+        return mFrameDispatcher.isParallel();
+    }
+
+
+    /**
+     * Sets a {@link FramePreprocessor} that will turn each preview frame into a model input,
+     * before frame processors are called. The result is available through {@link Frame#getTensor()}.
+     * Frames are not preprocessed if there are no frame processors.
+     *
+     * @param preprocessor a preprocessor, or null to disable
+     */
+    public void setFramePreprocessor(@Nullable FramePreprocessor preprocessor) {
+        mFramePreprocessor = preprocessor;
+    }
+
+
+    /**
+     * Returns the current {@link FramePreprocessor}, if any.
+     *
+     * @return the preprocessor, or null
+     */
+    @Nullable
+    public FramePreprocessor getFramePreprocessor() {
+        return mFramePreprocessor;
+    }
+
+
     /**
      * Asks the camera to capture an image of the current scene.
      * This will trigger {@link CameraListener#onPictureTaken(byte[])} if a listener
@@ -1201,6 +1399,24 @@ public class CameraView extends FrameLayout {
     }
 
 
+    /**
+     * Like {@link #captureSnapshot()}, but uses the sharpest frame seen by the given
+     * {@link SharpnessScorer} within its window, see {@link SharpnessScorer#setWindow(long)}.
+     * If there's no such frame, this falls back to {@link #captureSnapshot()}.
+     * The scorer must have been added with {@link #addFrameProcessor(FrameProcessor)}.
+     *
+     * @param scorer a scorer
+     */
+    public void captureSnapshot(@NonNull SharpnessScorer scorer) {
+        SharpnessScorer.Candidate best = scorer.takeBest(System.nanoTime());
+        if (best == null) {
+            captureSnapshot();
+        } else {
+            mCameraController.captureSnapshot(best.data, best.info);
+        }
+    }
+
+
     /**
      * Starts recording a video with selected options, in a file called
      * "video.mp4" in the default folder.
@@ -1261,12 +1477,109 @@ public class CameraView extends FrameLayout {
     }
 
 
+    /**
+     * Splits video recordings into multiple files, each one at most durationMillis long.
+     * Every completed segment is a playable video, so a long recording is not lost if the
+     * process is killed. Completed segments are passed to
+     * {@link CameraListener#onVideoSegmentTaken(File, int)}.
+     *
+     * On API 26+ the recorder switches file without dropping frames, and the duration is
+     * estimated from the video bit rate. On older devices, a few frames are lost between segments.
+     * This takes place starting from the next video. Pass 0 to disable.
+     *
+     * @param durationMillis max segment duration, or 0
+     */
+    public void setVideoMaxSegmentDuration(long durationMillis) {
+        mCameraController.setVideoMaxSegmentDuration(Math.max(durationMillis, 0));
+    }
+
+
+    /**
+     * Returns the max segment duration set with {@link #setVideoMaxSegmentDuration(long)}.
+     * @return the max segment duration, or 0
+     */
+    public long getVideoMaxSegmentDuration() {
+        return mCameraController.getVideoMaxSegmentDuration();
+    }
+
+
+    /**
+     * Splits video recordings into multiple files, each one at most sizeInBytes big.
+     * See {@link #setVideoMaxSegmentDuration(long)} for details.
+     * This takes place starting from the next video. Pass 0 to disable.
+     *
+     * @param sizeInBytes max segment size, or 0
+     */
+    public void setVideoMaxSegmentSize(long sizeInBytes) {
+        mCameraController.setVideoMaxSegmentSize(Math.max(sizeInBytes, 0));
+    }
+
+
+    /**
+     * Returns the max segment size set with {@link #setVideoMaxSegmentSize(long)}.
+     * @return the max segment size, or 0
+     */
+    public long getVideoMaxSegmentSize() {
+        return mCameraController.getVideoMaxSegmentSize();
+    }
+
+
+    /**
+     * Keeps the last preRollMillis of preview encoded in memory, so that
+     * {@link #startCapturingVideo(File)} can include what happened before it was called.
+     * The buffered video is written to the file first, then recording goes on as usual.
+     *
+     * This only works in {@link SessionType#VIDEO} sessions on API 18+.
+     * Pre-roll videos have no audio track and are not split into segments.
+     * Pass 0 to disable.
+     *
+     * @param preRollMillis how much video to keep, or 0
+     */
+    public void setVideoPreRoll(long preRollMillis) {
+        mCameraController.setVideoPreRoll(Math.max(preRollMillis, 0));
+    }
+
+
+    /**
+     * Returns the value set with {@link #setVideoPreRoll(long)}.
+     * @return the pre-roll duration, or 0
+     */
+    public long getVideoPreRoll() {
+        return mCameraController.getVideoPreRoll();
+    }
+
+
+    /**
+     * Returns how many bytes of encoded video are currently kept for the pre-roll.
+     * @return the pre-roll memory usage in bytes
+     */
+    public int getVideoPreRollMemoryUsage() {
+        return mCameraController.getVideoPreRollMemoryUsage();
+    }
+
+
+    /**
+     * Returns how many key frame aligned segments are currently kept for the pre-roll.
+     * Old video is dropped one segment at a time, so the pre-roll can be slightly
+     * longer than requested.
+     * @return the number of segments
+     */
+    public int getVideoPreRollSegmentCount() {
+        return mCameraController.getVideoPreRollSegmentCount();
+    }
+
+
     // TODO: pauseCapturingVideo and resumeCapturingVideo. There is mediarecorder.pause(), but API 24...
 
 
     /**
      * Stops capturing video, if there was a video record going on.
-     * This will fire {@link CameraListener#onVideoTaken(File)}.
+     * This will fire {@link CameraListener#onVideoFinalizing(File)} as soon as recording stops,
+     * then {@link CameraListener#onVideoTaken(File)} when the file is complete.
+     * The file is finalized in a background thread, so this call and parameter changes
+     * (zoom, flash, ...) do not wait for it. Operations that need the camera back,
+     * like {@link #stop()}, {@link #setFacing(Facing)} or the next {@link #startCapturingVideo(File)},
+     * wait until the file is complete.
      */
     public void stopCapturingVideo() {
         mCameraController.endVideo();
@@ -1313,6 +1626,31 @@ public class CameraView extends FrameLayout {
     }
 
 
+    /**
+     * Returns how many bytes this instance is using for preview buffers
+     * and capture (e.g. the video pre-roll).
+     *
+     * @see CameraUtils#setMemoryBudget(long)
+     * @return the memory usage in bytes
+     */
+    public long getMemoryUsage() {
+        return mCameraController.getMemoryUsage();
+    }
+
+
+    /**
+     * Returns how many bytes of the process memory budget this instance can use.
+     * The budget is split in equal shares among all CameraView instances
+     * that were not destroyed.
+     *
+     * @see CameraUtils#setMemoryBudget(long)
+     * @return the memory share in bytes
+     */
+    public long getMemoryShare() {
+        return mCameraController.getMemoryShare();
+    }
+
+
     // If we end up here, we're in M.
     @TargetApi(Build.VERSION_CODES.M)
     private void requestPermissions(boolean requestCamera, boolean requestAudio) {
@@ -1368,6 +1706,29 @@ public class CameraView extends FrameLayout {
         return mPlaySounds;
     }
 
+
+    /**
+     * Sets the rate of the orientation sensor, used to compute the device orientation.
+     * This must be one of SensorManager.SENSOR_DELAY_NORMAL (the default), SENSOR_DELAY_UI,
+     * SENSOR_DELAY_GAME or SENSOR_DELAY_FASTEST. Orientation changes are filtered anyway,
+     * so faster rates only make the detection a little quicker.
+     *
+     * @param rate the sensor rate
+     */
+    public void setOrientationSensorRate(int rate) {
+        if (mOrientationHelper != null) mOrientationHelper.setSensorRate(getContext(), rate);
+    }
+
+    /**
+     * Returns the rate of the orientation sensor.
+     *
+     * @see #setOrientationSensorRate(int)
+     * @return the sensor rate
+     */
+    public int getOrientationSensorRate() {
+        return mOrientationHelper == null ? SensorManager.SENSOR_DELAY_NORMAL : mOrientationHelper.getSensorRate();
+    }
+
     //endregion
 
     //region Callbacks and dispatching
@@ -1375,11 +1736,14 @@ public class CameraView extends FrameLayout {
     interface CameraCallbacks extends OrientationHelper.Callback {
         void dispatchOnCameraOpened(CameraOptions options);
         void dispatchOnCameraClosed();
+        void dispatchOnCameraRecovered(int attempts, long millis);
         void onCameraPreviewSizeChanged();
         void onShutter(boolean shouldPlaySound);
         void processImage(byte[] jpeg, boolean consistentWithView, boolean flipHorizontally);
-        void processSnapshot(YuvImage image, boolean consistentWithView, boolean flipHorizontally);
+        void processSnapshot(YuvImage image, boolean consistentWithView, boolean flipHorizontally, int rotation);
         void dispatchOnVideoTaken(File file);
+        void dispatchOnVideoSegmentTaken(File segment, int index);
+        void dispatchOnVideoFinalizing(File video);
         void dispatchOnFocusStart(@Nullable Gesture trigger, PointF where);
         void dispatchOnFocusEnd(@Nullable Gesture trigger, boolean success, PointF where);
         void dispatchOnZoomChanged(final float newValue, final PointF[] fingers);
@@ -1420,6 +1784,19 @@ public class CameraView extends FrameLayout {
             });
         }
 
+        @Override
+        public void dispatchOnCameraRecovered(final int attempts, final long millis) {
+            mLogger.i("dispatchOnCameraRecovered", attempts, millis);
+            mUiHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (CameraListener listener : mListeners) {
+                        listener.onCameraRecovered(attempts, millis);
+                    }
+                }
+            });
+        }
+
         @Override
         public void onCameraPreviewSizeChanged() {
             mLogger.i("onCameraPreviewSizeChanged");
@@ -1463,7 +1840,7 @@ public class CameraView extends FrameLayout {
         @Override
         public void processImage(final byte[] jpeg, final boolean consistentWithView, final boolean flipHorizontally) {
             mLogger.i("processImage");
-            mWorkerHandler.post(new Runnable() {
+            mWorkerExecutor.execute(new Runnable() {
                 @Override
                 public void run() {
                     byte[] jpeg2 = jpeg;
@@ -1482,26 +1859,31 @@ public class CameraView extends FrameLayout {
             });
         }
 
+        /**
+         * The image is not rotated: rotation is written as the EXIF orientation, together with
+         * the time and location, so decoding it with {@link CameraUtils} gives the right result.
+         *
+         * @param rotation the clock-wise rotation that makes the image look like the output
+         */
         @Override
-        public void processSnapshot(final YuvImage yuv, final boolean consistentWithView, boolean flipHorizontally) {
+        public void processSnapshot(final YuvImage yuv, final boolean consistentWithView, boolean flipHorizontally, final int rotation) {
             mLogger.i("processSnapshot");
-            mWorkerHandler.post(new Runnable() {
+            final long time = System.currentTimeMillis();
+            final Location location = mCameraController.getLocation();
+            mWorkerExecutor.execute(new Runnable() {
                 @Override
                 public void run() {
-                    byte[] jpeg;
+                    AspectRatio targetRatio = null;
                     if (mCropOutput && mCameraPreview.isCropping()) {
                         int w = consistentWithView ? getWidth() : getHeight();
                         int h = consistentWithView ? getHeight() : getWidth();
-                        AspectRatio targetRatio = AspectRatio.of(w, h);
+                        // The crop is applied before the rotation.
+                        targetRatio = rotation % 180 == 0 ? AspectRatio.of(w, h) : AspectRatio.of(h, w);
                         mLogger.i("processSnapshot", "is consistent?", consistentWithView);
                         mLogger.i("processSnapshot", "viewWidth?", getWidth(), "viewHeight?", getHeight());
-                        jpeg = CropHelper.cropToJpeg(yuv, targetRatio, mJpegQuality);
-                    } else {
-                        ByteArrayOutputStream out = new ByteArrayOutputStream();
-                        yuv.compressToJpeg(new Rect(0, 0, yuv.getWidth(), yuv.getHeight()), mJpegQuality, out);
-                        jpeg = out.toByteArray();
                     }
-                    dispatchOnPictureTaken(jpeg);
+                    byte[] exif = ExifWriter.createSegment(ExifUtils.getOrientationTag(rotation, false), time, location);
+                    dispatchOnPictureTaken(CropHelper.toJpeg(yuv, targetRatio, mJpegQuality, exif));
                 }
             });
         }
@@ -1532,6 +1914,32 @@ public class CameraView extends FrameLayout {
             });
         }
 
+        @Override
+        public void dispatchOnVideoFinalizing(final File video) {
+            mLogger.i("dispatchOnVideoFinalizing", video);
+            mUiHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (CameraListener listener : mListeners) {
+                        listener.onVideoFinalizing(video);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void dispatchOnVideoSegmentTaken(final File segment, final int index) {
+            mLogger.i("dispatchOnVideoSegmentTaken", segment, index);
+            mUiHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (CameraListener listener : mListeners) {
+                        listener.onVideoSegmentTaken(segment, index);
+                    }
+                }
+            });
+        }
+
         @Override
         public void dispatchOnFocusStart(@Nullable final Gesture gesture, final PointF point) {
             mLogger.i("dispatchOnFocusStart", gesture, point);
@@ -1673,10 +2081,9 @@ public class CameraView extends FrameLayout {
                 mFrameProcessorsHandler.post(new Runnable() {
                     @Override
                     public void run() {
-                        for (FrameProcessor processor : mFrameProcessors) {
-                            processor.process(frame);
-                        }
-                        frame.release();
+                        FramePreprocessor preprocessor = mFramePreprocessor;
+                        if (preprocessor != null) preprocessor.attach(frame);
+                        mFrameDispatcher.dispatch(frame, mFrameProcessors);
                     }
                 });
             }
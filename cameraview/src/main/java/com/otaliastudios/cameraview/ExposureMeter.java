@@ -0,0 +1,122 @@
+package com.otaliastudios.cameraview;
+
+import android.graphics.ImageFormat;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A {@link FrameProcessor} that computes luma statistics: a 256-bin histogram, mean,
+ * percentiles and clipping, see {@link ExposureStats}.
+ *
+ * Statistics are published at most once per {@link #setInterval(long)}, and frames in between
+ * are skipped, not measured. Samples are taken every {@link #setStep(int)} pixels on both axes.
+ * The only allocation is the published {@link ExposureStats}.
+ *
+ * The meter can also drive the exposure correction, see {@link CameraView#setAutoExposure(ExposureMeter, int)}.
+ */
+public class ExposureMeter implements FrameProcessor {
+
+    /**
+     * Receives statistics.
+     */
+    public interface Listener {
+
+        /**
+         * Called when new statistics are available, from the frame processing thread.
+         *
+         * @param stats the statistics
+         */
+        @WorkerThread
+        void onStats(@NonNull ExposureStats stats);
+    }
+
+    private volatile int mStep = 4;
+    private volatile long mIntervalNanos = 100 * 1000000L;
+    private volatile ExposureStats mStats;
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+    private final int[] mHistogram = new int[256];
+
+    /**
+     * Sets the sampling step. Defaults to 4, that is, 1/16 of the pixels are looked at.
+     *
+     * @param step the step in pixels
+     */
+    public void setStep(int step) {
+        if (step < 1) throw new IllegalArgumentException("Step should be >= 1");
+        mStep = step;
+    }
+
+    public int getStep() {
+        return mStep;
+    }
+
+    /**
+     * Sets the minimum time between two statistics. Defaults to 100 milliseconds.
+     * Use 0 to measure every frame.
+     *
+     * @param millis the interval
+     */
+    public void setInterval(long millis) {
+        mIntervalNanos = Math.max(0, millis) * 1000000L;
+    }
+
+    public long getInterval() {
+        return mIntervalNanos / 1000000L;
+    }
+
+    public void addListener(@NonNull Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(@NonNull Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Returns the last published statistics, or null if none.
+     *
+     * @return the last statistics
+     */
+    @Nullable
+    public ExposureStats getStats() {
+        return mStats;
+    }
+
+    @Override
+    @WorkerThread
+    public void process(@NonNull Frame frame) {
+        if (frame.getFormat() != ImageFormat.NV21 || frame.getData() == null) return;
+        ExposureStats last = mStats;
+        long timestamp = frame.getTimestamp();
+        if (last != null && timestamp - last.getTimestamp() < mIntervalNanos) return;
+
+        Size size = frame.getSize();
+        long sum = measure(frame.getData(), size.getWidth(), size.getHeight(), mStep, mHistogram);
+        ExposureStats stats = new ExposureStats(mHistogram, sum, timestamp);
+        mStats = stats;
+        for (Listener listener : mListeners) {
+            listener.onStats(stats);
+        }
+    }
+
+    // Fills the histogram with luma samples and returns their sum.
+    static long measure(@NonNull byte[] luma, int width, int height, int step, @NonNull int[] histogram) {
+        Arrays.fill(histogram, 0);
+        long sum = 0;
+        // Start from the middle of the first cell, so that borders are not favored.
+        int offset = step / 2;
+        for (int y = offset; y < height; y += step) {
+            for (int i = y * width + offset, end = y * width + width; i < end; i += step) {
+                int value = luma[i] & 0xFF;
+                histogram[value]++;
+                sum += value;
+            }
+        }
+        return sum;
+    }
+}
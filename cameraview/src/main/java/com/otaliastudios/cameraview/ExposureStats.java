@@ -0,0 +1,130 @@
+package com.otaliastudios.cameraview;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Luma statistics of a preview frame, published by {@link ExposureMeter}.
+ * This is immutable, so it can be kept and passed to other threads.
+ */
+public class ExposureStats {
+
+    /**
+     * Levels up to this one count as clipped shadows.
+     */
+    public final static int SHADOW_LEVEL = 8;
+
+    /**
+     * Levels from this one count as clipped highlights.
+     */
+    public final static int HIGHLIGHT_LEVEL = 247;
+
+    private final int[] mHistogram = new int[256];
+    private final int mCount;
+    private final float mMean;
+    private final long mTimestamp;
+
+    ExposureStats(@NonNull int[] histogram, long sum, long timestamp) {
+        System.arraycopy(histogram, 0, mHistogram, 0, 256);
+        int count = 0;
+        for (int value : histogram) count += value;
+        mCount = count;
+        mMean = count == 0 ? 0 : (float) sum / count;
+        mTimestamp = timestamp;
+    }
+
+    /**
+     * Returns the number of sampled pixels.
+     *
+     * @return the sample count
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the number of sampled pixels with the given luma.
+     *
+     * @param level the luma level, 0 ... 255
+     * @return the bin count
+     */
+    public int getBin(int level) {
+        return mHistogram[level];
+    }
+
+    /**
+     * Copies the 256 bins of the histogram into the given array.
+     *
+     * @param histogram an array of at least 256 elements
+     */
+    public void getHistogram(@NonNull int[] histogram) {
+        System.arraycopy(mHistogram, 0, histogram, 0, 256);
+    }
+
+    /**
+     * Returns the mean luma, in 0 ... 255.
+     *
+     * @return the mean
+     */
+    public float getMean() {
+        return mMean;
+    }
+
+    /**
+     * Returns the luma level below which the given percentage of samples falls.
+     * For example, 50 returns the median.
+     *
+     * @param percentile 0 ... 100
+     * @return the luma level, or 0 if there are no samples
+     */
+    public int getPercentile(int percentile) {
+        percentile = Math.max(0, Math.min(100, percentile));
+        long target = Math.max(1, ((long) mCount * percentile + 99) / 100);
+        long cumulative = 0;
+        for (int level = 0; level < 256; level++) {
+            cumulative += mHistogram[level];
+            if (cumulative >= target) return level;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the fraction of samples at or below {@link #SHADOW_LEVEL}.
+     *
+     * @return the clipped shadows fraction
+     */
+    public float getShadowFraction() {
+        return fraction(0, SHADOW_LEVEL);
+    }
+
+    /**
+     * Returns the fraction of samples at or above {@link #HIGHLIGHT_LEVEL}.
+     *
+     * @return the clipped highlights fraction
+     */
+    public float getHighlightFraction() {
+        return fraction(HIGHLIGHT_LEVEL, 255);
+    }
+
+    private float fraction(int from, int to) {
+        if (mCount == 0) return 0;
+        int count = 0;
+        for (int level = from; level <= to; level++) count += mHistogram[level];
+        return (float) count / mCount;
+    }
+
+    /**
+     * Returns the timestamp of the frame, in the {@link System#nanoTime()} reference.
+     *
+     * @return the timestamp in nanoseconds
+     * @see Frame#getTimestamp()
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "ExposureStats(samples: " + mCount + ", mean: " + mMean + ", median: " + getPercentile(50)
+                + ", shadows: " + getShadowFraction() + ", highlights: " + getHighlightFraction() + ")";
+    }
+}
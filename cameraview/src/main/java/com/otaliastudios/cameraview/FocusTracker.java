@@ -0,0 +1,147 @@
+package com.otaliastudios.cameraview;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of the focus state, so that captures can avoid shooting while the lens is moving,
+ * and avoid triggering focus passes that are not needed. The controller feeds events:
+ *
+ * - {@link #onModeChanged(boolean, boolean)} when the focus mode is applied.
+ * - {@link #onScanStart(long)} when an autofocus pass starts, either requested or, in continuous
+ *   modes, started by the camera itself.
+ * - {@link #onScanEnd(long, boolean)} when it ends.
+ *
+ * The durations of successful scans are kept, so that the time-to-lock distribution
+ * can be inspected with {@link #getLockTime(int)}.
+ *
+ * All methods are synchronized: events come from the camera thread, metrics are read from anywhere.
+ */
+class FocusTracker {
+
+    // Focus can not be moved (fixed, infinity), or the camera is closed.
+    final static int STATE_IDLE = 0;
+    // The camera is in a continuous mode, and we don't know yet if it's focused.
+    final static int STATE_CONTINUOUS = 1;
+    // The lens is moving.
+    final static int STATE_SCANNING = 2;
+    // The last scan succeeded, and the lens has not moved since.
+    final static int STATE_LOCKED = 3;
+    // The last scan failed, or no scan happened yet in a mode where the camera does not focus by itself.
+    final static int STATE_FAILED = 4;
+
+    // How many lock times to keep.
+    final static int HISTORY_SIZE = 64;
+
+    private int mState = STATE_IDLE;
+    private boolean mContinuous;
+    private boolean mCanFocus;
+    private long mScanStartTime;
+
+    private final long[] mLockTimes = new long[HISTORY_SIZE];
+    private final long[] mSortedLockTimes = new long[HISTORY_SIZE];
+    private int mLockTimesIndex;
+    private int mLockTimesCount;
+    private int mLockCount;
+    private int mFailCount;
+    private int mSkippedCount;
+
+    /**
+     * Called when a focus mode is applied.
+     *
+     * @param canFocus whether the lens can move in this mode
+     * @param continuous whether the camera focuses by itself in this mode
+     */
+    synchronized void onModeChanged(boolean canFocus, boolean continuous) {
+        mCanFocus = canFocus;
+        mContinuous = canFocus && continuous;
+        mState = !canFocus ? STATE_IDLE : continuous ? STATE_CONTINUOUS : STATE_FAILED;
+    }
+
+    synchronized void onScanStart(long timeMillis) {
+        if (!mCanFocus) return;
+        mState = STATE_SCANNING;
+        mScanStartTime = timeMillis;
+    }
+
+    synchronized void onScanEnd(long timeMillis, boolean success) {
+        if (mState != STATE_SCANNING) return;
+        if (success) {
+            mState = STATE_LOCKED;
+            mLockCount++;
+            mLockTimes[mLockTimesIndex] = Math.max(0, timeMillis - mScanStartTime);
+            mLockTimesIndex = (mLockTimesIndex + 1) % HISTORY_SIZE;
+            mLockTimesCount = Math.min(mLockTimesCount + 1, HISTORY_SIZE);
+        } else {
+            mState = STATE_FAILED;
+            mFailCount++;
+        }
+    }
+
+    // Called when the camera is closed.
+    synchronized void reset() {
+        mState = STATE_IDLE;
+        mCanFocus = false;
+        mContinuous = false;
+    }
+
+    synchronized int getState() {
+        return mState;
+    }
+
+    synchronized boolean isScanning() {
+        return mState == STATE_SCANNING;
+    }
+
+    synchronized boolean isContinuous() {
+        return mContinuous;
+    }
+
+    /**
+     * Whether a capture should wait for the current scan to end.
+     * If the focus is locked, or the camera can't focus, there's nothing to wait for. If the last
+     * scan failed, another pass would most probably fail as well, so we don't trigger one.
+     * When this returns false, the capture is counted as a skipped focus pass.
+     *
+     * @return true if the capture should wait
+     */
+    synchronized boolean shouldWaitBeforeCapture() {
+        if (mState == STATE_SCANNING) return true;
+        if (mCanFocus) mSkippedCount++;
+        return false;
+    }
+
+    synchronized int getLockCount() {
+        return mLockCount;
+    }
+
+    synchronized int getFailCount() {
+        return mFailCount;
+    }
+
+    // Captures that were taken without waiting for focus.
+    synchronized int getSkippedCount() {
+        return mSkippedCount;
+    }
+
+    /**
+     * Returns the given percentile of the time it took to lock focus, over the last
+     * {@link #HISTORY_SIZE} successful scans.
+     *
+     * @param percentile 0 ... 100, e.g. 50 for the median
+     * @return time in milliseconds, or -1 if no scan succeeded yet
+     */
+    synchronized long getLockTime(int percentile) {
+        if (mLockTimesCount == 0) return -1;
+        percentile = Math.max(0, Math.min(100, percentile));
+        System.arraycopy(mLockTimes, 0, mSortedLockTimes, 0, mLockTimesCount);
+        Arrays.sort(mSortedLockTimes, 0, mLockTimesCount);
+        int index = (int) Math.ceil(percentile / 100D * mLockTimesCount) - 1;
+        return mSortedLockTimes[Math.max(0, index)];
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "state: " + mState + ", locks: " + mLockCount + ", fails: " + mFailCount +
+                ", skipped: " + mSkippedCount + ", median lock time: " + getLockTime(50);
+    }
+}
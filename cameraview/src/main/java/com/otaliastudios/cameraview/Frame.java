@@ -1,41 +1,57 @@
 package com.otaliastudios.cameraview;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * A preview frame to be processed by {@link FrameProcessor}s.
  */
 public class Frame {
 
+    // Difference between the epoch and the monotonic clock, in milliseconds. Used by getTime().
+    private final static long EPOCH_OFFSET = System.currentTimeMillis() - System.nanoTime() / 1000000L;
+
     /* for tests */ FrameManager mManager;
 
     private byte[] mData = null;
-    private long mTime = -1;
-    private int mRotation = 0;
-    private Size mSize = null;
-    private int mFormat = -1;
+    private long mTimestamp = -1;
+    private FrameInfo mInfo = null;
+    private ByteBuffer mTensor = null;
+    private FramePreprocessor mTensorOwner = null;
+    private float mSharpness = -1;
 
     Frame(@NonNull FrameManager manager) {
         mManager = manager;
     }
 
-    void set(byte[] data, long time, int rotation, Size size, int format) {
+    void set(byte[] data, long timestamp, @Nullable FrameInfo info) {
         this.mData = data;
-        this.mTime = time;
-        this.mRotation = rotation;
-        this.mSize = size;
-        this.mFormat = format;
+        this.mTimestamp = timestamp;
+        this.mInfo = info;
+    }
+
+    void setSharpness(float sharpness) {
+        this.mSharpness = sharpness;
+    }
+
+    // The owner gets the tensor back on release.
+    void setTensor(@Nullable ByteBuffer tensor, @Nullable FramePreprocessor owner) {
+        this.mTensor = tensor;
+        this.mTensorOwner = owner;
     }
 
     @Override
     public boolean equals(Object obj) {
         // We want a super fast implementation here, do not compare arrays.
-        return obj instanceof Frame && ((Frame) obj).mTime == mTime;
+        return obj instanceof Frame && ((Frame) obj).mTimestamp == mTimestamp;
     }
 
     /**
      * Clones the frame, returning a frozen content that will not be overwritten.
-     * This can be kept or safely passed to other threads.
+     * This can be kept or safely passed to other threads. The tensor, if any, is copied as well.
      * Using freeze without clearing with {@link #release()} can result in memory leaks.
      *
      * @return a frozen Frame
@@ -44,7 +60,14 @@ public class Frame {
         byte[] data = new byte[mData.length];
         System.arraycopy(mData, 0, data, 0, mData.length);
         Frame other = new Frame(mManager);
-        other.set(data, mTime, mRotation, mSize, mFormat);
+        other.set(data, mTimestamp, mInfo);
+        other.setSharpness(mSharpness);
+        if (mTensor != null) {
+            ByteBuffer tensor = ByteBuffer.allocateDirect(mTensor.capacity()).order(ByteOrder.nativeOrder());
+            tensor.put(mTensor.duplicate());
+            tensor.clear();
+            other.setTensor(tensor, null);
+        }
         return other;
     }
 
@@ -58,11 +81,16 @@ public class Frame {
             mManager.onFrameReleased(this);
         }
 
+        if (mTensorOwner != null) {
+            mTensorOwner.recycle(mTensor);
+        }
+
         mData = null;
-        mRotation = 0;
-        mTime = -1;
-        mSize = null;
-        mFormat = -1;
+        mTimestamp = -1;
+        mInfo = null;
+        mTensor = null;
+        mTensorOwner = null;
+        mSharpness = -1;
     }
 
     // Once this is called, this instance is not usable anymore.
@@ -78,14 +106,60 @@ public class Frame {
         return mData;
     }
 
+    /**
+     * Returns the output of the {@link FramePreprocessor} set with
+     * {@link CameraView#setFramePreprocessor(FramePreprocessor)}, or null if there's none.
+     * The buffer is reused when the frame is released, so it should not be kept:
+     * use {@link #freeze()} if needed.
+     *
+     * @return the tensor buffer, or null
+     */
+    @Nullable
+    public ByteBuffer getTensor() {
+        return mTensor;
+    }
+
+    /**
+     * Returns the sharpness score computed by a {@link SharpnessScorer} that processed this
+     * frame before, or -1 if there's none.
+     *
+     * @return the sharpness score, or -1
+     */
+    public float getSharpness() {
+        return mSharpness;
+    }
+
     /**
      * Returns the milliseconds epoch for this frame,
      * in the {@link System#currentTimeMillis()} reference.
+     * This is derived from {@link #getTimestamp()}: prefer that one to measure intervals.
      *
      * @return time data
      */
     public long getTime() {
-        return mTime;
+        return mTimestamp == -1 ? -1 : mTimestamp / 1000000L + EPOCH_OFFSET;
+    }
+
+    /**
+     * Returns the time this frame was received, in nanoseconds, in the
+     * {@link System#nanoTime()} reference. This clock is monotonic, so it's safe to measure
+     * intervals and latency with it.
+     *
+     * @return timestamp in nanoseconds
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * Returns the configuration of this frame. The same instance is shared by all frames
+     * of the session, until the configuration or the device orientation change.
+     *
+     * @return frame info
+     */
+    @Nullable
+    public FrameInfo getInfo() {
+        return mInfo;
     }
 
     /**
@@ -96,7 +170,7 @@ public class Frame {
      * @return clock-wise rotation
      */
     public int getRotation() {
-        return mRotation;
+        return mInfo == null ? 0 : mInfo.getRotation();
     }
 
     /**
@@ -105,7 +179,7 @@ public class Frame {
      * @return frame size
      */
     public Size getSize() {
-        return mSize;
+        return mInfo == null ? null : mInfo.getSize();
     }
 
     /**
@@ -117,6 +191,6 @@ public class Frame {
      * @see android.graphics.ImageFormat
      */
     public int getFormat() {
-        return mFormat;
+        return mInfo == null ? -1 : mInfo.getFormat();
     }
 }
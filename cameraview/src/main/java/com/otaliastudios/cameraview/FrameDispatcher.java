@@ -0,0 +1,153 @@
+package com.otaliastudios.cameraview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs frame processors on a frame, then releases it.
+ *
+ * In serial mode, processors run one after the other in the calling thread, so each one sees
+ * what the previous ones did, e.g. {@link Frame#getSharpness()}.
+ *
+ * In parallel mode, processors are fanned out to the executor, and the calling thread runs the
+ * last one and waits for all of them before releasing the frame. Processors only read the frame,
+ * so they can share it. Since the calling thread is blocked until all are done, each processor
+ * still sees frames one at a time and in order, and the buffer only goes back to the
+ * {@link FrameManager} after the last processor returned.
+ *
+ * Tasks are reused, so nothing is allocated per frame.
+ */
+class FrameDispatcher {
+
+    private final static String TAG = FrameDispatcher.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    private final Executor mExecutor;
+    private volatile boolean mParallel;
+
+    private Task[] mTasks = new Task[0];
+    private final Object mLock = new Object();
+    private int mPending;
+    private RuntimeException mError;
+
+    private long mLastLatencyNanos;
+
+    FrameDispatcher(@NonNull Executor executor) {
+        mExecutor = executor;
+    }
+
+    void setParallel(boolean parallel) {
+        mParallel = parallel;
+    }
+
+    boolean isParallel() {
+        return mParallel;
+    }
+
+    // Time spent in the last dispatch, in nanoseconds.
+    long getLastLatency() {
+        return mLastLatencyNanos;
+    }
+
+    /**
+     * Runs the processors and releases the frame. Should always be called from the same thread.
+     *
+     * @param frame the frame
+     * @param processors the processors
+     */
+    @WorkerThread
+    void dispatch(@NonNull Frame frame, @NonNull List<FrameProcessor> processors) {
+        long start = System.nanoTime();
+        try {
+            if (mParallel && processors.size() > 1) {
+                fanOut(frame, processors);
+            } else {
+                for (FrameProcessor processor : processors) {
+                    processor.process(frame);
+                }
+            }
+        } finally {
+            frame.release();
+            mLastLatencyNanos = System.nanoTime() - start;
+        }
+    }
+
+    private void fanOut(@NonNull Frame frame, @NonNull List<FrameProcessor> processors) {
+        // The list might change while we iterate, so count here.
+        int count = 0;
+        for (FrameProcessor processor : processors) {
+            if (count == mTasks.length) grow();
+            mTasks[count++].set(processor, frame);
+        }
+        synchronized (mLock) {
+            mPending = count;
+            mError = null;
+        }
+        for (int i = 0; i < count - 1; i++) {
+            try {
+                mExecutor.execute(mTasks[i]);
+            } catch (RejectedExecutionException e) {
+                LOG.w("fanOut:", "Executor rejected the task. Running here.");
+                mTasks[i].run();
+            }
+        }
+        if (count > 0) mTasks[count - 1].run();
+
+        // Join.
+        boolean interrupted = false;
+        RuntimeException error;
+        synchronized (mLock) {
+            while (mPending > 0) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    // Can't release the frame while others are reading it.
+                    interrupted = true;
+                }
+            }
+            error = mError;
+            mError = null;
+        }
+        for (int i = 0; i < count; i++) mTasks[i].set(null, null);
+        if (interrupted) Thread.currentThread().interrupt();
+        if (error != null) throw error;
+    }
+
+    private void grow() {
+        Task[] tasks = new Task[Math.max(4, mTasks.length * 2)];
+        System.arraycopy(mTasks, 0, tasks, 0, mTasks.length);
+        for (int i = mTasks.length; i < tasks.length; i++) tasks[i] = new Task();
+        mTasks = tasks;
+    }
+
+    private class Task implements Runnable {
+        // Written before the task is posted, which makes them visible to the executor thread.
+        private FrameProcessor mProcessor;
+        private Frame mFrame;
+
+        void set(FrameProcessor processor, Frame frame) {
+            mProcessor = processor;
+            mFrame = frame;
+        }
+
+        @Override
+        public void run() {
+            RuntimeException error = null;
+            try {
+                mProcessor.process(mFrame);
+            } catch (RuntimeException e) {
+                error = e;
+            } finally {
+                synchronized (mLock) {
+                    if (error != null && mError == null) mError = error;
+                    mPending--;
+                    mLock.notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.otaliastudios.cameraview;
+
+import android.graphics.Rect;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The configuration shared by all {@link Frame}s of a preview session: size, format, rotation,
+ * facing and crop. This is immutable, and a new instance is only created when the configuration
+ * or the device orientation change, so processors can compare instances with ==
+ * to detect changes.
+ */
+public class FrameInfo {
+
+    private final Size mSize;
+    private final int mFormat;
+    private final int mRotation;
+    private final Facing mFacing;
+    private final Rect mCrop;
+
+    FrameInfo(@NonNull Size size, int format, int rotation, @NonNull Facing facing, @Nullable Rect crop) {
+        mSize = size;
+        mFormat = format;
+        mRotation = rotation;
+        mFacing = facing;
+        mCrop = crop;
+    }
+
+    // Whether this instance can be reused for the given configuration.
+    boolean matches(@NonNull Size size, int format, int rotation, @NonNull Facing facing, @Nullable Rect crop) {
+        return mSize.equals(size) && mFormat == format && mRotation == rotation && mFacing == facing &&
+                (mCrop == null ? crop == null : mCrop.equals(crop));
+    }
+
+    /**
+     * Returns the frame size.
+     *
+     * @return frame size
+     */
+    @NonNull
+    public Size getSize() {
+        return mSize;
+    }
+
+    /**
+     * Returns the data format, in one of the
+     * {@link android.graphics.ImageFormat} constants.
+     *
+     * @return the data format
+     */
+    public int getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * Returns the clock-wise rotation that should be applied on the data
+     * array, such that the resulting frame matches what the user is seeing
+     * on screen.
+     *
+     * @return clock-wise rotation
+     */
+    public int getRotation() {
+        return mRotation;
+    }
+
+    /**
+     * Returns the facing of the camera that produced the frames.
+     *
+     * @return facing value
+     */
+    @NonNull
+    public Facing getFacing() {
+        return mFacing;
+    }
+
+    /**
+     * Returns the part of the frame, before rotation, that is visible in the view.
+     * The rest is cropped out by the preview. This is null if the view size is not known.
+     *
+     * @return a new rect, or null
+     */
+    @Nullable
+    public Rect getCrop() {
+        return mCrop == null ? null : new Rect(mCrop);
+    }
+
+    @Override
+    public String toString() {
+        return "FrameInfo(size: " + mSize + ", format: " + mFormat + ", rotation: " + mRotation
+                + ", facing: " + mFacing + ", crop: " + mCrop + ")";
+    }
+}
@@ -1,6 +1,8 @@
 package com.otaliastudios.cameraview;
 
+import androidx.annotation.Nullable;
 
+import java.util.ArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
 
 /**
@@ -17,9 +19,16 @@ import java.util.concurrent.LinkedBlockingQueue;
  *     it should be OK. The only thing we do is allocate mPoolSize buffers when requested.
  * - Frame pool:
  *     We keep a list of mPoolSize recycled instances, to be reused when a new buffer is available.
+ *
+ * Allocated buffers are also tracked, so that they can survive a camera restart: after
+ * {@link #suspend()}, the next {@link #allocate(int, Size)} with the same size gives them back
+ * to the camera instead of allocating new ones.
  */
 class FrameManager {
 
+    private final static String TAG = FrameManager.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
     interface BufferCallback {
         void onBufferAvailable(byte[] buffer);
     }
@@ -28,10 +37,23 @@ class FrameManager {
     private int mBufferSize;
     private BufferCallback mCallback;
     private LinkedBlockingQueue<Frame> mQueue;
+    private MemoryBudget.Account mAccount;
+    private final ArrayList<byte[]> mBuffers = new ArrayList<>(); // Allocated here.
+    private final ArrayList<byte[]> mBuffersOut = new ArrayList<>(); // Held by frames.
+    private boolean mSuspended;
 
     FrameManager(int poolSize, BufferCallback callback) {
+        this(poolSize, callback, null);
+    }
+
+    /**
+     * If an account is passed, the number of allocated buffers is limited by its share
+     * of the process memory budget. At least one buffer is always allocated.
+     */
+    FrameManager(int poolSize, BufferCallback callback, @Nullable MemoryBudget.Account account) {
         mPoolSize = poolSize;
         mCallback = callback;
+        mAccount = account;
         mQueue = new LinkedBlockingQueue<>(mPoolSize);
         mBufferSize = -1;
     }
@@ -43,6 +65,23 @@ class FrameManager {
         }
         mQueue.clear();
         mBufferSize = -1;
+        synchronized (mBuffers) {
+            mBuffers.clear();
+            mBuffersOut.clear();
+            mSuspended = false;
+        }
+        if (mAccount != null) mAccount.releaseFrameBuffers();
+    }
+
+    /**
+     * Like {@link #release()}, but keeps the buffers, because the camera is about to be opened again.
+     * The next {@link #allocate(int, Size)} call will reuse them if the size matches.
+     * Until then, buffers released by frames are kept here instead of going to the callback.
+     */
+    void suspend() {
+        synchronized (mBuffers) {
+            mSuspended = true;
+        }
     }
 
     void onFrameReleased(Frame frame) {
@@ -51,6 +90,10 @@ class FrameManager {
         if (!willRecycle) {
             frame.releaseManager();
         }
+        synchronized (mBuffers) {
+            mBuffersOut.remove(buffer);
+            if (mSuspended) return;
+        }
         if (buffer != null && mCallback != null) {
             int currSize = buffer.length;
             int reqSize = mBufferSize;
@@ -71,21 +114,60 @@ class FrameManager {
      *
      * @return a new frame
      */
-    Frame getFrame(byte[] data, long time, int rotation, Size previewSize, int previewFormat) {
+    Frame getFrame(byte[] data, long timestamp, @Nullable FrameInfo info) {
+        synchronized (mBuffers) {
+            mBuffersOut.add(data);
+        }
         Frame frame = mQueue.poll();
         if (frame == null) frame = new Frame(this);
-        frame.set(data, time, rotation, previewSize, previewFormat);
+        frame.set(data, timestamp, info);
         return frame;
     }
 
     int allocate(int bitsPerPixel, Size previewSize) {
-        mBufferSize = getBufferSize(bitsPerPixel, previewSize);
-        for (int i = 0; i < mPoolSize; i++) {
-            mCallback.onBufferAvailable(new byte[mBufferSize]);
+        int bufferSize = getBufferSize(bitsPerPixel, previewSize);
+        int count = mAccount == null ? mPoolSize : mAccount.requestFrameBuffers(bufferSize, mPoolSize);
+        ArrayList<byte[]> available = new ArrayList<>(count);
+        synchronized (mBuffers) {
+            boolean reuse = mSuspended && bufferSize == mBufferSize;
+            mSuspended = false;
+            if (!reuse) {
+                mBuffers.clear();
+                mBuffersOut.clear();
+            }
+            mBufferSize = bufferSize;
+            // Buffers held by frames will reach the callback when released.
+            for (byte[] buffer : mBuffers) {
+                if (available.size() + mBuffersOut.size() >= count) break;
+                if (!mBuffersOut.contains(buffer)) available.add(buffer);
+            }
+            if (reuse) {
+                LOG.i("allocate:", "Reusing buffers.", available.size(), "held by frames:", mBuffersOut.size());
+                // The budget might have shrunk.
+                for (int i = mBuffers.size() - 1; i >= 0 && mBuffers.size() > count; i--) {
+                    byte[] buffer = mBuffers.get(i);
+                    if (!available.contains(buffer) && !mBuffersOut.contains(buffer)) mBuffers.remove(i);
+                }
+            }
+            while (mBuffers.size() < count) {
+                byte[] buffer = new byte[bufferSize];
+                mBuffers.add(buffer);
+                available.add(buffer);
+            }
+        }
+        for (byte[] buffer : available) {
+            mCallback.onBufferAvailable(buffer);
         }
         return mBufferSize;
     }
 
+    // Number of buffers allocated and not released.
+    int getBufferCount() {
+        synchronized (mBuffers) {
+            return mBuffers.size();
+        }
+    }
+
     private int getBufferSize(int bitsPerPixel, Size previewSize) {
         long sizeInBits = previewSize.getHeight() * previewSize.getWidth() * bitsPerPixel;
         return (int) Math.ceil(sizeInBits / 8.0d) + 1;
@@ -0,0 +1,156 @@
+package com.otaliastudios.cameraview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a file written by {@link FrameRecorder} through a {@link FrameProcessor}, with the
+ * recorded timestamps, sizes, formats, rotations and facing.
+ *
+ * Frames can be played at the original speed, to see how processors behave with the real
+ * frame rate, or as fast as possible, to benchmark them. Frames follow the usual contract:
+ * their contents are only valid during {@link FrameProcessor#process(Frame)}, unless frozen.
+ *
+ * <pre>{@code
+ * FramePlayer player = new FramePlayer(file);
+ * long nanos = player.play(processor, false);
+ * double fps = player.getFrameCount() * 1e9 / nanos;
+ * }</pre>
+ */
+public class FramePlayer {
+
+    private final static String TAG = FramePlayer.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    private final MappedByteBuffer mMap;
+    private final int mCount;
+    private final FrameManager mFrameManager = new FrameManager(1, null);
+    private final byte[] mBuffer;
+    private FrameInfo mInfo;
+
+    /**
+     * Opens a recording.
+     *
+     * @param file a file written by {@link FrameRecorder}
+     * @throws IOException if the file can't be read or is not a recording
+     */
+    public FramePlayer(@NonNull File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() < FrameRecorder.HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a frame recording: " + file);
+            }
+            mMap = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close(); // The mapping stays valid.
+        }
+        if (mMap.getInt(0) != FrameRecorder.MAGIC) throw new IOException("Not a frame recording: " + file);
+        if (mMap.getInt(4) != FrameRecorder.VERSION) throw new IOException("Unsupported version: " + mMap.getInt(4));
+        int maxFrames = mMap.getInt(FrameRecorder.MAX_FRAMES_OFFSET);
+        mCount = mMap.getInt(FrameRecorder.COUNT_OFFSET);
+        if (maxFrames < 0 || mCount < 0 || mCount > maxFrames
+                || FrameRecorder.HEADER_SIZE + (long) maxFrames * FrameRecorder.ENTRY_SIZE > mMap.capacity()) {
+            throw new IOException("Corrupted index: " + file);
+        }
+        int maxLength = 0;
+        for (int i = 0; i < mCount; i++) {
+            int entry = getEntry(i);
+            int offset = mMap.getInt(entry);
+            int length = mMap.getInt(entry + 4);
+            if (offset < 0 || length < 0 || (long) offset + length > mMap.capacity()) {
+                throw new IOException("Corrupted entry " + i + ": " + file);
+            }
+            maxLength = Math.max(maxLength, length);
+        }
+        mBuffer = new byte[maxLength];
+        LOG.i("FramePlayer:", "file:", file, "frames:", mCount);
+    }
+
+    private static int getEntry(int index) {
+        return FrameRecorder.HEADER_SIZE + index * FrameRecorder.ENTRY_SIZE;
+    }
+
+    /**
+     * Returns the number of recorded frames.
+     *
+     * @return the frame count
+     */
+    public int getFrameCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the time between the first and the last frame, in nanoseconds.
+     *
+     * @return the duration
+     */
+    public long getDuration() {
+        if (mCount < 2) return 0;
+        return getTimestamp(mCount - 1) - getTimestamp(0);
+    }
+
+    private long getTimestamp(int index) {
+        return mMap.getLong(getEntry(index) + 8);
+    }
+
+    /**
+     * Plays all frames through the processor, in the calling thread.
+     * At the original speed, frames are delayed to match the recorded intervals, unless the
+     * processor is slower. Otherwise, frames are played one after the other.
+     *
+     * @param processor the processor
+     * @param originalSpeed whether to wait between frames
+     * @return the time spent, in nanoseconds
+     */
+    @WorkerThread
+    public long play(@NonNull FrameProcessor processor, boolean originalSpeed) {
+        long start = System.nanoTime();
+        long first = mCount == 0 ? 0 : getTimestamp(0);
+        for (int i = 0; i < mCount; i++) {
+            Frame frame = read(i);
+            if (originalSpeed) {
+                long wait = (frame.getTimestamp() - first) - (System.nanoTime() - start);
+                if (wait > 0) LockSupport.parkNanos(wait);
+            }
+            try {
+                processor.process(frame);
+            } finally {
+                frame.release();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    // Frames share the buffer: it can be reused once the previous frame is released.
+    @NonNull
+    private Frame read(int index) {
+        int entry = getEntry(index);
+        int offset = mMap.getInt(entry);
+        int length = mMap.getInt(entry + 4);
+        long timestamp = mMap.getLong(entry + 8);
+        int width = mMap.getInt(entry + 16);
+        int height = mMap.getInt(entry + 20);
+        int format = mMap.getInt(entry + 24);
+        int rotation = mMap.getInt(entry + 28);
+        Facing facing = Facing.fromValue(mMap.getInt(entry + 32));
+        if (facing == null) facing = Facing.DEFAULT;
+        byte[] data = length == mBuffer.length ? mBuffer : new byte[length];
+        mMap.position(offset);
+        mMap.get(data, 0, length);
+        // Keep the same instance while the configuration doesn't change, like the camera does.
+        Size size = mInfo != null && mInfo.getSize().getWidth() == width && mInfo.getSize().getHeight() == height ?
+                mInfo.getSize() : new Size(width, height);
+        if (mInfo == null || !mInfo.matches(size, format, rotation, facing, null)) {
+            mInfo = new FrameInfo(size, format, rotation, facing, null);
+        }
+        return mFrameManager.getFrame(data, timestamp, mInfo);
+    }
+}
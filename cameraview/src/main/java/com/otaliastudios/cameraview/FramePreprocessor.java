@@ -0,0 +1,308 @@
+package com.otaliastudios.cameraview;
+
+import android.graphics.ImageFormat;
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Turns preview frames into the input tensor of a ML model, in a single pass: the frame is
+ * center-cropped to the output aspect ratio, resized, rotated by {@link Frame#getRotation()},
+ * converted to RGB and normalized, reading each input pixel once.
+ *
+ * The output is interleaved RGB, row by row (HWC), with one byte or one native-order float
+ * per channel depending on the {@link Type}.
+ *
+ * When passed to {@link CameraView#setFramePreprocessor(FramePreprocessor)}, each frame is
+ * preprocessed before frame processors are called, and the result is available through
+ * {@link Frame#getTensor()}. Tensors are pooled direct buffers that go back to the pool
+ * when the frame is released.
+ *
+ * Resizing picks the nearest pixel, it does not average: this is what most detection
+ * models are fine with, and the cost does not depend on the frame size.
+ */
+public class FramePreprocessor {
+
+    private final static int POOL_SIZE = 2;
+
+    /**
+     * The tensor data type.
+     */
+    public enum Type {
+
+        /**
+         * One byte per channel, 0 ... 255. Normalization is not applied.
+         */
+        UINT8(1),
+
+        /**
+         * One float per channel, in native order, normalized with
+         * {@link #setNormalization(float[], float[])}.
+         */
+        FLOAT32(4);
+
+        private final int mBytes;
+
+        Type(int bytes) {
+            mBytes = bytes;
+        }
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final Type mType;
+    private boolean mCenterCrop = true;
+
+    // Normalized value of each channel level.
+    private final float[] mLutR = new float[256];
+    private final float[] mLutG = new float[256];
+    private final float[] mLutB = new float[256];
+
+    // Input offsets, as the sum of a column and a row contribution. Each output pixel reads
+    // luma at row + col and chroma at frameSize + rowUv + colUv.
+    private final int[] mColY;
+    private final int[] mColUv;
+    private final int[] mRowY;
+    private final int[] mRowUv;
+    private int mMappedWidth = -1;
+    private int mMappedHeight = -1;
+    private int mMappedRotation = -1;
+
+    private final ConcurrentLinkedQueue<ByteBuffer> mPool = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a preprocessor. By default, float tensors hold values in 0 ... 1.
+     *
+     * @param width the tensor width
+     * @param height the tensor height
+     * @param type the tensor data type
+     */
+    public FramePreprocessor(int width, int height, @NonNull Type type) {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Invalid size: " + width + "x" + height);
+        mWidth = width;
+        mHeight = height;
+        mType = type;
+        mColY = new int[width];
+        mColUv = new int[width];
+        mRowY = new int[height];
+        mRowUv = new int[height];
+        setNormalization(new float[]{0, 0, 0}, new float[]{255, 255, 255});
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @NonNull
+    public Type getType() {
+        return mType;
+    }
+
+    /**
+     * Returns the tensor size in bytes.
+     *
+     * @return the tensor size
+     */
+    public int getTensorSize() {
+        return mWidth * mHeight * 3 * mType.mBytes;
+    }
+
+    /**
+     * Sets the normalization of float tensors: each channel is written as (value - mean) / std,
+     * where value is in 0 ... 255. For example, mean 127.5 and std 127.5 give values in -1 ... 1.
+     *
+     * @param mean the R, G, B means
+     * @param std the R, G, B standard deviations
+     */
+    public synchronized void setNormalization(@NonNull float[] mean, @NonNull float[] std) {
+        if (mean.length < 3 || std.length < 3) throw new IllegalArgumentException("Three values are needed.");
+        for (int i = 0; i < 256; i++) {
+            mLutR[i] = (i - mean[0]) / std[0];
+            mLutG[i] = (i - mean[1]) / std[1];
+            mLutB[i] = (i - mean[2]) / std[2];
+        }
+    }
+
+    /**
+     * Whether to crop the frame to the tensor aspect ratio, keeping its center.
+     * If false, the whole frame is stretched. Defaults to true.
+     *
+     * @param centerCrop whether to crop
+     */
+    public synchronized void setCenterCrop(boolean centerCrop) {
+        if (centerCrop != mCenterCrop) {
+            mCenterCrop = centerCrop;
+            mMappedRotation = -1; // Recompute.
+        }
+    }
+
+    public synchronized boolean getCenterCrop() {
+        return mCenterCrop;
+    }
+
+    /**
+     * Preprocesses the frame into the given buffer, applying its rotation.
+     *
+     * @param frame a NV21 frame
+     * @param tensor the output, with at least {@link #getTensorSize()} bytes from its position, which is not changed
+     */
+    @WorkerThread
+    public void preprocess(@NonNull Frame frame, @NonNull ByteBuffer tensor) {
+        if (frame.getFormat() != ImageFormat.NV21) {
+            throw new IllegalArgumentException("Only NV21 frames can be preprocessed. Format: " + frame.getFormat());
+        }
+        Size size = frame.getSize();
+        preprocess(frame.getData(), size.getWidth(), size.getHeight(), frame.getRotation(), tensor);
+    }
+
+    /**
+     * Preprocesses NV21 data into the given buffer.
+     *
+     * @param nv21 the input
+     * @param width the input width
+     * @param height the input height
+     * @param rotation clock-wise rotation to apply, one of 0, 90, 180, 270
+     * @param tensor the output, with at least {@link #getTensorSize()} bytes from its position, which is not changed
+     */
+    @WorkerThread
+    public synchronized void preprocess(@NonNull byte[] nv21, int width, int height, int rotation, @NonNull ByteBuffer tensor) {
+        if (width <= 0 || height <= 0 || nv21.length < width * height * 3 / 2) {
+            throw new IllegalArgumentException("Invalid input: " + width + "x" + height + ", " + nv21.length + " bytes");
+        }
+        if (tensor.remaining() < getTensorSize()) {
+            throw new IllegalArgumentException("Tensor buffer is too small: " + tensor.remaining() + " < " + getTensorSize());
+        }
+        rotation = ((rotation % 360) + 360) % 360;
+        if (width != mMappedWidth || height != mMappedHeight || rotation != mMappedRotation) {
+            map(width, height, rotation);
+        }
+        if (mType == Type.FLOAT32) {
+            writeFloats(nv21, width * height, tensor);
+        } else {
+            writeBytes(nv21, width * height, tensor);
+        }
+    }
+
+    // Computes the input offsets for the given input. Output coordinates are first mapped to
+    // the cropped, rotated frame (rx, ry), then back to the input (sx, sy). In all rotations
+    // one of sx, sy only depends on the output column, and the other only on the output row.
+    private void map(int width, int height, int rotation) {
+        boolean flip = rotation % 180 != 0;
+        if (rotation % 90 != 0) throw new IllegalArgumentException("Rotation should be a multiple of 90: " + rotation);
+        int rw = flip ? height : width;
+        int rh = flip ? width : height;
+        int cw = rw, ch = rh;
+        if (mCenterCrop) {
+            if ((long) rw * mHeight > (long) rh * mWidth) {
+                cw = (int) ((long) rh * mWidth / mHeight);
+            } else {
+                ch = (int) ((long) rw * mHeight / mWidth);
+            }
+        }
+        int cx = (rw - cw) / 2;
+        int cy = (rh - ch) / 2;
+        for (int x = 0; x < mWidth; x++) {
+            // Sample the center of the output pixel.
+            int rx = cx + (int) ((2L * x + 1) * cw / (2L * mWidth));
+            int sx = 0, sy = 0;
+            switch (rotation) {
+                case 0: sx = rx; break;
+                case 90: sy = height - 1 - rx; break;
+                case 180: sx = width - 1 - rx; break;
+                case 270: sy = rx; break;
+            }
+            mColY[x] = sy * width + sx;
+            mColUv[x] = (sy >> 1) * width + (sx & ~1);
+        }
+        for (int y = 0; y < mHeight; y++) {
+            int ry = cy + (int) ((2L * y + 1) * ch / (2L * mHeight));
+            int sx = 0, sy = 0;
+            switch (rotation) {
+                case 0: sy = ry; break;
+                case 90: sx = ry; break;
+                case 180: sy = height - 1 - ry; break;
+                case 270: sx = width - 1 - ry; break;
+            }
+            mRowY[y] = sy * width + sx;
+            mRowUv[y] = (sy >> 1) * width + (sx & ~1);
+        }
+        mMappedWidth = width;
+        mMappedHeight = height;
+        mMappedRotation = rotation;
+    }
+
+    private void writeFloats(@NonNull byte[] nv21, int frameSize, @NonNull ByteBuffer tensor) {
+        final int[] colY = mColY, colUv = mColUv;
+        final float[] lutR = mLutR, lutG = mLutG, lutB = mLutB;
+        int index = tensor.position();
+        for (int y = 0; y < mHeight; y++) {
+            int rowY = mRowY[y];
+            int rowUv = frameSize + mRowUv[y];
+            for (int x = 0; x < mWidth; x++, index += 12) {
+                int yy = (nv21[rowY + colY[x]] & 0xFF) << YuvConverter.SHIFT;
+                int uv = rowUv + colUv[x];
+                int v = (nv21[uv] & 0xFF) - 128;
+                int u = (nv21[uv + 1] & 0xFF) - 128;
+                tensor.putFloat(index, lutR[clamp((yy + YuvConverter.V_TO_R * v + YuvConverter.HALF) >> YuvConverter.SHIFT)]);
+                tensor.putFloat(index + 4, lutG[clamp((yy - YuvConverter.U_TO_G * u - YuvConverter.V_TO_G * v + YuvConverter.HALF) >> YuvConverter.SHIFT)]);
+                tensor.putFloat(index + 8, lutB[clamp((yy + YuvConverter.U_TO_B * u + YuvConverter.HALF) >> YuvConverter.SHIFT)]);
+            }
+        }
+    }
+
+    private void writeBytes(@NonNull byte[] nv21, int frameSize, @NonNull ByteBuffer tensor) {
+        final int[] colY = mColY, colUv = mColUv;
+        int index = tensor.position();
+        for (int y = 0; y < mHeight; y++) {
+            int rowY = mRowY[y];
+            int rowUv = frameSize + mRowUv[y];
+            for (int x = 0; x < mWidth; x++, index += 3) {
+                int yy = (nv21[rowY + colY[x]] & 0xFF) << YuvConverter.SHIFT;
+                int uv = rowUv + colUv[x];
+                int v = (nv21[uv] & 0xFF) - 128;
+                int u = (nv21[uv + 1] & 0xFF) - 128;
+                tensor.put(index, (byte) clamp((yy + YuvConverter.V_TO_R * v + YuvConverter.HALF) >> YuvConverter.SHIFT));
+                tensor.put(index + 1, (byte) clamp((yy - YuvConverter.U_TO_G * u - YuvConverter.V_TO_G * v + YuvConverter.HALF) >> YuvConverter.SHIFT));
+                tensor.put(index + 2, (byte) clamp((yy + YuvConverter.U_TO_B * u + YuvConverter.HALF) >> YuvConverter.SHIFT));
+            }
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+
+    // Preprocesses the frame into a pooled buffer, and attaches it to the frame.
+    // The buffer comes back through recycle() when the frame is released.
+    @WorkerThread
+    void attach(@NonNull Frame frame) {
+        ByteBuffer tensor = mPool.poll();
+        if (tensor == null) {
+            tensor = ByteBuffer.allocateDirect(getTensorSize()).order(ByteOrder.nativeOrder());
+        }
+        tensor.clear();
+        try {
+            preprocess(frame, tensor);
+        } catch (RuntimeException e) {
+            recycle(tensor);
+            throw e;
+        }
+        frame.setTensor(tensor, this);
+    }
+
+    void recycle(@NonNull ByteBuffer tensor) {
+        if (mPool.size() < POOL_SIZE) mPool.offer(tensor);
+    }
+
+    // For tests.
+    int getPoolSize() {
+        return mPool.size();
+    }
+}
@@ -0,0 +1,280 @@
+package com.otaliastudios.cameraview;
+
+import android.graphics.ImageFormat;
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link FrameProcessor} that records preview frames to a file, so that they can be replayed
+ * later through the same processors with {@link FramePlayer}, e.g. to benchmark or debug them
+ * with real camera input.
+ *
+ * The file is allocated and memory-mapped when the recorder is created, with room for a fixed
+ * number of frames and bytes. Frames that don't fit are dropped, as are frames that arrive while
+ * the writer is late: the frame thread only copies the data to a recycled buffer, and never
+ * waits for the disk.
+ *
+ * The file holds a header, an index with one entry per frame (offset, length, timestamp, size,
+ * format, rotation and facing), then the frame data. The frame count in the header is updated
+ * after each frame is written, so a recording that was not closed is still readable.
+ * The file keeps its allocated size when closed.
+ *
+ * <pre>{@code
+ * FrameRecorder recorder = new FrameRecorder(file, 200 * 1024 * 1024, 300);
+ * cameraView.addFrameProcessor(recorder);
+ * // Later...
+ * cameraView.removeFrameProcessor(recorder);
+ * recorder.close();
+ * }</pre>
+ */
+public class FrameRecorder implements FrameProcessor, Closeable {
+
+    private final static String TAG = FrameRecorder.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    final static int MAGIC = 0x43564652; // CVFR
+    final static int VERSION = 1;
+
+    // Header: magic, version, max frames, frame count, data start. Padded to 32 bytes.
+    final static int HEADER_SIZE = 32;
+    final static int MAX_FRAMES_OFFSET = 8;
+    final static int COUNT_OFFSET = 12;
+    final static int DATA_OFFSET = 16;
+
+    // Entry: data offset, length, timestamp, width, height, format, rotation, facing. Padded to 40 bytes.
+    final static int ENTRY_SIZE = 40;
+
+    // Frames that can be waiting for the writer. More are dropped.
+    final static int POOL_SIZE = 4;
+
+    private static class Pending {
+        private byte[] data = new byte[0];
+        private int length;
+        private long timestamp;
+        private FrameInfo info;
+    }
+
+    private final MappedByteBuffer mMap;
+    private final int mCapacity;
+    private final int mMaxFrames;
+    private final Executor mExecutor;
+
+    private final ConcurrentLinkedQueue<Pending> mFree = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Pending> mQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mDraining = new AtomicBoolean(false);
+    private final AtomicInteger mInFlight = new AtomicInteger(0);
+    private final Object mLock = new Object();
+
+    // Only touched by the writer.
+    private int mWriteOffset;
+    private volatile int mCount;
+
+    private volatile boolean mFull;
+    private volatile boolean mClosed;
+    private final AtomicLong mDroppedCount = new AtomicLong(0);
+
+    /**
+     * Creates a recorder and allocates the file. Any previous content is lost.
+     *
+     * @param file the output file
+     * @param capacity the file size in bytes, at most {@link Integer#MAX_VALUE}
+     * @param maxFrames how many frames the index can hold
+     * @throws IOException if the file can't be allocated
+     */
+    public FrameRecorder(@NonNull File file, long capacity, int maxFrames) throws IOException {
+        this(file, capacity, maxFrames, CameraExecutors.getIoPool());
+    }
+
+    FrameRecorder(@NonNull File file, long capacity, int maxFrames, @NonNull Executor executor) throws IOException {
+        if (maxFrames <= 0) throw new IllegalArgumentException("maxFrames should be > 0");
+        long dataStart = HEADER_SIZE + (long) maxFrames * ENTRY_SIZE;
+        if (capacity <= dataStart) throw new IllegalArgumentException("capacity is too small for the index: " + capacity);
+        if (capacity > Integer.MAX_VALUE) throw new IllegalArgumentException("capacity should be <= " + Integer.MAX_VALUE);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(capacity);
+            mMap = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } finally {
+            raf.close(); // The mapping stays valid.
+        }
+        mCapacity = (int) capacity;
+        mMaxFrames = maxFrames;
+        mExecutor = executor;
+        mWriteOffset = (int) dataStart;
+        mMap.putInt(0, MAGIC);
+        mMap.putInt(4, VERSION);
+        mMap.putInt(MAX_FRAMES_OFFSET, maxFrames);
+        mMap.putInt(COUNT_OFFSET, 0);
+        mMap.putInt(DATA_OFFSET, mWriteOffset);
+        for (int i = 0; i < POOL_SIZE; i++) mFree.offer(new Pending());
+        LOG.i("FrameRecorder:", "file:", file, "capacity:", capacity, "maxFrames:", maxFrames);
+    }
+
+    /**
+     * Copies the frame and queues it for writing. This does not wait for the disk: if the
+     * writer is late or the file is full, the frame is dropped.
+     *
+     * @param frame the frame
+     */
+    @Override
+    @WorkerThread
+    public void process(@NonNull Frame frame) {
+        // Counted first, so that close() waits for us if we get past the check.
+        mInFlight.incrementAndGet();
+        if (mClosed || mFull) {
+            if (mFull) mDroppedCount.incrementAndGet();
+            finish();
+            return;
+        }
+        byte[] data = frame.getData();
+        FrameInfo info = frame.getInfo();
+        Pending pending = data == null || info == null ? null : mFree.poll();
+        if (pending == null) {
+            mDroppedCount.incrementAndGet();
+            finish();
+            return;
+        }
+        int length = getLength(data, info);
+        if (pending.data.length < length) pending.data = new byte[length];
+        System.arraycopy(data, 0, pending.data, 0, length);
+        pending.length = length;
+        pending.timestamp = frame.getTimestamp();
+        pending.info = info;
+        mQueue.offer(pending);
+        if (mDraining.compareAndSet(false, true)) {
+            try {
+                mExecutor.execute(mDrain);
+            } catch (RejectedExecutionException e) {
+                LOG.w("process:", "Executor rejected the writer. Writing here.");
+                mDrain.run();
+            }
+        }
+    }
+
+    // Camera buffers can be bigger than the frame. Only keep what's needed.
+    private static int getLength(@NonNull byte[] data, @NonNull FrameInfo info) {
+        if (info.getFormat() != ImageFormat.NV21) return data.length;
+        Size size = info.getSize();
+        return Math.min(data.length, size.getWidth() * size.getHeight() * 3 / 2);
+    }
+
+    private void finish() {
+        if (mInFlight.decrementAndGet() == 0) {
+            synchronized (mLock) {
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    // A single writer at a time, even on a pool: the one that set mDraining.
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            do {
+                Pending pending;
+                while ((pending = mQueue.poll()) != null) {
+                    try {
+                        write(pending);
+                    } finally {
+                        pending.info = null;
+                        mFree.offer(pending);
+                        finish();
+                    }
+                }
+                mDraining.set(false);
+                // Something might have been queued after the last poll, and before the flag was reset.
+            } while (!mQueue.isEmpty() && mDraining.compareAndSet(false, true));
+        }
+    };
+
+    private void write(@NonNull Pending pending) {
+        int count = mCount;
+        long end = (long) mWriteOffset + pending.length;
+        if (count == mMaxFrames || end > mCapacity) {
+            if (!mFull) LOG.w("write:", "File is full. Dropping frames from now on. Frames:", count);
+            mFull = true;
+            mDroppedCount.incrementAndGet();
+            return;
+        }
+        mMap.position(mWriteOffset);
+        mMap.put(pending.data, 0, pending.length);
+        FrameInfo info = pending.info;
+        int entry = HEADER_SIZE + count * ENTRY_SIZE;
+        mMap.putInt(entry, mWriteOffset);
+        mMap.putInt(entry + 4, pending.length);
+        mMap.putLong(entry + 8, pending.timestamp);
+        mMap.putInt(entry + 16, info.getSize().getWidth());
+        mMap.putInt(entry + 20, info.getSize().getHeight());
+        mMap.putInt(entry + 24, info.getFormat());
+        mMap.putInt(entry + 28, info.getRotation());
+        mMap.putInt(entry + 32, info.getFacing().value());
+        mWriteOffset = (int) end;
+        // Written last: readers only look at entries below the count.
+        mMap.putInt(COUNT_OFFSET, count + 1);
+        mCount = count + 1;
+    }
+
+    /**
+     * Stops recording, waits for queued frames to be written, and flushes the file.
+     * Frames processed after this call are ignored.
+     */
+    @Override
+    public void close() {
+        mClosed = true;
+        boolean interrupted = false;
+        synchronized (mLock) {
+            while (mInFlight.get() > 0) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    // The writer is still using the buffers.
+                    interrupted = true;
+                }
+            }
+        }
+        mMap.force();
+        if (interrupted) Thread.currentThread().interrupt();
+        LOG.i("close:", "recorded:", mCount, "dropped:", mDroppedCount.get());
+    }
+
+    /**
+     * Returns the number of frames that were written so far.
+     *
+     * @return the frame count
+     */
+    public int getRecordedCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the number of frames that were dropped, because the writer was late
+     * or the file was full.
+     *
+     * @return the dropped count
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * Whether the file is full. If so, all frames are dropped.
+     *
+     * @return true if full
+     */
+    public boolean isFull() {
+        return mFull;
+    }
+}
@@ -0,0 +1,145 @@
+package com.otaliastudios.cameraview;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A process-wide memory budget, shared by all camera instances.
+ *
+ * Each instance registers an {@link Account}, and the budget is split in equal shares among
+ * the registered accounts. Accounts use their share for:
+ * - capture buffers, like the video pre-roll. These are reported with {@link Account#setCaptureBytes(long)}.
+ * - preview frame buffers, requested with {@link Account#requestFrameBuffers(int, int)}.
+ *   These get what is left of the share, but at least one buffer, or the preview would stop.
+ *
+ * Shares are computed when buffers are requested: if a new instance registers, older ones
+ * will shrink the next time they allocate (e.g. when the preview restarts).
+ */
+class MemoryBudget {
+
+    private final static String TAG = MemoryBudget.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    final static long DEFAULT_BUDGET = Runtime.getRuntime().maxMemory() / 4;
+
+    private static long sBudget = DEFAULT_BUDGET;
+    private final static List<Account> sAccounts = new ArrayList<>();
+
+    static synchronized void setBudget(long bytes) {
+        sBudget = bytes > 0 ? bytes : DEFAULT_BUDGET;
+        LOG.i("setBudget:", sBudget);
+    }
+
+    static synchronized long getBudget() {
+        return sBudget;
+    }
+
+    // Bytes used by all accounts.
+    static synchronized long getUsage() {
+        long usage = 0;
+        for (Account account : sAccounts) usage += account.mFrameBytes + account.mCaptureBytes;
+        return usage;
+    }
+
+    static synchronized int getAccountCount() {
+        return sAccounts.size();
+    }
+
+    @NonNull
+    static synchronized Account register(@NonNull String name) {
+        Account account = new Account(name);
+        sAccounts.add(account);
+        LOG.i("register:", name, "accounts:", sAccounts.size());
+        return account;
+    }
+
+    static synchronized String dump() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("budget: ").append(sBudget).append(", usage: ").append(getUsage());
+        for (Account account : sAccounts) builder.append(", ").append(account);
+        return builder.toString();
+    }
+
+    /**
+     * The memory used by a single camera instance.
+     */
+    static class Account {
+
+        private final String mName;
+        private long mFrameBytes;
+        private long mCaptureBytes;
+        private boolean mRegistered = true;
+
+        private Account(String name) {
+            mName = name;
+        }
+
+        /**
+         * Returns how many buffers of the given size can be allocated, between 1 and wanted.
+         * The granted buffers are accounted for until the next call, or until {@link #releaseFrameBuffers()}.
+         */
+        int requestFrameBuffers(int bufferSize, int wanted) {
+            synchronized (MemoryBudget.class) {
+                long available = getShare() - mCaptureBytes;
+                int count = (int) Math.max(1, Math.min(wanted, available / Math.max(1, bufferSize)));
+                mFrameBytes = (long) count * bufferSize;
+                if (count < wanted) {
+                    LOG.w("requestFrameBuffers:", mName, "wanted:", wanted, "granted:", count,
+                            "share:", getShare());
+                }
+                return count;
+            }
+        }
+
+        void releaseFrameBuffers() {
+            synchronized (MemoryBudget.class) {
+                mFrameBytes = 0;
+            }
+        }
+
+        void setCaptureBytes(long bytes) {
+            synchronized (MemoryBudget.class) {
+                mCaptureBytes = bytes;
+                if (mCaptureBytes + mFrameBytes > getShare()) {
+                    LOG.w("setCaptureBytes:", mName, "over share.", "usage:", getUsage(), "share:", getShare());
+                }
+            }
+        }
+
+        // Bytes this account can use.
+        long getShare() {
+            synchronized (MemoryBudget.class) {
+                int count = Math.max(1, sAccounts.size() + (mRegistered ? 0 : 1));
+                return sBudget / count;
+            }
+        }
+
+        // Bytes this account is using.
+        long getUsage() {
+            synchronized (MemoryBudget.class) {
+                return mFrameBytes + mCaptureBytes;
+            }
+        }
+
+        void unregister() {
+            synchronized (MemoryBudget.class) {
+                if (!mRegistered) return;
+                mRegistered = false;
+                mFrameBytes = 0;
+                mCaptureBytes = 0;
+                sAccounts.remove(this);
+                LOG.i("unregister:", mName, "accounts:", sAccounts.size());
+            }
+        }
+
+        @Override
+        public String toString() {
+            synchronized (MemoryBudget.class) {
+                return mName + "(frames: " + mFrameBytes + ", capture: " + mCaptureBytes
+                        + ", share: " + getShare() + ")";
+            }
+        }
+    }
+}
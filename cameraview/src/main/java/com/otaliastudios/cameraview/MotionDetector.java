@@ -0,0 +1,367 @@
+package com.otaliastudios.cameraview;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.util.Arrays;
+
+/**
+ * A {@link FrameProcessor} that detects motion by comparing each frame to the previous one.
+ *
+ * Frames are not compared pixel by pixel. Luma is reduced to a small pyramid: the first level
+ * has one value per {@link #CELL_SIZE} x {@link #CELL_SIZE} block, and each further level halves
+ * it again, keeping the min and max of the cells in each block. Comparison starts from the
+ * coarsest level, and only goes down into blocks where some cell might have changed: if the
+ * ranges of the block in both frames are close enough, no cell can differ by more than the
+ * threshold. Flat areas of a still scene are skipped this way. Pyramids are swapped and reused,
+ * and the frame is never frozen.
+ *
+ * Cells of the first level that changed more than {@link #setThreshold(int)} luma levels are
+ * marked as changed. When enough of them changed, see {@link #setSensitivity(float)}, the
+ * {@link Listener} is notified and, if set with {@link #setAutoSnapshot(CameraView, long)},
+ * a snapshot is taken.
+ *
+ * Cells are in frame coordinates, before {@link Frame#getRotation()} is applied.
+ */
+public class MotionDetector implements FrameProcessor {
+
+    private final static String TAG = MotionDetector.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    /**
+     * The size in pixels of the cells of the first level.
+     */
+    public final static int CELL_SIZE = 8;
+    private final static int LEVELS = 3;
+    private final static float MAX_FRACTION = 0.1F;
+
+    /**
+     * Receives motion events.
+     */
+    public interface Listener {
+
+        /**
+         * Called when motion is detected, from the frame processing thread.
+         * The detector can be queried for changed cells until this returns.
+         *
+         * @param frame the frame
+         * @param detector the detector
+         */
+        @WorkerThread
+        void onMotion(@NonNull Frame frame, @NonNull MotionDetector detector);
+    }
+
+    private volatile int mThreshold = 16;
+    private volatile float mSensitivity = 0.9F;
+    private volatile Listener mListener;
+    private volatile CameraView mSnapshotView;
+    private volatile long mSnapshotIntervalNanos;
+    private long mLastSnapshotTimestamp;
+    private boolean mHasSnapshot;
+
+    private int mWidth;
+    private int mHeight;
+    private final int[] mGridWidths = new int[LEVELS];
+    private final int[] mGridHeights = new int[LEVELS];
+    // Min and max of the cells in each block. The first level has one array for both.
+    private int[][] mCurrentMin = new int[LEVELS][];
+    private int[][] mCurrentMax = new int[LEVELS][];
+    private int[][] mPreviousMin = new int[LEVELS][];
+    private int[][] mPreviousMax = new int[LEVELS][];
+    private boolean mHasPrevious;
+
+    private boolean[] mChanged = new boolean[0];
+    private int mChangedCount;
+    private int mComparedCount;
+    private int mLeft, mTop, mRight, mBottom;
+    private long mFrameCount;
+    private long mMotionCount;
+
+    /**
+     * Sets the luma difference, in 0 ... 255, above which a cell is considered changed.
+     * Lower values detect subtler changes, but also noise. Defaults to 16.
+     *
+     * @param threshold the threshold
+     */
+    public void setThreshold(int threshold) {
+        mThreshold = Math.max(1, Math.min(255, threshold));
+    }
+
+    public int getThreshold() {
+        return mThreshold;
+    }
+
+    /**
+     * Sets the sensitivity, in 0 ... 1. This controls how many cells must change for a frame
+     * to count as motion: 0 means 10% of the frame, 1 means a single cell. Defaults to 0.9, or 1%.
+     *
+     * @param sensitivity the sensitivity
+     */
+    public void setSensitivity(float sensitivity) {
+        mSensitivity = Math.max(0F, Math.min(1F, sensitivity));
+    }
+
+    public float getSensitivity() {
+        return mSensitivity;
+    }
+
+    /**
+     * Sets a listener to be notified of motion.
+     *
+     * @param listener a listener, or null
+     */
+    public void setListener(@Nullable Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Calls {@link CameraView#captureSnapshot()} on the given view when motion is detected,
+     * at most once per interval. Pass null to stop.
+     *
+     * @param cameraView the view, or null
+     * @param minIntervalMillis the minimum time between two snapshots
+     */
+    public void setAutoSnapshot(@Nullable CameraView cameraView, long minIntervalMillis) {
+        mSnapshotIntervalNanos = Math.max(0, minIntervalMillis) * 1000000L;
+        mSnapshotView = cameraView;
+    }
+
+    @Override
+    @WorkerThread
+    public void process(@NonNull Frame frame) {
+        if (frame.getFormat() != ImageFormat.NV21 || frame.getData() == null) return;
+        Size size = frame.getSize();
+        if (size.getWidth() != mWidth || size.getHeight() != mHeight) {
+            allocate(size.getWidth(), size.getHeight());
+        }
+        mFrameCount++;
+
+        // The old current pyramid becomes the previous one.
+        int[][] swap = mPreviousMin;
+        mPreviousMin = mCurrentMin;
+        mCurrentMin = swap;
+        swap = mPreviousMax;
+        mPreviousMax = mCurrentMax;
+        mCurrentMax = swap;
+        buildPyramid(frame.getData());
+        if (!mHasPrevious) {
+            mHasPrevious = true;
+            return;
+        }
+
+        compare();
+        if (!isMotion()) return;
+        mMotionCount++;
+        LOG.v("process:", "motion in", mChangedCount, "cells out of", mChanged.length);
+        Listener listener = mListener;
+        if (listener != null) listener.onMotion(frame, this);
+        CameraView view = mSnapshotView;
+        long timestamp = frame.getTimestamp();
+        if (view != null && (!mHasSnapshot || timestamp - mLastSnapshotTimestamp >= mSnapshotIntervalNanos)) {
+            mHasSnapshot = true;
+            mLastSnapshotTimestamp = timestamp;
+            view.captureSnapshot();
+        }
+    }
+
+    private void allocate(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        int gw = width / CELL_SIZE;
+        int gh = height / CELL_SIZE;
+        for (int level = 0; level < LEVELS; level++) {
+            mGridWidths[level] = gw;
+            mGridHeights[level] = gh;
+            mCurrentMin[level] = new int[gw * gh];
+            mPreviousMin[level] = new int[gw * gh];
+            mCurrentMax[level] = level == 0 ? mCurrentMin[level] : new int[gw * gh];
+            mPreviousMax[level] = level == 0 ? mPreviousMin[level] : new int[gw * gh];
+            gw = (gw + 1) / 2;
+            gh = (gh + 1) / 2;
+        }
+        mChanged = new boolean[mGridWidths[0] * mGridHeights[0]];
+        mChangedCount = 0;
+        mHasPrevious = false;
+    }
+
+    private void buildPyramid(@NonNull byte[] data) {
+        // First level: average of 16 samples per cell, one every two pixels on both axes.
+        final int width = mWidth;
+        final int gw = mGridWidths[0];
+        final int gh = mGridHeights[0];
+        final int[] cells = mCurrentMin[0];
+        int i = 0;
+        for (int gy = 0; gy < gh; gy++) {
+            int row = gy * CELL_SIZE * width;
+            for (int gx = 0; gx < gw; gx++, row += CELL_SIZE) {
+                int sum = 0;
+                for (int p = row, end = row + CELL_SIZE * width; p < end; p += 2 * width) {
+                    sum += (data[p] & 0xFF) + (data[p + 2] & 0xFF) + (data[p + 4] & 0xFF) + (data[p + 6] & 0xFF);
+                }
+                cells[i++] = sum >> 4;
+            }
+        }
+
+        // Other levels: min and max of up to 2x2 blocks of the level below.
+        for (int level = 1; level < LEVELS; level++) {
+            int[] belowMin = mCurrentMin[level - 1];
+            int[] belowMax = mCurrentMax[level - 1];
+            int bw = mGridWidths[level - 1];
+            int bh = mGridHeights[level - 1];
+            int[] outMin = mCurrentMin[level];
+            int[] outMax = mCurrentMax[level];
+            int w = mGridWidths[level];
+            int h = mGridHeights[level];
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+                    for (int by = y * 2; by < Math.min(y * 2 + 2, bh); by++) {
+                        for (int bx = x * 2; bx < Math.min(x * 2 + 2, bw); bx++) {
+                            min = Math.min(min, belowMin[by * bw + bx]);
+                            max = Math.max(max, belowMax[by * bw + bx]);
+                        }
+                    }
+                    outMin[y * w + x] = min;
+                    outMax[y * w + x] = max;
+                }
+            }
+        }
+    }
+
+    private void compare() {
+        Arrays.fill(mChanged, false);
+        mChangedCount = 0;
+        mComparedCount = 0;
+        mLeft = Integer.MAX_VALUE;
+        mTop = Integer.MAX_VALUE;
+        mRight = -1;
+        mBottom = -1;
+        int top = LEVELS - 1;
+        for (int y = 0; y < mGridHeights[top]; y++) {
+            for (int x = 0; x < mGridWidths[top]; x++) {
+                compare(top, x, y);
+            }
+        }
+    }
+
+    private void compare(int level, int x, int y) {
+        mComparedCount++;
+        int index = y * mGridWidths[level] + x;
+        if (level == 0) {
+            int diff = Math.abs(mCurrentMin[0][index] - mPreviousMin[0][index]);
+            if (diff > mThreshold) {
+                mChanged[index] = true;
+                mChangedCount++;
+                mLeft = Math.min(mLeft, x);
+                mTop = Math.min(mTop, y);
+                mRight = Math.max(mRight, x);
+                mBottom = Math.max(mBottom, y);
+            }
+            return;
+        }
+        // Any cell of the block is in [min, max] in both frames, so its difference is at most
+        // the bound. Unlike a difference of averages, this can't miss a change in a single cell,
+        // or cells that swap values when something moves inside the block.
+        int bound = Math.max(mCurrentMax[level][index] - mPreviousMin[level][index],
+                mPreviousMax[level][index] - mCurrentMin[level][index]);
+        if (bound <= mThreshold) return;
+        int below = level - 1;
+        for (int by = y * 2; by < Math.min(y * 2 + 2, mGridHeights[below]); by++) {
+            for (int bx = x * 2; bx < Math.min(x * 2 + 2, mGridWidths[below]); bx++) {
+                compare(below, bx, by);
+            }
+        }
+    }
+
+    private boolean isMotion() {
+        int min = (int) Math.ceil((1F - mSensitivity) * MAX_FRACTION * mChanged.length);
+        return mChangedCount > 0 && mChangedCount >= min;
+    }
+
+    /**
+     * Returns the width of the cell grid, that is, the frame width / {@link #CELL_SIZE}.
+     *
+     * @return the grid width
+     */
+    public int getGridWidth() {
+        return mGridWidths[0];
+    }
+
+    /**
+     * Returns the height of the cell grid, that is, the frame height / {@link #CELL_SIZE}.
+     *
+     * @return the grid height
+     */
+    public int getGridHeight() {
+        return mGridHeights[0];
+    }
+
+    /**
+     * Whether the given cell changed in the last frame.
+     *
+     * @param x the cell column
+     * @param y the cell row
+     * @return true if changed
+     */
+    public boolean isChanged(int x, int y) {
+        return mChanged[y * mGridWidths[0] + x];
+    }
+
+    /**
+     * Returns the fraction of cells that changed in the last frame.
+     *
+     * @return changed fraction, 0 ... 1
+     */
+    public float getChangedFraction() {
+        return mChanged.length == 0 ? 0 : (float) mChangedCount / mChanged.length;
+    }
+
+    /**
+     * Computes the bounds of the changed cells in the last frame, in frame pixels.
+     *
+     * @param bounds the rect to fill
+     * @return false if no cell changed
+     */
+    public boolean getMotionBounds(@NonNull Rect bounds) {
+        if (mChangedCount == 0) return false;
+        bounds.set(mLeft * CELL_SIZE, mTop * CELL_SIZE, (mRight + 1) * CELL_SIZE, (mBottom + 1) * CELL_SIZE);
+        return true;
+    }
+
+    int getChangedCount() {
+        return mChangedCount;
+    }
+
+    // Cells compared in the last frame, over all levels. Much less than the grid size when still.
+    int getComparedCount() {
+        return mComparedCount;
+    }
+
+    // Bounds in cells, inclusive.
+    int getLeft() {
+        return mLeft;
+    }
+
+    int getTop() {
+        return mTop;
+    }
+
+    int getRight() {
+        return mRight;
+    }
+
+    int getBottom() {
+        return mBottom;
+    }
+
+    long getFrameCount() {
+        return mFrameCount;
+    }
+
+    long getMotionCount() {
+        return mMotionCount;
+    }
+}
@@ -0,0 +1,291 @@
+package com.otaliastudios.cameraview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+
+/**
+ * The queue of camera operations, run one at a time on the controller thread.
+ *
+ * - each operation gets a {@link Operation} handle that can be cancelled while pending.
+ * - operations can have a deadline: if they could not start in time, they are dropped.
+ * - operations run in the order they were scheduled: a picture taken after setFlash() uses the new flash.
+ * - operations can have a key: scheduling a new operation with the same key replaces the pending one,
+ *   so e.g. only the last of many setFlash() calls is performed, and a capture does not wait for
+ *   dozens of zoom changes. Keyed operations are not replaced across a pending lifecycle or capture
+ *   operation, which must see the value that was set before it.
+ * - operations have a priority class: lifecycle, capture, focus or parameter. Classes don't change
+ *   the order, but lifecycle and capture are barriers for the replacement above, and the time spent
+ *   in queue is measured per class, see {@link #getAverageLatency()} and {@link #getMaxLatency(int)}.
+ *
+ * Operations are kept here, and for each of them a trigger is posted to the executor.
+ * A trigger runs the first pending operation, if any.
+ */
+class OperationQueue {
+
+    private final static String TAG = OperationQueue.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    private final static int STATE_PENDING = 0;
+    private final static int STATE_RUNNING = 1;
+    private final static int STATE_DONE = 2;
+    private final static int STATE_CANCELLED = 3;
+
+    // Priority classes. They don't change the order: lifecycle and capture are barriers for
+    // the keyed replacement, and the others only separate the latency stats.
+    // Lifecycle includes anything that opens, closes or restarts the camera or the preview.
+    // Since keyed operations collapse, a capture waits at most for one operation per distinct
+    // key scheduled since the last barrier (8 in Camera1: zoom, exposure correction, flash,
+    // white balance, hdr, location, metering and focus), plus any unkeyed ones.
+    final static int PRIORITY_LIFECYCLE = 0;
+    final static int PRIORITY_CAPTURE = 1;
+    final static int PRIORITY_FOCUS = 2;
+    final static int PRIORITY_PARAMETER = 3;
+    private final static int PRIORITY_COUNT = 4;
+
+    /**
+     * A handle to a scheduled operation.
+     */
+    class Operation {
+
+        private final int mPriority;
+        private final String mKey;
+        private final Runnable mAction;
+        private final Task<Void> mTask;
+        private final long mScheduledAt;
+        private final long mDeadline;
+        private int mState = STATE_PENDING;
+
+        private Operation(int priority, @Nullable String key, long timeoutMillis,
+                          @NonNull Runnable action, @Nullable Task<Void> task) {
+            mPriority = priority;
+            mKey = key;
+            mAction = action;
+            mTask = task;
+            mScheduledAt = now();
+            mDeadline = timeoutMillis > 0 ? mScheduledAt + timeoutMillis : Long.MAX_VALUE;
+        }
+
+        /**
+         * Removes this operation from the queue, if it did not start yet.
+         * @return true if it was removed
+         */
+        boolean cancel() {
+            return OperationQueue.this.cancel(this);
+        }
+
+        boolean isCancelled() {
+            synchronized (OperationQueue.this) {
+                return mState == STATE_CANCELLED;
+            }
+        }
+
+        boolean isDone() {
+            synchronized (OperationQueue.this) {
+                return mState == STATE_DONE || mState == STATE_CANCELLED;
+            }
+        }
+    }
+
+    private final Executor mExecutor;
+    private final LinkedList<Operation> mPending = new LinkedList<>();
+    private final Runnable mTrigger = new Runnable() {
+        @Override
+        public void run() {
+            runNext();
+        }
+    };
+
+    private int mCompletedCount;
+    private int mCancelledCount;
+    private int mCollapsedCount;
+    private int mExpiredCount;
+    private long mTotalLatency;
+    private final long[] mMaxLatency = new long[PRIORITY_COUNT];
+
+    OperationQueue(@NonNull Executor executor) {
+        mExecutor = executor;
+    }
+
+    @NonNull
+    Operation schedule(@NonNull Runnable action) {
+        return schedule(PRIORITY_LIFECYCLE, null, 0, action, null);
+    }
+
+    /**
+     * Schedules an operation.
+     *
+     * @param priority one of the PRIORITY_ constants
+     * @param key if not null, pending operations with the same key are cancelled,
+     *            up to the last pending lifecycle or capture operation
+     * @param timeoutMillis if positive, the operation is dropped if it can't start within this time
+     * @param action the operation
+     * @param task an optional task, ended when the operation ends or is cancelled
+     * @return a handle
+     */
+    @NonNull
+    Operation schedule(int priority, @Nullable String key, long timeoutMillis,
+                       @NonNull Runnable action, @Nullable Task<Void> task) {
+        if (priority < 0 || priority >= PRIORITY_COUNT) {
+            throw new IllegalArgumentException("Invalid priority: " + priority);
+        }
+        Operation operation = new Operation(priority, key, timeoutMillis, action, task);
+        synchronized (this) {
+            if (key != null) {
+                // Walk back from the newest, and stop at the first barrier.
+                Iterator<Operation> iterator = mPending.descendingIterator();
+                while (iterator.hasNext()) {
+                    Operation other = iterator.next();
+                    if (isBarrier(other)) break;
+                    if (key.equals(other.mKey)) {
+                        iterator.remove();
+                        other.mState = STATE_CANCELLED;
+                        mCollapsedCount++;
+                        if (other.mTask != null) other.mTask.end(null);
+                    }
+                }
+            }
+            mPending.addLast(operation);
+        }
+        mExecutor.execute(mTrigger);
+        return operation;
+    }
+
+    private static boolean isBarrier(@NonNull Operation operation) {
+        return operation.mPriority == PRIORITY_LIFECYCLE || operation.mPriority == PRIORITY_CAPTURE;
+    }
+
+    private boolean cancel(@NonNull Operation operation) {
+        synchronized (this) {
+            if (operation.mState != STATE_PENDING) return false;
+            mPending.remove(operation);
+            operation.mState = STATE_CANCELLED;
+            mCancelledCount++;
+        }
+        if (operation.mTask != null) operation.mTask.end(null);
+        return true;
+    }
+
+    /**
+     * Cancels all pending operations that have a key, except those with one of the given keys.
+     *
+     * @param keep keys of the operations that should run anyway
+     */
+    void cancelKeyed(@NonNull String... keep) {
+        LinkedList<Operation> cancelled = new LinkedList<>();
+        synchronized (this) {
+            for (Operation operation : mPending) {
+                if (operation.mKey != null && !contains(keep, operation.mKey)) cancelled.add(operation);
+            }
+        }
+        for (Operation operation : cancelled) cancel(operation);
+    }
+
+    private static boolean contains(@NonNull String[] keys, @NonNull String key) {
+        for (String other : keys) {
+            if (key.equals(other)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Posts again a trigger for each pending operation.
+     * This must be called if the executor lost its pending runnables,
+     * e.g. because the thread died.
+     */
+    void resume() {
+        int count = getPendingCount();
+        for (int i = 0; i < count; i++) mExecutor.execute(mTrigger);
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    private void runNext() {
+        Operation operation;
+        long now = now();
+        synchronized (this) {
+            operation = mPending.pollFirst();
+            if (operation == null) return;
+            if (now > operation.mDeadline) {
+                operation.mState = STATE_CANCELLED;
+                mExpiredCount++;
+            } else {
+                operation.mState = STATE_RUNNING;
+                long latency = now - operation.mScheduledAt;
+                mTotalLatency += latency;
+                int priority = operation.mPriority;
+                mMaxLatency[priority] = Math.max(mMaxLatency[priority], latency);
+            }
+        }
+        if (operation.mState == STATE_CANCELLED) {
+            LOG.w("runNext:", "Dropping operation, deadline passed.", operation.mKey);
+            if (operation.mTask != null) operation.mTask.end(null);
+            return;
+        }
+        try {
+            operation.mAction.run();
+        } finally {
+            synchronized (this) {
+                operation.mState = STATE_DONE;
+                mCompletedCount++;
+            }
+            if (operation.mTask != null) operation.mTask.end(null);
+        }
+    }
+
+    synchronized int getPendingCount() {
+        return mPending.size();
+    }
+
+    synchronized int getCompletedCount() {
+        return mCompletedCount;
+    }
+
+    // Operations cancelled through their handle, or with cancelKeyed().
+    synchronized int getCancelledCount() {
+        return mCancelledCount;
+    }
+
+    // Operations replaced by a newer one with the same key.
+    synchronized int getCollapsedCount() {
+        return mCollapsedCount;
+    }
+
+    // Operations dropped because their deadline passed.
+    synchronized int getExpiredCount() {
+        return mExpiredCount;
+    }
+
+    // Average time between scheduling and start, in milliseconds.
+    synchronized long getAverageLatency() {
+        return mCompletedCount == 0 ? 0 : mTotalLatency / mCompletedCount;
+    }
+
+    // Max time between scheduling and start, in milliseconds.
+    synchronized long getMaxLatency() {
+        long max = 0;
+        for (long latency : mMaxLatency) max = Math.max(max, latency);
+        return max;
+    }
+
+    // Max time between scheduling and start for the given priority class, in milliseconds.
+    synchronized long getMaxLatency(int priority) {
+        return mMaxLatency[priority];
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "pending: " + getPendingCount() + ", completed: " + mCompletedCount +
+                ", cancelled: " + mCancelledCount + ", collapsed: " + mCollapsedCount +
+                ", expired: " + mExpiredCount + ", latency: " + getAverageLatency() +
+                "ms (max lifecycle: " + mMaxLatency[PRIORITY_LIFECYCLE] +
+                "ms, capture: " + mMaxLatency[PRIORITY_CAPTURE] +
+                "ms, focus: " + mMaxLatency[PRIORITY_FOCUS] +
+                "ms, parameter: " + mMaxLatency[PRIORITY_PARAMETER] + "ms)";
+    }
+}
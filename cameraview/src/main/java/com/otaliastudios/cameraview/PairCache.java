@@ -0,0 +1,81 @@
+package com.otaliastudios.cameraview;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free interning table for immutable objects identified by a pair of ints,
+ * like {@link Size} and {@link AspectRatio}.
+ *
+ * - lookups compare the two ints against the stored objects, so no key object is created.
+ * - slots are filled with compareAndSet and never emptied, so every pair is stored at most once:
+ *   threads asking for the same pair get the same instance.
+ * - the table does not grow. When the probe sequence is full, a new uncached instance is returned.
+ *   This keeps memory bounded when many different values pass by (e.g. surface sizes during animations),
+ *   and is still correct since these classes implement equals().
+ */
+abstract class PairCache<T> {
+
+    private final static int MAX_PROBES = 8;
+
+    private final AtomicReferenceArray<T> mTable;
+    private final int mMask;
+
+    /**
+     * @param capacity number of slots, must be a power of two
+     */
+    PairCache(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two.");
+        }
+        mTable = new AtomicReferenceArray<>(capacity);
+        mMask = capacity - 1;
+    }
+
+    // Whether the item is the one for this pair.
+    abstract boolean matches(@NonNull T item, int first, int second);
+
+    // Creates the item for this pair.
+    @NonNull
+    abstract T create(int first, int second);
+
+    @NonNull
+    final T get(int first, int second) {
+        int hash = hash(first, second);
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int index = (hash + i) & mMask;
+            T item = mTable.get(index);
+            if (item == null) {
+                T created = create(first, second);
+                if (mTable.compareAndSet(index, null, created)) return created;
+                item = mTable.get(index); // Someone was faster.
+            }
+            if (matches(item, first, second)) return item;
+        }
+        return create(first, second);
+    }
+
+    // Number of cached items.
+    final int size() {
+        int count = 0;
+        for (int i = 0; i < mTable.length(); i++) {
+            if (mTable.get(i) != null) count++;
+        }
+        return count;
+    }
+
+    // Not safe to call while other threads are using the cache, since a pair might be stored twice.
+    // This is meant for tests.
+    final void clear() {
+        for (int i = 0; i < mTable.length(); i++) {
+            mTable.set(i, null);
+        }
+    }
+
+    private static int hash(int first, int second) {
+        int hash = first * 31 + second;
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,179 @@
+package com.otaliastudios.cameraview;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A bounded ring of encoded video packets, used to keep the last N seconds of video
+ * before the user starts recording.
+ *
+ * - packet data is copied into a single direct buffer that is allocated once.
+ *   Packets are stored contiguously and the write position wraps to 0 when the end is reached.
+ *   When new data overlaps old packets, these are evicted.
+ * - packet metadata (offset, size, time, key frame flag) is kept in parallel arrays,
+ *   so adding a packet does not allocate.
+ *
+ * The buffer always starts with a key frame, so that it can be flushed to a muxer at any time.
+ * Old packets are evicted one GOP (key frame + following frames) at a time, as long
+ * as the remaining packets still cover the requested window.
+ *
+ * This class is not thread safe.
+ */
+class PreRollBuffer {
+
+    interface PacketCallback {
+        void onPacket(@NonNull ByteBuffer data, long timeUs, boolean keyFrame);
+    }
+
+    private final ByteBuffer mStorage;
+    private final long mWindowUs;
+
+    private final int[] mOffsets;
+    private final int[] mSizes;
+    private final long[] mTimes;
+    private final boolean[] mKeyFrames;
+    private int mHead; // Index of the oldest packet.
+    private int mCount;
+    private int mWritePosition;
+    private int mUsedBytes;
+    private int mKeyFrameCount;
+
+    PreRollBuffer(int capacityInBytes, int maxPackets, long windowUs) {
+        mStorage = ByteBuffer.allocateDirect(capacityInBytes);
+        mWindowUs = windowUs;
+        mOffsets = new int[maxPackets];
+        mSizes = new int[maxPackets];
+        mTimes = new long[maxPackets];
+        mKeyFrames = new boolean[maxPackets];
+    }
+
+    /**
+     * Copies the remaining bytes of data into the ring.
+     * Returns false if the packet was dropped, either because it does not fit at all,
+     * or because the buffer is empty and this is not a key frame.
+     */
+    boolean add(@NonNull ByteBuffer data, long timeUs, boolean keyFrame) {
+        int size = data.remaining();
+        int capacity = mStorage.capacity();
+        if (size > capacity) {
+            clear();
+            return false;
+        }
+        if (mCount == 0 && !keyFrame) return false;
+
+        // Make room for the new packet.
+        boolean wrap = mWritePosition + size > capacity;
+        int offset = wrap ? 0 : mWritePosition;
+        while (mCount > 0) {
+            int headOffset = mOffsets[mHead];
+            // When wrapping, anything after the old write position is older than what we overwrite.
+            boolean stale = wrap && headOffset >= mWritePosition;
+            boolean overlaps = headOffset < offset + size && headOffset + mSizes[mHead] > offset;
+            if (!stale && !overlaps && mCount < mOffsets.length) break;
+            evictHead();
+        }
+        // If we just dropped the last key frame, drop the rest of its GOP too.
+        while (mCount > 0 && !mKeyFrames[mHead]) evictHead();
+        if (mCount == 0 && !keyFrame) {
+            mWritePosition = 0;
+            return false;
+        }
+
+        // Copy.
+        int position = data.position();
+        mStorage.limit(offset + size);
+        mStorage.position(offset);
+        mStorage.put(data);
+        data.position(position);
+        int index = (mHead + mCount) % mOffsets.length;
+        mOffsets[index] = offset;
+        mSizes[index] = size;
+        mTimes[index] = timeUs;
+        mKeyFrames[index] = keyFrame;
+        mCount++;
+        mUsedBytes += size;
+        if (keyFrame) mKeyFrameCount++;
+        mWritePosition = offset + size;
+
+        // Drop whole GOPs as long as the rest still covers the window.
+        trimToWindow(timeUs);
+        return true;
+    }
+
+    private void trimToWindow(long newestTimeUs) {
+        while (mKeyFrameCount > 1) {
+            // Find the second key frame.
+            int next = -1;
+            for (int i = 1; i < mCount; i++) {
+                int index = (mHead + i) % mOffsets.length;
+                if (mKeyFrames[index]) {
+                    next = index;
+                    break;
+                }
+            }
+            if (next < 0 || newestTimeUs - mTimes[next] < mWindowUs) return;
+            while (mHead != next) evictHead();
+        }
+    }
+
+    private void evictHead() {
+        mUsedBytes -= mSizes[mHead];
+        if (mKeyFrames[mHead]) mKeyFrameCount--;
+        mHead = (mHead + 1) % mOffsets.length;
+        mCount--;
+        if (mCount == 0) {
+            mHead = 0;
+            mWritePosition = 0;
+        }
+    }
+
+    /**
+     * Passes all packets, oldest first, to the given callback, then clears the buffer.
+     * The ByteBuffer passed to the callback is only valid during the callback.
+     */
+    void drain(@NonNull PacketCallback callback) {
+        for (int i = 0; i < mCount; i++) {
+            int index = (mHead + i) % mOffsets.length;
+            mStorage.limit(mOffsets[index] + mSizes[index]);
+            mStorage.position(mOffsets[index]);
+            callback.onPacket(mStorage, mTimes[index], mKeyFrames[index]);
+        }
+        clear();
+    }
+
+    void clear() {
+        mHead = 0;
+        mCount = 0;
+        mWritePosition = 0;
+        mUsedBytes = 0;
+        mKeyFrameCount = 0;
+        mStorage.clear();
+    }
+
+    int getPacketCount() {
+        return mCount;
+    }
+
+    // Number of GOPs (key frame aligned segments) currently retained.
+    int getKeyFrameCount() {
+        return mKeyFrameCount;
+    }
+
+    // Bytes of encoded data currently retained.
+    int getUsedBytes() {
+        return mUsedBytes;
+    }
+
+    // Bytes allocated for the ring.
+    int getCapacity() {
+        return mStorage.capacity();
+    }
+
+    // Time covered by the retained packets.
+    long getDurationUs() {
+        if (mCount == 0) return 0;
+        int last = (mHead + mCount - 1) % mOffsets.length;
+        return mTimes[last] - mTimes[mHead];
+    }
+}
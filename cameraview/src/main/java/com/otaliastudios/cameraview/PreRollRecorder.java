@@ -0,0 +1,354 @@
+package com.otaliastudios.cameraview;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.os.Build;
+import android.os.Bundle;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Encodes preview frames continuously, keeping the last N seconds in a {@link PreRollBuffer}.
+ * When recording starts, the buffered packets are written to the file first, then
+ * live packets follow, so the video includes what happened before the call.
+ *
+ * MediaRecorder can't do this, since it only starts encoding when started.
+ * The output has no audio track.
+ *
+ * Frames are copied by {@link #offer(byte[], long)} and encoded by the executor, so the camera
+ * thread never feeds the codec. Other methods must be called from the camera thread.
+ * Encoding and the camera thread methods are serialized with the instance lock.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+class PreRollRecorder implements PreRollBuffer.PacketCallback {
+
+    private static final String TAG = PreRollRecorder.class.getSimpleName();
+    private static final CameraLogger LOG = CameraLogger.create(TAG);
+
+    private static final String MIME_TYPE = "video/avc";
+    private static final int KEY_FRAME_INTERVAL = 1; // Seconds. This is the eviction granularity.
+    private static final int POOL_SIZE = 2; // Frames waiting for the encoder. More are dropped.
+
+    private static class Pending {
+        private final byte[] data;
+        private long timeUs;
+
+        private Pending(int length) {
+            data = new byte[length];
+        }
+    }
+
+    private final Size mSize;
+    private final PreRollBuffer mBuffer;
+    private final MediaCodec.BufferInfo mInfo = new MediaCodec.BufferInfo();
+    private final MediaCodec.BufferInfo mMuxerInfo = new MediaCodec.BufferInfo();
+    private MediaCodec mCodec;
+    private MediaFormat mOutputFormat;
+
+    private MediaMuxer mMuxer;
+    private File mFile;
+    private int mOrientation;
+    private int mTrack = -1;
+    private boolean mHasKeyFrame;
+
+    private final Executor mExecutor;
+    private final boolean mSemiPlanar;
+    private final byte[] mChroma;
+    private final ConcurrentLinkedQueue<Pending> mFree = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Pending> mQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mDraining = new AtomicBoolean(false);
+
+    /**
+     * Creates the encoder. Throws if it can't take YUV 420 input in a format we can produce,
+     * in which case pre-roll should be disabled.
+     */
+    PreRollRecorder(@NonNull Size size, int frameRate, int bitRate, long preRollMillis,
+                    @NonNull Executor executor) throws IOException {
+        mSize = size;
+        mExecutor = executor;
+        long windowUs = preRollMillis * 1000L;
+        // Allow for the window plus two GOPs, since eviction works one GOP at a time.
+        long slackMillis = 2000L * KEY_FRAME_INTERVAL;
+        long capacity = (long) bitRate / 8L * (preRollMillis + slackMillis) / 1000L;
+        int packets = (int) ((long) frameRate * (preRollMillis + slackMillis) / 1000L) + 16;
+        mBuffer = new PreRollBuffer((int) Math.min(capacity, Integer.MAX_VALUE), packets, windowUs);
+
+        MediaFormat format = MediaFormat.createVideoFormat(MIME_TYPE, size.getWidth(), size.getHeight());
+        format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, frameRate);
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, KEY_FRAME_INTERVAL);
+        mCodec = MediaCodec.createEncoderByType(MIME_TYPE);
+        int colorFormat = findColorFormat(mCodec);
+        if (colorFormat < 0) {
+            mCodec.release();
+            mCodec = null;
+            throw new IOException("Encoder " + MIME_TYPE + " supports no YUV 420 format we can produce.");
+        }
+        mSemiPlanar = colorFormat == MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420SemiPlanar;
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, colorFormat);
+        mCodec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        mCodec.start();
+        int frameSize = size.getWidth() * size.getHeight();
+        mChroma = new byte[frameSize / 2];
+        for (int i = 0; i < POOL_SIZE; i++) mFree.offer(new Pending(frameSize + frameSize / 2));
+        LOG.i("PreRollRecorder:", "started.", "size:", size, "capacity:", mBuffer.getCapacity(),
+                "semiPlanar:", mSemiPlanar);
+    }
+
+    // Semi-planar (NV12) is preferred, planar (I420) is the fallback. Others are vendor specific.
+    private static int findColorFormat(@NonNull MediaCodec codec) {
+        int[] formats = codec.getCodecInfo().getCapabilitiesForType(MIME_TYPE).colorFormats;
+        int result = -1;
+        for (int format : formats) {
+            if (format == MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420SemiPlanar) return format;
+            if (format == MediaCodecInfo.CodecCapabilities.COLOR_FormatYUV420Planar) result = format;
+        }
+        return result;
+    }
+
+    /**
+     * Copies a NV21 preview frame and posts it to the encoder.
+     * This never blocks: if the encoder is late, the frame is skipped.
+     */
+    void offer(@NonNull byte[] nv21, long timeUs) {
+        Pending pending = mFree.poll();
+        if (pending == null) return;
+        System.arraycopy(nv21, 0, pending.data, 0, pending.data.length);
+        pending.timeUs = timeUs;
+        mQueue.offer(pending);
+        if (mDraining.compareAndSet(false, true)) {
+            try {
+                mExecutor.execute(mEncode);
+            } catch (RejectedExecutionException e) {
+                mDraining.set(false);
+                LOG.w("offer:", "Executor rejected the encoder. Dropping frames.");
+            }
+        }
+    }
+
+    // A single encoder task at a time, even on a pool: the one that set mDraining.
+    private final Runnable mEncode = new Runnable() {
+        @Override
+        public void run() {
+            do {
+                encodePending();
+                mDraining.set(false);
+                // Something might have been queued after the last poll, and before the flag was reset.
+            } while (!mQueue.isEmpty() && mDraining.compareAndSet(false, true));
+        }
+    };
+
+    private synchronized void encodePending() {
+        Pending pending;
+        while ((pending = mQueue.poll()) != null) {
+            try {
+                encode(pending.data, pending.timeUs);
+            } finally {
+                mFree.offer(pending);
+            }
+        }
+    }
+
+    /**
+     * Feeds a NV21 frame to the encoder, and collects any available output.
+     * If the encoder has no input buffer, the frame is skipped.
+     */
+    private void encode(@NonNull byte[] nv21, long timeUs) {
+        if (mCodec == null) return;
+        int index = mCodec.dequeueInputBuffer(0);
+        if (index >= 0) {
+            ByteBuffer input = getInputBuffer(index);
+            input.clear();
+            int frameSize = mSize.getWidth() * mSize.getHeight();
+            int quarter = frameSize / 4;
+            // The camera gives NV21 (V first). Rearrange the chroma in an array, then put it at once.
+            if (mSemiPlanar) {
+                // NV12: U first.
+                for (int i = 0, j = frameSize; i < quarter; i++, j += 2) {
+                    mChroma[2 * i] = nv21[j + 1];
+                    mChroma[2 * i + 1] = nv21[j];
+                }
+            } else {
+                // I420: U plane, then V plane.
+                for (int i = 0, j = frameSize; i < quarter; i++, j += 2) {
+                    mChroma[i] = nv21[j + 1];
+                    mChroma[quarter + i] = nv21[j];
+                }
+            }
+            input.put(nv21, 0, frameSize);
+            input.put(mChroma, 0, quarter * 2);
+            mCodec.queueInputBuffer(index, 0, frameSize + quarter * 2, timeUs, 0);
+        }
+        drain();
+    }
+
+    @SuppressWarnings("deprecation")
+    private ByteBuffer getInputBuffer(int index) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return mCodec.getInputBuffer(index);
+        }
+        return mCodec.getInputBuffers()[index];
+    }
+
+    @SuppressWarnings("deprecation")
+    private ByteBuffer getOutputBuffer(int index) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return mCodec.getOutputBuffer(index);
+        }
+        return mCodec.getOutputBuffers()[index];
+    }
+
+    private void drain() {
+        while (true) {
+            int index = mCodec.dequeueOutputBuffer(mInfo, 0);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) return;
+            if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                mOutputFormat = mCodec.getOutputFormat();
+                if (mFile != null && mMuxer == null) {
+                    try {
+                        startMuxer();
+                    } catch (IOException e) {
+                        LOG.e("drain:", "Could not start the muxer. Dropping recording.", e);
+                        mFile = null;
+                    }
+                }
+                continue;
+            }
+            if (index < 0) continue; // INFO_OUTPUT_BUFFERS_CHANGED
+
+            ByteBuffer output = getOutputBuffer(index);
+            boolean config = (mInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+            if (!config && mInfo.size > 0) {
+                output.position(mInfo.offset);
+                output.limit(mInfo.offset + mInfo.size);
+                boolean keyFrame = (mInfo.flags & MediaCodec.BUFFER_FLAG_SYNC_FRAME) != 0;
+                if (mMuxer != null) {
+                    // The file must start with a key frame.
+                    mHasKeyFrame = mHasKeyFrame || keyFrame;
+                    if (mHasKeyFrame) onPacket(output, mInfo.presentationTimeUs, keyFrame);
+                } else {
+                    mBuffer.add(output, mInfo.presentationTimeUs, keyFrame);
+                }
+            }
+            mCodec.releaseOutputBuffer(index, false);
+        }
+    }
+
+    /**
+     * Starts writing to the given file: first the pre-roll, then live frames.
+     */
+    @WorkerThread
+    synchronized void startRecording(@NonNull File file, int orientation) throws IOException {
+        mFile = file;
+        mOrientation = orientation;
+        // If the encoder has not produced anything yet, we'll start when the format is known.
+        if (mOutputFormat != null) {
+            try {
+                startMuxer();
+            } catch (IOException e) {
+                mFile = null;
+                throw e;
+            }
+        }
+    }
+
+    private void startMuxer() throws IOException {
+        mMuxer = new MediaMuxer(mFile.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        mMuxer.setOrientationHint(mOrientation);
+        mTrack = mMuxer.addTrack(mOutputFormat);
+        mMuxer.start();
+        LOG.i("startMuxer:", "flushing pre-roll.", "packets:", mBuffer.getPacketCount(),
+                "durationUs:", mBuffer.getDurationUs());
+        // The buffer always starts with a key frame. If it's empty, ask for one.
+        mHasKeyFrame = mBuffer.getPacketCount() > 0;
+        if (!mHasKeyFrame) requestKeyFrame();
+        mBuffer.drain(this);
+    }
+
+    @Override
+    public void onPacket(@NonNull ByteBuffer data, long timeUs, boolean keyFrame) {
+        mMuxerInfo.set(data.position(), data.remaining(), timeUs, keyFrame ? MediaCodec.BUFFER_FLAG_SYNC_FRAME : 0);
+        mMuxer.writeSampleData(mTrack, data, mMuxerInfo);
+    }
+
+    /**
+     * Stops writing to the file and goes back to buffering.
+     * Returns the file, or null if nothing was written.
+     */
+    @Nullable
+    @WorkerThread
+    synchronized File stopRecording() {
+        // Frames that came before the call belong to the video.
+        encodePending();
+        File file = mFile;
+        mFile = null;
+        if (mMuxer == null) return null;
+        try {
+            mMuxer.stop();
+        } catch (Exception e) {
+            // This can happen if no packets were written.
+            LOG.w("stopRecording:", "Error while stopping muxer. Swallowing", e);
+            file = null;
+        }
+        mMuxer.release();
+        mMuxer = null;
+        mTrack = -1;
+        // The buffer is empty now: ask for a key frame so that it can restart immediately.
+        requestKeyFrame();
+        return file;
+    }
+
+    private void requestKeyFrame() {
+        if (mCodec != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            Bundle params = new Bundle();
+            params.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+            mCodec.setParameters(params);
+        }
+    }
+
+    synchronized boolean isRecording() {
+        return mFile != null;
+    }
+
+    @WorkerThread
+    synchronized void release() {
+        if (mFile != null) stopRecording();
+        if (mCodec != null) {
+            try {
+                mCodec.stop();
+            } catch (Exception e) {
+                LOG.w("release:", "Error while stopping codec. Swallowing", e);
+            }
+            mCodec.release();
+            mCodec = null;
+        }
+        mBuffer.clear();
+        mQueue.clear();
+    }
+
+    int getMemoryUsage() {
+        return mBuffer.getUsedBytes();
+    }
+
+    // The packet buffer, plus the frames waiting for the encoder.
+    int getMemoryCapacity() {
+        int frameSize = mSize.getWidth() * mSize.getHeight();
+        return mBuffer.getCapacity() + POOL_SIZE * (frameSize + frameSize / 2) + mChroma.length;
+    }
+
+    int getSegmentCount() {
+        return mBuffer.getKeyFrameCount();
+    }
+}
@@ -0,0 +1,194 @@
+package com.otaliastudios.cameraview;
+
+import android.graphics.ImageFormat;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayDeque;
+
+/**
+ * A {@link FrameProcessor} that scores the sharpness of each frame, so that blurry frames
+ * can be skipped. The score is the variance of the Laplacian of the luma plane, sampled
+ * every {@link #setStep(int)} pixels: sharp edges give a high variance, blur and flat
+ * areas a low one. Scores only make sense relative to other frames of the same scene.
+ *
+ * The score is available through {@link Frame#getSharpness()} to processors added after this one.
+ *
+ * If a window is set with {@link #setWindow(long)}, the scorer also keeps the sharpest frames
+ * of that window, so that {@link CameraView#captureSnapshot(SharpnessScorer)} can take the
+ * sharpest recent frame instead of the next one. Frames are only copied when they could become
+ * the sharpest of the window, into at most {@link #CANDIDATES} recycled buffers.
+ */
+public class SharpnessScorer implements FrameProcessor {
+
+    private final static String TAG = SharpnessScorer.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    final static int CANDIDATES = 3;
+
+    // A frame copy, for best frame selection.
+    static class Candidate {
+        byte[] data;
+        long timestamp;
+        float score;
+        FrameInfo info;
+    }
+
+    private volatile int mStep = 4;
+    private volatile long mWindowNanos;
+    private float mLastScore = -1;
+
+    // Sharpest first, each candidate is newer and less sharp than the one before.
+    // A candidate that is older and less sharp than another can never be selected.
+    private final ArrayDeque<Candidate> mCandidates = new ArrayDeque<>(CANDIDATES);
+    private final ArrayDeque<Candidate> mPool = new ArrayDeque<>(CANDIDATES);
+
+    /**
+     * Sets the sampling step. Higher steps are faster, but ignore finer details.
+     * Defaults to 4, that is, 1/16 of the pixels are looked at.
+     *
+     * @param step the step in pixels
+     */
+    public void setStep(int step) {
+        if (step < 1) throw new IllegalArgumentException("Step should be >= 1");
+        mStep = step;
+    }
+
+    public int getStep() {
+        return mStep;
+    }
+
+    /**
+     * Sets the time window for best frame selection, see {@link CameraView#captureSnapshot(SharpnessScorer)}.
+     * Defaults to 0, which means no frame is kept.
+     *
+     * @param millis the window length
+     */
+    public void setWindow(long millis) {
+        mWindowNanos = Math.max(0, millis) * 1000000L;
+        if (millis <= 0) {
+            synchronized (this) {
+                while (!mCandidates.isEmpty()) recycle(mCandidates.pollFirst());
+            }
+        }
+    }
+
+    public long getWindow() {
+        return mWindowNanos / 1000000L;
+    }
+
+    /**
+     * Returns the score of the last processed frame, or -1 if none.
+     *
+     * @return the last score
+     */
+    public float getLastScore() {
+        return mLastScore;
+    }
+
+    /**
+     * Returns the score of the sharpest frame in the window, or -1 if none.
+     *
+     * @return the best score
+     */
+    public synchronized float getBestScore() {
+        expire(System.nanoTime());
+        Candidate best = mCandidates.peekFirst();
+        return best == null ? -1 : best.score;
+    }
+
+    @Override
+    @WorkerThread
+    public void process(@NonNull Frame frame) {
+        if (frame.getFormat() != ImageFormat.NV21 || frame.getData() == null) return;
+        Size size = frame.getSize();
+        float score = score(frame.getData(), size.getWidth(), size.getHeight(), mStep);
+        frame.setSharpness(score);
+        mLastScore = score;
+        if (mWindowNanos > 0) offer(frame, score);
+    }
+
+    /**
+     * Computes the variance of the Laplacian of the luma plane, over a grid of pixels
+     * spaced by step. Neighbors are taken on the same grid.
+     */
+    static float score(@NonNull byte[] luma, int width, int height, int step) {
+        long sum = 0;
+        long sumSquares = 0;
+        int count = 0;
+        int row = step * width;
+        for (int y = step; y < height - step; y += step) {
+            int i = y * width + step;
+            for (int x = step; x < width - step; x += step, i += step) {
+                int laplacian = 4 * (luma[i] & 0xFF)
+                        - (luma[i - step] & 0xFF) - (luma[i + step] & 0xFF)
+                        - (luma[i - row] & 0xFF) - (luma[i + row] & 0xFF);
+                sum += laplacian;
+                sumSquares += laplacian * laplacian;
+                count++;
+            }
+        }
+        if (count == 0) return 0;
+        double mean = (double) sum / count;
+        return (float) ((double) sumSquares / count - mean * mean);
+    }
+
+    private void offer(@NonNull Frame frame, float score) {
+        long timestamp = frame.getTimestamp();
+        Candidate candidate;
+        synchronized (this) {
+            expire(timestamp);
+            // Older, less sharp candidates are dominated by this one.
+            while (!mCandidates.isEmpty() && mCandidates.peekLast().score <= score) {
+                recycle(mCandidates.pollLast());
+            }
+            // If full, all candidates are sharper: this one would only matter after they expire.
+            if (mCandidates.size() == CANDIDATES) return;
+            candidate = mPool.pollFirst();
+        }
+        byte[] data = frame.getData();
+        if (candidate == null) candidate = new Candidate();
+        if (candidate.data == null || candidate.data.length != data.length) {
+            candidate.data = new byte[data.length];
+        }
+        System.arraycopy(data, 0, candidate.data, 0, data.length);
+        candidate.timestamp = timestamp;
+        candidate.score = score;
+        candidate.info = frame.getInfo();
+        synchronized (this) {
+            mCandidates.offerLast(candidate);
+        }
+    }
+
+    // Removes candidates older than the window.
+    private void expire(long now) {
+        while (!mCandidates.isEmpty() && now - mCandidates.peekFirst().timestamp > mWindowNanos) {
+            recycle(mCandidates.pollFirst());
+        }
+    }
+
+    private void recycle(@NonNull Candidate candidate) {
+        candidate.info = null;
+        if (mPool.size() < CANDIDATES) mPool.offerLast(candidate);
+    }
+
+    /**
+     * Removes and returns the sharpest candidate in the window. The candidate is not recycled,
+     * so its data can be used freely.
+     *
+     * @param now the current time, in the {@link System#nanoTime()} reference
+     * @return the sharpest candidate, or null
+     */
+    @Nullable
+    synchronized Candidate takeBest(long now) {
+        expire(now);
+        Candidate best = mCandidates.pollFirst();
+        if (best != null) LOG.i("takeBest:", "score:", best.score, "age:", (now - best.timestamp) / 1000000L, "ms");
+        return best;
+    }
+
+    synchronized int getCandidateCount() {
+        return mCandidates.size();
+    }
+}
@@ -7,6 +7,24 @@ import androidx.annotation.NonNull;
  */
 public class Size implements Comparable<Size> {
 
+    private final static PairCache<Size> sCache = new PairCache<Size>(512) {
+        @Override
+        boolean matches(@NonNull Size item, int width, int height) {
+            return item.mWidth == width && item.mHeight == height;
+        }
+
+        @NonNull
+        @Override
+        Size create(int width, int height) {
+            return new Size(width, height);
+        }
+    };
+
+    // Returns a (possibly cached) size. This can be called from any thread.
+    static Size of(int width, int height) {
+        return sCache.get(width, height);
+    }
+
     private final int mWidth;
     private final int mHeight;
 
@@ -25,7 +43,7 @@ public class Size implements Comparable<Size> {
 
     @SuppressWarnings("SuspiciousNameCombination")
     Size flip() {
-        return new Size(mHeight, mWidth);
+        return Size.of(mHeight, mWidth);
     }
 
     @Override
@@ -0,0 +1,349 @@
+package com.otaliastudios.cameraview;
+
+import android.graphics.ImageFormat;
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+
+/**
+ * Converts NV21 data, like the one in {@link Frame#getData()}, to RGB.
+ *
+ * - Output goes to arrays or buffers owned by the caller, so they can be reused across frames.
+ *   ARGB output is an int[] that can be passed to {@link android.graphics.Bitmap#setPixels(int[], int, int, int, int, int, int)}.
+ *   RGB output is a {@link ByteBuffer} with 3 bytes per pixel, e.g. the input of a ML model.
+ * - The image can be downscaled and rotated in the same pass, see {@link #setDownscale(int)}.
+ *   Downscaling picks one pixel out of each block, it does not average.
+ * - Math is done with integers, using the full range (JPEG) coefficients.
+ * - Rows are split among the threads of the camera CPU pool, see {@link #setParallelism(int)}.
+ *
+ * A converter holds no per-frame state, and nothing is allocated for each conversion.
+ * Conversions on the same instance are serialized, so prefer one instance per thread.
+ */
+public class YuvConverter {
+
+    // 16.16 fixed point coefficients. Also used by FramePreprocessor.
+    final static int SHIFT = 16;
+    final static int HALF = 1 << (SHIFT - 1);
+    final static int V_TO_R = 91881; // 1.402
+    final static int U_TO_G = 22554; // 0.344136
+    final static int V_TO_G = 46802; // 0.714136
+    final static int U_TO_B = 116130; // 1.772
+
+    // Fewer rows than this are not worth a thread.
+    private final static int MIN_ROWS_PER_CHUNK = 16;
+
+    private int mDownscale = 1;
+    private int mParallelism = Runtime.getRuntime().availableProcessors();
+    private Executor mExecutor;
+
+    // Current conversion. Written before starting the chunks, read by all of them.
+    private byte[] mInput;
+    private int mWidth;
+    private int mHeight;
+    private int mOutputWidth;
+    private int mPx0Row, mPx0Col, mPy0Row, mPy0Col, mDpx, mDpy;
+    private int[] mArgb;
+    private ByteBuffer mRgb;
+    private int mRgbOffset;
+
+    private final Object mLock = new Object();
+    private int mPendingChunks;
+    private RuntimeException mChunkError;
+    private Chunk[] mChunks = new Chunk[0];
+
+    /**
+     * Sets the downscale factor. For example, 2 means that the output is half as wide
+     * and half as high as the input.
+     *
+     * @param factor the factor, 1 for no downscaling
+     */
+    public void setDownscale(int factor) {
+        if (factor < 1) throw new IllegalArgumentException("Downscale factor should be >= 1");
+        synchronized (this) {
+            mDownscale = factor;
+        }
+    }
+
+    /**
+     * Returns the current downscale factor.
+     *
+     * @return the downscale factor
+     */
+    public int getDownscale() {
+        return mDownscale;
+    }
+
+    /**
+     * Sets how many threads can work on a single conversion. The calling thread is one of them,
+     * so 1 means that all work is done in the calling thread. Defaults to the number of cores.
+     *
+     * @param threads the number of threads
+     */
+    public void setParallelism(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Parallelism should be >= 1");
+        synchronized (this) {
+            mParallelism = threads;
+        }
+    }
+
+    /**
+     * Returns the number of threads that can work on a single conversion.
+     *
+     * @return the parallelism
+     */
+    public int getParallelism() {
+        return mParallelism;
+    }
+
+    // For tests, or to use a different pool.
+    synchronized void setExecutor(@NonNull Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Returns the output width, for the given input size and rotation.
+     *
+     * @param width the input width
+     * @param height the input height
+     * @param rotation the clock-wise rotation
+     * @return the output width
+     */
+    public int getOutputWidth(int width, int height, int rotation) {
+        return (rotation % 180 == 0 ? width : height) / mDownscale;
+    }
+
+    /**
+     * Returns the output height, for the given input size and rotation.
+     *
+     * @param width the input width
+     * @param height the input height
+     * @param rotation the clock-wise rotation
+     * @return the output height
+     */
+    public int getOutputHeight(int width, int height, int rotation) {
+        return (rotation % 180 == 0 ? height : width) / mDownscale;
+    }
+
+    /**
+     * Converts the frame to ARGB, applying its rotation, so that the output matches
+     * what the user sees on screen. See {@link Frame#getRotation()}.
+     *
+     * @param frame a NV21 frame
+     * @param argb the output, at least {@link #getOutputWidth(int, int, int)} * {@link #getOutputHeight(int, int, int)} long
+     */
+    @WorkerThread
+    public void convert(@NonNull Frame frame, @NonNull int[] argb) {
+        checkFrame(frame);
+        Size size = frame.getSize();
+        convert(frame.getData(), size.getWidth(), size.getHeight(), frame.getRotation(), argb);
+    }
+
+    /**
+     * Converts the frame to RGB, applying its rotation, so that the output matches
+     * what the user sees on screen. See {@link Frame#getRotation()}.
+     *
+     * @param frame a NV21 frame
+     * @param rgb the output, with 3 bytes per pixel from its current position, which is not changed
+     */
+    @WorkerThread
+    public void convert(@NonNull Frame frame, @NonNull ByteBuffer rgb) {
+        checkFrame(frame);
+        Size size = frame.getSize();
+        convert(frame.getData(), size.getWidth(), size.getHeight(), frame.getRotation(), rgb);
+    }
+
+    /**
+     * Converts NV21 data to ARGB.
+     *
+     * @param nv21 the input
+     * @param width the input width
+     * @param height the input height
+     * @param rotation clock-wise rotation to apply, one of 0, 90, 180, 270
+     * @param argb the output, at least {@link #getOutputWidth(int, int, int)} * {@link #getOutputHeight(int, int, int)} long
+     */
+    @WorkerThread
+    public synchronized void convert(@NonNull byte[] nv21, int width, int height, int rotation, @NonNull int[] argb) {
+        int size = prepare(nv21, width, height, rotation);
+        if (argb.length < size) {
+            throw new IllegalArgumentException("Output array is too small: " + argb.length + " < " + size);
+        }
+        mArgb = argb;
+        try {
+            run();
+        } finally {
+            mArgb = null;
+            mInput = null;
+        }
+    }
+
+    /**
+     * Converts NV21 data to RGB.
+     *
+     * @param nv21 the input
+     * @param width the input width
+     * @param height the input height
+     * @param rotation clock-wise rotation to apply, one of 0, 90, 180, 270
+     * @param rgb the output, with 3 bytes per pixel from its current position, which is not changed
+     */
+    @WorkerThread
+    public synchronized void convert(@NonNull byte[] nv21, int width, int height, int rotation, @NonNull ByteBuffer rgb) {
+        int size = prepare(nv21, width, height, rotation);
+        if (rgb.remaining() < size * 3) {
+            throw new IllegalArgumentException("Output buffer is too small: " + rgb.remaining() + " < " + size * 3);
+        }
+        mRgb = rgb;
+        mRgbOffset = rgb.position();
+        try {
+            run();
+        } finally {
+            mRgb = null;
+            mInput = null;
+        }
+    }
+
+    private static void checkFrame(@NonNull Frame frame) {
+        if (frame.getFormat() != ImageFormat.NV21) {
+            throw new IllegalArgumentException("Only NV21 frames can be converted. Format: " + frame.getFormat());
+        }
+    }
+
+    // Computes the mapping from output to input and returns the output size.
+    // Output pixel (x, y) reads input pixel (px0 + x * dpx, py0 + x * dpy), where px0 and py0
+    // are linear in y too. That covers all four rotations with the same loop.
+    private int prepare(@NonNull byte[] nv21, int width, int height, int rotation) {
+        if (width <= 0 || height <= 0 || nv21.length < width * height * 3 / 2) {
+            throw new IllegalArgumentException("Invalid input: " + width + "x" + height + ", " + nv21.length + " bytes");
+        }
+        int s = mDownscale;
+        int sw = width / s; // Downscaled, before rotation.
+        int sh = height / s;
+        mInput = nv21;
+        mWidth = width;
+        mHeight = height;
+        switch (((rotation % 360) + 360) % 360) {
+            case 0:
+                mOutputWidth = sw;
+                mPx0Row = 0; mPx0Col = 0; mPy0Row = s; mPy0Col = 0; mDpx = s; mDpy = 0;
+                break;
+            case 90:
+                mOutputWidth = sh;
+                mPx0Row = s; mPx0Col = 0; mPy0Row = 0; mPy0Col = (sh - 1) * s; mDpx = 0; mDpy = -s;
+                break;
+            case 180:
+                mOutputWidth = sw;
+                mPx0Row = 0; mPx0Col = (sw - 1) * s; mPy0Row = -s; mPy0Col = (sh - 1) * s; mDpx = -s; mDpy = 0;
+                break;
+            case 270:
+                mOutputWidth = sh;
+                mPx0Row = -s; mPx0Col = (sw - 1) * s; mPy0Row = 0; mPy0Col = 0; mDpx = 0; mDpy = s;
+                break;
+            default:
+                throw new IllegalArgumentException("Rotation should be a multiple of 90: " + rotation);
+        }
+        return sw * sh;
+    }
+
+    private void run() {
+        int rows = mOutputWidth == 0 ? 0 : (mWidth / mDownscale) * (mHeight / mDownscale) / mOutputWidth;
+        int chunks = Math.max(1, Math.min(mParallelism, rows / MIN_ROWS_PER_CHUNK));
+        if (chunks == 1) {
+            convertRows(0, rows);
+            return;
+        }
+        if (mExecutor == null) mExecutor = CameraExecutors.getCpuPool();
+        if (mChunks.length < chunks) {
+            mChunks = new Chunk[chunks];
+            for (int i = 0; i < chunks; i++) mChunks[i] = new Chunk();
+        }
+        synchronized (mLock) {
+            mPendingChunks = chunks - 1;
+            mChunkError = null;
+        }
+        // Post all chunks but the last one, which runs here.
+        int start = 0;
+        for (int i = 0; i < chunks; i++) {
+            int end = rows * (i + 1) / chunks;
+            mChunks[i].mStart = start;
+            mChunks[i].mEnd = end;
+            if (i < chunks - 1) mExecutor.execute(mChunks[i]);
+            start = end;
+        }
+        RuntimeException error = null;
+        try {
+            Chunk last = mChunks[chunks - 1];
+            convertRows(last.mStart, last.mEnd);
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        synchronized (mLock) {
+            while (mPendingChunks > 0) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    // We can't leave while other threads are writing to the output.
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (error == null) error = mChunkError;
+        }
+        if (error != null) throw error;
+    }
+
+    private class Chunk implements Runnable {
+        private int mStart;
+        private int mEnd;
+
+        @Override
+        public void run() {
+            RuntimeException error = null;
+            try {
+                convertRows(mStart, mEnd);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+            synchronized (mLock) {
+                if (error != null && mChunkError == null) mChunkError = error;
+                mPendingChunks--;
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    private void convertRows(int start, int end) {
+        final byte[] input = mInput;
+        final int width = mWidth;
+        final int frameSize = width * mHeight;
+        final int outputWidth = mOutputWidth;
+        final int dpx = mDpx;
+        final int dpy = mDpy;
+        final int[] argb = mArgb;
+        final ByteBuffer rgb = mRgb;
+        for (int y = start; y < end; y++) {
+            int px = mPx0Col + y * mPx0Row;
+            int py = mPy0Col + y * mPy0Row;
+            int out = y * outputWidth;
+            for (int x = 0; x < outputWidth; x++, out++, px += dpx, py += dpy) {
+                int yy = (input[py * width + px] & 0xFF) << SHIFT;
+                int uv = frameSize + (py >> 1) * width + (px & ~1);
+                int v = (input[uv] & 0xFF) - 128;
+                int u = (input[uv + 1] & 0xFF) - 128;
+                int r = (yy + V_TO_R * v + HALF) >> SHIFT;
+                int g = (yy - U_TO_G * u - V_TO_G * v + HALF) >> SHIFT;
+                int b = (yy + U_TO_B * u + HALF) >> SHIFT;
+                r = r < 0 ? 0 : r > 255 ? 255 : r;
+                g = g < 0 ? 0 : g > 255 ? 255 : g;
+                b = b < 0 ? 0 : b > 255 ? 255 : b;
+                if (argb != null) {
+                    argb[out] = 0xFF000000 | (r << 16) | (g << 8) | b;
+                } else {
+                    int index = mRgbOffset + out * 3;
+                    rgb.put(index, (byte) r);
+                    rgb.put(index + 1, (byte) g);
+                    rgb.put(index + 2, (byte) b);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.otaliastudios.cameraview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.os.Build;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.exifinterface.media.ExifInterface;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes JPEG byte arrays into display-ready bitmaps, for {@link CameraUtils}.
+ *
+ * - size and orientation are read with {@link JpegHeader}, so there's no bounds decoding pass
+ *   and no {@link ExifInterface}.
+ * - decoded bitmaps are taken from a pool keyed by {@link Size}, through
+ *   {@link BitmapFactory.Options#inBitmap}. Bitmaps return to the pool with {@link #release(Bitmap)}.
+ * - the sample size is computed on the rotated bounds. The framework can't rotate while decoding,
+ *   so the sampled bitmap is drawn, already rotated, into a pooled bitmap, and the sampled one
+ *   goes back to the pool.
+ * - work runs on the CPU pool of {@link CameraExecutors}, with one thread per core.
+ */
+class BitmapDecoder {
+
+    private final static String TAG = BitmapDecoder.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    private final static long MAX_POOL_BYTES = Math.min(Runtime.getRuntime().maxMemory() / 8, 32 * 1024 * 1024);
+
+    private final static HashMap<Size, ArrayDeque<Bitmap>> sPool = new HashMap<>();
+    private static long sPoolBytes;
+
+    private final static AtomicInteger sDecodeCount = new AtomicInteger(0);
+    private final static AtomicInteger sPoolHitCount = new AtomicInteger(0);
+    private final static AtomicLong sDecodeNanos = new AtomicLong(0);
+
+    @WorkerThread
+    static Bitmap decode(byte[] source, int maxWidth, int maxHeight) {
+        long start = System.nanoTime();
+        if (maxWidth <= 0) maxWidth = Integer.MAX_VALUE;
+        if (maxHeight <= 0) maxHeight = Integer.MAX_VALUE;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        JpegHeader header = JpegHeader.read(source);
+        int exifOrientation = header == null ? ExifInterface.ORIENTATION_NORMAL : header.orientation;
+        int rotation = computeRotation(exifOrientation);
+        boolean flip = exifOrientation == ExifInterface.ORIENTATION_FLIP_HORIZONTAL ||
+                exifOrientation == ExifInterface.ORIENTATION_FLIP_VERTICAL ||
+                exifOrientation == ExifInterface.ORIENTATION_TRANSPOSE ||
+                exifOrientation == ExifInterface.ORIENTATION_TRANSVERSE;
+
+        int width, height;
+        if (header != null && header.width > 0 && header.height > 0) {
+            width = header.width;
+            height = header.height;
+        } else {
+            // Not a JPEG, or no frame found. Ask the framework.
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(source, 0, source.length, options);
+            options.inJustDecodeBounds = false;
+            width = options.outWidth;
+            height = options.outHeight;
+        }
+
+        // Sample on the rotated bounds.
+        boolean swap = rotation % 180 != 0;
+        int sample = computeSampleSize(swap ? height : width, swap ? width : height, maxWidth, maxHeight);
+        options.inSampleSize = sample;
+        options.inMutable = true;
+        if (sample == 1 || Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            // Before KitKat, inBitmap must match exactly and can't be used with sampling.
+            // Depending on the codec, sampled dimensions are rounded up or down.
+            options.inBitmap = obtain((width + sample - 1) / sample, (height + sample - 1) / sample);
+            if (options.inBitmap == null && sample > 1) {
+                options.inBitmap = obtain(width / sample, height / sample);
+            }
+        }
+        Bitmap bitmap = decodeByteArray(source, options);
+
+        if (bitmap != null && (rotation != 0 || flip)) {
+            bitmap = transform(bitmap, rotation, flip);
+        }
+        sDecodeCount.incrementAndGet();
+        sDecodeNanos.addAndGet(System.nanoTime() - start);
+        return bitmap;
+    }
+
+    @Nullable
+    private static Bitmap decodeByteArray(byte[] source, BitmapFactory.Options options) {
+        try {
+            return BitmapFactory.decodeByteArray(source, 0, source.length, options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap == null) throw e;
+            // The pooled bitmap could not be reused. Try again without.
+            LOG.w("decode:", "Could not reuse bitmap.", e);
+            release(options.inBitmap);
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(source, 0, source.length, options);
+        }
+    }
+
+    // Draws source into a pooled bitmap with the given rotation, then releases source.
+    private static Bitmap transform(Bitmap source, int rotation, boolean flip) {
+        Matrix matrix = new Matrix();
+        matrix.setRotate(rotation);
+        if (flip) matrix.postScale(-1, 1);
+        RectF bounds = new RectF(0, 0, source.getWidth(), source.getHeight());
+        matrix.mapRect(bounds);
+        matrix.postTranslate(-bounds.left, -bounds.top);
+
+        int width = Math.round(bounds.width());
+        int height = Math.round(bounds.height());
+        Bitmap target = obtain(width, height);
+        if (target == null) {
+            target = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        } else {
+            target.eraseColor(0);
+        }
+        new Canvas(target).drawBitmap(source, matrix, null);
+        release(source);
+        return target;
+    }
+
+    private static int computeRotation(int exifOrientation) {
+        // http://sylvana.net/jpegcrop/exif_orientation.html
+        switch (exifOrientation) {
+            case ExifInterface.ORIENTATION_ROTATE_180:
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                return 180;
+
+            case ExifInterface.ORIENTATION_ROTATE_90:
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                return 90;
+
+            case ExifInterface.ORIENTATION_ROTATE_270:
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                return 270;
+
+            default: return 0;
+        }
+    }
+
+    static int computeSampleSize(int width, int height, int maxWidth, int maxHeight) {
+        // https://developer.android.com/topic/performance/graphics/load-bitmap.html
+        int inSampleSize = 1;
+        if (height > maxHeight || width > maxWidth) {
+            while ((height / inSampleSize) >= maxHeight
+                    || (width / inSampleSize) >= maxWidth) {
+                inSampleSize *= 2;
+            }
+        }
+        return inSampleSize;
+    }
+
+    // Returns a pooled bitmap big enough for the given size, if any.
+    @Nullable
+    private static synchronized Bitmap obtain(int width, int height) {
+        if (width <= 0 || height <= 0) return null;
+        ArrayDeque<Bitmap> bitmaps = sPool.get(Size.of(width, height));
+        Bitmap bitmap = bitmaps == null ? null : bitmaps.poll();
+        if (bitmap != null) {
+            sPoolBytes -= getBytes(bitmap);
+            sPoolHitCount.incrementAndGet();
+        }
+        return bitmap;
+    }
+
+    // Puts the bitmap back in the pool, or recycles it if the pool is full.
+    static synchronized void release(@NonNull Bitmap bitmap) {
+        if (bitmap.isRecycled()) return;
+        long bytes = getBytes(bitmap);
+        if (!bitmap.isMutable() || bitmap.getConfig() != Bitmap.Config.ARGB_8888
+                || sPoolBytes + bytes > MAX_POOL_BYTES) {
+            bitmap.recycle();
+            return;
+        }
+        Size size = Size.of(bitmap.getWidth(), bitmap.getHeight());
+        ArrayDeque<Bitmap> bitmaps = sPool.get(size);
+        if (bitmaps == null) {
+            bitmaps = new ArrayDeque<>(2);
+            sPool.put(size, bitmaps);
+        }
+        if (bitmaps.contains(bitmap)) return;
+        bitmaps.offer(bitmap);
+        sPoolBytes += bytes;
+    }
+
+    private static long getBytes(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return (long) bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
+    // Empties the pool, recycling everything.
+    static synchronized void clearPool() {
+        for (ArrayDeque<Bitmap> bitmaps : sPool.values()) {
+            for (Bitmap bitmap : bitmaps) bitmap.recycle();
+        }
+        sPool.clear();
+        sPoolBytes = 0;
+    }
+
+    static synchronized long getPoolBytes() {
+        return sPoolBytes;
+    }
+
+    // Number of decodes since start.
+    static int getDecodeCount() {
+        return sDecodeCount.get();
+    }
+
+    // Number of times a pooled bitmap was reused.
+    static int getPoolHitCount() {
+        return sPoolHitCount.get();
+    }
+
+    // Average time spent in decode(), in microseconds.
+    static long getAverageDecodeMicros() {
+        int count = sDecodeCount.get();
+        return count == 0 ? 0 : sDecodeNanos.get() / count / 1000L;
+    }
+}
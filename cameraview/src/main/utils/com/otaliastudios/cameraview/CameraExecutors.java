@@ -0,0 +1,250 @@
+package com.otaliastudios.cameraview;
+
+import android.os.Process;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The threads used by a single camera instance. There are different lanes:
+ * - control: a serial {@link WorkerHandler} that owns the camera. Each instance has its own,
+ *   so two CameraViews don't wait for each other.
+ * - frames: a serial {@link WorkerHandler} for frame processors. Also one per instance.
+ * - processors: frame processors running in parallel, see {@link FrameDispatcher}. This is a
+ *   process-wide pool, separate from cpu so that processors can use cpu and wait for it.
+ * - cpu: image work like rotation, cropping, JPEG encoding and bitmap decoding.
+ *   This is backed by a process-wide pool with one thread per core.
+ * - pictures: picture and snapshot results. This runs on the cpu pool too, but one task
+ *   at a time, so that pictures are delivered in the order they were taken.
+ * - io: file work like video finalization. Backed by a small process-wide pool.
+ *
+ * Each lane runs at its own thread priority and keeps queue depth metrics.
+ */
+class CameraExecutors {
+
+    private final static String TAG = CameraExecutors.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    final static int CONTROL_PRIORITY = Process.THREAD_PRIORITY_FOREGROUND;
+    final static int FRAMES_PRIORITY = Process.THREAD_PRIORITY_DEFAULT;
+    final static int CPU_PRIORITY = Process.THREAD_PRIORITY_DEFAULT + Process.THREAD_PRIORITY_LESS_FAVORABLE;
+    final static int IO_PRIORITY = Process.THREAD_PRIORITY_BACKGROUND;
+
+    private final static int CPU_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private final static int IO_THREADS = 2;
+
+    private static ThreadPoolExecutor sCpuPool;
+    private static ThreadPoolExecutor sIoPool;
+    private static ThreadPoolExecutor sProcessorsPool;
+
+    // Process-wide pool for CPU bound work. Prefer the lanes returned by getCpu().
+    static synchronized Executor getCpuPool() {
+        if (sCpuPool == null) sCpuPool = createPool("CameraViewCpu", CPU_THREADS, CPU_PRIORITY);
+        return sCpuPool;
+    }
+
+    // Process-wide pool for I/O work. Prefer the lanes returned by getIo().
+    static synchronized Executor getIoPool() {
+        if (sIoPool == null) sIoPool = createPool("CameraViewIo", IO_THREADS, IO_PRIORITY);
+        return sIoPool;
+    }
+
+    // Process-wide pool for frame processors. Prefer the lanes returned by getProcessors().
+    static synchronized Executor getProcessorsPool() {
+        if (sProcessorsPool == null) sProcessorsPool = createPool("CameraViewProcessors", CPU_THREADS, FRAMES_PRIORITY);
+        return sProcessorsPool;
+    }
+
+    private static ThreadPoolExecutor createPool(final String name, int threads, final int priority) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger(0);
+
+                    @Override
+                    public Thread newThread(@NonNull final Runnable runnable) {
+                        Thread thread = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(priority);
+                                runnable.run();
+                            }
+                        }, name + "-" + mCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * An executor that counts the tasks that were posted and not yet completed.
+     */
+    static class Lane implements Executor {
+
+        private final String mName;
+        private final Executor mExecutor;
+        private final AtomicInteger mDepth = new AtomicInteger(0);
+        private final AtomicInteger mMaxDepth = new AtomicInteger(0);
+        private final AtomicLong mCompleted = new AtomicLong(0);
+
+        Lane(@NonNull String name, @NonNull Executor executor) {
+            mName = name;
+            mExecutor = executor;
+        }
+
+        @Override
+        public void execute(@NonNull final Runnable command) {
+            int depth = mDepth.incrementAndGet();
+            int max = mMaxDepth.get();
+            while (depth > max && !mMaxDepth.compareAndSet(max, depth)) {
+                max = mMaxDepth.get();
+            }
+            try {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            command.run();
+                        } finally {
+                            mDepth.decrementAndGet();
+                            mCompleted.incrementAndGet();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                mDepth.decrementAndGet();
+                throw e;
+            }
+        }
+
+        // Tasks posted and not completed yet, including the running ones.
+        int getQueueDepth() {
+            return mDepth.get();
+        }
+
+        // Highest queue depth since this lane was created.
+        int getMaxQueueDepth() {
+            return mMaxDepth.get();
+        }
+
+        long getCompletedCount() {
+            return mCompleted.get();
+        }
+
+        @Override
+        public String toString() {
+            return mName + "(depth: " + getQueueDepth() + ", max: " + getMaxQueueDepth()
+                    + ", completed: " + getCompletedCount() + ")";
+        }
+    }
+
+    /**
+     * Runs tasks one at a time, in order, on the threads of another executor.
+     */
+    static class Serial implements Executor {
+
+        private final Executor mExecutor;
+        private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+        private Runnable mActive;
+
+        Serial(@NonNull Executor executor) {
+            mExecutor = executor;
+        }
+
+        @Override
+        public synchronized void execute(@NonNull final Runnable command) {
+            mTasks.offer(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        command.run();
+                    } finally {
+                        scheduleNext();
+                    }
+                }
+            });
+            if (mActive == null) scheduleNext();
+        }
+
+        private synchronized void scheduleNext() {
+            mActive = mTasks.poll();
+            if (mActive != null) mExecutor.execute(mActive);
+        }
+    }
+
+    private WorkerHandler mControl;
+    private WorkerHandler mFrames;
+    private final Lane mCpu = new Lane("cpu", getCpuPool());
+    private final Lane mPictures = new Lane("pictures", new Serial(getCpuPool()));
+    private final Lane mIo = new Lane("io", getIoPool());
+    private final Lane mProcessors = new Lane("processors", getProcessorsPool());
+
+    CameraExecutors() {
+        mControl = WorkerHandler.create("CameraViewController", CONTROL_PRIORITY);
+    }
+
+    @NonNull
+    WorkerHandler getControl() {
+        return mControl;
+    }
+
+    // Replaces a control thread that has died.
+    @NonNull
+    WorkerHandler restartControl() {
+        LOG.w("restartControl:", "Replacing control thread.");
+        mControl.quit();
+        mControl = WorkerHandler.create("CameraViewController", CONTROL_PRIORITY);
+        return mControl;
+    }
+
+    @NonNull
+    synchronized WorkerHandler getFrames() {
+        if (mFrames == null) mFrames = WorkerHandler.create("FrameProcessorsWorker", FRAMES_PRIORITY);
+        return mFrames;
+    }
+
+    @NonNull
+    Lane getCpu() {
+        return mCpu;
+    }
+
+    @NonNull
+    Lane getPictures() {
+        return mPictures;
+    }
+
+    @NonNull
+    Lane getIo() {
+        return mIo;
+    }
+
+    @NonNull
+    Lane getProcessors() {
+        return mProcessors;
+    }
+
+    // Stops the serial lanes once they are done with what was posted.
+    // Work on the shared pools goes on.
+    synchronized void release() {
+        LOG.i("release:", this);
+        mControl.quit();
+        if (mFrames != null) mFrames.quit();
+    }
+
+    @Override
+    public String toString() {
+        return "control: " + mControl.getLane() +
+                ", frames: " + (mFrames == null ? "-" : mFrames.getLane()) +
+                ", " + mCpu + ", " + mPictures + ", " + mIo + ", " + mProcessors;
+    }
+}
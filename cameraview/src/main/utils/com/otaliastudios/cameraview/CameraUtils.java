@@ -3,16 +3,9 @@ package com.otaliastudios.cameraview;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
 import android.hardware.Camera;
 import android.os.Handler;
 import androidx.annotation.UiThread;
-import androidx.exifinterface.media.ExifInterface;
-
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 
 /**
  * Static utilities for dealing with camera I/O, orientations, etc.
@@ -74,6 +67,7 @@ public class CameraUtils {
      * The difference with {@link android.graphics.BitmapFactory#decodeByteArray(byte[], int, int)}
      * is that this cares about orientation, reading it from the EXIF header.
      * This is executed in a background thread, and returns the result to the original thread.
+     * Many decoding operations can run in parallel.
      *
      * The image is also downscaled taking care of the maxWidth and maxHeight arguments.
      *
@@ -85,7 +79,7 @@ public class CameraUtils {
     @SuppressWarnings("WeakerAccess")
     public static void decodeBitmap(final byte[] source, final int maxWidth, final int maxHeight, final BitmapCallback callback) {
         final Handler ui = new Handler();
-        WorkerHandler.run(new Runnable() {
+        CameraExecutors.getCpuPool().execute(new Runnable() {
             @Override
             public void run() {
                 final Bitmap bitmap = decodeBitmap(source, maxWidth, maxHeight);
@@ -100,96 +94,61 @@ public class CameraUtils {
     }
 
 
-    // TODO ignores flipping
-    @SuppressWarnings({"SuspiciousNameCombination", "WeakerAccess"})
+    @SuppressWarnings("WeakerAccess")
     /* for tests */ static Bitmap decodeBitmap(byte[] source, int maxWidth, int maxHeight) {
-        if (maxWidth <= 0) maxWidth = Integer.MAX_VALUE;
-        if (maxHeight <= 0) maxHeight = Integer.MAX_VALUE;
-        int orientation;
-        boolean flip;
-        InputStream stream = null;
-        try {
-            // http://sylvana.net/jpegcrop/exif_orientation.html
-            stream = new ByteArrayInputStream(source);
-            ExifInterface exif = new ExifInterface(stream);
-            Integer exifOrientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
-            switch (exifOrientation) {
-                case ExifInterface.ORIENTATION_NORMAL:
-                case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
-                    orientation = 0; break;
-
-                case ExifInterface.ORIENTATION_ROTATE_180:
-                case ExifInterface.ORIENTATION_FLIP_VERTICAL:
-                    orientation = 180; break;
-
-                case ExifInterface.ORIENTATION_ROTATE_90:
-                case ExifInterface.ORIENTATION_TRANSPOSE:
-                    orientation = 90; break;
-
-                case ExifInterface.ORIENTATION_ROTATE_270:
-                case ExifInterface.ORIENTATION_TRANSVERSE:
-                    orientation = 270; break;
-
-                default: orientation = 0;
-            }
+        return BitmapDecoder.decode(source, maxWidth, maxHeight);
+    }
 
-            flip = exifOrientation == ExifInterface.ORIENTATION_FLIP_HORIZONTAL ||
-                    exifOrientation == ExifInterface.ORIENTATION_FLIP_VERTICAL ||
-                    exifOrientation == ExifInterface.ORIENTATION_TRANSPOSE ||
-                    exifOrientation == ExifInterface.ORIENTATION_TRANSVERSE;
-
-        } catch (IOException e) {
-            e.printStackTrace();
-            orientation = 0;
-            flip = false;
-        } finally {
-            if (stream != null) {
-                try { stream.close(); } catch (Exception ignored) {}
-            }
-        }
 
-        Bitmap bitmap;
-        if (maxWidth < Integer.MAX_VALUE || maxHeight < Integer.MAX_VALUE) {
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inJustDecodeBounds = true;
-            BitmapFactory.decodeByteArray(source, 0, source.length, options);
-
-            int outHeight = options.outHeight;
-            int outWidth = options.outWidth;
-            if (orientation % 180 != 0) {
-                outHeight = options.outWidth;
-                outWidth = options.outHeight;
-            }
+    /**
+     * Gives back a bitmap that was obtained with {@link #decodeBitmap(byte[], BitmapCallback)},
+     * once it is not needed anymore. It will be reused by next decoding operations,
+     * which is faster than allocating a new one.
+     * The bitmap must not be used after this call.
+     *
+     * @param bitmap a bitmap that is not needed anymore
+     */
+    @SuppressWarnings("WeakerAccess")
+    public static void releaseBitmap(Bitmap bitmap) {
+        BitmapDecoder.release(bitmap);
+    }
 
-            options.inSampleSize = computeSampleSize(outWidth, outHeight, maxWidth, maxHeight);
-            options.inJustDecodeBounds = false;
-            bitmap = BitmapFactory.decodeByteArray(source, 0, source.length, options);
-        } else {
-            bitmap = BitmapFactory.decodeByteArray(source, 0, source.length);
-        }
 
-        if (orientation != 0 || flip) {
-            Matrix matrix = new Matrix();
-            matrix.setRotate(orientation);
-            // matrix.postScale(1, -1) Flip... needs testing.
-            Bitmap temp = bitmap;
-            bitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
-            temp.recycle();
-        }
-        return bitmap;
+    /**
+     * Sets the memory budget shared by all {@link CameraView} instances in this process,
+     * for preview buffers and capture. Each instance gets an equal share,
+     * see {@link CameraView#getMemoryShare()}. Shares are applied when the preview (re)starts.
+     * Pass 0 to go back to the default, a quarter of the max heap size.
+     *
+     * @param bytes the budget in bytes
+     */
+    @SuppressWarnings("WeakerAccess")
+    public static void setMemoryBudget(long bytes) {
+        MemoryBudget.setBudget(bytes);
     }
 
 
-    private static int computeSampleSize(int width, int height, int maxWidth, int maxHeight) {
-        // https://developer.android.com/topic/performance/graphics/load-bitmap.html
-        int inSampleSize = 1;
-        if (height > maxHeight || width > maxWidth) {
-            while ((height / inSampleSize) >= maxHeight
-                    || (width / inSampleSize) >= maxWidth) {
-                inSampleSize *= 2;
-            }
-        }
-        return inSampleSize;
+    /**
+     * Returns the memory budget shared by all {@link CameraView} instances.
+     *
+     * @see #setMemoryBudget(long)
+     * @return the budget in bytes
+     */
+    @SuppressWarnings("WeakerAccess")
+    public static long getMemoryBudget() {
+        return MemoryBudget.getBudget();
+    }
+
+
+    /**
+     * Returns how many bytes of the memory budget are used by all {@link CameraView} instances.
+     *
+     * @see #setMemoryBudget(long)
+     * @return the memory usage in bytes
+     */
+    @SuppressWarnings("WeakerAccess")
+    public static long getMemoryUsage() {
+        return MemoryBudget.getUsage();
     }
 
 
@@ -3,35 +3,44 @@ package com.otaliastudios.cameraview;
 import android.graphics.Bitmap;
 import android.graphics.Rect;
 import android.graphics.YuvImage;
-
-import java.io.ByteArrayOutputStream;
+import androidx.annotation.Nullable;
+import androidx.exifinterface.media.ExifInterface;
 
 class CropHelper {
 
 
     static byte[] cropToJpeg(YuvImage yuv, AspectRatio targetRatio, int jpegCompression) {
-        Rect crop = computeCrop(yuv.getWidth(), yuv.getHeight(), targetRatio);
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        return toJpeg(yuv, targetRatio, jpegCompression, null);
+    }
+
+
+    // Encodes the image, cropping it if targetRatio is not null, and puts the EXIF segment if any.
+    // This is a single encode, and the only copy is the one that inserts the segment.
+    static byte[] toJpeg(YuvImage yuv, @Nullable AspectRatio targetRatio, int jpegCompression, @Nullable byte[] exif) {
+        Rect crop = targetRatio == null ? new Rect(0, 0, yuv.getWidth(), yuv.getHeight()) :
+                computeCrop(yuv.getWidth(), yuv.getHeight(), targetRatio);
+        ExifWriter.Output out = new ExifWriter.Output(crop.width() * crop.height() / 4);
         yuv.compressToJpeg(crop, jpegCompression, out);
-        return out.toByteArray();
+        if (exif == null) return out.toByteArray();
+        return ExifWriter.insert(out.getBuffer(), out.size(), exif);
     }
 
 
     // This reads a rotated Bitmap thanks to CameraUtils. Then crops and returns a byte array.
-    // In doing so, EXIF data is deleted.
+    // The EXIF segment is copied over, with a normal orientation since pixels are now rotated.
     static byte[] cropToJpeg(byte[] jpeg, AspectRatio targetRatio, int jpegCompression) {
 
         Bitmap image = CameraUtils.decodeBitmap(jpeg, Integer.MAX_VALUE, Integer.MAX_VALUE);
         Rect cropRect = computeCrop(image.getWidth(), image.getHeight(), targetRatio);
         Bitmap crop = Bitmap.createBitmap(image, cropRect.left, cropRect.top, cropRect.width(), cropRect.height());
-        image.recycle();
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (crop != image) BitmapDecoder.release(image);
+        ExifWriter.Output out = new ExifWriter.Output(cropRect.width() * cropRect.height() / 4);
         crop.compress(Bitmap.CompressFormat.JPEG, jpegCompression, out);
         crop.recycle();
-        return out.toByteArray();
+        return ExifWriter.copy(jpeg, out.getBuffer(), out.size(), ExifInterface.ORIENTATION_NORMAL);
     }
 
-    private static Rect computeCrop(int currentWidth, int currentHeight, AspectRatio targetRatio) {
+    static Rect computeCrop(int currentWidth, int currentHeight, AspectRatio targetRatio) {
         AspectRatio currentRatio = AspectRatio.of(currentWidth, currentHeight);
         int x, y, width, height;
         if (currentRatio.toFloat() > targetRatio.toFloat()) {
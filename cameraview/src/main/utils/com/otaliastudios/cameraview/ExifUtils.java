@@ -3,7 +3,6 @@ package com.otaliastudios.cameraview;
 
 import androidx.exifinterface.media.ExifInterface;
 
-// TODO unused.
 class ExifUtils {
 
     static int getOrientationTag(int rotation, boolean flip) {
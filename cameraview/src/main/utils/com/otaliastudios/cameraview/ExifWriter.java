@@ -0,0 +1,311 @@
+package com.otaliastudios.cameraview;
+
+import android.location.Location;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Writes EXIF (APP1) segments directly in encoded JPEG data, so that we don't have to rotate
+ * pixels or lose metadata when re-encoding:
+ * - {@link #createSegment(int, long, Location)} builds a small segment with orientation,
+ *   date and GPS tags
+ * - {@link #insert(byte[], int, byte[])} puts a segment in a JPEG, replacing the existing one
+ * - {@link #copy(byte[], byte[], int, int)} moves the segment of a JPEG to another one,
+ *   e.g. after cropping, rewriting the orientation
+ *
+ * Compressed data is copied once and never decoded. The TIFF structure is written big endian.
+ * http://www.media.mit.edu/pia/Research/deepview/exif.html
+ */
+class ExifWriter {
+
+    private final static int MARKER_APP0 = 0xE0;
+    private final static int MARKER_APP1 = 0xE1;
+    private final static int MAX_SEGMENT_LENGTH = 0xFFFF + 2;
+
+    private final static int TYPE_BYTE = 1;
+    private final static int TYPE_ASCII = 2;
+    private final static int TYPE_SHORT = 3;
+    private final static int TYPE_LONG = 4;
+    private final static int TYPE_RATIONAL = 5;
+    private final static int TYPE_UNDEFINED = 7;
+
+    private final static int TAG_ORIENTATION = 0x0112;
+    private final static int TAG_DATE_TIME = 0x0132;
+    private final static int TAG_EXIF_IFD = 0x8769;
+    private final static int TAG_GPS_IFD = 0x8825;
+    private final static int TAG_EXIF_VERSION = 0x9000;
+    private final static int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    private final static int TAG_GPS_VERSION = 0x0000;
+    private final static int TAG_GPS_LATITUDE_REF = 0x0001;
+    private final static int TAG_GPS_LATITUDE = 0x0002;
+    private final static int TAG_GPS_LONGITUDE_REF = 0x0003;
+    private final static int TAG_GPS_LONGITUDE = 0x0004;
+    private final static int TAG_GPS_ALTITUDE_REF = 0x0005;
+    private final static int TAG_GPS_ALTITUDE = 0x0006;
+    private final static int TAG_GPS_TIME_STAMP = 0x0007;
+    private final static int TAG_GPS_DATE_STAMP = 0x001D;
+
+    // Offset of the TIFF structure in the segment: marker, length, "Exif\0\0".
+    private final static int TIFF_OFFSET = 10;
+
+    /**
+     * A stream that gives access to its buffer, to avoid a copy in toByteArray().
+     */
+    static class Output extends ByteArrayOutputStream {
+
+        Output(int size) {
+            super(size);
+        }
+
+        @NonNull
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+
+    private static class Entry {
+        private final int tag;
+        private final int type;
+        private final int count;
+        private final byte[] value;
+
+        private Entry(int tag, int type, int count, @NonNull byte[] value) {
+            this.tag = tag;
+            this.type = type;
+            this.count = count;
+            this.value = value;
+        }
+    }
+
+    // Entries must be added in tag order.
+    private static class Ifd {
+        private final List<Entry> entries = new ArrayList<>();
+
+        private void add(int tag, int type, int count, @NonNull byte[] value) {
+            entries.add(new Entry(tag, type, count, value));
+        }
+
+        private int size() {
+            int size = 2 + entries.size() * 12 + 4;
+            for (Entry entry : entries) {
+                if (entry.value.length > 4) size += entry.value.length + (entry.value.length & 1);
+            }
+            return size;
+        }
+
+        // Writes the IFD at offset, relative to tiff, followed by values that don't fit in entries.
+        private void write(@NonNull byte[] data, int tiff, int offset) {
+            int position = tiff + offset;
+            int values = offset + 2 + entries.size() * 12 + 4;
+            writeShort(data, position, entries.size());
+            position += 2;
+            for (Entry entry : entries) {
+                writeShort(data, position, entry.tag);
+                writeShort(data, position + 2, entry.type);
+                writeInt(data, position + 4, entry.count);
+                if (entry.value.length <= 4) {
+                    System.arraycopy(entry.value, 0, data, position + 8, entry.value.length);
+                } else {
+                    writeInt(data, position + 8, values);
+                    System.arraycopy(entry.value, 0, data, tiff + values, entry.value.length);
+                    values += entry.value.length + (entry.value.length & 1);
+                }
+                position += 12;
+            }
+            writeInt(data, position, 0); // Next IFD
+        }
+    }
+
+    /**
+     * Creates an APP1 segment, marker included, with the orientation, the date and,
+     * if present, the location.
+     *
+     * @param orientation one of the {@link androidx.exifinterface.media.ExifInterface} orientation constants
+     * @param time the capture time, in the {@link System#currentTimeMillis()} reference
+     * @param location the location, or null
+     * @return the segment
+     */
+    @NonNull
+    static byte[] createSegment(int orientation, long time, @Nullable Location location) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss", Locale.US);
+        byte[] date = ascii(format.format(new Date(time)));
+
+        Ifd exif = new Ifd();
+        exif.add(TAG_EXIF_VERSION, TYPE_UNDEFINED, 4, new byte[]{'0', '2', '2', '0'});
+        exif.add(TAG_DATE_TIME_ORIGINAL, TYPE_ASCII, date.length, date);
+
+        Ifd gps = null;
+        if (location != null) {
+            gps = new Ifd();
+            double latitude = location.getLatitude();
+            double longitude = location.getLongitude();
+            gps.add(TAG_GPS_VERSION, TYPE_BYTE, 4, new byte[]{2, 2, 0, 0});
+            gps.add(TAG_GPS_LATITUDE_REF, TYPE_ASCII, 2, ascii(latitude >= 0 ? "N" : "S"));
+            gps.add(TAG_GPS_LATITUDE, TYPE_RATIONAL, 3, degrees(Math.abs(latitude)));
+            gps.add(TAG_GPS_LONGITUDE_REF, TYPE_ASCII, 2, ascii(longitude >= 0 ? "E" : "W"));
+            gps.add(TAG_GPS_LONGITUDE, TYPE_RATIONAL, 3, degrees(Math.abs(longitude)));
+            if (location.hasAltitude()) {
+                double altitude = location.getAltitude();
+                gps.add(TAG_GPS_ALTITUDE_REF, TYPE_BYTE, 1, new byte[]{(byte) (altitude >= 0 ? 0 : 1)});
+                gps.add(TAG_GPS_ALTITUDE, TYPE_RATIONAL, 1, rationals(Math.round(Math.abs(altitude) * 100), 100));
+            }
+            if (location.getTime() > 0) {
+                // GPS time is UTC.
+                SimpleDateFormat utc = new SimpleDateFormat("yyyy:MM:dd HH mm ss", Locale.US);
+                utc.setTimeZone(TimeZone.getTimeZone("UTC"));
+                String[] split = utc.format(new Date(location.getTime())).split(" ");
+                gps.add(TAG_GPS_TIME_STAMP, TYPE_RATIONAL, 3, rationals(
+                        Long.parseLong(split[1]), 1,
+                        Long.parseLong(split[2]), 1,
+                        Long.parseLong(split[3]), 1));
+                byte[] day = ascii(split[0]);
+                gps.add(TAG_GPS_DATE_STAMP, TYPE_ASCII, day.length, day);
+            }
+        }
+
+        Ifd ifd0 = new Ifd();
+        ifd0.add(TAG_ORIENTATION, TYPE_SHORT, 1, shortValue(orientation));
+        ifd0.add(TAG_DATE_TIME, TYPE_ASCII, date.length, date);
+        // Pointers don't change the size, so sizes can be computed before they are known.
+        ifd0.add(TAG_EXIF_IFD, TYPE_LONG, 1, new byte[4]);
+        if (gps != null) ifd0.add(TAG_GPS_IFD, TYPE_LONG, 1, new byte[4]);
+        int exifOffset = 8 + ifd0.size();
+        int gpsOffset = exifOffset + exif.size();
+        writeInt(ifd0.entries.get(2).value, 0, exifOffset);
+        if (gps != null) writeInt(ifd0.entries.get(3).value, 0, gpsOffset);
+
+        int tiffLength = gpsOffset + (gps == null ? 0 : gps.size());
+        byte[] segment = new byte[TIFF_OFFSET + tiffLength];
+        segment[0] = (byte) 0xFF;
+        segment[1] = (byte) MARKER_APP1;
+        writeShort(segment, 2, segment.length - 2);
+        segment[4] = 'E';
+        segment[5] = 'x';
+        segment[6] = 'i';
+        segment[7] = 'f';
+        segment[10] = 'M';
+        segment[11] = 'M';
+        writeShort(segment, TIFF_OFFSET + 2, 42);
+        writeInt(segment, TIFF_OFFSET + 4, 8);
+        ifd0.write(segment, TIFF_OFFSET, 8);
+        exif.write(segment, TIFF_OFFSET, exifOffset);
+        if (gps != null) gps.write(segment, TIFF_OFFSET, gpsOffset);
+        return segment;
+    }
+
+    /**
+     * Puts the segment in the JPEG, replacing the existing EXIF segment if there is one.
+     * Otherwise, it goes right after SOI, or after the JFIF (APP0) segment if there is one.
+     * If the data is not a JPEG, it is returned as is.
+     *
+     * @param jpeg the JPEG data, e.g. from {@link Output#getBuffer()}
+     * @param length the JPEG length
+     * @param segment a segment from {@link #createSegment(int, long, Location)}
+     * @return a new array
+     */
+    @NonNull
+    static byte[] insert(@NonNull byte[] jpeg, int length, @NonNull byte[] segment) {
+        // The header stops at the start of scan, so bytes after length are never reached.
+        JpegHeader header = JpegHeader.read(jpeg);
+        if (header == null || segment.length > MAX_SEGMENT_LENGTH) {
+            return length == jpeg.length ? jpeg : Arrays.copyOf(jpeg, length);
+        }
+        int start;
+        int end;
+        if (header.exifOffset >= 0 && header.exifOffset + header.exifLength <= length) {
+            start = header.exifOffset;
+            end = start + header.exifLength;
+        } else {
+            start = 2;
+            if (length >= 6 && (jpeg[2] & 0xFF) == 0xFF && (jpeg[3] & 0xFF) == MARKER_APP0) {
+                int app0 = 2 + 2 + JpegHeader.readShort(jpeg, 4, false);
+                if (app0 <= length) start = app0;
+            }
+            end = start;
+        }
+        byte[] output = new byte[length - (end - start) + segment.length];
+        System.arraycopy(jpeg, 0, output, 0, start);
+        System.arraycopy(segment, 0, output, start, segment.length);
+        System.arraycopy(jpeg, end, output, start + segment.length, length - end);
+        return output;
+    }
+
+    /**
+     * Copies the EXIF segment of source into target, e.g. after source was decoded and encoded
+     * again, and sets the orientation if there's an orientation tag.
+     * Other tags are kept as they are, even if they describe the source pixels, like the thumbnail.
+     *
+     * @param source the original JPEG
+     * @param target the new JPEG, e.g. from {@link Output#getBuffer()}
+     * @param length the new JPEG length
+     * @param orientation the new orientation
+     * @return a new array
+     */
+    @NonNull
+    static byte[] copy(@NonNull byte[] source, @NonNull byte[] target, int length, int orientation) {
+        JpegHeader header = JpegHeader.read(source);
+        if (header == null || header.exifOffset < 0) {
+            return length == target.length ? target : Arrays.copyOf(target, length);
+        }
+        byte[] segment = Arrays.copyOfRange(source, header.exifOffset, header.exifOffset + header.exifLength);
+        if (header.orientationOffset >= 0) {
+            int position = header.orientationOffset - header.exifOffset;
+            int a = orientation & 0xFF;
+            int b = (orientation >> 8) & 0xFF;
+            segment[position] = (byte) (header.littleEndian ? a : b);
+            segment[position + 1] = (byte) (header.littleEndian ? b : a);
+        }
+        return insert(target, length, segment);
+    }
+
+    @NonNull
+    private static byte[] ascii(@NonNull String value) {
+        byte[] bytes = new byte[value.length() + 1]; // Null terminated.
+        for (int i = 0; i < value.length(); i++) bytes[i] = (byte) value.charAt(i);
+        return bytes;
+    }
+
+    @NonNull
+    private static byte[] shortValue(int value) {
+        byte[] bytes = new byte[2];
+        writeShort(bytes, 0, value);
+        return bytes;
+    }
+
+    // Numerators and denominators, one after the other.
+    @NonNull
+    private static byte[] rationals(long... values) {
+        byte[] bytes = new byte[values.length * 4];
+        for (int i = 0; i < values.length; i++) writeInt(bytes, i * 4, (int) values[i]);
+        return bytes;
+    }
+
+    // Degrees, minutes and seconds with 1/1000 precision.
+    @NonNull
+    private static byte[] degrees(double value) {
+        long degrees = (long) value;
+        value = (value - degrees) * 60;
+        long minutes = (long) value;
+        long seconds = Math.round((value - minutes) * 60 * 1000);
+        return rationals(degrees, 1, minutes, 1, seconds, 1000);
+    }
+
+    private static void writeShort(@NonNull byte[] data, int position, int value) {
+        data[position] = (byte) (value >> 8);
+        data[position + 1] = (byte) value;
+    }
+
+    private static void writeInt(@NonNull byte[] data, int position, int value) {
+        writeShort(data, position, value >>> 16);
+        writeShort(data, position + 2, value & 0xFFFF);
+    }
+}
@@ -0,0 +1,168 @@
+package com.otaliastudios.cameraview;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Collects the deltas of a continuous gesture (pinch, scroll) and releases them at most
+ * once per display frame, so that a 120Hz touch screen does not post 120 camera
+ * parameter changes per second.
+ *
+ * - {@link #add(float, long, long)} is called for each touch event, with the delta covered by
+ *   the event and its historical samples. The speed of the gesture is smoothed with an
+ *   exponential moving average, and the delta is scaled by a {@link Curve} of that speed.
+ * - {@link #isReady(long)} returns true once a frame has passed since the last update.
+ * - {@link #consume()} returns everything collected since the last update.
+ *
+ * Times are in milliseconds, in the {@link android.os.SystemClock#uptimeMillis()} reference
+ * used by MotionEvents. Deltas are in gesture units, where 1 is the whole range.
+ */
+class GestureBatcher {
+
+    /**
+     * Maps the smoothed gesture speed, in units per second, to a gain for the delta.
+     */
+    interface Curve {
+        float gain(float speed);
+    }
+
+    // Deltas are used as they are.
+    final static Curve LINEAR = new Curve() {
+        @Override
+        public float gain(float speed) {
+            return 1F;
+        }
+    };
+
+    // Slow gestures are more precise, fast gestures go further. The gain goes from 0.5 to 2.
+    final static Curve ACCELERATE = new Curve() {
+        @Override
+        public float gain(float speed) {
+            return 0.5F + 1.5F * Math.min(1F, speed / 4F);
+        }
+    };
+
+    final static float DEFAULT_FRAME_MILLIS = 1000F / 60F;
+    final static float DEFAULT_SMOOTHING = 0.5F;
+
+    private float mFrameMillis = DEFAULT_FRAME_MILLIS;
+    private float mSmoothing = DEFAULT_SMOOTHING;
+    private Curve mCurve = LINEAR;
+
+    private float mPending;
+    private float mSpeed;
+    private long mLastSampleTime = -1;
+    private long mLastUpdateTime = -1;
+
+    private int mEventCount;
+    private int mUpdateCount;
+    private long mFirstEventTime = -1;
+    private long mLastEventTime = -1;
+
+    // Duration of a display frame.
+    void setFrameMillis(float frameMillis) {
+        mFrameMillis = frameMillis > 0 ? frameMillis : DEFAULT_FRAME_MILLIS;
+    }
+
+    /**
+     * Sets the weight of the previous speed in the moving average, from 0 (no smoothing)
+     * to 1 (excluded).
+     */
+    void setSmoothing(float smoothing) {
+        mSmoothing = Math.max(0F, Math.min(0.99F, smoothing));
+    }
+
+    float getSmoothing() {
+        return mSmoothing;
+    }
+
+    void setCurve(@NonNull Curve curve) {
+        mCurve = curve;
+    }
+
+    @NonNull
+    Curve getCurve() {
+        return mCurve;
+    }
+
+    // Called when a new gesture starts. Metrics are kept.
+    void reset() {
+        mPending = 0;
+        mSpeed = 0;
+        mLastSampleTime = -1;
+        mLastUpdateTime = -1;
+    }
+
+    /**
+     * Adds the delta of a touch event.
+     *
+     * @param delta the delta
+     * @param startTime time of the first sample covered by delta, e.g. the first historical sample
+     * @param endTime time of the event
+     */
+    void add(float delta, long startTime, long endTime) {
+        if (mFirstEventTime == -1) mFirstEventTime = endTime;
+        mLastEventTime = endTime;
+        mEventCount++;
+
+        long start = mLastSampleTime == -1 ? startTime : mLastSampleTime;
+        long duration = endTime - start;
+        if (duration > 0) {
+            float speed = Math.abs(delta) * 1000F / duration;
+            mSpeed = mSpeed * mSmoothing + speed * (1F - mSmoothing);
+        }
+        mLastSampleTime = endTime;
+        mPending += delta * mCurve.gain(mSpeed);
+    }
+
+    boolean hasPending() {
+        return mPending != 0;
+    }
+
+    // Whether an update can be released at the given time.
+    boolean isReady(long time) {
+        return mPending != 0 && (mLastUpdateTime == -1 || time - mLastUpdateTime >= mFrameMillis);
+    }
+
+    // Returns the delta collected since the last update.
+    float consume() {
+        float delta = mPending;
+        mPending = 0;
+        mUpdateCount++;
+        mLastUpdateTime = mLastSampleTime;
+        return delta;
+    }
+
+    // Smoothed speed, in units per second.
+    float getSpeed() {
+        return mSpeed;
+    }
+
+    int getEventCount() {
+        return mEventCount;
+    }
+
+    int getUpdateCount() {
+        return mUpdateCount;
+    }
+
+    // Touch events per second, since the first event.
+    float getEventsPerSecond() {
+        return perSecond(mEventCount);
+    }
+
+    // Updates per second, since the first event.
+    float getUpdatesPerSecond() {
+        return perSecond(mUpdateCount);
+    }
+
+    private float perSecond(int count) {
+        long duration = mLastEventTime - mFirstEventTime;
+        return duration <= 0 ? 0 : count * 1000F / duration;
+    }
+
+    @Override
+    public String toString() {
+        return "events: " + mEventCount + " (" + getEventsPerSecond() + "/s), updates: " +
+                mUpdateCount + " (" + getUpdatesPerSecond() + "/s)";
+    }
+}
@@ -0,0 +1,130 @@
+package com.otaliastudios.cameraview;
+
+import androidx.annotation.Nullable;
+import androidx.exifinterface.media.ExifInterface;
+
+/**
+ * Reads the few things we need from a JPEG header, without decoding it
+ * or building a full {@link ExifInterface}:
+ * - the image size, from the SOF segment
+ * - the orientation tag, from IFD0 of the EXIF (APP1) segment, and where it is, see {@link ExifWriter}
+ *
+ * Markers are walked until the start of scan, so the compressed data is never touched.
+ * http://www.media.mit.edu/pia/Research/deepview/exif.html
+ */
+class JpegHeader {
+
+    private final static int MARKER_SOI = 0xD8;
+    private final static int MARKER_EOI = 0xD9;
+    private final static int MARKER_SOS = 0xDA;
+    private final static int MARKER_APP1 = 0xE1;
+    private final static int TAG_ORIENTATION = 0x0112;
+
+    int width = -1;
+    int height = -1;
+    int orientation = ExifInterface.ORIENTATION_NORMAL;
+
+    // Position and length of the whole APP1 segment (marker included), or -1 if there's none.
+    int exifOffset = -1;
+    int exifLength = 0;
+
+    // Position of the orientation value, so that it can be rewritten in place, or -1 if there's none.
+    int orientationOffset = -1;
+    boolean littleEndian;
+
+    private JpegHeader() {}
+
+    /**
+     * Returns the header, or null if the data is not a JPEG.
+     */
+    @Nullable
+    static JpegHeader read(byte[] data) {
+        int length = data.length;
+        if (length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != MARKER_SOI) return null;
+        JpegHeader header = new JpegHeader();
+        int position = 2;
+        while (position + 4 <= length) {
+            if ((data[position] & 0xFF) != 0xFF) break; // Corrupted.
+            int marker = data[position + 1] & 0xFF;
+            if (marker == 0xFF) { // Fill byte.
+                position++;
+                continue;
+            }
+            if (marker == MARKER_SOS || marker == MARKER_EOI) break;
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) { // No payload.
+                position += 2;
+                continue;
+            }
+            int segmentLength = readShort(data, position + 2, false);
+            int payload = position + 4;
+            int end = position + 2 + segmentLength;
+            if (segmentLength < 2 || end > length) break;
+
+            if (marker == MARKER_APP1 && header.exifOffset < 0 && isExif(data, payload, end)) {
+                header.exifOffset = position;
+                header.exifLength = end - position;
+                header.readOrientation(data, payload + 6, end);
+            } else if (isStartOfFrame(marker) && payload + 5 <= end) {
+                header.height = readShort(data, payload + 1, false);
+                header.width = readShort(data, payload + 3, false);
+                // APP segments come before the frame, so we're done.
+                break;
+            }
+            position = end;
+        }
+        return header;
+    }
+
+    private static boolean isStartOfFrame(int marker) {
+        // SOF0 to SOF15, except DHT (C4), JPG (C8) and DAC (CC).
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    private static boolean isExif(byte[] data, int start, int end) {
+        return start + 6 <= end && data[start] == 'E' && data[start + 1] == 'x'
+                && data[start + 2] == 'i' && data[start + 3] == 'f'
+                && data[start + 4] == 0 && data[start + 5] == 0;
+    }
+
+    // Reads the orientation from the TIFF structure starting at tiff.
+    private void readOrientation(byte[] data, int tiff, int end) {
+        if (tiff + 8 > end) return;
+        boolean little;
+        if (data[tiff] == 'I' && data[tiff + 1] == 'I') {
+            little = true;
+        } else if (data[tiff] == 'M' && data[tiff + 1] == 'M') {
+            little = false;
+        } else {
+            return;
+        }
+        if (readShort(data, tiff + 2, little) != 42) return;
+        littleEndian = little;
+        long ifd = readInt(data, tiff + 4, little);
+        if (ifd < 8 || tiff + ifd + 2 > end) return;
+        int position = tiff + (int) ifd;
+        int count = readShort(data, position, little);
+        position += 2;
+        for (int i = 0; i < count && position + 12 <= end; i++, position += 12) {
+            if (readShort(data, position, little) == TAG_ORIENTATION) {
+                int value = readShort(data, position + 8, little);
+                orientationOffset = position + 8;
+                if (value >= ExifInterface.ORIENTATION_NORMAL && value <= ExifInterface.ORIENTATION_ROTATE_270) {
+                    orientation = value;
+                }
+                return;
+            }
+        }
+    }
+
+    static int readShort(byte[] data, int position, boolean little) {
+        int a = data[position] & 0xFF;
+        int b = data[position + 1] & 0xFF;
+        return little ? (b << 8) | a : (a << 8) | b;
+    }
+
+    static long readInt(byte[] data, int position, boolean little) {
+        long high = readShort(data, position + (little ? 2 : 0), little);
+        long low = readShort(data, position + (little ? 0 : 2), little);
+        return (high << 16) | low;
+    }
+}
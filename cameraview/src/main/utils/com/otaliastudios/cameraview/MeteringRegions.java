@@ -0,0 +1,153 @@
+package com.otaliastudios.cameraview;
+
+/**
+ * Maps points in view coordinates to focus and metering regions in the sensor
+ * coordinates expected by the camera: -1000 ... 1000 on both axes, before the display rotation.
+ *
+ * The transform is computed once by {@link #configure(int, int, int)}, and is then applied
+ * with integer math: the rotation is a multiple of 90 degrees, so it's just a matter of
+ * swapping and negating coordinates. Points are stored in a fixed array, so nothing is
+ * allocated when regions change, e.g. when a frame processor keeps moving them to a face.
+ *
+ * Each point has two regions: a small one with a high weight, and a bigger one with a lower
+ * weight. Regions are ordered so that the first {@link #getCount()} / 2 are the small ones:
+ * cameras supporting less areas can just take the first N.
+ */
+class MeteringRegions {
+
+    final static int MAX_POINTS = 5;
+    final static int RANGE = 1000;
+
+    final static int INNER_SIZE = 150;
+    final static int INNER_WEIGHT = 1000; // 150 * 150 * 1000 = more than 10.000.000
+    final static int OUTER_SIZE = 300;
+    final static int OUTER_WEIGHT = 100; // 300 * 300 * 100 = 9.000.000
+
+    // View to -1000 ... 1000, as 16.16 fixed point scales.
+    private long mScaleX;
+    private long mScaleY;
+    // Rotation, as integer sine and cosine.
+    private int mCos = 1;
+    private int mSin = 0;
+
+    private int mViewWidth;
+    private int mViewHeight;
+    private int mSensorToView = -1;
+
+    // Sensor coordinates of the points: x0, y0, x1, y1, ...
+    private final int[] mPoints = new int[MAX_POINTS * 2];
+    private int mPointCount;
+
+    /**
+     * Computes the view to sensor transform. This is a no-op if nothing changed.
+     *
+     * @param viewWidth the view width
+     * @param viewHeight the view height
+     * @param sensorToView the rotation from sensor to view, one of 0, 90, 180, 270
+     * @return true if the transform changed
+     */
+    boolean configure(int viewWidth, int viewHeight, int sensorToView) {
+        sensorToView = ((sensorToView % 360) + 360) % 360;
+        if (viewWidth == mViewWidth && viewHeight == mViewHeight && sensorToView == mSensorToView) {
+            return false;
+        }
+        mViewWidth = viewWidth;
+        mViewHeight = viewHeight;
+        mSensorToView = sensorToView;
+        mScaleX = viewWidth > 0 ? ((2L * RANGE) << 16) / viewWidth : 0;
+        mScaleY = viewHeight > 0 ? ((2L * RANGE) << 16) / viewHeight : 0;
+
+        // We rotate by -sensorToView: cos(-a) = cos(a), sin(-a) = -sin(a).
+        switch (sensorToView) {
+            case 90: mCos = 0; mSin = -1; break;
+            case 180: mCos = -1; mSin = 0; break;
+            case 270: mCos = 0; mSin = 1; break;
+            default: mCos = 1; mSin = 0; break;
+        }
+        return true;
+    }
+
+    // Whether we know the view size.
+    boolean isConfigured() {
+        return mScaleX > 0 && mScaleY > 0;
+    }
+
+    void clear() {
+        mPointCount = 0;
+    }
+
+    /**
+     * Adds a point, in view coordinates.
+     *
+     * @param viewX the x coordinate
+     * @param viewY the y coordinate
+     * @return false if the point could not be added
+     */
+    boolean add(float viewX, float viewY) {
+        if (mPointCount == MAX_POINTS || !isConfigured()) return false;
+        int x = (int) ((((long) viewX) * mScaleX) >> 16) - RANGE;
+        int y = (int) ((((long) viewY) * mScaleY) >> 16) - RANGE;
+        int index = mPointCount * 2;
+        mPoints[index] = x * mCos - y * mSin;
+        mPoints[index + 1] = x * mSin + y * mCos;
+        mPointCount++;
+        return true;
+    }
+
+    /**
+     * Replaces the current points with the given ones, in view coordinates.
+     *
+     * @param points x0, y0, x1, y1, ...
+     * @param count number of points to read
+     * @return the number of points that were added
+     */
+    int set(float[] points, int count) {
+        clear();
+        count = Math.min(count, points.length / 2);
+        for (int i = 0; i < count; i++) {
+            if (!add(points[i * 2], points[i * 2 + 1])) break;
+        }
+        return mPointCount;
+    }
+
+    int getPointCount() {
+        return mPointCount;
+    }
+
+    // Two regions per point.
+    int getCount() {
+        return mPointCount * 2;
+    }
+
+    int getLeft(int region) {
+        return Math.max(getCenterX(region) - getSize(region) / 2, -RANGE);
+    }
+
+    int getTop(int region) {
+        return Math.max(getCenterY(region) - getSize(region) / 2, -RANGE);
+    }
+
+    int getRight(int region) {
+        return Math.min(getCenterX(region) + getSize(region) / 2, RANGE);
+    }
+
+    int getBottom(int region) {
+        return Math.min(getCenterY(region) + getSize(region) / 2, RANGE);
+    }
+
+    int getWeight(int region) {
+        return region < mPointCount ? INNER_WEIGHT : OUTER_WEIGHT;
+    }
+
+    private int getSize(int region) {
+        return region < mPointCount ? INNER_SIZE : OUTER_SIZE;
+    }
+
+    private int getCenterX(int region) {
+        return mPoints[(region % mPointCount) * 2];
+    }
+
+    private int getCenterY(int region) {
+        return mPoints[(region % mPointCount) * 2 + 1];
+    }
+}
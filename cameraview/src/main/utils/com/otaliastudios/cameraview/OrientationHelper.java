@@ -2,19 +2,46 @@ package com.otaliastudios.cameraview;
 
 import android.content.Context;
 import android.hardware.SensorManager;
+import android.os.SystemClock;
 import androidx.annotation.NonNull;
 import android.view.Display;
 import android.view.OrientationEventListener;
 import android.view.Surface;
 import android.view.WindowManager;
 
+/**
+ * Turns the device orientation sensor into one of 0, 90, 180, 270.
+ *
+ * Raw values are filtered, so that holding the device close to 45 degrees does not
+ * flip the orientation back and forth:
+ * - hysteresis: to leave the current orientation, the sensor must be at least
+ *   {@link #getHysteresis()} degrees past the 45 degrees boundary.
+ * - debounce: the new orientation must then be stable for {@link #getDebounce()} milliseconds.
+ *   This is off unless set with {@link #setDebounce(long)}.
+ *
+ * The sensor rate can be changed with {@link #setSensorRate(Context, int)}.
+ */
 class OrientationHelper {
 
-    final OrientationEventListener mListener;
+    private final static String TAG = OrientationHelper.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    final static int DEFAULT_HYSTERESIS = 15;
+    final static long DEFAULT_DEBOUNCE = 0;
+
+    OrientationEventListener mListener;
 
     private final Callback mCallback;
     private int mDeviceOrientation = -1;
     private int mDisplayOffset = -1;
+    private int mSensorRate = SensorManager.SENSOR_DELAY_NORMAL;
+    private int mHysteresis = DEFAULT_HYSTERESIS;
+    private long mDebounce = DEFAULT_DEBOUNCE;
+    private boolean mEnabled;
+
+    // The orientation waiting for the debounce time to pass.
+    private int mCandidate = -1;
+    private long mCandidateTime;
 
     interface Callback {
         void onDeviceOrientationChanged(int deviceOrientation);
@@ -22,31 +49,63 @@ class OrientationHelper {
 
     OrientationHelper(Context context, @NonNull Callback callback) {
         mCallback = callback;
-        mListener = new OrientationEventListener(context, SensorManager.SENSOR_DELAY_NORMAL) {
+        mListener = createListener(context);
+    }
+
+    private OrientationEventListener createListener(Context context) {
+        return new OrientationEventListener(context, mSensorRate) {
 
             @Override
             public void onOrientationChanged(int orientation) {
-                int or = 0;
-                if (orientation == OrientationEventListener.ORIENTATION_UNKNOWN) {
-                    or = 0;
-                } else if (orientation >= 315 || orientation < 45) {
-                    or = 0;
-                } else if (orientation >= 45 && orientation < 135) {
-                    or = 90;
-                } else if (orientation >= 135 && orientation < 225) {
-                    or = 180;
-                } else if (orientation >= 225 && orientation < 315) {
-                    or = 270;
-                }
-
-                if (or != mDeviceOrientation) {
-                    mDeviceOrientation = or;
-                    mCallback.onDeviceOrientationChanged(mDeviceOrientation);
-                }
+                onSensorOrientation(orientation, SystemClock.elapsedRealtime());
             }
         };
     }
 
+    private void onSensorOrientation(int orientation, long time) {
+        int or = filter(mDeviceOrientation, orientation, mHysteresis);
+        if (or == mDeviceOrientation) {
+            mCandidate = -1;
+            return;
+        }
+
+        // Wait for the debounce time. The first value is taken immediately.
+        if (mDeviceOrientation != -1 && mDebounce > 0) {
+            if (or != mCandidate) {
+                mCandidate = or;
+                mCandidateTime = time;
+                return;
+            }
+            if (time - mCandidateTime < mDebounce) return;
+        }
+
+        mCandidate = -1;
+        mDeviceOrientation = or;
+        mCallback.onDeviceOrientationChanged(mDeviceOrientation);
+    }
+
+    /**
+     * Returns the orientation for the given sensor value, given the current one.
+     *
+     * @param current the current orientation, or -1
+     * @param orientation the sensor value, in degrees, or {@link OrientationEventListener#ORIENTATION_UNKNOWN}
+     * @param hysteresis degrees past the boundary needed to leave the current orientation
+     * @return one of 0, 90, 180, 270
+     */
+    static int filter(int current, int orientation, int hysteresis) {
+        if (orientation == OrientationEventListener.ORIENTATION_UNKNOWN) {
+            // Device is flat. Keep what we have.
+            return current == -1 ? 0 : current;
+        }
+        orientation = ((orientation % 360) + 360) % 360;
+        if (current != -1) {
+            int distance = Math.abs(orientation - current);
+            distance = Math.min(distance, 360 - distance);
+            if (distance < 45 + hysteresis) return current;
+        }
+        return ((orientation + 45) / 90 * 90) % 360;
+    }
+
     void enable(Context context) {
         Display display = ((WindowManager) context.getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
         switch (display.getRotation()) {
@@ -57,12 +116,48 @@ class OrientationHelper {
             default: mDisplayOffset = 0; break;
         }
         mListener.enable();
+        mEnabled = true;
     }
 
     void disable() {
         mListener.disable();
+        mEnabled = false;
         mDisplayOffset = -1;
         mDeviceOrientation = -1;
+        mCandidate = -1;
+    }
+
+    /**
+     * Sets the sensor rate, one of the SensorManager.SENSOR_DELAY_ constants.
+     * Slower rates mean less events and less work on the main thread.
+     */
+    void setSensorRate(Context context, int rate) {
+        if (rate == mSensorRate) return;
+        LOG.i("setSensorRate:", rate);
+        mSensorRate = rate;
+        if (mEnabled) mListener.disable();
+        mListener = createListener(context);
+        if (mEnabled) mListener.enable();
+    }
+
+    int getSensorRate() {
+        return mSensorRate;
+    }
+
+    void setHysteresis(int degrees) {
+        mHysteresis = Math.max(0, Math.min(44, degrees));
+    }
+
+    int getHysteresis() {
+        return mHysteresis;
+    }
+
+    void setDebounce(long millis) {
+        mDebounce = Math.max(0, millis);
+    }
+
+    long getDebounce() {
+        return mDebounce;
     }
 
     int getDeviceOrientation() {
@@ -72,4 +167,4 @@ class OrientationHelper {
     int getDisplayOffset() {
         return mDisplayOffset;
     }
-}
\ No newline at end of file
+}
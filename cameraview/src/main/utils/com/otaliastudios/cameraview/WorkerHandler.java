@@ -1,11 +1,15 @@
 package com.otaliastudios.cameraview;
 
+import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.Process;
+import androidx.annotation.NonNull;
 
 import java.lang.ref.WeakReference;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 /**
  * Class holding a background handler.
@@ -43,14 +47,32 @@ class WorkerHandler {
         get("FallbackCameraThread").post(action);
     }
 
+    // Creates a new handler that is not shared with anyone.
+    // Call quit() when done.
+    static WorkerHandler create(String name, int priority) {
+        LOG.i("create:", "Creating new handler.", name, "priority:", priority);
+        return new WorkerHandler(name, priority);
+    }
+
     private HandlerThread mThread;
     private Handler mHandler;
+    private CameraExecutors.Lane mLane;
 
     private WorkerHandler(String name) {
-        mThread = new HandlerThread(name);
+        this(name, Process.THREAD_PRIORITY_DEFAULT);
+    }
+
+    private WorkerHandler(String name, int priority) {
+        mThread = new HandlerThread(name, priority);
         mThread.setDaemon(true);
         mThread.start();
         mHandler = new Handler(mThread.getLooper());
+        mLane = new CameraExecutors.Lane(name, new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                mHandler.post(command);
+            }
+        });
     }
 
     public Handler get() {
@@ -58,7 +80,21 @@ class WorkerHandler {
     }
 
     public void post(Runnable runnable) {
-        mHandler.post(runnable);
+        mLane.execute(runnable);
+    }
+
+    // Queue metrics for what was passed to post().
+    CameraExecutors.Lane getLane() {
+        return mLane;
+    }
+
+    // Stops the thread once what was posted so far has run.
+    void quit() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            mThread.quitSafely();
+        } else {
+            mThread.quit();
+        }
     }
 
     public Thread getThread() {
@@ -63,11 +63,11 @@ abstract class CameraPreview<T extends View, Output> {
     }
 
     final Size getDesiredSize() {
-        return new Size(mDesiredWidth, mDesiredHeight);
+        return Size.of(mDesiredWidth, mDesiredHeight);
     }
 
     final Size getSurfaceSize() {
-        return new Size(mSurfaceWidth, mSurfaceHeight);
+        return Size.of(mSurfaceWidth, mSurfaceHeight);
     }
 
     final void setSurfaceCallback(SurfaceCallback callback) {
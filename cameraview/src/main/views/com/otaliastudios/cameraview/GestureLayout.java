@@ -5,6 +5,7 @@ import android.graphics.PointF;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.WindowManager;
 import android.widget.FrameLayout;
 
 /**
@@ -16,6 +17,8 @@ abstract class GestureLayout extends FrameLayout {
     protected boolean mEnabled;
     protected Gesture mType;
     protected PointF[] mPoints;
+    // Used by continuous gestures to release at most one update per frame.
+    protected final GestureBatcher mBatcher = new GestureBatcher();
 
     public GestureLayout(Context context) {
         super(context);
@@ -23,6 +26,10 @@ abstract class GestureLayout extends FrameLayout {
     }
 
     protected void onInitialize(Context context) {
+        WindowManager manager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        if (manager != null) {
+            mBatcher.setFrameMillis(1000F / manager.getDefaultDisplay().getRefreshRate());
+        }
     }
 
     public void enable(boolean enable) {
@@ -35,6 +42,31 @@ abstract class GestureLayout extends FrameLayout {
 
     public abstract boolean onTouchEvent(MotionEvent event);
 
+    /**
+     * Called after {@link #onTouchEvent(MotionEvent)} returned true.
+     * Returns whether {@link #scaleValue(float, float, float)} should be applied now.
+     * Continuous gestures return false until a frame has passed since the last update.
+     */
+    public boolean shouldUpdate(MotionEvent event) {
+        return true;
+    }
+
+    // Whether this event is the last of the gesture, or of one of its pointers.
+    protected static boolean isGestureEnd(MotionEvent event) {
+        int action = event.getActionMasked();
+        return action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL
+                || action == MotionEvent.ACTION_POINTER_UP;
+    }
+
+    // Sets the smoothing of the gesture speed, see GestureBatcher.
+    void setSmoothing(float smoothing) {
+        mBatcher.setSmoothing(smoothing);
+    }
+
+    void setCurve(GestureBatcher.Curve curve) {
+        mBatcher.setCurve(curve);
+    }
+
     public final Gesture getGestureType() {
         return mType;
     }
@@ -11,11 +11,13 @@ import android.view.ScaleGestureDetector;
 
 class PinchGestureLayout extends GestureLayout {
 
+    private static final String TAG = PinchGestureLayout.class.getSimpleName();
+    private static final CameraLogger LOG = CameraLogger.create(TAG);
+
     private final static float ADD_SENSITIVITY = 2f;
 
     ScaleGestureDetector mDetector;
     private boolean mNotify;
-    private float mAdditionFactor = 0;
 
 
     public PinchGestureLayout(Context context) {
@@ -31,7 +33,8 @@ class PinchGestureLayout extends GestureLayout {
             @Override
             public boolean onScale(ScaleGestureDetector detector) {
                 mNotify = true;
-                mAdditionFactor = ((detector.getScaleFactor() - 1) * ADD_SENSITIVITY);
+                long time = detector.getEventTime();
+                mBatcher.add((detector.getScaleFactor() - 1) * ADD_SENSITIVITY, time - detector.getTimeDelta(), time);
                 return true;
             }
         });
@@ -54,10 +57,12 @@ class PinchGestureLayout extends GestureLayout {
         // previous gesture ends.
         if (event.getAction() == MotionEvent.ACTION_DOWN) {
             mNotify = false;
+            mBatcher.reset();
         }
 
         // Let's see if we detect something. This will call onScale().
         mDetector.onTouchEvent(event);
+        if (mNotify && isGestureEnd(event)) LOG.i("onTouchEvent:", "Gesture ended.", mBatcher);
 
         // Keep notifying CameraView as long as the gesture goes.
         if (mNotify) {
@@ -72,9 +77,15 @@ class PinchGestureLayout extends GestureLayout {
         return false;
     }
 
+    @Override
+    public boolean shouldUpdate(MotionEvent event) {
+        // At most one update per frame. When the gesture ends, release what is left.
+        return mBatcher.isReady(event.getEventTime()) || (isGestureEnd(event) && mBatcher.hasPending());
+    }
+
     @Override
     public float scaleValue(float currValue, float minValue, float maxValue) {
-        float add = mAdditionFactor;
+        float add = mBatcher.consume();
         // ^ This works well if minValue = 0, maxValue = 1.
         // Account for the different range:
         add *= (maxValue - minValue);
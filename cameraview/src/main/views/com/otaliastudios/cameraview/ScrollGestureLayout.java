@@ -19,7 +19,6 @@ class ScrollGestureLayout extends GestureLayout {
 
     private GestureDetector mDetector;
     private boolean mNotify;
-    private float mDistance;
 
 
     public ScrollGestureLayout(Context context) {
@@ -47,8 +46,11 @@ class ScrollGestureLayout extends GestureLayout {
                     horizontal = mType == Gesture.SCROLL_HORIZONTAL;
                 }
                 mPoints[1].set(e2.getX(), e2.getY());
-                mDistance = horizontal ? (distanceX / getWidth()) : (distanceY / getHeight());
-                mDistance = horizontal ? -mDistance : mDistance; // When vertical, up = positive
+                float distance = horizontal ? (distanceX / getWidth()) : (distanceY / getHeight());
+                distance = horizontal ? -distance : distance; // When vertical, up = positive
+                // The distance covers the historical samples of e2, if any.
+                long start = e2.getHistorySize() > 0 ? e2.getHistoricalEventTime(0) : e1.getEventTime();
+                mBatcher.add(distance, start, e2.getEventTime());
                 mNotify = true;
                 return true;
             }
@@ -67,10 +69,12 @@ class ScrollGestureLayout extends GestureLayout {
         // previous gesture ends.
         if (event.getAction() == MotionEvent.ACTION_DOWN) {
             mNotify = false;
+            mBatcher.reset();
         }
 
         // Let's see if we detect something.
         mDetector.onTouchEvent(event);
+        if (mNotify && isGestureEnd(event)) LOG.i("onTouchEvent:", "Gesture ended.", mBatcher);
 
         // Keep notifying CameraView as long as the gesture goes.
         if (mNotify) LOG.i("Notifying a gesture of type", mType.name());
@@ -78,9 +82,15 @@ class ScrollGestureLayout extends GestureLayout {
     }
 
 
+    @Override
+    public boolean shouldUpdate(MotionEvent event) {
+        // At most one update per frame. When the gesture ends, release what is left.
+        return mBatcher.isReady(event.getEventTime()) || (isGestureEnd(event) && mBatcher.hasPending());
+    }
+
     @Override
     public float scaleValue(float currValue, float minValue, float maxValue) {
-        float delta = mDistance; // -1 ... 1
+        float delta = mBatcher.consume(); // -1 ... 1
 
         // ^ This works well if minValue = 0, maxValue = 1.
         // Account for the different range:
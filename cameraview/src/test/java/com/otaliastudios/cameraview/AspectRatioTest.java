@@ -3,6 +3,9 @@ package com.otaliastudios.cameraview;
 
 import org.junit.Test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import static org.junit.Assert.*;
 
 public class AspectRatioTest {
@@ -67,4 +70,47 @@ public class AspectRatioTest {
         assertEquals(ratio.getX(), 16);
         assertEquals(ratio.getY(), 9);
     }
+
+    @Test
+    public void testConcurrentInterning() throws Exception {
+        final int threads = 8;
+        final int range = 12;
+        // Every thread stores what it gets for each (x, y). All must see the same instance.
+        final AtomicReferenceArray<AspectRatio> results = new AtomicReferenceArray<>(range * range);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch end = new CountDownLatch(threads);
+        final boolean[] failed = new boolean[1];
+        AspectRatio.sCache.clear();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < 20000; i++) {
+                            int x = 1 + (i + offset) % range;
+                            int y = 1 + (i / range + offset) % range;
+                            AspectRatio ratio = AspectRatio.of(x * 10, y * 10);
+                            results.compareAndSet(x - 1 + (y - 1) * range, null, ratio);
+                            if (results.get(x - 1 + (y - 1) * range) != ratio) failed[0] = true;
+                            if (ratio != AspectRatio.of(x, y)) failed[0] = true;
+                        }
+                    } catch (InterruptedException ignore) {
+                    } finally {
+                        end.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        end.await();
+        assertFalse(failed[0]);
+        for (int i = 0; i < results.length(); i++) {
+            AspectRatio ratio = results.get(i);
+            int x = 1 + i % range;
+            int y = 1 + i / range;
+            assertTrue(ratio.matches(new Size(x, y)));
+        }
+    }
 }
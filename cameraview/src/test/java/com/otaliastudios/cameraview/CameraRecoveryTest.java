@@ -0,0 +1,116 @@
+package com.otaliastudios.cameraview;
+
+
+import android.location.Location;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+public class CameraRecoveryTest {
+
+    private CameraRecovery recovery;
+    private CameraController controller;
+
+    @Before
+    public void setUp() {
+        recovery = new CameraRecovery();
+        controller = mock(CameraController.class);
+    }
+
+    @Test
+    public void testDelay() {
+        assertEquals(CameraRecovery.BASE_DELAY, CameraRecovery.getDelay(0));
+        assertEquals(CameraRecovery.BASE_DELAY * 2, CameraRecovery.getDelay(1));
+        assertEquals(CameraRecovery.BASE_DELAY * 4, CameraRecovery.getDelay(2));
+        assertEquals(CameraRecovery.MAX_DELAY, CameraRecovery.getDelay(100));
+    }
+
+    @Test
+    public void testAttempts() {
+        assertEquals(-1, recovery.nextAttempt()); // Not recovering.
+        recovery.begin(new CameraRecovery.Snapshot(controller));
+        assertTrue(recovery.isRecovering());
+        for (int i = 0; i < CameraRecovery.MAX_ATTEMPTS; i++) {
+            assertEquals(CameraRecovery.getDelay(i), recovery.nextAttempt());
+        }
+        assertEquals(-1, recovery.nextAttempt());
+        recovery.fail();
+        assertFalse(recovery.isRecovering());
+        assertEquals(1, recovery.getFailedCount());
+        assertEquals(0, recovery.getRecoveredCount());
+    }
+
+    @Test
+    public void testSucceed() throws Exception {
+        recovery.begin(new CameraRecovery.Snapshot(controller));
+        recovery.nextAttempt();
+        recovery.nextAttempt();
+        Thread.sleep(20);
+        long time = recovery.succeed();
+        assertTrue(time >= 20);
+        assertFalse(recovery.isRecovering());
+        assertNull(recovery.getSnapshot());
+        assertEquals(1, recovery.getRecoveredCount());
+        assertEquals(2, recovery.getLastAttempts());
+        assertEquals(time, recovery.getLastRecoveryTime());
+    }
+
+    @Test
+    public void testSnapshot() {
+        Location location = mock(Location.class);
+        controller.mZoomValue = 0.5f;
+        controller.mExposureCorrectionValue = -1f;
+        controller.mFlash = Flash.TORCH;
+        controller.mWhiteBalance = WhiteBalance.CLOUDY;
+        controller.mHdr = Hdr.ON;
+        controller.mLocation = location;
+        CameraRecovery.Snapshot snapshot = new CameraRecovery.Snapshot(controller);
+        controller.mFlash = Flash.OFF;
+        assertEquals(0.5f, snapshot.zoom, 0f);
+        assertEquals(-1f, snapshot.exposureCorrection, 0f);
+        assertEquals(Flash.TORCH, snapshot.flash);
+        assertEquals(WhiteBalance.CLOUDY, snapshot.whiteBalance);
+        assertEquals(Hdr.ON, snapshot.hdr);
+        assertSame(location, snapshot.location);
+    }
+
+    @Test
+    public void testBegin_keepsFirstSnapshot() {
+        controller.mZoomValue = 0.5f;
+        controller.mExposureCorrectionValue = -1f;
+        CameraRecovery.Snapshot first = new CameraRecovery.Snapshot(controller);
+        recovery.begin(first);
+        recovery.nextAttempt();
+        controller.mZoomValue = 0f;
+        recovery.begin(new CameraRecovery.Snapshot(controller));
+        assertSame(first, recovery.getSnapshot());
+        assertEquals(1, recovery.getAttempts());
+        assertEquals(0.5f, recovery.getSnapshot().zoom, 0f);
+        assertEquals(-1f, recovery.getSnapshot().exposureCorrection, 0f);
+    }
+
+    @Test
+    public void testCancel() {
+        recovery.begin(new CameraRecovery.Snapshot(controller));
+        recovery.cancel();
+        assertFalse(recovery.isRecovering());
+        assertEquals(-1, recovery.nextAttempt());
+        assertEquals(0, recovery.getFailedCount());
+    }
+
+    @Test
+    public void testIsRecoverable() {
+        assertFalse(CameraRecovery.isRecoverable(null));
+        assertFalse(CameraRecovery.isRecoverable(new RuntimeException("Fail to connect to camera service")));
+        assertFalse(CameraRecovery.isRecoverable(new CameraUnavailableException("Error while starting.",
+                new RuntimeException("Camera server died!"))));
+        assertTrue(CameraRecovery.isRecoverable(new CameraUnavailableException("Error while starting.",
+                CameraUnavailableException.REASON_SERVER_DIED, new RuntimeException())));
+        // Wrapped.
+        assertTrue(CameraRecovery.isRecoverable(new RuntimeException(new CameraUnavailableException(
+                "Can not bind to surface.", CameraUnavailableException.REASON_SERVER_DIED, null))));
+    }
+}
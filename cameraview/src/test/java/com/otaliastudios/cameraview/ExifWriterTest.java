@@ -0,0 +1,201 @@
+package com.otaliastudios.cameraview;
+
+
+import android.location.Location;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ExifWriterTest {
+
+    private final static int TIFF = 10;
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write((value >> 8) & 0xFF);
+        out.write(value & 0xFF);
+    }
+
+    // SOI, [APP0], SOF0, SOS and some scan data.
+    private static byte[] jpeg(boolean app0) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        if (app0) {
+            out.write(0xFF);
+            out.write(0xE0);
+            writeShort(out, 2 + 5);
+            out.write('J'); out.write('F'); out.write('I'); out.write('F'); out.write(0);
+        }
+        out.write(0xFF);
+        out.write(0xC0);
+        writeShort(out, 8 + 3);
+        out.write(8);
+        writeShort(out, 480);
+        writeShort(out, 640);
+        out.write(1);
+        out.write(1); out.write(0x11); out.write(0);
+        out.write(0xFF);
+        out.write(0xDA);
+        for (int i = 0; i < 32; i++) out.write(i);
+        return out.toByteArray();
+    }
+
+    private static int readShort(byte[] data, int position) {
+        return JpegHeader.readShort(data, position, false);
+    }
+
+    private static int readInt(byte[] data, int position) {
+        return (int) JpegHeader.readInt(data, position, false);
+    }
+
+    // Returns the position of the entry with this tag, in the IFD at offset.
+    private static int findTag(byte[] segment, int offset, int tag) {
+        int position = TIFF + offset;
+        int count = readShort(segment, position);
+        for (int i = 0; i < count; i++) {
+            int entry = position + 2 + i * 12;
+            if (readShort(segment, entry) == tag) return entry;
+        }
+        return -1;
+    }
+
+    private static String readAscii(byte[] segment, int entry) {
+        int count = readInt(segment, entry + 4);
+        int position = count <= 4 ? entry + 8 : TIFF + readInt(segment, entry + 8);
+        return new String(segment, position, count - 1);
+    }
+
+    private static long[] readRationals(byte[] segment, int entry) {
+        int count = readInt(segment, entry + 4);
+        int position = TIFF + readInt(segment, entry + 8);
+        long[] values = new long[count * 2];
+        for (int i = 0; i < values.length; i++) values[i] = readInt(segment, position + i * 4);
+        return values;
+    }
+
+    @Test
+    public void testSegment() {
+        byte[] segment = ExifWriter.createSegment(ExifInterface.ORIENTATION_ROTATE_90, 0, null);
+        assertEquals(0xFF, segment[0] & 0xFF);
+        assertEquals(0xE1, segment[1] & 0xFF);
+        assertEquals(segment.length - 2, readShort(segment, 2));
+        int orientation = findTag(segment, 8, 0x0112);
+        assertTrue(orientation > 0);
+        assertEquals(ExifInterface.ORIENTATION_ROTATE_90, readShort(segment, orientation + 8));
+        assertEquals(19, readAscii(segment, findTag(segment, 8, 0x0132)).length());
+        int exif = findTag(segment, 8, 0x8769);
+        assertTrue(findTag(segment, readInt(segment, exif + 8), 0x9003) > 0);
+        assertEquals(-1, findTag(segment, 8, 0x8825));
+    }
+
+    @Test
+    public void testSegment_location() {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(2018, Calendar.MARCH, 4, 5, 6, 7);
+        Location location = mock(Location.class);
+        when(location.getLatitude()).thenReturn(-45.5);
+        when(location.getLongitude()).thenReturn(12.25);
+        when(location.hasAltitude()).thenReturn(true);
+        when(location.getAltitude()).thenReturn(-10.5);
+        when(location.getTime()).thenReturn(calendar.getTimeInMillis());
+        byte[] segment = ExifWriter.createSegment(ExifInterface.ORIENTATION_NORMAL, 0, location);
+
+        int gps = readInt(segment, findTag(segment, 8, 0x8825) + 8);
+        assertEquals("S", readAscii(segment, findTag(segment, gps, 0x0001)));
+        assertArrayEquals(new long[]{45, 1, 30, 1, 0, 1000}, readRationals(segment, findTag(segment, gps, 0x0002)));
+        assertEquals("E", readAscii(segment, findTag(segment, gps, 0x0003)));
+        assertArrayEquals(new long[]{12, 1, 15, 1, 0, 1000}, readRationals(segment, findTag(segment, gps, 0x0004)));
+        assertEquals(1, segment[findTag(segment, gps, 0x0005) + 8]);
+        assertArrayEquals(new long[]{1050, 100}, readRationals(segment, findTag(segment, gps, 0x0006)));
+        assertArrayEquals(new long[]{5, 1, 6, 1, 7, 1}, readRationals(segment, findTag(segment, gps, 0x0007)));
+        assertEquals("2018:03:04", readAscii(segment, findTag(segment, gps, 0x001D)));
+    }
+
+    @Test
+    public void testInsert() {
+        byte[] jpeg = jpeg(false);
+        byte[] segment = ExifWriter.createSegment(ExifInterface.ORIENTATION_ROTATE_180, 0, null);
+        byte[] result = ExifWriter.insert(jpeg, jpeg.length, segment);
+        assertEquals(jpeg.length + segment.length, result.length);
+        JpegHeader header = JpegHeader.read(result);
+        assertNotNull(header);
+        assertEquals(2, header.exifOffset);
+        assertEquals(segment.length, header.exifLength);
+        assertEquals(ExifInterface.ORIENTATION_ROTATE_180, header.orientation);
+        assertEquals(640, header.width);
+        assertEquals(480, header.height);
+        // Scan data is untouched.
+        assertArrayEquals(Arrays.copyOfRange(jpeg, 2, jpeg.length), Arrays.copyOfRange(result, 2 + segment.length, result.length));
+    }
+
+    @Test
+    public void testInsert_afterJfif() {
+        byte[] jpeg = jpeg(true);
+        byte[] result = ExifWriter.insert(jpeg, jpeg.length, ExifWriter.createSegment(ExifInterface.ORIENTATION_ROTATE_90, 0, null));
+        JpegHeader header = JpegHeader.read(result);
+        assertNotNull(header);
+        assertEquals(2 + 2 + 7, header.exifOffset);
+        assertEquals(ExifInterface.ORIENTATION_ROTATE_90, header.orientation);
+    }
+
+    @Test
+    public void testInsert_replace() {
+        byte[] jpeg = jpeg(false);
+        byte[] first = ExifWriter.insert(jpeg, jpeg.length, ExifWriter.createSegment(ExifInterface.ORIENTATION_ROTATE_90, 0, null));
+        byte[] segment = ExifWriter.createSegment(ExifInterface.ORIENTATION_ROTATE_270, 0, null);
+        byte[] second = ExifWriter.insert(first, first.length, segment);
+        assertEquals(jpeg.length + segment.length, second.length);
+        JpegHeader header = JpegHeader.read(second);
+        assertNotNull(header);
+        assertEquals(ExifInterface.ORIENTATION_ROTATE_270, header.orientation);
+    }
+
+    @Test
+    public void testInsert_length() {
+        // A buffer with garbage after the data, like ByteArrayOutputStream's.
+        byte[] jpeg = jpeg(false);
+        byte[] buffer = Arrays.copyOf(jpeg, jpeg.length * 2);
+        byte[] segment = ExifWriter.createSegment(ExifInterface.ORIENTATION_NORMAL, 0, null);
+        assertEquals(jpeg.length + segment.length, ExifWriter.insert(buffer, jpeg.length, segment).length);
+    }
+
+    @Test
+    public void testInsert_notJpeg() {
+        byte[] data = new byte[]{1, 2, 3, 4, 5};
+        byte[] segment = ExifWriter.createSegment(ExifInterface.ORIENTATION_NORMAL, 0, null);
+        assertArrayEquals(new byte[]{1, 2, 3}, ExifWriter.insert(data, 3, segment));
+    }
+
+    @Test
+    public void testCopy() {
+        byte[] source = ExifWriter.insert(jpeg(false), jpeg(false).length,
+                ExifWriter.createSegment(ExifInterface.ORIENTATION_ROTATE_90, 1000, null));
+        byte[] target = jpeg(true);
+        byte[] result = ExifWriter.copy(source, target, target.length, ExifInterface.ORIENTATION_NORMAL);
+        JpegHeader header = JpegHeader.read(result);
+        assertNotNull(header);
+        assertEquals(ExifInterface.ORIENTATION_NORMAL, header.orientation);
+        assertTrue(header.orientationOffset > header.exifOffset);
+        // The source is untouched.
+        JpegHeader sourceHeader = JpegHeader.read(source);
+        assertNotNull(sourceHeader);
+        assertEquals(ExifInterface.ORIENTATION_ROTATE_90, sourceHeader.orientation);
+    }
+
+    @Test
+    public void testCopy_noExif() {
+        byte[] target = jpeg(false);
+        assertArrayEquals(target, ExifWriter.copy(jpeg(true), target, target.length, ExifInterface.ORIENTATION_NORMAL));
+    }
+}
@@ -0,0 +1,144 @@
+package com.otaliastudios.cameraview;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ExposureMeterTest {
+
+    private final static int WIDTH = 64;
+    private final static int HEIGHT = 48;
+    private final static long MS = TestFrames.MS;
+
+    private ExposureMeter meter;
+    private ExposureMeter.Listener listener;
+    private final TestFrames frames = new TestFrames(WIDTH, HEIGHT);
+
+    @Before
+    public void setUp() {
+        meter = new ExposureMeter();
+        listener = mock(ExposureMeter.Listener.class);
+        meter.addListener(listener);
+    }
+
+    @After
+    public void tearDown() {
+        meter = null;
+        listener = null;
+    }
+
+    // Left half at the first value, right half at the second.
+    private byte[] halves(int left, int right) {
+        byte[] data = new byte[WIDTH * HEIGHT * 3 / 2];
+        for (int y = 0; y < HEIGHT; y++) {
+            Arrays.fill(data, y * WIDTH, y * WIDTH + WIDTH / 2, (byte) left);
+            Arrays.fill(data, y * WIDTH + WIDTH / 2, (y + 1) * WIDTH, (byte) right);
+        }
+        return data;
+    }
+
+    @Test
+    public void testMeasure() {
+        int[] histogram = new int[256];
+        long sum = ExposureMeter.measure(halves(10, 250), WIDTH, HEIGHT, 4, histogram);
+        int samples = (WIDTH / 4) * (HEIGHT / 4);
+        assertEquals(samples / 2, histogram[10]);
+        assertEquals(samples / 2, histogram[250]);
+        assertEquals((samples / 2) * 260L, sum);
+    }
+
+    @Test
+    public void testStats() {
+        meter.process(frames.frame(halves(0, 255), 0));
+        ExposureStats stats = meter.getStats();
+        assertNotNull(stats);
+        assertEquals((WIDTH / 4) * (HEIGHT / 4), stats.getCount());
+        assertEquals(127.5f, stats.getMean(), 0.001f);
+        assertEquals(0, stats.getPercentile(50));
+        assertEquals(255, stats.getPercentile(51));
+        assertEquals(0, stats.getPercentile(0));
+        assertEquals(255, stats.getPercentile(100));
+        assertEquals(0.5f, stats.getShadowFraction(), 0.0001f);
+        assertEquals(0.5f, stats.getHighlightFraction(), 0.0001f);
+        assertEquals(0, stats.getTimestamp());
+        int[] histogram = new int[256];
+        stats.getHistogram(histogram);
+        assertEquals(stats.getCount() / 2, histogram[255]);
+        assertEquals(stats.getCount() / 2, stats.getBin(0));
+        verify(listener, times(1)).onStats(stats);
+    }
+
+    @Test
+    public void testImmutable() {
+        meter.setInterval(0);
+        meter.process(frames.frame(halves(50, 50), 0));
+        ExposureStats first = meter.getStats();
+        meter.process(frames.frame(halves(200, 200), 1));
+        assertEquals(50, first.getMean(), 0);
+        assertEquals(200, meter.getStats().getMean(), 0);
+    }
+
+    @Test
+    public void testInterval() {
+        meter.setInterval(100);
+        meter.process(frames.frame(halves(50, 50), 0));
+        ExposureStats first = meter.getStats();
+        meter.process(frames.frame(halves(50, 50), 50));
+        assertSame(first, meter.getStats());
+        meter.process(frames.frame(halves(50, 50), 100));
+        verify(listener, times(2)).onStats(any(ExposureStats.class));
+    }
+
+    @Test
+    public void testRemoveListener() {
+        meter.removeListener(listener);
+        meter.process(frames.frame(halves(50, 50), 0));
+        verify(listener, never()).onStats(any(ExposureStats.class));
+    }
+
+    @Test
+    public void testEmpty() {
+        assertNull(meter.getStats());
+        ExposureStats stats = new ExposureStats(new int[256], 0, 0);
+        assertEquals(0, stats.getMean(), 0);
+        assertEquals(0, stats.getPercentile(50));
+        assertEquals(0, stats.getShadowFraction(), 0);
+    }
+
+    @Test
+    public void testAutoExposure() {
+        ExposureStats dark = new ExposureStats(histogram(30), 30, 0);
+        ExposureStats target = new ExposureStats(histogram(118), 118, 0);
+        ExposureStats bright = new ExposureStats(histogram(240), 240, 0);
+
+        // Two stops under: raise, by at most one step.
+        assertEquals(AutoExposure.MAX_STEP, AutoExposure.next(0, dark, 118, -2, 2), 0.0001f);
+        // Close enough.
+        assertEquals(0.5f, AutoExposure.next(0.5f, target, 118, -2, 2), 0);
+        // Over: lower.
+        assertEquals(-AutoExposure.MAX_STEP, AutoExposure.next(0, bright, 118, -2, 2), 0.0001f);
+        // Bounds.
+        assertEquals(2, AutoExposure.next(1.9f, dark, 118, -2, 2), 0);
+        // Clipped highlights: don't raise.
+        assertEquals(0, AutoExposure.next(0, bright, 254, -2, 2), 0);
+    }
+
+    private static int[] histogram(int level) {
+        int[] histogram = new int[256];
+        histogram[level] = 1;
+        return histogram;
+    }
+}
@@ -0,0 +1,108 @@
+package com.otaliastudios.cameraview;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FocusTrackerTest {
+
+    private FocusTracker tracker;
+
+    @Before
+    public void setUp() {
+        tracker = new FocusTracker();
+    }
+
+    @After
+    public void tearDown() {
+        tracker = null;
+    }
+
+    @Test
+    public void testDefaults() {
+        assertEquals(FocusTracker.STATE_IDLE, tracker.getState());
+        assertFalse(tracker.isContinuous());
+        assertFalse(tracker.shouldWaitBeforeCapture());
+        assertEquals(-1, tracker.getLockTime(50));
+        assertEquals(0, tracker.getSkippedCount());
+    }
+
+    @Test
+    public void testFixedMode() {
+        tracker.onModeChanged(false, false);
+        tracker.onScanStart(0);
+        assertEquals(FocusTracker.STATE_IDLE, tracker.getState());
+        assertFalse(tracker.shouldWaitBeforeCapture());
+        // Nothing was skipped: this camera can't focus.
+        assertEquals(0, tracker.getSkippedCount());
+    }
+
+    @Test
+    public void testContinuous() {
+        tracker.onModeChanged(true, true);
+        assertTrue(tracker.isContinuous());
+        assertEquals(FocusTracker.STATE_CONTINUOUS, tracker.getState());
+
+        tracker.onScanStart(100);
+        assertTrue(tracker.isScanning());
+        assertTrue(tracker.shouldWaitBeforeCapture());
+        tracker.onScanEnd(250, true);
+        assertEquals(FocusTracker.STATE_LOCKED, tracker.getState());
+        assertFalse(tracker.shouldWaitBeforeCapture());
+        assertEquals(1, tracker.getSkippedCount());
+        assertEquals(1, tracker.getLockCount());
+        assertEquals(150, tracker.getLockTime(50));
+    }
+
+    @Test
+    public void testAutoFailed() {
+        tracker.onModeChanged(true, false);
+        assertFalse(tracker.isContinuous());
+        tracker.onScanStart(0);
+        tracker.onScanEnd(500, false);
+        assertEquals(FocusTracker.STATE_FAILED, tracker.getState());
+        assertEquals(1, tracker.getFailCount());
+        assertEquals(-1, tracker.getLockTime(50));
+        // Don't wait, another pass would fail as well.
+        assertFalse(tracker.shouldWaitBeforeCapture());
+    }
+
+    @Test
+    public void testScanEndWithoutStart() {
+        tracker.onModeChanged(true, true);
+        tracker.onScanEnd(100, true);
+        assertEquals(FocusTracker.STATE_CONTINUOUS, tracker.getState());
+        assertEquals(0, tracker.getLockCount());
+    }
+
+    @Test
+    public void testReset() {
+        tracker.onModeChanged(true, true);
+        tracker.onScanStart(0);
+        tracker.reset();
+        assertEquals(FocusTracker.STATE_IDLE, tracker.getState());
+        assertFalse(tracker.isContinuous());
+        assertFalse(tracker.shouldWaitBeforeCapture());
+    }
+
+    @Test
+    public void testLockTimeDistribution() {
+        tracker.onModeChanged(true, true);
+        for (int i = 1; i <= 100; i++) {
+            tracker.onScanStart(0);
+            tracker.onScanEnd(i, true);
+        }
+        assertEquals(100, tracker.getLockCount());
+        // Only the last HISTORY_SIZE are kept: 37 ... 100.
+        int first = 100 - FocusTracker.HISTORY_SIZE + 1;
+        assertEquals(first, tracker.getLockTime(0));
+        assertEquals(100, tracker.getLockTime(100));
+        assertEquals(first + FocusTracker.HISTORY_SIZE / 2 - 1, tracker.getLockTime(50));
+        assertEquals(100, tracker.getLockTime(500));
+    }
+}
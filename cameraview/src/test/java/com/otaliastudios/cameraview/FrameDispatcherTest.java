@@ -0,0 +1,219 @@
+package com.otaliastudios.cameraview;
+
+
+import android.graphics.ImageFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FrameDispatcherTest {
+
+    private final static Size SIZE = new Size(16, 16);
+
+    private ExecutorService executor;
+    private FrameDispatcher dispatcher;
+    private FrameManager manager;
+    private final List<byte[]> available = new ArrayList<>();
+    private byte[] buffer;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        dispatcher = new FrameDispatcher(executor);
+        manager = new FrameManager(1, new FrameManager.BufferCallback() {
+            @Override
+            public void onBufferAvailable(byte[] buffer) {
+                synchronized (available) {
+                    available.add(buffer);
+                }
+            }
+        });
+        manager.allocate(12, SIZE);
+        buffer = available.remove(0);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        available.clear();
+        dispatcher = null;
+        manager = null;
+    }
+
+    private Frame frame() {
+        Arrays.fill(buffer, (byte) 42);
+        return manager.getFrame(buffer, System.nanoTime(), new FrameInfo(SIZE, ImageFormat.NV21, 0, Facing.BACK, null));
+    }
+
+    private boolean isRecycled() {
+        synchronized (available) {
+            return available.contains(buffer);
+        }
+    }
+
+    @Test
+    public void testSerial() {
+        final List<Integer> order = new ArrayList<>();
+        List<FrameProcessor> processors = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final int index = i;
+            processors.add(new FrameProcessor() {
+                @Override
+                public void process(Frame frame) {
+                    assertFalse(isRecycled());
+                    order.add(index);
+                }
+            });
+        }
+        dispatcher.dispatch(frame(), processors);
+        assertEquals(Arrays.asList(0, 1, 2), order);
+        assertTrue(isRecycled());
+    }
+
+    @Test
+    public void testParallel() {
+        // Passes only if all processors run at the same time.
+        final int count = 4;
+        final CyclicBarrier barrier = new CyclicBarrier(count);
+        final AtomicInteger passed = new AtomicInteger();
+        List<FrameProcessor> processors = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            processors.add(new FrameProcessor() {
+                @Override
+                public void process(Frame frame) {
+                    try {
+                        barrier.await(2, TimeUnit.SECONDS);
+                        passed.incrementAndGet();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+        dispatcher.setParallel(true);
+        assertTrue(dispatcher.isParallel());
+        dispatcher.dispatch(frame(), processors);
+        assertEquals(count, passed.get());
+        assertTrue(isRecycled());
+    }
+
+    @Test
+    public void testParallel_notRecycledWhileHeld() {
+        dispatcher.setParallel(true);
+        final AtomicInteger violations = new AtomicInteger();
+        for (int round = 0; round < 4; round++) {
+            // Fast processors return at once. The slow one waits for them, then keeps reading
+            // the frame for a while: the buffer must not go back to the manager meanwhile.
+            final CountDownLatch fastDone = new CountDownLatch(3);
+            FrameProcessor fast = new FrameProcessor() {
+                @Override
+                public void process(Frame frame) {
+                    if (frame.getData()[0] != 42) violations.incrementAndGet();
+                    fastDone.countDown();
+                }
+            };
+            FrameProcessor slow = new FrameProcessor() {
+                @Override
+                public void process(Frame frame) {
+                    try {
+                        if (!fastDone.await(2, TimeUnit.SECONDS)) violations.incrementAndGet();
+                        for (int i = 0; i < 10; i++) {
+                            Thread.sleep(5);
+                            if (isRecycled() || frame.getData() == null || frame.getData()[0] != 42) {
+                                violations.incrementAndGet();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            // The slow one runs in the pool in even rounds, and in the calling thread in odd ones.
+            List<FrameProcessor> processors = round % 2 == 0 ?
+                    Arrays.asList(slow, fast, fast, fast) :
+                    Arrays.asList(fast, fast, fast, slow);
+            synchronized (available) {
+                available.clear();
+            }
+            dispatcher.dispatch(frame(), processors);
+            assertEquals(0, fastDone.getCount());
+            assertTrue(isRecycled());
+        }
+        assertEquals(0, violations.get());
+    }
+
+    @Test
+    public void testParallel_error() {
+        final RuntimeException error = new RuntimeException("test");
+        final AtomicInteger runs = new AtomicInteger();
+        List<FrameProcessor> processors = new ArrayList<>();
+        processors.add(new FrameProcessor() {
+            @Override
+            public void process(Frame frame) {
+                throw error;
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            processors.add(new FrameProcessor() {
+                @Override
+                public void process(Frame frame) {
+                    runs.incrementAndGet();
+                }
+            });
+        }
+        dispatcher.setParallel(true);
+        try {
+            dispatcher.dispatch(frame(), processors);
+            fail();
+        } catch (RuntimeException e) {
+            assertEquals(error, e);
+        }
+        // Others completed, and the frame was released anyway.
+        assertEquals(3, runs.get());
+        assertTrue(isRecycled());
+    }
+
+    @Test
+    public void testParallel_single() {
+        dispatcher.setParallel(true);
+        final Thread caller = Thread.currentThread();
+        final AtomicInteger runs = new AtomicInteger();
+        dispatcher.dispatch(frame(), Arrays.<FrameProcessor>asList(new FrameProcessor() {
+            @Override
+            public void process(Frame frame) {
+                // Nothing to fan out.
+                assertEquals(caller, Thread.currentThread());
+                runs.incrementAndGet();
+            }
+        }));
+        assertEquals(1, runs.get());
+        assertTrue(isRecycled());
+    }
+
+    @Test
+    public void testEmpty() {
+        dispatcher.setParallel(true);
+        Frame frame = frame();
+        dispatcher.dispatch(frame, new ArrayList<FrameProcessor>());
+        assertNull(frame.getData());
+        assertTrue(isRecycled());
+        assertTrue(dispatcher.getLastLatency() >= 0);
+    }
+}
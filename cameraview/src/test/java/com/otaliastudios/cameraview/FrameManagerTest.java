@@ -9,6 +9,9 @@ import org.junit.Test;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
@@ -49,16 +52,112 @@ public class FrameManagerTest {
         verify(callback, times(5)).onBufferAvailable(any(byte[].class));
     }
 
+    @Test
+    public void testAllocate_budget() {
+        MemoryBudget.setBudget(10000);
+        MemoryBudget.Account account = MemoryBudget.register("test");
+        FrameManager manager = new FrameManager(5, callback, account);
+        int length = manager.allocate(8, new Size(50, 50));
+        // 10000 / 2501 bytes: only 3 buffers fit.
+        assertEquals(2501, length);
+        verify(callback, times(3)).onBufferAvailable(any(byte[].class));
+        assertEquals(3 * length, account.getUsage());
+
+        manager.release();
+        assertEquals(0, account.getUsage());
+        account.unregister();
+        MemoryBudget.setBudget(0);
+    }
+
+    @Test
+    public void testSuspend() {
+        final List<byte[]> buffers = new ArrayList<>();
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                buffers.add((byte[]) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(callback).onBufferAvailable(any(byte[].class));
+        FrameManager manager = new FrameManager(2, callback);
+        int length = manager.allocate(4, new Size(50, 50));
+        assertEquals(2, buffers.size());
+        byte[] first = buffers.get(0);
+        byte[] second = buffers.get(1);
+
+        // A frame holds the first buffer while the camera restarts.
+        Frame frame = manager.getFrame(first, 0, null);
+        manager.suspend();
+        buffers.clear();
+        frame.release();
+        assertEquals(0, buffers.size());
+
+        // Same size: the same buffers are given back.
+        assertEquals(length, manager.allocate(4, new Size(50, 50)));
+        assertEquals(2, buffers.size());
+        assertTrue(buffers.contains(first));
+        assertTrue(buffers.contains(second));
+        assertEquals(2, manager.getBufferCount());
+    }
+
+    @Test
+    public void testSuspend_heldByFrame() {
+        final List<byte[]> buffers = new ArrayList<>();
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                buffers.add((byte[]) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(callback).onBufferAvailable(any(byte[].class));
+        FrameManager manager = new FrameManager(2, callback);
+        manager.allocate(4, new Size(50, 50));
+        byte[] first = buffers.get(0);
+
+        // The frame is released after the camera restarted.
+        Frame frame = manager.getFrame(first, 0, null);
+        manager.suspend();
+        buffers.clear();
+        manager.allocate(4, new Size(50, 50));
+        assertEquals(1, buffers.size());
+        assertNotEquals(first, buffers.get(0));
+        frame.release();
+        assertEquals(2, buffers.size());
+        assertEquals(first, buffers.get(1));
+        assertEquals(2, manager.getBufferCount());
+    }
+
+    @Test
+    public void testSuspend_differentSize() {
+        final List<byte[]> buffers = new ArrayList<>();
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                buffers.add((byte[]) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(callback).onBufferAvailable(any(byte[].class));
+        FrameManager manager = new FrameManager(1, callback);
+        manager.allocate(4, new Size(50, 50));
+        byte[] first = buffers.get(0);
+        manager.suspend();
+        buffers.clear();
+        manager.allocate(4, new Size(60, 60));
+        assertEquals(1, buffers.size());
+        assertNotEquals(first, buffers.get(0));
+        assertEquals(1, manager.getBufferCount());
+    }
+
     @Test
     public void testFrameRecycling() {
         // A 1-pool manager will always recycle the same frame.
         FrameManager manager = new FrameManager(1, callback);
         manager.allocate(4, new Size(50, 50));
 
-        Frame first = manager.getFrame(null, 0, 0, null, 0);
+        Frame first = manager.getFrame(null, 0, null);
         first.release();
 
-        Frame second = manager.getFrame(null, 0, 0, null, 0);
+        Frame second = manager.getFrame(null, 0, null);
         second.release();
 
         assertEquals(first, second);
@@ -70,7 +169,7 @@ public class FrameManagerTest {
         manager.allocate(4, new Size(50, 50));
         reset(callback);
 
-        Frame frame = manager.getFrame(null, 0, 0, null, 0);
+        Frame frame = manager.getFrame(null, 0, null);
         manager.onFrameReleased(frame);
         verify(callback, never()).onBufferAvailable(frame.getData());
     }
@@ -82,7 +181,7 @@ public class FrameManagerTest {
 
         // A camera preview frame comes. Request a frame.
         byte[] picture = new byte[length];
-        Frame frame = manager.getFrame(picture, 0, 0, null, 0);
+        Frame frame = manager.getFrame(picture, 0, null);
 
         // Release the frame and ensure that onBufferAvailable is called.
         reset(callback);
@@ -97,7 +196,7 @@ public class FrameManagerTest {
 
         // A camera preview frame comes. Request a frame.
         byte[] picture = new byte[length];
-        Frame frame = manager.getFrame(picture, 0, 0, null, 0);
+        Frame frame = manager.getFrame(picture, 0, null);
 
         // Don't release the frame. Change the allocation size.
         manager.allocate(2, new Size(15, 15));
@@ -113,7 +212,7 @@ public class FrameManagerTest {
     public void testRelease() {
         FrameManager manager = new FrameManager(1, callback);
         int length = manager.allocate(4, new Size(50, 50));
-        Frame first = manager.getFrame(new byte[length], 0, 0, null, 0);
+        Frame first = manager.getFrame(new byte[length], 0, null);
         first.release(); // Store this frame in the queue.
 
         // Release the whole manager and ensure it clears the frame.
@@ -0,0 +1,180 @@
+package com.otaliastudios.cameraview;
+
+
+import android.graphics.ImageFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+public class FramePreprocessorTest {
+
+    private final static int WIDTH = 64;
+    private final static int HEIGHT = 48;
+
+    private byte[] nv21;
+
+    @Before
+    public void setUp() {
+        nv21 = new byte[WIDTH * HEIGHT * 3 / 2];
+        new Random(42).nextBytes(nv21);
+    }
+
+    @After
+    public void tearDown() {
+        nv21 = null;
+    }
+
+    // Float version: crop and sample in the rotated frame, then rotate coordinates back.
+    private static float[] reference(byte[] nv21, int width, int height, int rotation,
+                                     int outWidth, int outHeight, boolean centerCrop) {
+        boolean flip = rotation % 180 != 0;
+        double rw = flip ? height : width;
+        double rh = flip ? width : height;
+        double cw = rw, ch = rh;
+        if (centerCrop) {
+            double scale = Math.min(rw / outWidth, rh / outHeight);
+            cw = Math.floor(outWidth * scale);
+            ch = Math.floor(outHeight * scale);
+        }
+        int cx = (int) (rw - cw) / 2;
+        int cy = (int) (rh - ch) / 2;
+        float[] rgb = new float[outWidth * outHeight * 3];
+        for (int y = 0; y < outHeight; y++) {
+            for (int x = 0; x < outWidth; x++) {
+                int rx = cx + (int) Math.floor((x + 0.5) * cw / outWidth);
+                int ry = cy + (int) Math.floor((y + 0.5) * ch / outHeight);
+                int sx, sy;
+                switch (rotation) {
+                    case 90: sx = ry; sy = height - 1 - rx; break;
+                    case 180: sx = width - 1 - rx; sy = height - 1 - ry; break;
+                    case 270: sx = width - 1 - ry; sy = rx; break;
+                    default: sx = rx; sy = ry; break;
+                }
+                float luma = nv21[sy * width + sx] & 0xFF;
+                int uv = width * height + (sy / 2) * width + (sx / 2) * 2;
+                float v = (nv21[uv] & 0xFF) - 128f;
+                float u = (nv21[uv + 1] & 0xFF) - 128f;
+                int i = (y * outWidth + x) * 3;
+                rgb[i] = clamp(luma + 1.402f * v);
+                rgb[i + 1] = clamp(luma - 0.344136f * u - 0.714136f * v);
+                rgb[i + 2] = clamp(luma + 1.772f * u);
+            }
+        }
+        return rgb;
+    }
+
+    private static float clamp(float value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static ByteBuffer buffer(FramePreprocessor preprocessor) {
+        return ByteBuffer.allocateDirect(preprocessor.getTensorSize()).order(ByteOrder.nativeOrder());
+    }
+
+    @Test
+    public void testTensorSize() {
+        assertEquals(224 * 224 * 3, new FramePreprocessor(224, 224, FramePreprocessor.Type.UINT8).getTensorSize());
+        assertEquals(224 * 224 * 12, new FramePreprocessor(224, 224, FramePreprocessor.Type.FLOAT32).getTensorSize());
+    }
+
+    @Test
+    public void testUint8() {
+        FramePreprocessor preprocessor = new FramePreprocessor(20, 10, FramePreprocessor.Type.UINT8);
+        for (int crop = 0; crop < 2; crop++) {
+            preprocessor.setCenterCrop(crop == 1);
+            for (int rotation = 0; rotation < 360; rotation += 90) {
+                ByteBuffer tensor = buffer(preprocessor);
+                preprocessor.preprocess(nv21, WIDTH, HEIGHT, rotation, tensor);
+                float[] expected = reference(nv21, WIDTH, HEIGHT, rotation, 20, 10, crop == 1);
+                for (int i = 0; i < expected.length; i++) {
+                    assertEquals(expected[i], tensor.get(i) & 0xFF, 1);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFloat32() {
+        FramePreprocessor preprocessor = new FramePreprocessor(16, 16, FramePreprocessor.Type.FLOAT32);
+        preprocessor.setNormalization(new float[]{127.5f, 127.5f, 127.5f}, new float[]{127.5f, 127.5f, 127.5f});
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            ByteBuffer tensor = buffer(preprocessor);
+            preprocessor.preprocess(nv21, WIDTH, HEIGHT, rotation, tensor);
+            float[] expected = reference(nv21, WIDTH, HEIGHT, rotation, 16, 16, true);
+            for (int i = 0; i < expected.length; i++) {
+                float value = tensor.getFloat(i * 4);
+                assertEquals((expected[i] - 127.5f) / 127.5f, value, 1.01f / 127.5f);
+            }
+        }
+    }
+
+    @Test
+    public void testDefaultNormalization() {
+        FramePreprocessor preprocessor = new FramePreprocessor(8, 8, FramePreprocessor.Type.FLOAT32);
+        byte[] white = new byte[WIDTH * HEIGHT * 3 / 2];
+        for (int i = 0; i < white.length; i++) white[i] = (byte) (i < WIDTH * HEIGHT ? 255 : 128);
+        ByteBuffer tensor = buffer(preprocessor);
+        preprocessor.preprocess(white, WIDTH, HEIGHT, 0, tensor);
+        for (int i = 0; i < 8 * 8 * 3; i++) {
+            assertEquals(1f, tensor.getFloat(i * 4), 0.0001f);
+        }
+    }
+
+    @Test
+    public void testPosition() {
+        FramePreprocessor preprocessor = new FramePreprocessor(8, 8, FramePreprocessor.Type.UINT8);
+        ByteBuffer tensor = ByteBuffer.allocate(preprocessor.getTensorSize() + 10);
+        tensor.position(10);
+        preprocessor.preprocess(nv21, WIDTH, HEIGHT, 90, tensor);
+        assertEquals(10, tensor.position());
+        float[] expected = reference(nv21, WIDTH, HEIGHT, 90, 8, 8, true);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], tensor.get(10 + i) & 0xFF, 1);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBufferTooSmall() {
+        FramePreprocessor preprocessor = new FramePreprocessor(8, 8, FramePreprocessor.Type.FLOAT32);
+        preprocessor.preprocess(nv21, WIDTH, HEIGHT, 0, ByteBuffer.allocate(8 * 8 * 3));
+    }
+
+    @Test
+    public void testAttachAndRecycle() {
+        FramePreprocessor preprocessor = new FramePreprocessor(8, 8, FramePreprocessor.Type.UINT8);
+        Frame frame = new Frame(mock(FrameManager.class));
+        frame.set(nv21, 0, new FrameInfo(new Size(WIDTH, HEIGHT), ImageFormat.NV21, 90, Facing.BACK, null));
+        preprocessor.attach(frame);
+        ByteBuffer tensor = frame.getTensor();
+        assertNotNull(tensor);
+        assertEquals(0, preprocessor.getPoolSize());
+
+        // Frozen frames have their own copy.
+        Frame frozen = frame.freeze();
+        assertNotNull(frozen.getTensor());
+        assertNotSame(tensor, frozen.getTensor());
+        assertEquals(tensor, frozen.getTensor());
+
+        // Released frames give the buffer back, and the next frame reuses it.
+        frame.release();
+        assertNull(frame.getTensor());
+        assertEquals(1, preprocessor.getPoolSize());
+        frozen.release();
+        assertEquals(1, preprocessor.getPoolSize());
+        frame.set(nv21, 1, new FrameInfo(new Size(WIDTH, HEIGHT), ImageFormat.NV21, 90, Facing.BACK, null));
+        preprocessor.attach(frame);
+        assertSame(tensor, frame.getTensor());
+    }
+}
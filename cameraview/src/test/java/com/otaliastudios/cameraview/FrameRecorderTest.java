@@ -0,0 +1,198 @@
+package com.otaliastudios.cameraview;
+
+
+import android.graphics.ImageFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class FrameRecorderTest {
+
+    private final static Size SIZE = new Size(16, 8);
+    private final static int LENGTH = 16 * 8 * 3 / 2;
+    private final static long MS = 1000000L;
+
+    private File file;
+    private ExecutorService executor;
+    private FrameManager manager;
+
+    // Writes in the calling thread, so nothing is dropped because the writer is late.
+    private final Executor direct = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("recording", ".cvfr");
+        executor = Executors.newSingleThreadExecutor();
+        manager = mock(FrameManager.class);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        file = null;
+        manager = null;
+    }
+
+    private Frame frame(int value, long timestampMillis, int rotation, Facing facing) {
+        // Bigger than needed, like camera buffers.
+        byte[] data = new byte[LENGTH + 10];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) (value + i);
+        Frame frame = new Frame(manager);
+        frame.set(data, timestampMillis * MS, new FrameInfo(SIZE, ImageFormat.NV21, rotation, facing, null));
+        return frame;
+    }
+
+    private static class Collector implements FrameProcessor {
+        private final List<Frame> frames = new ArrayList<>();
+        private final List<FrameInfo> infos = new ArrayList<>();
+
+        @Override
+        public void process(Frame frame) {
+            frames.add(frame.freeze());
+            infos.add(frame.getInfo());
+        }
+    }
+
+    @Test
+    public void testRecordAndPlay() throws IOException {
+        FrameRecorder recorder = new FrameRecorder(file, 4096, 8, executor);
+        recorder.process(frame(0, 10, 90, Facing.FRONT));
+        recorder.process(frame(50, 20, 90, Facing.FRONT));
+        recorder.process(frame(100, 30, 180, Facing.BACK));
+        recorder.close();
+        assertEquals(3, recorder.getRecordedCount());
+        assertEquals(0, recorder.getDroppedCount());
+
+        FramePlayer player = new FramePlayer(file);
+        assertEquals(3, player.getFrameCount());
+        assertEquals(20 * MS, player.getDuration());
+        Collector collector = new Collector();
+        player.play(collector, false);
+        assertEquals(3, collector.frames.size());
+        int[] values = new int[]{0, 50, 100};
+        int[] rotations = new int[]{90, 90, 180};
+        Facing[] facings = new Facing[]{Facing.FRONT, Facing.FRONT, Facing.BACK};
+        for (int i = 0; i < 3; i++) {
+            Frame frame = collector.frames.get(i);
+            assertEquals((i + 1) * 10 * MS, frame.getTimestamp());
+            assertEquals(SIZE, frame.getSize());
+            assertEquals(ImageFormat.NV21, frame.getFormat());
+            assertEquals(rotations[i], frame.getRotation());
+            assertEquals(facings[i], frame.getInfo().getFacing());
+            // Only the frame is stored, not the rest of the buffer.
+            assertEquals(LENGTH, frame.getData().length);
+            for (int j = 0; j < LENGTH; j++) assertEquals((byte) (values[i] + j), frame.getData()[j]);
+        }
+        // Same configuration, same instance.
+        assertSame(collector.infos.get(0), collector.infos.get(1));
+        assertFalse(collector.infos.get(1) == collector.infos.get(2));
+    }
+
+    @Test
+    public void testNotClosed() throws IOException {
+        FrameRecorder recorder = new FrameRecorder(file, 4096, 8, direct);
+        recorder.process(frame(0, 10, 0, Facing.BACK));
+        // Readable before close.
+        assertEquals(1, new FramePlayer(file).getFrameCount());
+        recorder.close();
+    }
+
+    @Test
+    public void testMaxFrames() throws IOException {
+        FrameRecorder recorder = new FrameRecorder(file, 4096, 2, direct);
+        for (int i = 0; i < 3; i++) recorder.process(frame(i, i, 0, Facing.BACK));
+        recorder.close();
+        assertEquals(1, recorder.getDroppedCount());
+        assertEquals(2, new FramePlayer(file).getFrameCount());
+    }
+
+    @Test
+    public void testCapacity() throws IOException {
+        // Room for the index and two frames.
+        int capacity = FrameRecorder.HEADER_SIZE + 8 * FrameRecorder.ENTRY_SIZE + LENGTH * 2 + 10;
+        FrameRecorder recorder = new FrameRecorder(file, capacity, 8, direct);
+        for (int i = 0; i < 4; i++) recorder.process(frame(i, i, 0, Facing.BACK));
+        recorder.close();
+        assertEquals(2, recorder.getRecordedCount());
+        assertEquals(2, recorder.getDroppedCount());
+        assertTrue(recorder.isFull());
+        assertEquals(2, new FramePlayer(file).getFrameCount());
+    }
+
+    @Test
+    public void testWriterLate() throws IOException {
+        // The writer never runs: the frame thread drops frames instead of waiting.
+        final List<Runnable> posted = new ArrayList<>();
+        FrameRecorder recorder = new FrameRecorder(file, 4096, 8, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                posted.add(command);
+            }
+        });
+        for (int i = 0; i < FrameRecorder.POOL_SIZE + 2; i++) {
+            recorder.process(frame(i, i, 0, Facing.BACK));
+        }
+        assertEquals(1, posted.size());
+        assertEquals(2, recorder.getDroppedCount());
+        assertEquals(0, recorder.getRecordedCount());
+        posted.get(0).run();
+        assertEquals(FrameRecorder.POOL_SIZE, recorder.getRecordedCount());
+        recorder.close();
+    }
+
+    @Test
+    public void testOriginalSpeed() throws IOException {
+        FrameRecorder recorder = new FrameRecorder(file, 4096, 8, executor);
+        for (int i = 0; i < 3; i++) recorder.process(frame(i, i * 30, 0, Facing.BACK));
+        recorder.close();
+        FramePlayer player = new FramePlayer(file);
+        Collector collector = new Collector();
+        assertTrue(player.play(collector, true) >= 60 * MS);
+        assertEquals(3, collector.frames.size());
+    }
+
+    @Test
+    public void testClosed() throws IOException {
+        FrameRecorder recorder = new FrameRecorder(file, 4096, 8, executor);
+        recorder.close();
+        recorder.process(frame(0, 0, 0, Facing.BACK));
+        assertEquals(0, recorder.getRecordedCount());
+        assertEquals(0, recorder.getDroppedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacityTooSmall() throws IOException {
+        new FrameRecorder(file, FrameRecorder.HEADER_SIZE + FrameRecorder.ENTRY_SIZE, 1, executor);
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotARecording() throws IOException {
+        FileOutputStream stream = new FileOutputStream(file);
+        stream.write(new byte[64]);
+        stream.close();
+        new FramePlayer(file);
+    }
+}
@@ -13,6 +13,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import static org.mockito.Mockito.mock;
@@ -33,33 +34,39 @@ public class FrameTest {
         manager = null;
     }
 
+    private FrameInfo info(int rotation, int format) {
+        return new FrameInfo(new Size(10, 10), format, rotation, Facing.BACK, null);
+    }
+
     @Test
     public void testDefaults() {
         Frame frame = new Frame(manager);
         assertEquals(frame.getTime(), -1);
+        assertEquals(frame.getTimestamp(), -1);
         assertEquals(frame.getFormat(), -1);
         assertEquals(frame.getRotation(), 0);
         assertNull(frame.getData());
         assertNull(frame.getSize());
+        assertNull(frame.getInfo());
     }
 
     @Test
     public void testEquals() {
         Frame f1 = new Frame(manager);
         long time = 1000;
-        f1.set(null, time, 90, null, ImageFormat.NV21);
+        f1.set(null, time, info(90, ImageFormat.NV21));
         Frame f2 = new Frame(manager);
-        f2.set(new byte[2], time, 0, new Size(10, 10), ImageFormat.NV21);
+        f2.set(new byte[2], time, info(0, ImageFormat.NV21));
         assertEquals(f1, f2);
 
-        f2.set(new byte[2], time + 1, 0, new Size(10, 10), ImageFormat.NV21);
+        f2.set(new byte[2], time + 1, info(0, ImageFormat.NV21));
         assertNotEquals(f1, f2);
     }
 
     @Test
     public void testRelease() {
         Frame frame = new Frame(manager);
-        frame.set(new byte[2], 1000, 90, new Size(10, 10), ImageFormat.NV21);
+        frame.set(new byte[2], 1000, info(90, ImageFormat.NV21));
         frame.release();
 
         assertEquals(frame.getTime(), -1);
@@ -86,21 +93,50 @@ public class FrameTest {
         int rotation = 90;
         Size size = new Size(10, 10);
         int format = ImageFormat.NV21;
-        frame.set(data, time, rotation, size, format);
+        frame.set(data, time, new FrameInfo(size, format, rotation, Facing.BACK, null));
 
         Frame frozen = frame.freeze();
         assertArrayEquals(data, frozen.getData());
-        assertEquals(time, frozen.getTime());
+        assertEquals(time, frozen.getTimestamp());
         assertEquals(rotation, frozen.getRotation());
         assertEquals(size, frozen.getSize());
 
         // Mutate the first, ensure that frozen is not affected
-        frame.set(new byte[]{3, 2, 1}, 50, 180, new Size(1, 1), ImageFormat.JPEG);
+        frame.set(new byte[]{3, 2, 1}, 50,
+                new FrameInfo(new Size(1, 1), ImageFormat.JPEG, 180, Facing.FRONT, null));
         assertArrayEquals(data, frozen.getData());
-        assertEquals(time, frozen.getTime());
+        assertEquals(time, frozen.getTimestamp());
         assertEquals(rotation, frozen.getRotation());
         assertEquals(size, frozen.getSize());
         assertEquals(format, frozen.getFormat());
     }
 
+    @Test
+    public void testTime() {
+        Frame frame = new Frame(manager);
+        long timestamp = System.nanoTime();
+        frame.set(new byte[2], timestamp, info(0, ImageFormat.NV21));
+        assertEquals(timestamp, frame.getTimestamp());
+        // Derived from the timestamp, so it's close to now.
+        assertTrue(Math.abs(System.currentTimeMillis() - frame.getTime()) < 1000);
+    }
+
+    @Test
+    public void testInfo() {
+        FrameInfo info = info(90, ImageFormat.NV21);
+        Frame f1 = new Frame(manager);
+        Frame f2 = new Frame(manager);
+        f1.set(new byte[2], 1000, info);
+        f2.set(new byte[2], 2000, info);
+        assertSame(f1.getInfo(), f2.getInfo());
+        assertEquals(90, f1.getRotation());
+        assertEquals(new Size(10, 10), f1.getSize());
+        assertEquals(ImageFormat.NV21, f1.getFormat());
+        assertSame(info, f1.freeze().getInfo());
+
+        assertTrue(info.matches(new Size(10, 10), ImageFormat.NV21, 90, Facing.BACK, null));
+        assertFalse(info.matches(new Size(10, 10), ImageFormat.NV21, 0, Facing.BACK, null));
+        assertFalse(info.matches(new Size(10, 10), ImageFormat.NV21, 90, Facing.FRONT, null));
+    }
+
 }
@@ -0,0 +1,133 @@
+package com.otaliastudios.cameraview;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GestureBatcherTest {
+
+    private GestureBatcher batcher;
+
+    @Before
+    public void setUp() {
+        batcher = new GestureBatcher();
+        batcher.setFrameMillis(16);
+        batcher.setSmoothing(0);
+    }
+
+    @After
+    public void tearDown() {
+        batcher = null;
+    }
+
+    @Test
+    public void testEmpty() {
+        assertFalse(batcher.hasPending());
+        assertFalse(batcher.isReady(1000));
+        assertEquals(0, batcher.getEventCount());
+        assertEquals(0, batcher.getUpdateCount());
+        assertEquals(0, batcher.getEventsPerSecond(), 0);
+    }
+
+    @Test
+    public void testFirstEventIsReady() {
+        batcher.add(0.1f, 0, 8);
+        assertTrue(batcher.hasPending());
+        assertTrue(batcher.isReady(8));
+        assertEquals(0.1f, batcher.consume(), 0.0001f);
+        assertFalse(batcher.hasPending());
+        assertFalse(batcher.isReady(100));
+    }
+
+    @Test
+    public void testFrameGating() {
+        batcher.add(0.1f, 0, 8);
+        batcher.consume();
+        batcher.add(0.1f, 8, 12);
+        assertFalse(batcher.isReady(12));
+        assertTrue(batcher.isReady(24));
+    }
+
+    @Test
+    public void testCoalescing() {
+        // A 240Hz touch screen, for one second, on a 60Hz display.
+        float total = 0;
+        float consumed = 0;
+        for (int i = 1; i <= 240; i++) {
+            long time = i * 1000L / 240;
+            batcher.add(0.001f, time - 4, time);
+            total += 0.001f;
+            if (batcher.isReady(time)) consumed += batcher.consume();
+        }
+        if (batcher.hasPending()) consumed += batcher.consume();
+
+        // No delta is lost, and updates are capped to the frame rate.
+        assertEquals(total, consumed, 0.0001f);
+        assertEquals(240, batcher.getEventCount());
+        assertTrue(batcher.getUpdateCount() <= 61);
+        assertTrue(batcher.getUpdateCount() >= 50);
+        assertTrue(batcher.getEventsPerSecond() > 4 * batcher.getUpdatesPerSecond() - 10);
+    }
+
+    @Test
+    public void testReset() {
+        batcher.add(0.1f, 0, 8);
+        batcher.consume();
+        batcher.add(0.1f, 8, 10);
+        batcher.reset();
+        assertFalse(batcher.hasPending());
+        assertEquals(0, batcher.getSpeed(), 0);
+        // Metrics are kept.
+        assertEquals(2, batcher.getEventCount());
+        assertEquals(1, batcher.getUpdateCount());
+        // A new gesture is ready immediately.
+        batcher.add(0.1f, 20, 22);
+        assertTrue(batcher.isReady(22));
+    }
+
+    @Test
+    public void testSpeed() {
+        batcher.add(0.1f, 0, 100);
+        assertEquals(1f, batcher.getSpeed(), 0.0001f);
+        batcher.add(-0.2f, 100, 200);
+        assertEquals(2f, batcher.getSpeed(), 0.0001f);
+    }
+
+    @Test
+    public void testSmoothing() {
+        batcher.setSmoothing(0.5f);
+        assertEquals(0.5f, batcher.getSmoothing(), 0);
+        batcher.add(0.1f, 0, 100); // 1 unit/s
+        assertEquals(0.5f, batcher.getSpeed(), 0.0001f);
+        batcher.add(0.1f, 100, 200);
+        assertEquals(0.75f, batcher.getSpeed(), 0.0001f);
+
+        batcher.setSmoothing(5);
+        assertEquals(0.99f, batcher.getSmoothing(), 0);
+        batcher.setSmoothing(-5);
+        assertEquals(0f, batcher.getSmoothing(), 0);
+    }
+
+    @Test
+    public void testCurve() {
+        assertSame(GestureBatcher.LINEAR, batcher.getCurve());
+        batcher.setCurve(GestureBatcher.ACCELERATE);
+        assertSame(GestureBatcher.ACCELERATE, batcher.getCurve());
+
+        // Slow: 0.1 units/s, gain is close to 0.5.
+        batcher.add(0.01f, 0, 100);
+        assertEquals(0.01f * GestureBatcher.ACCELERATE.gain(0.1f), batcher.consume(), 0.00001f);
+        assertTrue(GestureBatcher.ACCELERATE.gain(0.1f) < 1f);
+
+        // Fast: 10 units/s, gain is 2.
+        batcher.reset();
+        batcher.add(0.1f, 0, 10);
+        assertEquals(0.2f, batcher.consume(), 0.00001f);
+    }
+}
@@ -0,0 +1,125 @@
+package com.otaliastudios.cameraview;
+
+
+import androidx.exifinterface.media.ExifInterface;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+public class JpegHeaderTest {
+
+    private static void writeShort(ByteArrayOutputStream out, int value, boolean little) {
+        if (little) {
+            out.write(value & 0xFF);
+            out.write((value >> 8) & 0xFF);
+        } else {
+            out.write((value >> 8) & 0xFF);
+            out.write(value & 0xFF);
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value, boolean little) {
+        writeShort(out, little ? value & 0xFFFF : value >>> 16, little);
+        writeShort(out, little ? value >>> 16 : value & 0xFFFF, little);
+    }
+
+    // SOI, [APP1 with orientation], SOF0, SOS.
+    private static byte[] jpeg(int width, int height, int orientation, boolean little) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        if (orientation > 0) {
+            ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+            tiff.write(little ? 'I' : 'M');
+            tiff.write(little ? 'I' : 'M');
+            writeShort(tiff, 42, little);
+            writeInt(tiff, 8, little);
+            writeShort(tiff, 2, little); // Entries
+            writeShort(tiff, 0x010F, little); // Make, ignored
+            writeShort(tiff, 2, little);
+            writeInt(tiff, 4, little);
+            writeInt(tiff, 0, little);
+            writeShort(tiff, 0x0112, little); // Orientation
+            writeShort(tiff, 3, little);
+            writeInt(tiff, 1, little);
+            writeShort(tiff, orientation, little);
+            writeShort(tiff, 0, little);
+            writeInt(tiff, 0, little); // Next IFD
+            byte[] data = tiff.toByteArray();
+            out.write(0xFF);
+            out.write(0xE1);
+            writeShort(out, 2 + 6 + data.length, false);
+            out.write('E'); out.write('x'); out.write('i'); out.write('f'); out.write(0); out.write(0);
+            out.write(data, 0, data.length);
+        }
+        out.write(0xFF);
+        out.write(0xC0);
+        writeShort(out, 8 + 3, false);
+        out.write(8); // Precision
+        writeShort(out, height, false);
+        writeShort(out, width, false);
+        out.write(1); // Components
+        out.write(1); out.write(0x11); out.write(0);
+        out.write(0xFF);
+        out.write(0xDA);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testNotJpeg() {
+        assertNull(JpegHeader.read(new byte[]{(byte) 0x89, 'P', 'N', 'G'}));
+        assertNull(JpegHeader.read(new byte[0]));
+    }
+
+    @Test
+    public void testNoExif() {
+        JpegHeader header = JpegHeader.read(jpeg(640, 480, 0, false));
+        assertNotNull(header);
+        assertEquals(640, header.width);
+        assertEquals(480, header.height);
+        assertEquals(ExifInterface.ORIENTATION_NORMAL, header.orientation);
+        assertEquals(-1, header.exifOffset);
+    }
+
+    @Test
+    public void testBigEndian() {
+        JpegHeader header = JpegHeader.read(jpeg(4000, 3000, ExifInterface.ORIENTATION_ROTATE_90, false));
+        assertNotNull(header);
+        assertEquals(4000, header.width);
+        assertEquals(3000, header.height);
+        assertEquals(ExifInterface.ORIENTATION_ROTATE_90, header.orientation);
+        assertEquals(2, header.exifOffset);
+    }
+
+    @Test
+    public void testLittleEndian() {
+        JpegHeader header = JpegHeader.read(jpeg(100, 200, ExifInterface.ORIENTATION_TRANSVERSE, true));
+        assertNotNull(header);
+        assertEquals(100, header.width);
+        assertEquals(200, header.height);
+        assertEquals(ExifInterface.ORIENTATION_TRANSVERSE, header.orientation);
+        assertTrue(header.littleEndian);
+    }
+
+    @Test
+    public void testOrientationOffset() {
+        byte[] data = jpeg(100, 200, ExifInterface.ORIENTATION_ROTATE_90, true);
+        JpegHeader header = JpegHeader.read(data);
+        assertNotNull(header);
+        assertEquals(ExifInterface.ORIENTATION_ROTATE_90, JpegHeader.readShort(data, header.orientationOffset, true));
+        assertEquals(-1, JpegHeader.read(jpeg(100, 200, 0, true)).orientationOffset);
+    }
+
+    @Test
+    public void testTruncated() {
+        byte[] full = jpeg(100, 200, ExifInterface.ORIENTATION_ROTATE_180, false);
+        for (int length = 0; length < full.length; length++) {
+            byte[] data = new byte[length];
+            System.arraycopy(full, 0, data, 0, length);
+            JpegHeader.read(data); // Must not throw.
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.otaliastudios.cameraview;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MemoryBudgetTest {
+
+    private MemoryBudget.Account first;
+    private MemoryBudget.Account second;
+
+    @Before
+    public void setUp() {
+        MemoryBudget.setBudget(1000);
+        first = MemoryBudget.register("first");
+        second = MemoryBudget.register("second");
+    }
+
+    @After
+    public void tearDown() {
+        first.unregister();
+        second.unregister();
+        MemoryBudget.setBudget(0);
+    }
+
+    @Test
+    public void testDefaultBudget() {
+        MemoryBudget.setBudget(0);
+        assertEquals(MemoryBudget.DEFAULT_BUDGET, MemoryBudget.getBudget());
+    }
+
+    @Test
+    public void testShares() {
+        assertEquals(500, first.getShare());
+        assertEquals(500, second.getShare());
+        second.unregister();
+        assertEquals(1000, first.getShare());
+    }
+
+    @Test
+    public void testRequestFrameBuffers() {
+        assertEquals(2, first.requestFrameBuffers(200, 2));
+        assertEquals(400, first.getUsage());
+        assertEquals(2, first.requestFrameBuffers(250, 5));
+        assertEquals(500, first.getUsage());
+        // At least one buffer, even if it does not fit.
+        assertEquals(1, first.requestFrameBuffers(800, 2));
+        assertEquals(800, first.getUsage());
+        first.releaseFrameBuffers();
+        assertEquals(0, first.getUsage());
+    }
+
+    @Test
+    public void testCaptureBytes() {
+        first.setCaptureBytes(300);
+        assertEquals(2, first.requestFrameBuffers(100, 5));
+        assertEquals(500, first.getUsage());
+        assertEquals(500, MemoryBudget.getUsage());
+        second.setCaptureBytes(100);
+        assertEquals(600, MemoryBudget.getUsage());
+    }
+
+    @Test
+    public void testUnregister() {
+        first.setCaptureBytes(300);
+        first.unregister();
+        assertEquals(0, first.getUsage());
+        assertEquals(0, MemoryBudget.getUsage());
+        assertEquals(1, MemoryBudget.getAccountCount());
+        first.unregister(); // No-op
+        assertEquals(1, MemoryBudget.getAccountCount());
+    }
+}
@@ -0,0 +1,127 @@
+package com.otaliastudios.cameraview;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MeteringRegionsTest {
+
+    private MeteringRegions regions;
+
+    @Before
+    public void setUp() {
+        regions = new MeteringRegions();
+    }
+
+    @After
+    public void tearDown() {
+        regions = null;
+    }
+
+    // The previous implementation, with doubles and trigonometry.
+    private static int[] reference(float viewX, float viewY, int width, int height, int sensorToView) {
+        double x = -1000d + (viewX / (double) width) * 2000d;
+        double y = -1000d + (viewY / (double) height) * 2000d;
+        double theta = ((double) -sensorToView) * Math.PI / 180;
+        double sensorX = x * Math.cos(theta) - y * Math.sin(theta);
+        double sensorY = x * Math.sin(theta) + y * Math.cos(theta);
+        return new int[]{ (int) Math.round(sensorX), (int) Math.round(sensorY) };
+    }
+
+    private int centerX(int region) {
+        return (regions.getLeft(region) + regions.getRight(region)) / 2;
+    }
+
+    private int centerY(int region) {
+        return (regions.getTop(region) + regions.getBottom(region)) / 2;
+    }
+
+    @Test
+    public void testNotConfigured() {
+        assertFalse(regions.isConfigured());
+        assertFalse(regions.add(10, 10));
+        assertEquals(0, regions.getCount());
+    }
+
+    @Test
+    public void testConfigure() {
+        assertTrue(regions.configure(1000, 2000, 90));
+        assertTrue(regions.isConfigured());
+        assertFalse(regions.configure(1000, 2000, 90));
+        assertFalse(regions.configure(1000, 2000, -270));
+        assertTrue(regions.configure(1000, 2000, 180));
+        assertTrue(regions.configure(1080, 2000, 180));
+    }
+
+    @Test
+    public void testMatchesReference() {
+        int width = 1080, height = 1920;
+        float[][] points = new float[][]{{540, 960}, {100, 200}, {1000, 1800}, {0, 1920}, {333, 777}};
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            regions.configure(width, height, rotation);
+            for (float[] point : points) {
+                regions.clear();
+                assertTrue(regions.add(point[0], point[1]));
+                int[] expected = reference(point[0], point[1], width, height, rotation);
+                // Regions close to the edges are clamped, so their center moves.
+                if (Math.abs(expected[0]) <= 1000 - MeteringRegions.INNER_SIZE / 2
+                        && Math.abs(expected[1]) <= 1000 - MeteringRegions.INNER_SIZE / 2) {
+                    assertEquals(expected[0], centerX(0), 2);
+                    assertEquals(expected[1], centerY(0), 2);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRegions() {
+        regions.configure(2000, 2000, 0);
+        regions.add(1000, 1000); // Center.
+        assertEquals(2, regions.getCount());
+        assertEquals(-75, regions.getLeft(0));
+        assertEquals(-75, regions.getTop(0));
+        assertEquals(75, regions.getRight(0));
+        assertEquals(75, regions.getBottom(0));
+        assertEquals(MeteringRegions.INNER_WEIGHT, regions.getWeight(0));
+        assertEquals(-150, regions.getLeft(1));
+        assertEquals(150, regions.getBottom(1));
+        assertEquals(MeteringRegions.OUTER_WEIGHT, regions.getWeight(1));
+    }
+
+    @Test
+    public void testClamp() {
+        regions.configure(2000, 2000, 0);
+        regions.add(0, 2000); // Bottom left.
+        assertEquals(-1000, regions.getLeft(0));
+        assertEquals(1000, regions.getBottom(0));
+        assertEquals(-1000 + 75, regions.getRight(0));
+        assertEquals(1000 - 75, regions.getTop(0));
+    }
+
+    @Test
+    public void testMultiplePoints() {
+        regions.configure(2000, 2000, 0);
+        float[] points = new float[]{500, 500, 1500, 1500, 1000, 1000};
+        assertEquals(3, regions.set(points, 3));
+        assertEquals(6, regions.getCount());
+        // Inner regions come first, then outer regions, in the same order.
+        assertEquals(-500, centerX(0));
+        assertEquals(500, centerX(1));
+        assertEquals(0, centerX(2));
+        assertEquals(MeteringRegions.INNER_WEIGHT, regions.getWeight(2));
+        assertEquals(-500, centerX(3));
+        assertEquals(MeteringRegions.OUTER_WEIGHT, regions.getWeight(3));
+
+        // Count is capped by the array and by MAX_POINTS.
+        assertEquals(3, regions.set(points, 10));
+        float[] many = new float[MeteringRegions.MAX_POINTS * 2 + 2];
+        assertEquals(MeteringRegions.MAX_POINTS, regions.set(many, MeteringRegions.MAX_POINTS + 1));
+        regions.clear();
+        assertEquals(0, regions.getCount());
+    }
+}
@@ -0,0 +1,177 @@
+package com.otaliastudios.cameraview;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class MotionDetectorTest {
+
+    private final static int WIDTH = 320;
+    private final static int HEIGHT = 240;
+
+    private MotionDetector detector;
+    private MotionDetector.Listener listener;
+    private final TestFrames frames = new TestFrames(WIDTH, HEIGHT);
+
+    @Before
+    public void setUp() {
+        detector = new MotionDetector();
+        listener = mock(MotionDetector.Listener.class);
+        detector.setListener(listener);
+    }
+
+    @After
+    public void tearDown() {
+        detector = null;
+        listener = null;
+    }
+
+    private byte[] gray() {
+        byte[] data = new byte[WIDTH * HEIGHT * 3 / 2];
+        Arrays.fill(data, (byte) 100);
+        return data;
+    }
+
+    private byte[] square(int left, int top, int size) {
+        byte[] data = gray();
+        for (int y = top; y < top + size; y++) {
+            for (int x = left; x < left + size; x++) {
+                data[y * WIDTH + x] = (byte) 220;
+            }
+        }
+        return data;
+    }
+
+    @Test
+    public void testGrid() {
+        detector.process(frames.frame(gray(), 0));
+        assertEquals(WIDTH / MotionDetector.CELL_SIZE, detector.getGridWidth());
+        assertEquals(HEIGHT / MotionDetector.CELL_SIZE, detector.getGridHeight());
+    }
+
+    @Test
+    public void testFirstFrame() {
+        detector.process(frames.frame(square(0, 0, 64), 0));
+        verify(listener, never()).onMotion(any(Frame.class), any(MotionDetector.class));
+        assertEquals(0, detector.getChangedCount());
+    }
+
+    @Test
+    public void testStill() {
+        detector.process(frames.frame(gray(), 0));
+        detector.process(frames.frame(gray(), 33));
+        verify(listener, never()).onMotion(any(Frame.class), any(MotionDetector.class));
+        assertEquals(0, detector.getChangedFraction(), 0);
+        // Only the coarsest level was compared.
+        int top = ((detector.getGridWidth() + 3) / 4) * ((detector.getGridHeight() + 3) / 4);
+        assertEquals(top, detector.getComparedCount());
+    }
+
+    @Test
+    public void testNoiseBelowThreshold() {
+        detector.process(frames.frame(gray(), 0));
+        byte[] noisy = gray();
+        for (int i = 0; i < WIDTH * HEIGHT; i += 3) noisy[i] = (byte) (100 + (i % 7) * 2);
+        detector.process(frames.frame(noisy, 33));
+        verify(listener, never()).onMotion(any(Frame.class), any(MotionDetector.class));
+    }
+
+    @Test
+    public void testMotion() {
+        detector.process(frames.frame(square(16, 16, 48), 0));
+        Frame moved = frames.frame(square(160, 96, 48), 33);
+        detector.process(moved);
+        verify(listener, times(1)).onMotion(same(moved), same(detector));
+        assertTrue(detector.getChangedCount() > 0);
+        // Both the old and the new position changed.
+        assertTrue(detector.isChanged(3, 3));
+        assertTrue(detector.isChanged(22, 14));
+        assertFalse(detector.isChanged(39, 29));
+        assertEquals(2, detector.getLeft());
+        assertEquals(2, detector.getTop());
+        assertEquals(25, detector.getRight());
+        assertEquals(17, detector.getBottom());
+        assertEquals(1, detector.getMotionCount());
+        assertEquals(2, detector.getFrameCount());
+    }
+
+    @Test
+    public void testSensitivity() {
+        // A single cell out of 1200.
+        detector.process(frames.frame(gray(), 0));
+        detector.process(frames.frame(square(80, 80, 8), 33));
+        assertEquals(1, detector.getChangedCount());
+        verify(listener, never()).onMotion(any(Frame.class), any(MotionDetector.class));
+
+        detector.setSensitivity(1);
+        detector.process(frames.frame(gray(), 66));
+        verify(listener, times(1)).onMotion(any(Frame.class), any(MotionDetector.class));
+    }
+
+    @Test
+    public void testSingleCellAboveThreshold() {
+        // A change of a few levels more than the threshold, in a single cell.
+        detector.setSensitivity(1);
+        detector.process(frames.frame(gray(), 0));
+        byte[] data = gray();
+        for (int y = 80; y < 88; y++) {
+            for (int x = 80; x < 88; x++) {
+                data[y * WIDTH + x] = (byte) (100 + detector.getThreshold() + 4);
+            }
+        }
+        detector.process(frames.frame(data, 33));
+        assertEquals(1, detector.getChangedCount());
+        assertTrue(detector.isChanged(10, 10));
+        verify(listener, times(1)).onMotion(any(Frame.class), any(MotionDetector.class));
+    }
+
+    @Test
+    public void testMotionInsideBlock() {
+        // The square moves inside a single block of the coarsest level (4 x 4 cells),
+        // so the block average does not change.
+        detector.setSensitivity(1);
+        detector.process(frames.frame(square(64, 64, 8), 0));
+        detector.process(frames.frame(square(88, 88, 8), 33));
+        assertEquals(2, detector.getChangedCount());
+        assertTrue(detector.isChanged(8, 8));
+        assertTrue(detector.isChanged(11, 11));
+        verify(listener, times(1)).onMotion(any(Frame.class), any(MotionDetector.class));
+    }
+
+    @Test
+    public void testSizeChange() {
+        detector.process(frames.frame(gray(), 0));
+        detector.process(frames.frame(new byte[160 * 120 * 3 / 2], 33, new Size(160, 120)));
+        // The new size starts over, so this is a first frame.
+        verify(listener, never()).onMotion(any(Frame.class), any(MotionDetector.class));
+        assertEquals(20, detector.getGridWidth());
+    }
+
+    @Test
+    public void testAutoSnapshot() {
+        CameraView view = mock(CameraView.class);
+        detector.setAutoSnapshot(view, 1000);
+        detector.process(frames.frame(gray(), 0));
+        detector.process(frames.frame(square(0, 0, 64), 100)); // Snapshot.
+        detector.process(frames.frame(gray(), 200)); // Too early.
+        detector.process(frames.frame(square(0, 0, 64), 1100)); // Snapshot.
+        verify(view, times(2)).captureSnapshot();
+
+        detector.setAutoSnapshot(null, 0);
+        detector.process(frames.frame(gray(), 5000));
+        verify(view, times(2)).captureSnapshot();
+    }
+}
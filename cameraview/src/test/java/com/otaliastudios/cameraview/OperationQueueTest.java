@@ -0,0 +1,229 @@
+package com.otaliastudios.cameraview;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class OperationQueueTest {
+
+    private List<Runnable> triggers;
+    private List<String> log;
+    private OperationQueue queue;
+
+    @Before
+    public void setUp() {
+        triggers = new ArrayList<>();
+        log = new ArrayList<>();
+        queue = new OperationQueue(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                triggers.add(command);
+            }
+        });
+    }
+
+    // Runs everything that was posted so far.
+    private void drain() {
+        while (!triggers.isEmpty()) triggers.remove(0).run();
+    }
+
+    private Runnable action(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                log.add(name);
+            }
+        };
+    }
+
+    @Test
+    public void testOrder() {
+        queue.schedule(action("a"));
+        queue.schedule(action("b"));
+        queue.schedule(action("c"));
+        assertEquals(3, queue.getPendingCount());
+        drain();
+        assertEquals("[a, b, c]", log.toString());
+        assertEquals(3, queue.getCompletedCount());
+        assertEquals(0, queue.getPendingCount());
+    }
+
+    @Test
+    public void testCancel() {
+        OperationQueue.Operation a = queue.schedule(action("a"));
+        OperationQueue.Operation b = queue.schedule(action("b"));
+        assertTrue(b.cancel());
+        assertFalse(b.cancel());
+        assertTrue(b.isCancelled());
+        assertTrue(b.isDone());
+        drain();
+        assertEquals("[a]", log.toString());
+        assertTrue(a.isDone());
+        assertFalse(a.isCancelled());
+        assertFalse(a.cancel());
+        assertEquals(1, queue.getCancelledCount());
+    }
+
+    @Test
+    public void testCollapse() {
+        OperationQueue.Operation first = queue.schedule(OperationQueue.PRIORITY_PARAMETER,
+                "flash", 0, action("flash1"), null);
+        queue.schedule(OperationQueue.PRIORITY_PARAMETER, "zoom", 0, action("other"), null);
+        queue.schedule(OperationQueue.PRIORITY_PARAMETER, "flash", 0, action("flash2"), null);
+        queue.schedule(OperationQueue.PRIORITY_PARAMETER, "flash", 0, action("flash3"), null);
+        assertTrue(first.isCancelled());
+        drain();
+        assertEquals("[other, flash3]", log.toString());
+        assertEquals(2, queue.getCollapsedCount());
+    }
+
+    @Test
+    public void testCancelKeyed() {
+        queue.schedule(OperationQueue.PRIORITY_PARAMETER, "zoom", 0, action("zoom"), null);
+        queue.schedule(OperationQueue.PRIORITY_PARAMETER, "flash", 0, action("flash"), null);
+        queue.schedule(action("stop"));
+        queue.cancelKeyed();
+        drain();
+        assertEquals("[stop]", log.toString());
+        assertEquals(2, queue.getCancelledCount());
+    }
+
+    @Test
+    public void testCancelKeyed_keep() {
+        queue.schedule(OperationQueue.PRIORITY_PARAMETER, "zoom", 0, action("zoom"), null);
+        queue.schedule(OperationQueue.PRIORITY_PARAMETER, "flash", 0, action("flash"), null);
+        queue.schedule(OperationQueue.PRIORITY_PARAMETER, "exposure", 0, action("exposure"), null);
+        queue.schedule(action("stop"));
+        queue.cancelKeyed("zoom", "exposure");
+        drain();
+        assertEquals("[zoom, exposure, stop]", log.toString());
+        assertEquals(1, queue.getCancelledCount());
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        queue.schedule(OperationQueue.PRIORITY_FOCUS, "focus", 1, action("focus"), null);
+        queue.schedule(OperationQueue.PRIORITY_PARAMETER, "zoom", 0, action("zoom"), null);
+        Thread.sleep(20);
+        drain();
+        assertEquals("[zoom]", log.toString());
+        assertEquals(1, queue.getExpiredCount());
+    }
+
+    @Test
+    public void testLatency() throws Exception {
+        queue.schedule(action("a"));
+        Thread.sleep(50);
+        drain();
+        assertTrue(queue.getMaxLatency() >= 50);
+        assertTrue(queue.getAverageLatency() >= 50);
+    }
+
+    @Test
+    public void testResume() {
+        queue.schedule(action("a"));
+        queue.schedule(action("b"));
+        triggers.clear(); // Lost, e.g. thread died.
+        queue.resume();
+        drain();
+        assertEquals("[a, b]", log.toString());
+    }
+
+    @Test
+    public void testPriority_keepsOrder() {
+        queue.schedule(OperationQueue.PRIORITY_PARAMETER, "zoom", 0, action("zoom"), null);
+        queue.schedule(OperationQueue.PRIORITY_FOCUS, "focus", 0, action("focus"), null);
+        queue.schedule(OperationQueue.PRIORITY_CAPTURE, null, 0, action("capture1"), null);
+        queue.schedule(OperationQueue.PRIORITY_LIFECYCLE, null, 0, action("stop"), null);
+        queue.schedule(OperationQueue.PRIORITY_CAPTURE, null, 0, action("capture2"), null);
+        drain();
+        assertEquals("[zoom, focus, capture1, stop, capture2]", log.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPriority_invalid() {
+        queue.schedule(4, null, 0, action("a"), null);
+    }
+
+    @Test
+    public void testPriority_captureBehindParameters() {
+        // Pending changes collapse, so the capture only waits for the last one.
+        for (int i = 0; i < 100; i++) {
+            queue.schedule(OperationQueue.PRIORITY_PARAMETER, "zoom", 0, action("zoom" + i), null);
+        }
+        queue.schedule(OperationQueue.PRIORITY_CAPTURE, null, 0, action("capture"), null);
+        drain();
+        assertEquals("[zoom99, capture]", log.toString());
+        assertEquals(99, queue.getCollapsedCount());
+    }
+
+    @Test
+    public void testPriority_captureBehindMixedParameters() {
+        // With many keys, the capture waits for one change per key, not one per call.
+        String[] keys = new String[]{"zoom", "exposureCorrection", "flash", "whiteBalance",
+                "hdr", "location", "metering", "focus"};
+        for (int i = 0; i < 100; i++) {
+            for (String key : keys) {
+                int priority = key.equals("focus") ? OperationQueue.PRIORITY_FOCUS : OperationQueue.PRIORITY_PARAMETER;
+                queue.schedule(priority, key, 0, action(key + i), null);
+            }
+        }
+        queue.schedule(OperationQueue.PRIORITY_CAPTURE, null, 0, action("capture"), null);
+        assertEquals(keys.length + 1, queue.getPendingCount());
+        drain();
+        assertEquals(keys.length, log.indexOf("capture"));
+        for (int i = 0; i < keys.length; i++) assertEquals(keys[i] + "99", log.get(i));
+        assertEquals(99 * keys.length, queue.getCollapsedCount());
+    }
+
+    @Test
+    public void testParameterThenCapture() {
+        queue.schedule(OperationQueue.PRIORITY_PARAMETER, "flash", 0, action("flash"), null);
+        queue.schedule(OperationQueue.PRIORITY_CAPTURE, null, 0, action("picture"), null);
+        drain();
+        assertEquals("[flash, picture]", log.toString());
+    }
+
+    @Test
+    public void testParameterThenCapture_collapseStopsAtCapture() {
+        // The picture must be taken with flash1. flash2 can't replace it.
+        queue.schedule(OperationQueue.PRIORITY_PARAMETER, "flash", 0, action("flash1"), null);
+        queue.schedule(OperationQueue.PRIORITY_CAPTURE, null, 0, action("picture"), null);
+        queue.schedule(OperationQueue.PRIORITY_PARAMETER, "flash", 0, action("flash2"), null);
+        queue.schedule(OperationQueue.PRIORITY_PARAMETER, "flash", 0, action("flash3"), null);
+        drain();
+        assertEquals("[flash1, picture, flash3]", log.toString());
+        assertEquals(1, queue.getCollapsedCount());
+    }
+
+    @Test
+    public void testCaptureThenLifecycle() {
+        // e.g. capturePicture() then setFacing(): the picture comes from the first camera.
+        queue.schedule(OperationQueue.PRIORITY_CAPTURE, null, 0, action("picture"), null);
+        queue.schedule(OperationQueue.PRIORITY_LIFECYCLE, null, 0, action("facing"), null);
+        drain();
+        assertEquals("[picture, facing]", log.toString());
+    }
+
+    @Test
+    public void testCaptureWhileParameterRuns() {
+        // The capture is scheduled while the first parameter change is running.
+        // Changes scheduled before it still run first.
+        queue.schedule(OperationQueue.PRIORITY_PARAMETER, null, 0, new Runnable() {
+            @Override
+            public void run() {
+                log.add("zoom0");
+                queue.schedule(OperationQueue.PRIORITY_CAPTURE, null, 0, action("capture"), null);
+            }
+        }, null);
+        queue.schedule(OperationQueue.PRIORITY_PARAMETER, "flash", 0, action("flash"), null);
+        drain();
+        assertEquals("[zoom0, flash, capture]", log.toString());
+    }
+}
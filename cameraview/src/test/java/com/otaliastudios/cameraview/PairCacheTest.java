@@ -0,0 +1,54 @@
+package com.otaliastudios.cameraview;
+
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PairCacheTest {
+
+    private static PairCache<Size> cache(int capacity) {
+        return new PairCache<Size>(capacity) {
+            @Override
+            boolean matches(@NonNull Size item, int first, int second) {
+                return item.getWidth() == first && item.getHeight() == second;
+            }
+
+            @NonNull
+            @Override
+            Size create(int first, int second) {
+                return new Size(first, second);
+            }
+        };
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacity() {
+        cache(10);
+    }
+
+    @Test
+    public void testInterning() {
+        PairCache<Size> cache = cache(16);
+        Size size = cache.get(3, 4);
+        assertSame(size, cache.get(3, 4));
+        assertNotSame(size, cache.get(4, 3));
+        assertEquals(2, cache.size());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNotSame(size, cache.get(3, 4));
+    }
+
+    @Test
+    public void testFull() {
+        PairCache<Size> cache = cache(4);
+        for (int i = 0; i < 100; i++) {
+            Size size = cache.get(i, i);
+            assertEquals(i, size.getWidth());
+            assertEquals(i, size.getHeight());
+        }
+        assertEquals(4, cache.size());
+    }
+}
@@ -0,0 +1,116 @@
+package com.otaliastudios.cameraview;
+
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PreRollBufferTest {
+
+    private static ByteBuffer packet(int size, int value) {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (int i = 0; i < size; i++) buffer.put((byte) value);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static List<Long> drainTimes(PreRollBuffer buffer) {
+        final List<Long> times = new ArrayList<>();
+        buffer.drain(new PreRollBuffer.PacketCallback() {
+            @Override
+            public void onPacket(ByteBuffer data, long timeUs, boolean keyFrame) {
+                times.add(timeUs);
+            }
+        });
+        return times;
+    }
+
+    @Test
+    public void testStartsWithKeyFrame() {
+        PreRollBuffer buffer = new PreRollBuffer(1000, 10, 1000);
+        assertFalse(buffer.add(packet(10, 0), 0, false));
+        assertEquals(0, buffer.getPacketCount());
+        assertTrue(buffer.add(packet(10, 0), 1, true));
+        assertTrue(buffer.add(packet(10, 0), 2, false));
+        assertEquals(2, buffer.getPacketCount());
+        assertEquals(20, buffer.getUsedBytes());
+        assertEquals(1, buffer.getKeyFrameCount());
+    }
+
+    @Test
+    public void testTooBig() {
+        PreRollBuffer buffer = new PreRollBuffer(100, 10, 1000);
+        assertTrue(buffer.add(packet(10, 0), 0, true));
+        assertFalse(buffer.add(packet(101, 0), 1, true));
+        assertEquals(0, buffer.getPacketCount());
+    }
+
+    @Test
+    public void testWindowEvictsWholeGops() {
+        // GOPs of 3 packets, 10us apart. Window is 50us.
+        PreRollBuffer buffer = new PreRollBuffer(10000, 100, 50);
+        for (int i = 0; i < 30; i++) {
+            buffer.add(packet(10, i), i * 10, i % 3 == 0);
+        }
+        // The buffer must start with a key frame and cover at least the window.
+        List<Long> times = drainTimes(buffer);
+        long first = times.get(0);
+        long last = times.get(times.size() - 1);
+        assertEquals(0, (first / 10) % 3);
+        assertTrue(last - first >= 50);
+        assertTrue(last - first < 50 + 30);
+        assertEquals(290, last);
+        assertEquals(0, buffer.getPacketCount());
+    }
+
+    @Test
+    public void testCapacityEviction() {
+        // 10 packets of 30 bytes in a 100 bytes ring, with a huge window.
+        PreRollBuffer buffer = new PreRollBuffer(100, 100, Long.MAX_VALUE);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(buffer.add(packet(30, i), i, true));
+            assertTrue(buffer.getUsedBytes() <= 100);
+        }
+        List<Long> times = drainTimes(buffer);
+        assertEquals(9L, (long) times.get(times.size() - 1));
+        assertTrue(times.size() >= 2);
+    }
+
+    @Test
+    public void testCapacityEvictionDropsBrokenGop() {
+        // Evicting the key frame must evict its delta frames too.
+        PreRollBuffer buffer = new PreRollBuffer(100, 100, Long.MAX_VALUE);
+        buffer.add(packet(40, 0), 0, true);
+        buffer.add(packet(40, 1), 1, false);
+        buffer.add(packet(40, 2), 2, true); // Wraps, overwrites packet 0 -> packet 1 goes too.
+        assertEquals(1, buffer.getPacketCount());
+        assertEquals(1, buffer.getKeyFrameCount());
+        assertEquals(40, buffer.getUsedBytes());
+    }
+
+    @Test
+    public void testDrainContents() {
+        PreRollBuffer buffer = new PreRollBuffer(100, 100, Long.MAX_VALUE);
+        buffer.add(packet(40, 7), 0, true);
+        buffer.add(packet(40, 8), 1, false);
+        buffer.add(packet(40, 9), 2, true); // Wraps
+        buffer.add(packet(40, 10), 3, false);
+        final List<Integer> values = new ArrayList<>();
+        buffer.drain(new PreRollBuffer.PacketCallback() {
+            @Override
+            public void onPacket(ByteBuffer data, long timeUs, boolean keyFrame) {
+                assertEquals(40, data.remaining());
+                values.add((int) data.get(data.position()));
+            }
+        });
+        assertEquals(2, values.size());
+        assertEquals(9, (int) values.get(0));
+        assertEquals(10, (int) values.get(1));
+    }
+}
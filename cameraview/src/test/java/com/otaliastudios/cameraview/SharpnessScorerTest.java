@@ -0,0 +1,155 @@
+package com.otaliastudios.cameraview;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SharpnessScorerTest {
+
+    private final static int WIDTH = 64;
+    private final static int HEIGHT = 48;
+    private final static long MS = TestFrames.MS;
+
+    private SharpnessScorer scorer;
+    private final TestFrames frames = new TestFrames(WIDTH, HEIGHT);
+
+    @Before
+    public void setUp() {
+        scorer = new SharpnessScorer();
+    }
+
+    @After
+    public void tearDown() {
+        scorer = null;
+    }
+
+    // Vertical stripes of the given width, with values in [128 - contrast, 128 + contrast].
+    private byte[] stripes(int stripe, int contrast) {
+        byte[] data = new byte[WIDTH * HEIGHT * 3 / 2];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                data[y * WIDTH + x] = (byte) ((x / stripe) % 2 == 0 ? 128 - contrast : 128 + contrast);
+            }
+        }
+        return data;
+    }
+
+    @Test
+    public void testFlat() {
+        assertEquals(0, SharpnessScorer.score(new byte[WIDTH * HEIGHT], WIDTH, HEIGHT, 1), 0);
+    }
+
+    @Test
+    public void testSharperScoresHigher() {
+        byte[] sharp = stripes(4, 100);
+        byte[] soft = stripes(4, 20);
+        assertTrue(SharpnessScorer.score(sharp, WIDTH, HEIGHT, 2) > SharpnessScorer.score(soft, WIDTH, HEIGHT, 2));
+    }
+
+    @Test
+    public void testStep() {
+        scorer.setStep(2);
+        assertEquals(2, scorer.getStep());
+        // Too big for the frame: no samples.
+        assertEquals(0, SharpnessScorer.score(stripes(4, 100), WIDTH, HEIGHT, 100), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidStep() {
+        scorer.setStep(0);
+    }
+
+    @Test
+    public void testFrameScore() {
+        Frame frame = frames.frame(stripes(4, 100), 0);
+        assertEquals(-1, frame.getSharpness(), 0);
+        scorer.process(frame);
+        assertTrue(frame.getSharpness() > 0);
+        assertEquals(frame.getSharpness(), scorer.getLastScore(), 0);
+        assertEquals(frame.getSharpness(), frame.freeze().getSharpness(), 0);
+        frame.release();
+        assertEquals(-1, frame.getSharpness(), 0);
+    }
+
+    @Test
+    public void testNoWindow() {
+        scorer.process(frames.frame(stripes(4, 100), 0));
+        assertEquals(0, scorer.getCandidateCount());
+        assertNull(scorer.takeBest(0));
+    }
+
+    @Test
+    public void testBestInWindow() {
+        scorer.setWindow(500);
+        byte[] sharp = stripes(4, 100);
+        scorer.process(frames.frame(stripes(4, 20), 0));
+        scorer.process(frames.frame(sharp, 100));
+        scorer.process(frames.frame(stripes(4, 50), 200));
+        // The first one is dominated by the second.
+        assertEquals(2, scorer.getCandidateCount());
+
+        SharpnessScorer.Candidate best = scorer.takeBest(300 * MS);
+        assertNotNull(best);
+        assertEquals(100 * MS, best.timestamp);
+        assertEquals(SharpnessScorer.score(sharp, WIDTH, HEIGHT, scorer.getStep()), best.score, 0);
+        for (int i = 0; i < sharp.length; i++) assertEquals(sharp[i], best.data[i]);
+        assertEquals(1, scorer.getCandidateCount());
+    }
+
+    @Test
+    public void testExpire() {
+        scorer.setWindow(500);
+        scorer.process(frames.frame(stripes(4, 100), 0));
+        scorer.process(frames.frame(stripes(4, 20), 400));
+        // The sharp one is out of the window.
+        SharpnessScorer.Candidate best = scorer.takeBest(600 * MS);
+        assertNotNull(best);
+        assertEquals(400 * MS, best.timestamp);
+        assertNull(scorer.takeBest(2000 * MS));
+    }
+
+    @Test
+    public void testCapacity() {
+        scorer.setWindow(10000);
+        // Decreasing scores: all are candidates, until full.
+        for (int i = 0; i < SharpnessScorer.CANDIDATES + 2; i++) {
+            scorer.process(frames.frame(stripes(4, 100 - i * 10), i));
+        }
+        assertEquals(SharpnessScorer.CANDIDATES, scorer.getCandidateCount());
+        // A sharper frame replaces them all.
+        scorer.process(frames.frame(stripes(4, 120), 100));
+        assertEquals(1, scorer.getCandidateCount());
+    }
+
+    @Test
+    public void testRecycle() {
+        scorer.setWindow(10000);
+        scorer.process(frames.frame(stripes(4, 20), 0));
+        SharpnessScorer.Candidate first = scorer.takeBest(0);
+        assertNotNull(first);
+        scorer.process(frames.frame(stripes(4, 20), 1));
+        scorer.process(frames.frame(stripes(4, 50), 2)); // Recycles the previous one.
+        scorer.process(frames.frame(stripes(4, 10), 3)); // Reuses it.
+        SharpnessScorer.Candidate best = scorer.takeBest(3 * MS);
+        SharpnessScorer.Candidate next = scorer.takeBest(3 * MS);
+        assertNotNull(best);
+        assertNotNull(next);
+        assertEquals(3 * MS, next.timestamp);
+        assertTrue(first != best && first != next);
+
+        scorer.setWindow(0);
+        assertEquals(0, scorer.getCandidateCount());
+    }
+
+    @Test
+    public void testBestScore() {
+        assertEquals(-1, scorer.getBestScore(), 0);
+        assertEquals(-1, scorer.getLastScore(), 0);
+    }
+}
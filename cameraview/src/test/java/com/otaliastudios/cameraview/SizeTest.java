@@ -3,6 +3,9 @@ package com.otaliastudios.cameraview;
 
 import org.junit.Test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import static org.junit.Assert.*;
 
 public class SizeTest {
@@ -53,4 +56,49 @@ public class SizeTest {
         assertTrue(s1.compareTo(s2) > 0);
         assertTrue(s2.compareTo(s1) < 0);
     }
+
+    @Test
+    public void testOf() {
+        Size size = Size.of(640, 480);
+        assertEquals(new Size(640, 480), size);
+        assertSame(size, Size.of(640, 480));
+        assertSame(size, size.flip().flip());
+    }
+
+    @Test
+    public void testConcurrentInterning() throws Exception {
+        final int threads = 8;
+        final int range = 10;
+        final AtomicReferenceArray<Size> results = new AtomicReferenceArray<>(range * range);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch end = new CountDownLatch(threads);
+        final boolean[] failed = new boolean[1];
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < 20000; i++) {
+                            int w = (i + offset) % range;
+                            int h = (i / range + offset) % range;
+                            Size size = Size.of(w + 7000, h + 7000);
+                            results.compareAndSet(w + h * range, null, size);
+                            if (results.get(w + h * range) != size) failed[0] = true;
+                        }
+                    } catch (InterruptedException ignore) {
+                    } finally {
+                        end.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        end.await();
+        assertFalse(failed[0]);
+        for (int i = 0; i < results.length(); i++) {
+            assertEquals(new Size(i % range + 7000, i / range + 7000), results.get(i));
+        }
+    }
 }
@@ -0,0 +1,236 @@
+package com.otaliastudios.cameraview;
+
+import android.graphics.ImageFormat;
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Produces NV21 preview frames without a camera, so that the frame pipeline (processors, drop
+ * rate, garbage) can be load-tested on any JVM.
+ *
+ * Frames go through a {@link FrameManager} and {@link CameraView.CameraCallbacks#dispatchFrame(Frame)},
+ * just like Camera1 frames: buffers come back through {@link #onBufferAvailable(byte[])} when
+ * frames are released. If no buffer is available when a frame is due, the frame is dropped,
+ * which is what the camera does.
+ *
+ * Frames can be produced one by one with {@link #produceFrame()}, or at a fixed rate
+ * by a background thread with {@link #start()}.
+ */
+class SyntheticFrameSource implements FrameManager.BufferCallback {
+
+    private final static String TAG = SyntheticFrameSource.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    private final static int NV21_BITS_PER_PIXEL = 12;
+
+    /**
+     * Fills a NV21 buffer with the contents of a frame.
+     */
+    interface Pattern {
+        void fill(@NonNull byte[] nv21, int width, int height, long index);
+    }
+
+    /**
+     * A diagonal luma gradient that moves by a few pixels each frame, over gray chroma.
+     * Cheap to draw, and different in each frame.
+     */
+    final static Pattern GRADIENT = new Pattern() {
+        @Override
+        public void fill(@NonNull byte[] nv21, int width, int height, long index) {
+            int shift = (int) (index * 4);
+            int i = 0;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    nv21[i++] = (byte) (x + y + shift);
+                }
+            }
+            int end = width * height * 3 / 2;
+            while (i < end) nv21[i++] = (byte) 128;
+        }
+    };
+
+    /**
+     * Reads frames from a raw NV21 file: frames are stored one after the other, with no header.
+     * The file is memory-mapped, and frames are looped when the end is reached.
+     *
+     * @param file the raw file
+     * @param size the frame size
+     * @return a pattern
+     * @throws IOException if the file can't be mapped or holds no frame
+     */
+    static Pattern fromFile(@NonNull File file, @NonNull Size size) throws IOException {
+        final int frameSize = size.getWidth() * size.getHeight() * 3 / 2;
+        final MappedByteBuffer map;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close(); // The mapping stays valid.
+        }
+        final int count = map.capacity() / frameSize;
+        if (count == 0) throw new IOException("File is smaller than a frame: " + file);
+        return new Pattern() {
+            @Override
+            public void fill(@NonNull byte[] nv21, int width, int height, long index) {
+                // The position is shared, in case the pattern is used by more sources.
+                synchronized (map) {
+                    map.position((int) (index % count) * frameSize);
+                    map.get(nv21, 0, frameSize);
+                }
+            }
+        };
+    }
+
+    private final CameraView.CameraCallbacks mCallbacks;
+    private final Size mSize;
+    private final Pattern mPattern;
+    private final FrameManager mFrameManager;
+    private final FrameInfo mFrameInfo;
+    private final ConcurrentLinkedQueue<byte[]> mBuffers = new ConcurrentLinkedQueue<>();
+    private long mPeriodNanos;
+
+    private Thread mThread;
+    private volatile boolean mRunning;
+
+    private long mIndex;
+    private volatile long mProducedCount;
+    private volatile long mDroppedCount;
+    private volatile long mLateCount;
+
+    /**
+     * Creates a source. Buffers are allocated here.
+     *
+     * @param callbacks receives the frames
+     * @param size frame size
+     * @param fps frames per second, for {@link #start()}
+     * @param poolSize how many buffers and frames to use, like the camera preview pool
+     * @param pattern what to draw
+     */
+    SyntheticFrameSource(@NonNull CameraView.CameraCallbacks callbacks, @NonNull Size size, int fps,
+                         int poolSize, @NonNull Pattern pattern) {
+        mCallbacks = callbacks;
+        mSize = size;
+        mPattern = pattern;
+        mFrameInfo = new FrameInfo(size, ImageFormat.NV21, 0, Facing.BACK, null);
+        mFrameManager = new FrameManager(poolSize, this);
+        mFrameManager.allocate(NV21_BITS_PER_PIXEL, size);
+        setFps(fps);
+    }
+
+    void setFps(int fps) {
+        if (fps <= 0) throw new IllegalArgumentException("fps should be > 0");
+        mPeriodNanos = 1000000000L / fps;
+    }
+
+    @Override
+    public void onBufferAvailable(byte[] buffer) {
+        mBuffers.offer(buffer);
+    }
+
+    /**
+     * Produces a frame and dispatches it, or drops it if all buffers are held by frames.
+     *
+     * @return true if the frame was dispatched
+     */
+    boolean produceFrame() {
+        byte[] buffer = mBuffers.poll();
+        long index = mIndex++;
+        if (buffer == null) {
+            mDroppedCount++;
+            return false;
+        }
+        mPattern.fill(buffer, mSize.getWidth(), mSize.getHeight(), index);
+        Frame frame = mFrameManager.getFrame(buffer, System.nanoTime(), mFrameInfo);
+        mProducedCount++;
+        mCallbacks.dispatchFrame(frame);
+        return true;
+    }
+
+    /**
+     * Starts producing frames at the given fps, from a background thread.
+     */
+    synchronized void start() {
+        if (mRunning) return;
+        mRunning = true;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long next = System.nanoTime();
+                while (mRunning) {
+                    produceFrame();
+                    next += mPeriodNanos;
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    } else if (-wait > mPeriodNanos) {
+                        // Production itself is too slow. Don't try to catch up.
+                        mLateCount++;
+                        next = System.nanoTime();
+                    }
+                }
+            }
+        }, TAG);
+        mThread.start();
+    }
+
+    /**
+     * Stops the background thread, waiting for it to finish.
+     */
+    void stop() {
+        Thread thread;
+        synchronized (this) {
+            mRunning = false;
+            thread = mThread;
+            mThread = null;
+        }
+        if (thread == null) return;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOG.i("stop:", "produced:", mProducedCount, "dropped:", mDroppedCount, "late:", mLateCount);
+    }
+
+    // Stops and releases the frame manager. Frames held by processors are not recycled anymore.
+    void release() {
+        stop();
+        mFrameManager.release();
+        mBuffers.clear();
+    }
+
+    boolean isRunning() {
+        return mRunning;
+    }
+
+    long getProducedCount() {
+        return mProducedCount;
+    }
+
+    long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    // Ticks that came later than one period, because drawing the frame was too slow.
+    long getLateCount() {
+        return mLateCount;
+    }
+
+    // Dropped frames over all frames that were due.
+    float getDropRate() {
+        long total = mProducedCount + mDroppedCount;
+        return total == 0 ? 0 : (float) mDroppedCount / total;
+    }
+
+    int getBufferCount() {
+        return mFrameManager.getBufferCount();
+    }
+}
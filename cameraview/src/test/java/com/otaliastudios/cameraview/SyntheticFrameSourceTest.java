@@ -0,0 +1,174 @@
+package com.otaliastudios.cameraview;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class SyntheticFrameSourceTest {
+
+    private final static Size SIZE = new Size(16, 8);
+    private final static int FRAME_SIZE = 16 * 8 * 3 / 2;
+
+    private CameraView.CameraCallbacks callbacks;
+    private List<Frame> held;
+    private boolean release;
+
+    @Before
+    public void setUp() {
+        held = new ArrayList<>();
+        release = true;
+        callbacks = mock(CameraView.CameraCallbacks.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                Frame frame = (Frame) invocation.getArguments()[0];
+                if (release) {
+                    frame.release();
+                } else {
+                    held.add(frame);
+                }
+                return null;
+            }
+        }).when(callbacks).dispatchFrame(any(Frame.class));
+    }
+
+    @After
+    public void tearDown() {
+        callbacks = null;
+        held = null;
+    }
+
+    @Test
+    public void testGradient() {
+        byte[] data = new byte[FRAME_SIZE];
+        SyntheticFrameSource.GRADIENT.fill(data, 16, 8, 0);
+        assertEquals(0, data[0]);
+        assertEquals(5, data[5]);
+        assertEquals(2, data[16 + 1]); // x = 1, y = 1
+        assertEquals((byte) 128, data[16 * 8]);
+        assertEquals((byte) 128, data[FRAME_SIZE - 1]);
+
+        // Moves with the frame index.
+        SyntheticFrameSource.GRADIENT.fill(data, 16, 8, 1);
+        assertEquals(4, data[0]);
+    }
+
+    @Test
+    public void testProduceFrame() {
+        SyntheticFrameSource source = new SyntheticFrameSource(callbacks, SIZE, 30, 2,
+                SyntheticFrameSource.GRADIENT);
+        assertEquals(2, source.getBufferCount());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(source.produceFrame());
+        }
+        verify(callbacks, times(10)).dispatchFrame(any(Frame.class));
+        assertEquals(10, source.getProducedCount());
+        assertEquals(0, source.getDroppedCount());
+        assertEquals(0, source.getDropRate(), 0);
+        // Buffers are reused.
+        assertEquals(2, source.getBufferCount());
+        source.release();
+    }
+
+    @Test
+    public void testFrameContents() {
+        release = false;
+        SyntheticFrameSource source = new SyntheticFrameSource(callbacks, SIZE, 30, 2,
+                SyntheticFrameSource.GRADIENT);
+        source.produceFrame();
+        Frame frame = held.get(0);
+        assertEquals(SIZE, frame.getSize());
+        assertTrue(frame.getData().length >= FRAME_SIZE);
+        assertTrue(frame.getTimestamp() > 0);
+        source.release();
+    }
+
+    @Test
+    public void testDrops() {
+        release = false;
+        SyntheticFrameSource source = new SyntheticFrameSource(callbacks, SIZE, 30, 2,
+                SyntheticFrameSource.GRADIENT);
+        assertTrue(source.produceFrame());
+        assertTrue(source.produceFrame());
+        // Both buffers are held by processors.
+        assertFalse(source.produceFrame());
+        assertFalse(source.produceFrame());
+        assertEquals(2, source.getProducedCount());
+        assertEquals(2, source.getDroppedCount());
+        assertEquals(0.5F, source.getDropRate(), 0);
+
+        // Releasing a frame gives the buffer back.
+        held.remove(0).release();
+        assertTrue(source.produceFrame());
+        source.release();
+    }
+
+    @Test
+    public void testFromFile() throws IOException {
+        File file = File.createTempFile("synthetic", ".yuv");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        for (int i = 0; i < 3; i++) {
+            byte[] frame = new byte[FRAME_SIZE];
+            java.util.Arrays.fill(frame, (byte) i);
+            out.write(frame);
+        }
+        out.close();
+
+        SyntheticFrameSource.Pattern pattern = SyntheticFrameSource.fromFile(file, SIZE);
+        byte[] data = new byte[FRAME_SIZE];
+        pattern.fill(data, 16, 8, 1);
+        assertEquals(1, data[0]);
+        assertEquals(1, data[FRAME_SIZE - 1]);
+        pattern.fill(data, 16, 8, 5); // Loops.
+        assertEquals(2, data[0]);
+    }
+
+    @Test(expected = IOException.class)
+    public void testFromFile_tooSmall() throws IOException {
+        File file = File.createTempFile("synthetic", ".yuv");
+        file.deleteOnExit();
+        SyntheticFrameSource.fromFile(file, SIZE);
+    }
+
+    @Test
+    public void testStartStop() throws InterruptedException {
+        SyntheticFrameSource source = new SyntheticFrameSource(callbacks, SIZE, 500, 2,
+                SyntheticFrameSource.GRADIENT);
+        verify(callbacks, never()).dispatchFrame(any(Frame.class));
+        source.start();
+        assertTrue(source.isRunning());
+        Thread.sleep(100);
+        source.stop();
+        assertFalse(source.isRunning());
+        long produced = source.getProducedCount();
+        assertTrue(produced > 10);
+        Thread.sleep(20);
+        assertEquals(produced, source.getProducedCount());
+        source.release();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidFps() {
+        new SyntheticFrameSource(callbacks, SIZE, 0, 2, SyntheticFrameSource.GRADIENT);
+    }
+}
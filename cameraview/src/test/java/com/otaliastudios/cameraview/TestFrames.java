@@ -0,0 +1,32 @@
+package com.otaliastudios.cameraview;
+
+
+import android.graphics.ImageFormat;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Creates NV21 frames for frame processor tests. Frames belong to a mock manager,
+ * so releasing them does nothing.
+ */
+class TestFrames {
+
+    final static long MS = 1000000L;
+
+    private final Size size;
+    private final FrameManager manager = mock(FrameManager.class);
+
+    TestFrames(int width, int height) {
+        size = new Size(width, height);
+    }
+
+    Frame frame(byte[] data, long timestampMillis) {
+        return frame(data, timestampMillis, size);
+    }
+
+    Frame frame(byte[] data, long timestampMillis, Size size) {
+        Frame frame = new Frame(manager);
+        frame.set(data, timestampMillis * MS, new FrameInfo(size, ImageFormat.NV21, 0, Facing.BACK, null));
+        return frame;
+    }
+}
@@ -0,0 +1,190 @@
+package com.otaliastudios.cameraview;
+
+
+import android.graphics.ImageFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class YuvConverterTest {
+
+    private final static int WIDTH = 64;
+    private final static int HEIGHT = 48;
+
+    private YuvConverter converter;
+    private ExecutorService executor;
+    private byte[] nv21;
+
+    @Before
+    public void setUp() {
+        converter = new YuvConverter();
+        converter.setParallelism(1);
+        executor = Executors.newFixedThreadPool(3);
+        converter.setExecutor(executor);
+        nv21 = new byte[WIDTH * HEIGHT * 3 / 2];
+        new Random(42).nextBytes(nv21);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        converter = null;
+        nv21 = null;
+    }
+
+    // Float version, with the input pixel picked by rotating output coordinates back.
+    private static int[] reference(byte[] nv21, int width, int height, int rotation, int scale) {
+        int sw = width / scale, sh = height / scale;
+        int ow = rotation % 180 == 0 ? sw : sh;
+        int oh = rotation % 180 == 0 ? sh : sw;
+        int[] rgb = new int[ow * oh * 3];
+        for (int oy = 0; oy < oh; oy++) {
+            for (int ox = 0; ox < ow; ox++) {
+                int sx, sy;
+                switch (rotation) {
+                    case 90: sx = oy; sy = sh - 1 - ox; break;
+                    case 180: sx = sw - 1 - ox; sy = sh - 1 - oy; break;
+                    case 270: sx = sw - 1 - oy; sy = ox; break;
+                    default: sx = ox; sy = oy; break;
+                }
+                int px = sx * scale, py = sy * scale;
+                float y = nv21[py * width + px] & 0xFF;
+                int uv = width * height + (py / 2) * width + (px / 2) * 2;
+                float v = (nv21[uv] & 0xFF) - 128f;
+                float u = (nv21[uv + 1] & 0xFF) - 128f;
+                int i = (oy * ow + ox) * 3;
+                rgb[i] = clamp(y + 1.402f * v);
+                rgb[i + 1] = clamp(y - 0.344136f * u - 0.714136f * v);
+                rgb[i + 2] = clamp(y + 1.772f * u);
+            }
+        }
+        return rgb;
+    }
+
+    private static int clamp(float value) {
+        return Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    private void assertArgb(int[] expected, int[] argb) {
+        for (int i = 0; i < expected.length / 3; i++) {
+            int pixel = argb[i];
+            assertEquals(0xFF, pixel >>> 24);
+            assertEquals(expected[i * 3], (pixel >> 16) & 0xFF, 1);
+            assertEquals(expected[i * 3 + 1], (pixel >> 8) & 0xFF, 1);
+            assertEquals(expected[i * 3 + 2], pixel & 0xFF, 1);
+        }
+    }
+
+    private void assertRgb(int[] expected, ByteBuffer rgb, int offset) {
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], rgb.get(offset + i) & 0xFF, 1);
+        }
+    }
+
+    @Test
+    public void testArgb() {
+        for (int scale = 1; scale <= 3; scale++) {
+            converter.setDownscale(scale);
+            for (int rotation = 0; rotation < 360; rotation += 90) {
+                int size = converter.getOutputWidth(WIDTH, HEIGHT, rotation) * converter.getOutputHeight(WIDTH, HEIGHT, rotation);
+                int[] argb = new int[size];
+                converter.convert(nv21, WIDTH, HEIGHT, rotation, argb);
+                assertArgb(reference(nv21, WIDTH, HEIGHT, rotation, scale), argb);
+            }
+        }
+    }
+
+    @Test
+    public void testRgb() {
+        for (int scale = 1; scale <= 3; scale++) {
+            converter.setDownscale(scale);
+            for (int rotation = 0; rotation < 360; rotation += 90) {
+                int size = converter.getOutputWidth(WIDTH, HEIGHT, rotation) * converter.getOutputHeight(WIDTH, HEIGHT, rotation);
+                ByteBuffer rgb = ByteBuffer.allocateDirect(size * 3 + 5);
+                rgb.position(5);
+                converter.convert(nv21, WIDTH, HEIGHT, rotation, rgb);
+                assertEquals(5, rgb.position());
+                assertRgb(reference(nv21, WIDTH, HEIGHT, rotation, scale), rgb, 5);
+            }
+        }
+    }
+
+    @Test
+    public void testOutputSize() {
+        converter.setDownscale(2);
+        assertEquals(32, converter.getOutputWidth(WIDTH, HEIGHT, 0));
+        assertEquals(24, converter.getOutputHeight(WIDTH, HEIGHT, 0));
+        assertEquals(24, converter.getOutputWidth(WIDTH, HEIGHT, 90));
+        assertEquals(32, converter.getOutputHeight(WIDTH, HEIGHT, 90));
+    }
+
+    @Test
+    public void testParallel() {
+        int width = 320, height = 240;
+        byte[] input = new byte[width * height * 3 / 2];
+        new Random(7).nextBytes(input);
+        converter.setParallelism(4);
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            int[] argb = new int[width * height];
+            converter.convert(input, width, height, rotation, argb);
+            assertArgb(reference(input, width, height, rotation, 1), argb);
+        }
+        // The output buffer can be reused.
+        ByteBuffer rgb = ByteBuffer.allocate(width * height * 3);
+        for (int i = 0; i < 3; i++) {
+            converter.convert(input, width, height, 90, rgb);
+            assertRgb(reference(input, width, height, 90, 1), rgb, 0);
+        }
+    }
+
+    @Test
+    public void testFrame() {
+        Frame frame = new Frame(mock(FrameManager.class));
+        frame.set(nv21, 0, new FrameInfo(new Size(WIDTH, HEIGHT), ImageFormat.NV21, 270, Facing.BACK, null));
+        int[] argb = new int[WIDTH * HEIGHT];
+        converter.convert(frame, argb);
+        assertArgb(reference(nv21, WIDTH, HEIGHT, 270, 1), argb);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFrame_wrongFormat() {
+        Frame frame = new Frame(mock(FrameManager.class));
+        frame.set(nv21, 0, new FrameInfo(new Size(WIDTH, HEIGHT), ImageFormat.YV12, 0, Facing.BACK, null));
+        converter.convert(frame, new int[WIDTH * HEIGHT]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutputTooSmall() {
+        converter.convert(nv21, WIDTH, HEIGHT, 0, new int[WIDTH * HEIGHT - 1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRotation() {
+        converter.convert(nv21, WIDTH, HEIGHT, 45, new int[WIDTH * HEIGHT]);
+    }
+
+    @Test
+    public void testInvalidInput() {
+        converter.setParallelism(4);
+        byte[] input = new byte[320 * 240 * 3 / 2];
+        boolean thrown = false;
+        try {
+            converter.convert(new byte[10], 320, 240, 0, new int[320 * 240]);
+        } catch (IllegalArgumentException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+        // The converter is still usable.
+        converter.convert(input, 320, 240, 0, new int[320 * 240]);
+    }
+}